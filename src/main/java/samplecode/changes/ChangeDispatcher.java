@@ -0,0 +1,466 @@
+/*
+ * Copyright 2008-2013 UnboundID Corp. All Rights Reserved.
+ */
+/*
+ * Copyright (C) 2008-2013 UnboundID Corp. This program is free
+ * software; you can redistribute it and/or modify it under the terms of
+ * the GNU General Public License (GPLv2 only) or the terms of the GNU
+ * Lesser General Public License (LGPLv2.1 only) as published by the
+ * Free Software Foundation. This program is distributed in the hope
+ * that it will be useful, but WITHOUT ANY WARRANTY; without even the
+ * implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR
+ * PURPOSE. See the GNU General Public License for more details. You
+ * should have received a copy of the GNU General Public License along
+ * with this program; if not, see <http://www.gnu.org/licenses>.
+ */
+
+package samplecode.changes;
+
+import samplecode.annotation.CodeVersion;
+import samplecode.annotation.Since;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import static com.unboundid.util.Validator.ensureNotNull;
+
+
+/**
+ * Delivers the changes published by one or more producers, normally
+ * the threads that read the entries of persistent searches from their
+ * connections, to any number of {@link ChangeSubscriber subscribers}.
+ * <p/>
+ * The changes are kept in a ring buffer of {@code capacity} slots. A
+ * producer never waits for the subscribers: publishing a change claims
+ * the next sequence number, stores the change in its slot and advances
+ * the sequence number of the last change published, without locks and
+ * without regard to the subscribers. Each subscriber has a thread of its own that follows
+ * the sequence at its own pace and receives the changes in batches of up
+ * to {@code maxBatchSize}, so that a subscriber that is briefly slow
+ * catches up with fewer, larger calls. A subscriber that falls more than
+ * {@code capacity} changes behind has changes overwritten before it can
+ * read them; it is told how many changes it missed with
+ * {@link ChangeSubscriber#changesMissed(long)} and continues with the
+ * oldest change still in the buffer. The persistent search connection is
+ * therefore never stalled by a subscriber.
+ * <p/>
+ * example usage: <blockquote>
+ * <p/>
+ * <pre>
+ * ChangeDispatcher dispatcher = new ChangeDispatcher(8192,256);
+ * dispatcher.subscribe("cache-invalidator",cacheInvalidator);
+ * dispatcher.subscribe("audit",auditSubscriber);
+ * // in searchEntryReturned, on the connection reader thread:
+ * dispatcher.publish(ChangeEvent.fromSearchResultEntry(searchResultEntry));
+ * </pre>
+ * </blockquote>
+ */
+@Since("Oct 16, 2026")
+@CodeVersion("1.0")
+public final class ChangeDispatcher {
+
+  /**
+   * The longest time an idle subscriber thread parks before looking for
+   * changes again; the producer also wakes idle subscribers when it
+   * publishes a change.
+   */
+  private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(10L);
+
+
+
+  /**
+   * Creates a dispatcher with no subscribers.
+   *
+   * @param capacity
+   *   the number of changes kept for subscribers that fall behind,
+   *   which must be a power of two.
+   * @param maxBatchSize
+   *   the largest number of changes delivered to a subscriber at once,
+   *   which must be greater than zero.
+   */
+  public ChangeDispatcher(final int capacity, final int maxBatchSize) {
+    if((capacity <= 0) || (Integer.bitCount(capacity) != 1)) {
+      throw new IllegalArgumentException("capacity must be a power of two.");
+    }
+    if(maxBatchSize <= 0) {
+      throw new IllegalArgumentException("maxBatchSize must be greater than zero.");
+    }
+    this.capacity = capacity;
+    this.mask = capacity - 1;
+    this.maxBatchSize = maxBatchSize;
+    this.ring = new AtomicReferenceArray<Published>(capacity);
+  }
+
+
+
+  /**
+   * Adds a subscriber, which receives the changes published after this
+   * method returns, on a new daemon thread.
+   *
+   * @param name
+   *   the name of the subscriber, used to name its thread. Not
+   *   permitted to be {@code null}.
+   * @param subscriber
+   *   the subscriber. Not permitted to be {@code null}.
+   *
+   * @return the subscription, which provides the statistics of the
+   *         subscriber and can be cancelled.
+   */
+  public synchronized Subscription subscribe(final String name,
+                                             final ChangeSubscriber subscriber) {
+    ensureNotNull(name,subscriber);
+    if(closed) {
+      throw new IllegalStateException("the dispatcher is closed.");
+    }
+    final Subscription subscription = new Subscription(name,subscriber,cursor.get() + 1L);
+    final Subscription[] s = Arrays.copyOf(subscriptions,subscriptions.length + 1);
+    s[subscriptions.length] = subscription;
+    subscriptions = s;
+    subscription.thread.start();
+    return subscription;
+  }
+
+
+
+  /**
+   * Publishes a change to every subscriber. This method may be invoked
+   * by several threads at once: it never waits for the subscribers, only
+   * for the concurrent publishers that claimed an earlier sequence number
+   * to store their changes, so that no change is published before the
+   * changes that precede it.
+   *
+   * @param changeEvent
+   *   the change. Not permitted to be {@code null}.
+   */
+  public void publish(final ChangeEvent changeEvent) {
+    ensureNotNull(changeEvent);
+    if(closed) {
+      throw new IllegalStateException("the dispatcher is closed.");
+    }
+    final long sequence = claimed.incrementAndGet();
+    ring.set((int)(sequence & mask),new Published(sequence,changeEvent));
+    while(cursor.get() != sequence - 1L) {
+      Thread.yield();
+    }
+    cursor.set(sequence);
+    for(final Subscription subscription : subscriptions) {
+      if(subscription.waiting) {
+        LockSupport.unpark(subscription.thread);
+      }
+    }
+  }
+
+
+
+  /**
+   * @return the number of changes published.
+   */
+  public long getPublished() {
+    return cursor.get() + 1L;
+  }
+
+
+
+  /**
+   * @return the subscriptions that have not been cancelled.
+   */
+  public List<Subscription> getSubscriptions() {
+    return Arrays.asList(subscriptions.clone());
+  }
+
+
+
+  /**
+   * Stops accepting changes and waits for every subscriber to consume
+   * the changes still in the buffer.
+   *
+   * @throws InterruptedException
+   *   if the calling thread was interrupted while waiting.
+   */
+  public void close() throws InterruptedException {
+    final Subscription[] s;
+    synchronized(this) {
+      closed = true;
+      s = subscriptions;
+    }
+    for(final Subscription subscription : s) {
+      LockSupport.unpark(subscription.thread);
+    }
+    for(final Subscription subscription : s) {
+      subscription.thread.join();
+    }
+  }
+
+
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public String toString() {
+    return "ChangeDispatcher [capacity=" + capacity + ", maxBatchSize=" + maxBatchSize +
+      ", published=" + getPublished() + ", subscriptions=" +
+      Arrays.toString(subscriptions) + "]";
+  }
+
+
+
+  private synchronized void remove(final Subscription subscription) {
+    final List<Subscription> s = new ArrayList<Subscription>(Arrays.asList(subscriptions));
+    s.remove(subscription);
+    subscriptions = s.toArray(new Subscription[s.size()]);
+  }
+
+
+
+  /**
+   * A change stored in the ring buffer, with the sequence number under
+   * which it was published; a subscriber that finds a greater sequence
+   * number in a slot knows that the change it expected was overwritten.
+   */
+  private static final class Published {
+
+    private Published(final long sequence, final ChangeEvent changeEvent) {
+      this.sequence = sequence;
+      this.changeEvent = changeEvent;
+    }
+
+
+
+    private final ChangeEvent changeEvent;
+
+
+    private final long sequence;
+
+  }
+
+
+
+  /**
+   * A subscriber, the thread that delivers changes to it, and its
+   * statistics.
+   */
+  public final class Subscription implements Runnable {
+
+    private Subscription(final String name, final ChangeSubscriber subscriber,
+                         final long next) {
+      this.name = name;
+      this.subscriber = subscriber;
+      this.next = next;
+      this.thread = new Thread(this,"ChangeDispatcher-" + name);
+      this.thread.setDaemon(true);
+    }
+
+
+
+    /**
+     * @return the name of the subscriber.
+     */
+    public String getName() {
+      return name;
+    }
+
+
+
+    /**
+     * @return the number of changes delivered to the subscriber.
+     */
+    public long getDelivered() {
+      return delivered;
+    }
+
+
+
+    /**
+     * @return the number of batches delivered to the subscriber.
+     */
+    public long getBatches() {
+      return batches;
+    }
+
+
+
+    /**
+     * @return the number of changes that were overwritten before the
+     *         subscriber could consume them.
+     */
+    public long getMissed() {
+      return missed;
+    }
+
+
+
+    /**
+     * @return the number of changes published that the subscriber has
+     *         not yet consumed.
+     */
+    public long getLag() {
+      return Math.max(0L,cursor.get() + 1L - next);
+    }
+
+
+
+    /**
+     * Stops delivering changes to the subscriber. The batch being
+     * delivered, if any, is completed.
+     */
+    public void cancel() {
+      cancelled = true;
+      LockSupport.unpark(thread);
+      remove(this);
+    }
+
+
+
+    /**
+     * Delivers batches of changes until the subscription is cancelled,
+     * or the dispatcher is closed and every change has been delivered.
+     */
+    @Override
+    public void run() {
+      final List<ChangeEvent> batch = new ArrayList<ChangeEvent>(maxBatchSize);
+      while(!cancelled) {
+        final long available = cursor.get();
+        if(available < next) {
+          if(closed) {
+            break;
+          }
+          waiting = true;
+          if((cursor.get() < next) && !closed && !cancelled) {
+            LockSupport.parkNanos(this,IDLE_PARK_NANOS);
+          }
+          waiting = false;
+          continue;
+        }
+
+        final long oldest = available - capacity + 1L;
+        if(next < oldest) {
+          final long count = oldest - next;
+          missed += count;
+          next = oldest;
+          try {
+            subscriber.changesMissed(count);
+          } catch(final RuntimeException runtimeException) {
+            logger.log(Level.WARNING,name + " failed",runtimeException);
+          }
+        }
+
+        final long last = Math.min(available,next + maxBatchSize - 1L);
+        long sequence = next;
+        while(sequence <= last) {
+          final Published published = ring.get((int)(sequence & mask));
+          if(published.sequence != sequence) {
+            // overwritten since available was read; detected as missed
+            // changes on the next pass
+            break;
+          }
+          batch.add(published.changeEvent);
+          ++sequence;
+        }
+        next = sequence;
+        if(!batch.isEmpty()) {
+          try {
+            subscriber.changesReceived(batch);
+          } catch(final RuntimeException runtimeException) {
+            logger.log(Level.WARNING,name + " failed",runtimeException);
+          }
+          delivered += batch.size();
+          ++batches;
+          batch.clear();
+        }
+      }
+    }
+
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String toString() {
+      return "Subscription [name=" + name + ", delivered=" + delivered + ", batches=" +
+        batches + ", missed=" + missed + ", lag=" + getLag() + "]";
+    }
+
+
+
+    private volatile long batches;
+
+
+    private volatile boolean cancelled;
+
+
+    private volatile long delivered;
+
+
+    private volatile long missed;
+
+
+    private final String name;
+
+
+    /**
+     * The sequence number of the next change to deliver; written only by
+     * the thread of the subscription.
+     */
+    private volatile long next;
+
+
+    private final ChangeSubscriber subscriber;
+
+
+    private final Thread thread;
+
+
+    /**
+     * Whether the thread of the subscription is parked, or about to
+     * park, waiting for a change to be published.
+     */
+    private volatile boolean waiting;
+
+  }
+
+
+
+  private final int capacity;
+
+
+  /**
+   * The sequence number of the last change claimed by a producer, which
+   * may not be published yet.
+   */
+  private final AtomicLong claimed = new AtomicLong(-1L);
+
+
+  private volatile boolean closed;
+
+
+  /**
+   * The sequence number of the last change published; advanced by the
+   * producers in the order of the sequence numbers they claimed.
+   */
+  private final AtomicLong cursor = new AtomicLong(-1L);
+
+
+  private final Logger logger = Logger.getLogger(getClass().getName());
+
+
+  private final int mask;
+
+
+  private final int maxBatchSize;
+
+
+  private final AtomicReferenceArray<Published> ring;
+
+
+  private volatile Subscription[] subscriptions = new Subscription[0];
+
+}
@@ -0,0 +1,260 @@
+/*
+ * Copyright 2008-2013 UnboundID Corp. All Rights Reserved.
+ */
+/*
+ * Copyright (C) 2008-2013 UnboundID Corp. This program is free
+ * software; you can redistribute it and/or modify it under the terms of
+ * the GNU General Public License (GPLv2 only) or the terms of the GNU
+ * Lesser General Public License (LGPLv2.1 only) as published by the
+ * Free Software Foundation. This program is distributed in the hope
+ * that it will be useful, but WITHOUT ANY WARRANTY; without even the
+ * implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR
+ * PURPOSE. See the GNU General Public License for more details. You
+ * should have received a copy of the GNU General Public License along
+ * with this program; if not, see <http://www.gnu.org/licenses>.
+ */
+
+package samplecode.changes;
+
+import com.unboundid.ldap.sdk.LDAPException;
+import com.unboundid.ldap.sdk.SearchResultEntry;
+import com.unboundid.ldap.sdk.controls.EntryChangeNotificationControl;
+import com.unboundid.ldap.sdk.controls.PersistentSearchChangeType;
+import samplecode.annotation.CodeVersion;
+import samplecode.annotation.Since;
+
+import static com.unboundid.util.Validator.ensureNotNull;
+
+
+/**
+ * A change to an entry returned by a persistent search: the entry as it
+ * is after the change and the contents of the
+ * {@code EntryChangeNotificationControl} that accompanied it, if any.
+ * Instances are immutable, so one instance can be delivered to several
+ * subscribers.
+ */
+@Since("Oct 16, 2026")
+@CodeVersion("1.0")
+public final class ChangeEvent {
+
+  /**
+   * Creates a change event from an entry returned by a persistent
+   * search, using the entry change notification control attached to the
+   * entry. An entry without the control, which is returned when the
+   * persistent search does not request changes only, has no change type.
+   *
+   * @param searchResultEntry
+   *   the entry returned by the persistent search. Not permitted to be
+   *   {@code null}.
+   *
+   * @return a new change event.
+   *
+   * @throws LDAPException
+   *   if the entry change notification control cannot be decoded.
+   */
+  public static ChangeEvent fromSearchResultEntry(final SearchResultEntry searchResultEntry)
+    throws LDAPException {
+    return fromSearchResultEntry(searchResultEntry,null);
+  }
+
+
+
+  /**
+   * Creates a change event from an entry returned by one of several
+   * persistent searches.
+   *
+   * @param searchResultEntry
+   *   the entry returned by the persistent search. Not permitted to be
+   *   {@code null}.
+   * @param searchName
+   *   the name of the persistent search that returned the entry, or
+   *   {@code null}.
+   *
+   * @return a new change event.
+   *
+   * @throws LDAPException
+   *   if the entry change notification control cannot be decoded.
+   */
+  public static ChangeEvent fromSearchResultEntry(final SearchResultEntry searchResultEntry,
+                                                  final String searchName)
+    throws LDAPException {
+    ensureNotNull(searchResultEntry);
+    final EntryChangeNotificationControl c =
+      EntryChangeNotificationControl.get(searchResultEntry);
+    if(c == null) {
+      return new ChangeEvent(searchResultEntry,null,null,-1L,searchName);
+    }
+    return new ChangeEvent(searchResultEntry,c.getChangeType(),c.getPreviousDN(),
+      c.getChangeNumber(),searchName);
+  }
+
+
+
+  /**
+   * Creates a change event.
+   *
+   * @param entry
+   *   the entry after the change. Not permitted to be {@code null}.
+   * @param changeType
+   *   the type of the change, or {@code null} if it is not known.
+   * @param previousDN
+   *   the DN of the entry before a modify DN operation, or
+   *   {@code null}.
+   * @param changeNumber
+   *   the change number assigned by the server, or a negative number
+   *   if none was assigned.
+   */
+  public ChangeEvent(final SearchResultEntry entry, final PersistentSearchChangeType changeType,
+                     final String previousDN, final long changeNumber) {
+    this(entry,changeType,previousDN,changeNumber,(String)null);
+  }
+
+
+
+  /**
+   * Creates a change event returned by one of several persistent
+   * searches.
+   *
+   * @param entry
+   *   the entry after the change. Not permitted to be {@code null}.
+   * @param changeType
+   *   the type of the change, or {@code null} if it is not known.
+   * @param previousDN
+   *   the DN of the entry before a modify DN operation, or
+   *   {@code null}.
+   * @param changeNumber
+   *   the change number assigned by the server, or a negative number
+   *   if none was assigned.
+   * @param searchName
+   *   the name of the persistent search that returned the change, or
+   *   {@code null}.
+   */
+  public ChangeEvent(final SearchResultEntry entry, final PersistentSearchChangeType changeType,
+                     final String previousDN, final long changeNumber,
+                     final String searchName) {
+    ensureNotNull(entry);
+    this.entry = entry;
+    this.changeType = changeType;
+    this.previousDN = previousDN;
+    this.changeNumber = changeNumber;
+    this.searchName = searchName;
+    this.receivedNanos = System.nanoTime();
+  }
+
+
+
+  /**
+   * Creates a change event that stands for several changes, received
+   * first at {@code receivedNanos}.
+   */
+  ChangeEvent(final SearchResultEntry entry, final PersistentSearchChangeType changeType,
+              final String previousDN, final long changeNumber, final String searchName,
+              final long receivedNanos) {
+    this.entry = entry;
+    this.changeType = changeType;
+    this.previousDN = previousDN;
+    this.changeNumber = changeNumber;
+    this.searchName = searchName;
+    this.receivedNanos = receivedNanos;
+  }
+
+
+
+  /**
+   * @return the entry after the change.
+   */
+  public SearchResultEntry getEntry() {
+    return entry;
+  }
+
+
+
+  /**
+   * @return the DN of the entry after the change.
+   */
+  public String getDN() {
+    return entry.getDN();
+  }
+
+
+
+  /**
+   * @return the type of the change, or {@code null} if it is not known.
+   */
+  public PersistentSearchChangeType getChangeType() {
+    return changeType;
+  }
+
+
+
+  /**
+   * @return the DN of the entry before a modify DN operation, or
+   *         {@code null}.
+   */
+  public String getPreviousDN() {
+    return previousDN;
+  }
+
+
+
+  /**
+   * @return the change number assigned by the server, or a negative
+   *         number if none was assigned.
+   */
+  public long getChangeNumber() {
+    return changeNumber;
+  }
+
+
+
+  /**
+   * @return the name of the persistent search that returned the change,
+   *         or {@code null}.
+   */
+  public String getSearchName() {
+    return searchName;
+  }
+
+
+
+  /**
+   * @return the value of {@code System.nanoTime()} when the event was
+   *         created.
+   */
+  public long getReceivedNanos() {
+    return receivedNanos;
+  }
+
+
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public String toString() {
+    return "ChangeEvent [changeType=" + changeType + ", dn=" + entry.getDN() +
+      (previousDN == null ? "" : ", previousDN=" + previousDN) +
+      (changeNumber < 0L ? "" : ", changeNumber=" + changeNumber) +
+      (searchName == null ? "" : ", searchName=" + searchName) + "]";
+  }
+
+
+
+  private final long changeNumber;
+
+
+  private final PersistentSearchChangeType changeType;
+
+
+  private final SearchResultEntry entry;
+
+
+  private final String previousDN;
+
+
+  private final long receivedNanos;
+
+
+  private final String searchName;
+
+}
@@ -0,0 +1,59 @@
+/*
+ * Copyright 2008-2013 UnboundID Corp. All Rights Reserved.
+ */
+/*
+ * Copyright (C) 2008-2013 UnboundID Corp. This program is free
+ * software; you can redistribute it and/or modify it under the terms of
+ * the GNU General Public License (GPLv2 only) or the terms of the GNU
+ * Lesser General Public License (LGPLv2.1 only) as published by the
+ * Free Software Foundation. This program is distributed in the hope
+ * that it will be useful, but WITHOUT ANY WARRANTY; without even the
+ * implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR
+ * PURPOSE. See the GNU General Public License for more details. You
+ * should have received a copy of the GNU General Public License along
+ * with this program; if not, see <http://www.gnu.org/licenses>.
+ */
+
+package samplecode.changes;
+
+import samplecode.annotation.CodeVersion;
+import samplecode.annotation.Since;
+
+import java.util.List;
+
+
+/**
+ * Consumes the changes published to a {@link ChangeDispatcher}. The
+ * methods of a subscriber are invoked by one thread, which belongs to
+ * the dispatcher and to no other subscriber.
+ */
+@Since("Oct 16, 2026")
+@CodeVersion("1.0")
+public interface ChangeSubscriber {
+
+  /**
+   * Invoked with the changes published since the last batch, in the
+   * order in which they were published.
+   *
+   * @param changes
+   *   the changes, at least one and at most the maximum batch size of
+   *   the dispatcher. The list is only valid for the duration of the
+   *   call.
+   */
+  void changesReceived(List<ChangeEvent> changes);
+
+
+
+  /**
+   * Invoked when the subscriber has fallen so far behind that changes
+   * were overwritten before it could consume them, for example to
+   * invalidate a whole cache instead of individual entries.
+   *
+   * @param count
+   *   the number of changes that were not delivered, or zero if the
+   *   number is not known, for example when a persistent search was
+   *   re-established after the connection was lost.
+   */
+  void changesMissed(long count);
+
+}
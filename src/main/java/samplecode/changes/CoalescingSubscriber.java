@@ -0,0 +1,347 @@
+/*
+ * Copyright 2008-2013 UnboundID Corp. All Rights Reserved.
+ */
+/*
+ * Copyright (C) 2008-2013 UnboundID Corp. This program is free
+ * software; you can redistribute it and/or modify it under the terms of
+ * the GNU General Public License (GPLv2 only) or the terms of the GNU
+ * Lesser General Public License (LGPLv2.1 only) as published by the
+ * Free Software Foundation. This program is distributed in the hope
+ * that it will be useful, but WITHOUT ANY WARRANTY; without even the
+ * implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR
+ * PURPOSE. See the GNU General Public License for more details. You
+ * should have received a copy of the GNU General Public License along
+ * with this program; if not, see <http://www.gnu.org/licenses>.
+ */
+
+package samplecode.changes;
+
+import com.unboundid.ldap.sdk.DN;
+import com.unboundid.ldap.sdk.LDAPException;
+import com.unboundid.ldap.sdk.controls.PersistentSearchChangeType;
+import com.unboundid.util.StaticUtils;
+import samplecode.annotation.CodeVersion;
+import samplecode.annotation.Since;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import static com.unboundid.util.Validator.ensureNotNull;
+
+
+/**
+ * A {@link ChangeSubscriber} that holds the changes it receives for a
+ * window of time and passes them to another subscriber with the changes
+ * to the same entry merged, so that a burst of changes to an entry is
+ * processed once, with the latest state of the entry.
+ * <p/>
+ * The window starts with the first change received after the previous
+ * delivery, so that no change is held longer than the window. Within a
+ * window:
+ * <ul>
+ * <li>a modify that follows an add or a modify of the same entry is
+ * merged into it: the change type of the first change is kept, with the
+ * entry of the latest</li>
+ * <li>a delete that follows an add of the same entry cancels the
+ * add</li>
+ * <li>a delete that follows a modify replaces the modify, at the
+ * position of the delete</li>
+ * <li>an add that follows a delete is delivered after the delete and is
+ * not merged with it, because the new entry is another entry</li>
+ * <li>a modify DN is never merged, and the changes that follow it start
+ * new entries for both DNs</li>
+ * </ul>
+ * A change that is not merged is delivered at its own position, so the
+ * order of deletes and adds of entries that are parent and child is
+ * preserved. The merged changes of an entry are delivered at the
+ * position of the first of them.
+ * <p/>
+ * The other subscriber is invoked by a thread of the coalescing
+ * subscriber, one batch per window, and, when the changes are missed, is
+ * told so before the changes that follow.
+ * <p/>
+ * example usage: <blockquote>
+ * <p/>
+ * <pre>
+ * CoalescingSubscriber coalescingSubscriber =
+ *   new CoalescingSubscriber(cacheInvalidator,200L);
+ * changeDispatcher.subscribe("cache",coalescingSubscriber);
+ * ...
+ * changeDispatcher.close();
+ * coalescingSubscriber.close();
+ * </pre>
+ * </blockquote>
+ */
+@Since("Oct 16, 2026")
+@CodeVersion("1.0")
+public final class CoalescingSubscriber implements ChangeSubscriber {
+
+  /**
+   * Creates a coalescing subscriber and starts its thread.
+   *
+   * @param subscriber
+   *   the subscriber to which the merged changes are passed. Not
+   *   permitted to be {@code null}.
+   * @param windowMillis
+   *   the longest time in milliseconds for which a change is held,
+   *   which must be greater than zero.
+   */
+  public CoalescingSubscriber(final ChangeSubscriber subscriber, final long windowMillis) {
+    ensureNotNull(subscriber);
+    if(windowMillis <= 0L) {
+      throw new IllegalArgumentException("windowMillis must be greater than zero.");
+    }
+    this.subscriber = subscriber;
+    this.windowMillis = windowMillis;
+    this.scheduler = new ScheduledThreadPoolExecutor(1,new ThreadFactory() {
+
+      @Override
+      public Thread newThread(final Runnable runnable) {
+        final Thread thread = new Thread(runnable,"CoalescingSubscriber");
+        thread.setDaemon(true);
+        return thread;
+      }
+    });
+    // close() delivers the changes held without waiting for the window
+    this.scheduler.setExecuteExistingDelayedTasksAfterShutdownPolicy(false);
+  }
+
+
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public synchronized void changesReceived(final List<ChangeEvent> changes) {
+    if(slots.isEmpty() && (missed == 0L)) {
+      scheduleDelivery();
+    }
+    for(final ChangeEvent change : changes) {
+      add(change);
+    }
+    received += changes.size();
+  }
+
+
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public synchronized void changesMissed(final long count) {
+    if(slots.isEmpty() && (missed == 0L)) {
+      scheduleDelivery();
+    }
+    missed += count;
+  }
+
+
+
+  /**
+   * Stops the thread of the coalescing subscriber and delivers the
+   * changes that it still holds on the calling thread. Changes received
+   * after this method is invoked are not delivered.
+   *
+   * @throws InterruptedException
+   *   if the calling thread is interrupted while waiting for the thread
+   *   of the coalescing subscriber to finish a delivery.
+   */
+  public void close() throws InterruptedException {
+    synchronized(this) {
+      scheduler.shutdown();
+    }
+    scheduler.awaitTermination(Long.MAX_VALUE,TimeUnit.MILLISECONDS);
+    deliver();
+  }
+
+
+
+  /**
+   * @return the number of changes received.
+   */
+  public synchronized long getReceived() {
+    return received;
+  }
+
+
+
+  /**
+   * @return the number of changes delivered, which is at most the
+   *         number received.
+   */
+  public synchronized long getDelivered() {
+    return delivered;
+  }
+
+
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public synchronized String toString() {
+    return "CoalescingSubscriber [windowMillis=" + windowMillis + ", received=" + received +
+      ", delivered=" + delivered + ", held=" + slots.size() + "]";
+  }
+
+
+
+  private void scheduleDelivery() {
+    if(scheduler.isShutdown()) {
+      return;
+    }
+    scheduler.schedule(new Runnable() {
+
+      @Override
+      public void run() {
+        deliver();
+      }
+    },windowMillis,TimeUnit.MILLISECONDS);
+  }
+
+
+
+  /**
+   * Merges a change into the changes held for its entry.
+   */
+  private void add(final ChangeEvent change) {
+    final PersistentSearchChangeType changeType = change.getChangeType();
+    final String key = key(change,change.getDN());
+    final Slot slot = latest.get(key);
+
+    if(changeType == PersistentSearchChangeType.MODIFY_DN) {
+      // the changes before the rename stay where they are
+      latest.remove(key);
+      if(change.getPreviousDN() != null) {
+        latest.remove(key(change,change.getPreviousDN()));
+      }
+      slots.add(new Slot(change));
+      return;
+    }
+
+    final PersistentSearchChangeType heldType = slot == null ? null : slot.change.getChangeType();
+    final boolean held = (slot != null) && (heldType != PersistentSearchChangeType.DELETE);
+    if(held && isModify(changeType)) {
+      final ChangeEvent first = slot.change;
+      slot.change = new ChangeEvent(change.getEntry(),first.getChangeType(),
+        first.getPreviousDN(),change.getChangeNumber(),first.getSearchName(),
+        first.getReceivedNanos());
+      return;
+    }
+    if(held && (changeType == PersistentSearchChangeType.DELETE)) {
+      slot.change = null;
+      latest.remove(key);
+      if(heldType == PersistentSearchChangeType.ADD) {
+        // the entry was added and deleted within the window
+        return;
+      }
+    }
+    final Slot added = new Slot(change);
+    slots.add(added);
+    latest.put(key,added);
+  }
+
+
+
+  /**
+   * Passes the changes held, if any, to the subscriber.
+   */
+  private void deliver() {
+    final List<Slot> s;
+    final long m;
+    synchronized(this) {
+      s = slots;
+      m = missed;
+      slots = new ArrayList<Slot>();
+      latest.clear();
+      missed = 0L;
+    }
+    final List<ChangeEvent> changes = new ArrayList<ChangeEvent>(s.size());
+    for(final Slot slot : s) {
+      if(slot.change != null) {
+        changes.add(slot.change);
+      }
+    }
+    synchronized(this) {
+      delivered += changes.size();
+    }
+    if(m > 0L) {
+      subscriber.changesMissed(m);
+    }
+    if(!changes.isEmpty()) {
+      subscriber.changesReceived(changes);
+    }
+  }
+
+
+
+  // a change without an entry change notification control carries the
+  // latest state of the entry, like a modify
+  private static boolean isModify(final PersistentSearchChangeType changeType) {
+    return (changeType == null) || (changeType == PersistentSearchChangeType.MODIFY);
+  }
+
+
+
+  // the changes returned by different searches are never merged
+  private static String key(final ChangeEvent change, final String dn) {
+    String normalizedDN;
+    try {
+      normalizedDN = new DN(dn).toNormalizedString();
+    } catch(final LDAPException ldapException) {
+      normalizedDN = StaticUtils.toLowerCase(dn);
+    }
+    return change.getSearchName() == null ? normalizedDN :
+      change.getSearchName() + '\u0000' + normalizedDN;
+  }
+
+
+
+  /**
+   * A position in the order of delivery, holding a change, or nothing if
+   * the change was cancelled or moved.
+   */
+  private static final class Slot {
+
+    private Slot(final ChangeEvent change) {
+      this.change = change;
+    }
+
+
+
+    private ChangeEvent change;
+
+  }
+
+
+
+  private long delivered;
+
+
+  // the slot of the change held for each entry, by normalized DN
+  private final Map<String,Slot> latest = new HashMap<String,Slot>();
+
+
+  private long missed;
+
+
+  private long received;
+
+
+  private final ScheduledThreadPoolExecutor scheduler;
+
+
+  private List<Slot> slots = new ArrayList<Slot>();
+
+
+  private final ChangeSubscriber subscriber;
+
+
+  private final long windowMillis;
+
+}
@@ -0,0 +1,688 @@
+/*
+ * Copyright 2008-2013 UnboundID Corp. All Rights Reserved.
+ */
+/*
+ * Copyright (C) 2008-2013 UnboundID Corp. This program is free
+ * software; you can redistribute it and/or modify it under the terms of
+ * the GNU General Public License (GPLv2 only) or the terms of the GNU
+ * Lesser General Public License (LGPLv2.1 only) as published by the
+ * Free Software Foundation. This program is distributed in the hope
+ * that it will be useful, but WITHOUT ANY WARRANTY; without even the
+ * implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR
+ * PURPOSE. See the GNU General Public License for more details. You
+ * should have received a copy of the GNU General Public License along
+ * with this program; if not, see <http://www.gnu.org/licenses>.
+ */
+
+package samplecode.changes;
+
+import com.unboundid.ldap.sdk.AsyncRequestID;
+import com.unboundid.ldap.sdk.AsyncSearchResultListener;
+import com.unboundid.ldap.sdk.BindRequest;
+import com.unboundid.ldap.sdk.DisconnectHandler;
+import com.unboundid.ldap.sdk.DisconnectType;
+import com.unboundid.ldap.sdk.LDAPConnection;
+import com.unboundid.ldap.sdk.LDAPConnectionOptions;
+import com.unboundid.ldap.sdk.LDAPException;
+import com.unboundid.ldap.sdk.SearchRequest;
+import com.unboundid.ldap.sdk.SearchResult;
+import com.unboundid.ldap.sdk.SearchResultEntry;
+import com.unboundid.ldap.sdk.SearchResultReference;
+import com.unboundid.ldap.sdk.ServerSet;
+import com.unboundid.ldap.sdk.controls.PersistentSearchChangeType;
+import com.unboundid.ldap.sdk.controls.PersistentSearchRequestControl;
+import samplecode.annotation.CodeVersion;
+import samplecode.annotation.Since;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import static com.unboundid.util.Validator.ensureNotNull;
+
+
+/**
+ * Runs many persistent searches over a small, fixed number of
+ * connections.
+ * <p/>
+ * Each search registered with {@link #register} is sent on the
+ * connection with the fewest searches, with its own
+ * {@code AsyncRequestID}, so the number of connections does not grow
+ * with the number of searches. The connection reader threads publish
+ * every change, tagged with the name of its search, to one
+ * {@link ChangeDispatcher}, whose single subscriber routes each batch of
+ * changes to the {@link ChangeSubscriber} of the search that returned
+ * them. A subscriber is never invoked concurrently for the same search;
+ * a subscriber registered for several searches must be thread-safe.
+ * <p/>
+ * When a connection is lost, the manager opens a new connection, retrying
+ * every {@link #setRetryIntervalMillis(long) retry interval} until it
+ * succeeds, and sends every search of the lost connection again. Because
+ * the searches return changes only, the changes made while a search was
+ * not active are not known, and the subscriber of each re-established
+ * search is told so with {@link ChangeSubscriber#changesMissed(long)
+ * changesMissed(0)}. A search that the server ends for another reason,
+ * for example because its base object does not exist, is not sent again.
+ * <p/>
+ * example usage: <blockquote>
+ * <p/>
+ * <pre>
+ * PersistentSearchManager manager =
+ *   new PersistentSearchManager(serverSet,bindRequest,2,8192,256);
+ * for(String base : subtrees) {
+ *   manager.register(base,new SearchRequest(base,SearchScope.SUB,"(objectClass=*)"),
+ *     cacheInvalidator);
+ * }
+ * ...
+ * manager.close();
+ * </pre>
+ * </blockquote>
+ */
+@Since("Oct 16, 2026")
+@CodeVersion("1.0")
+public final class PersistentSearchManager {
+
+  /**
+   * Creates a manager; the connections are opened when the searches are
+   * registered.
+   *
+   * @param serverSet
+   *   provides the connections. Not permitted to be {@code null}.
+   * @param bindRequest
+   *   the request used to authenticate each connection, or {@code null}
+   *   if the connections are not authenticated.
+   * @param connections
+   *   the number of connections, which must be greater than zero.
+   * @param ringCapacity
+   *   the capacity of the ring buffer of the dispatcher, which must be a
+   *   power of two.
+   * @param maxBatchSize
+   *   the largest number of changes routed at once, which must be
+   *   greater than zero.
+   */
+  public PersistentSearchManager(final ServerSet serverSet, final BindRequest bindRequest,
+                                 final int connections, final int ringCapacity,
+                                 final int maxBatchSize) {
+    ensureNotNull(serverSet);
+    if(connections <= 0) {
+      throw new IllegalArgumentException("connections must be greater than zero.");
+    }
+    this.serverSet = serverSet;
+    this.bindRequest = bindRequest;
+    this.slots = new Slot[connections];
+    for(int i = 0; i < connections; ++i) {
+      slots[i] = new Slot();
+    }
+    this.dispatcher = new ChangeDispatcher(ringCapacity,maxBatchSize);
+    this.dispatcher.subscribe("PersistentSearchManager",router);
+    this.maintenance = new ScheduledThreadPoolExecutor(1,new ThreadFactory() {
+
+      @Override
+      public Thread newThread(final Runnable runnable) {
+        final Thread thread = new Thread(runnable,"PersistentSearchManager");
+        thread.setDaemon(true);
+        return thread;
+      }
+    });
+  }
+
+
+
+  /**
+   * Sets the time between two attempts to open a connection to replace a
+   * lost connection.
+   *
+   * @param retryIntervalMillis
+   *   the time in milliseconds, which must be greater than zero.
+   */
+  public void setRetryIntervalMillis(final long retryIntervalMillis) {
+    if(retryIntervalMillis <= 0L) {
+      throw new IllegalArgumentException("retryIntervalMillis must be greater than zero.");
+    }
+    this.retryIntervalMillis = retryIntervalMillis;
+  }
+
+
+
+  /**
+   * Sends a persistent search that returns the changes to the entries
+   * within the base object, scope, and filter of a search request.
+   *
+   * @param name
+   *   the name of the search, which must be unique. Not permitted to be
+   *   {@code null}.
+   * @param searchRequest
+   *   the base object, scope, filter, and attributes of the search. The
+   *   controls and listener of the request are not used. Not permitted
+   *   to be {@code null}.
+   * @param subscriber
+   *   receives the changes returned by the search. Not permitted to be
+   *   {@code null}.
+   *
+   * @return the registered search.
+   *
+   * @throws LDAPException
+   *   if a connection cannot be opened or the search cannot be sent.
+   */
+  public synchronized Watch register(final String name, final SearchRequest searchRequest,
+                                     final ChangeSubscriber subscriber)
+    throws LDAPException {
+    ensureNotNull(name,searchRequest,subscriber);
+    if(closed) {
+      throw new IllegalStateException("the manager is closed.");
+    }
+    if(watches.containsKey(name)) {
+      throw new IllegalArgumentException("a search named " + name + " is already registered.");
+    }
+    Slot slot = slots[0];
+    for(final Slot s : slots) {
+      if(s.watches.size() < slot.watches.size()) {
+        slot = s;
+      }
+    }
+    final Watch watch = new Watch(name,searchRequest,subscriber,slot);
+    if(slot.connection == null) {
+      if(slot.reconnecting) {
+        // the search is sent when the connection has been replaced
+        slot.watches.add(watch);
+        watches.put(name,watch);
+        return watch;
+      }
+      slot.connection = newConnection();
+    }
+    start(watch,slot.connection);
+    slot.watches.add(watch);
+    watches.put(name,watch);
+    return watch;
+  }
+
+
+
+  /**
+   * @return the searches that are registered.
+   */
+  public List<Watch> getWatches() {
+    return Collections.unmodifiableList(new ArrayList<Watch>(watches.values()));
+  }
+
+
+
+  /**
+   * @return the number of connections that are open.
+   */
+  public synchronized int getOpenConnections() {
+    int open = 0;
+    for(final Slot slot : slots) {
+      if(slot.connection != null) {
+        ++open;
+      }
+    }
+    return open;
+  }
+
+
+
+  /**
+   * @return the number of lost connections that were replaced.
+   */
+  public synchronized long getReconnects() {
+    return reconnects;
+  }
+
+
+
+  /**
+   * Closes the connections, which ends the searches, and waits until the
+   * changes already received are delivered.
+   *
+   * @throws InterruptedException
+   *   if the calling thread is interrupted while waiting.
+   */
+  public void close() throws InterruptedException {
+    synchronized(this) {
+      if(closed) {
+        return;
+      }
+      closed = true;
+      maintenance.shutdownNow();
+      for(final Slot slot : slots) {
+        if(slot.connection != null) {
+          slot.connection.close();
+          slot.connection = null;
+        }
+      }
+    }
+    maintenance.awaitTermination(Long.MAX_VALUE,TimeUnit.MILLISECONDS);
+    dispatcher.close();
+  }
+
+
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public synchronized String toString() {
+    return "PersistentSearchManager [searches=" + watches.size() + ", connections=" +
+      slots.length + ", openConnections=" + getOpenConnections() + ", reconnects=" +
+      reconnects + ", published=" + dispatcher.getPublished() + "]";
+  }
+
+
+
+  private LDAPConnection newConnection() throws LDAPException {
+    final LDAPConnection ldapConnection = serverSet.getConnection();
+    final LDAPConnectionOptions options = ldapConnection.getConnectionOptions().duplicate();
+    options.setDisconnectHandler(disconnectHandler);
+    ldapConnection.setConnectionOptions(options);
+    if(bindRequest != null) {
+      try {
+        ldapConnection.bind(bindRequest.duplicate());
+      } catch(final LDAPException ldapException) {
+        ldapConnection.close();
+        throw ldapException;
+      }
+    }
+    return ldapConnection;
+  }
+
+
+
+  private void start(final Watch watch, final LDAPConnection ldapConnection)
+    throws LDAPException {
+    final SearchRequest template = watch.searchRequest;
+    final SearchRequest searchRequest =
+      new SearchRequest(new WatchListener(watch,ldapConnection),template.getBaseDN(),
+        template.getScope(),template.getDereferencePolicy(),0,0,template.typesOnly(),
+        template.getFilter(),template.getAttributes());
+    searchRequest.setResponseTimeoutMillis(0L);
+    searchRequest.addControl(new PersistentSearchRequestControl(
+      PersistentSearchChangeType.allChangeTypes(),true,true,true));
+    watch.asyncRequestID = ldapConnection.asyncSearch(searchRequest);
+    ++watch.starts;
+  }
+
+
+
+  /**
+   * Invoked when a connection is lost, or a search ends because its
+   * connection can no longer be used. The first report schedules the
+   * replacement of the connection.
+   */
+  private synchronized void connectionLost(final LDAPConnection lost) {
+    if(closed) {
+      return;
+    }
+    for(final Slot slot : slots) {
+      if(slot.connection == lost) {
+        slot.connection = null;
+        slot.reconnecting = true;
+        lost.close();
+        scheduleReconnect(slot,0L);
+      }
+    }
+  }
+
+
+
+  private void scheduleReconnect(final Slot slot, final long delayMillis) {
+    maintenance.schedule(new Runnable() {
+
+      @Override
+      public void run() {
+        reconnect(slot);
+      }
+    },delayMillis,TimeUnit.MILLISECONDS);
+  }
+
+
+
+  /**
+   * Replaces the connection of a slot and sends its searches again; runs
+   * on the maintenance thread.
+   */
+  private void reconnect(final Slot slot) {
+    LDAPConnection ldapConnection = null;
+    try {
+      ldapConnection = newConnection();
+    } catch(final LDAPException ldapException) {
+      logger.warning("unable to reconnect: " + ldapException.getExceptionMessage());
+    }
+    final List<Watch> restarted = new ArrayList<Watch>();
+    synchronized(this) {
+      if(closed) {
+        if(ldapConnection != null) {
+          ldapConnection.close();
+        }
+        return;
+      }
+      if(ldapConnection != null) {
+        try {
+          for(final Watch watch : slot.watches) {
+            start(watch,ldapConnection);
+            restarted.add(watch);
+          }
+          slot.connection = ldapConnection;
+          slot.reconnecting = false;
+          ++reconnects;
+        } catch(final LDAPException ldapException) {
+          logger.warning("unable to send the searches again: " +
+            ldapException.getExceptionMessage());
+          ldapConnection.close();
+          restarted.clear();
+          ldapConnection = null;
+        }
+      }
+      if(ldapConnection == null) {
+        scheduleReconnect(slot,retryIntervalMillis);
+        return;
+      }
+    }
+    for(final Watch watch : restarted) {
+      synchronized(watch) {
+        watch.subscriber.changesMissed(0L);
+      }
+    }
+  }
+
+
+
+  private synchronized void cancel(final Watch watch) {
+    if(watches.remove(watch.name) == null) {
+      return;
+    }
+    watch.cancelled = true;
+    watch.slot.watches.remove(watch);
+    final LDAPConnection ldapConnection = watch.slot.connection;
+    if((ldapConnection != null) && (watch.asyncRequestID != null)) {
+      try {
+        ldapConnection.abandon(watch.asyncRequestID);
+      } catch(final LDAPException ldapException) {
+        logger.log(Level.FINE,"unable to abandon " + watch.name,ldapException);
+      }
+    }
+  }
+
+
+
+  /**
+   * A persistent search registered with the manager.
+   */
+  public final class Watch {
+
+    private Watch(final String name, final SearchRequest searchRequest,
+                  final ChangeSubscriber subscriber, final Slot slot) {
+      this.name = name;
+      this.searchRequest = searchRequest;
+      this.subscriber = subscriber;
+      this.slot = slot;
+    }
+
+
+
+    /**
+     * @return the name of the search.
+     */
+    public String getName() {
+      return name;
+    }
+
+
+
+    /**
+     * @return the identifier of the search on its current connection, or
+     *         {@code null} if it has not been sent.
+     */
+    public AsyncRequestID getAsyncRequestID() {
+      return asyncRequestID;
+    }
+
+
+
+    /**
+     * @return the number of changes delivered to the subscriber.
+     */
+    public long getDelivered() {
+      return delivered;
+    }
+
+
+
+    /**
+     * @return the number of times the search was sent, which is more
+     *         than one when it was re-established.
+     */
+    public long getStarts() {
+      return starts;
+    }
+
+
+
+    /**
+     * @return the result with which the server ended the search, if it
+     *         did so for a reason other than a lost connection, or
+     *         {@code null}.
+     */
+    public SearchResult getSearchResult() {
+      return searchResult;
+    }
+
+
+
+    /**
+     * Abandons the search; the subscriber receives no further changes.
+     */
+    public void cancel() {
+      PersistentSearchManager.this.cancel(this);
+    }
+
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String toString() {
+      return "Watch [name=" + name + ", asyncRequestID=" + asyncRequestID + ", delivered=" +
+        delivered + ", starts=" + starts + "]";
+    }
+
+
+
+    private volatile AsyncRequestID asyncRequestID;
+
+
+    private volatile boolean cancelled;
+
+
+    // written only by the router thread
+    private volatile long delivered;
+
+
+    private final String name;
+
+
+    private final SearchRequest searchRequest;
+
+
+    private volatile SearchResult searchResult;
+
+
+    private final Slot slot;
+
+
+    private volatile long starts;
+
+
+    private final ChangeSubscriber subscriber;
+
+  }
+
+
+
+  /**
+   * Receives the responses to one search on one connection; invoked by
+   * the reader thread of the connection.
+   */
+  @SuppressWarnings("serial")
+  private final class WatchListener implements AsyncSearchResultListener {
+
+    private WatchListener(final Watch watch, final LDAPConnection ldapConnection) {
+      this.watch = watch;
+      this.ldapConnection = ldapConnection;
+    }
+
+
+
+    @Override
+    public void searchEntryReturned(final SearchResultEntry searchEntry) {
+      try {
+        dispatcher.publish(ChangeEvent.fromSearchResultEntry(searchEntry,watch.name));
+      } catch(final LDAPException ldapException) {
+        logger.warning(ldapException.getExceptionMessage());
+      }
+    }
+
+
+
+    @Override
+    public void searchReferenceReturned(final SearchResultReference searchReference) {
+    }
+
+
+
+    @Override
+    public void searchResultReceived(final AsyncRequestID requestID,
+                                     final SearchResult searchResult) {
+      if(watch.cancelled || closed) {
+        return;
+      }
+      if(searchResult.getResultCode().isConnectionUsable()) {
+        logger.warning("the server ended the search " + watch.name + ": " + searchResult);
+        watch.searchResult = searchResult;
+      } else {
+        connectionLost(ldapConnection);
+      }
+    }
+
+
+
+    private final LDAPConnection ldapConnection;
+
+
+    private final Watch watch;
+
+  }
+
+
+
+  /**
+   * The connection of a slot and the searches sent on it; guarded by the
+   * manager.
+   */
+  private static final class Slot {
+
+    private LDAPConnection connection;
+
+
+    private boolean reconnecting;
+
+
+    private final List<Watch> watches = new ArrayList<Watch>();
+
+  }
+
+
+
+  private final BindRequest bindRequest;
+
+
+  private volatile boolean closed;
+
+
+  /**
+   * Reports the loss of a connection; invoked by the thread that detects
+   * it.
+   */
+  private final DisconnectHandler disconnectHandler = new DisconnectHandler() {
+
+    @Override
+    public void handleDisconnect(final LDAPConnection ldapConnection, final String host,
+                                 final int port, final DisconnectType disconnectType,
+                                 final String message, final Throwable cause) {
+      connectionLost(ldapConnection);
+    }
+  };
+
+
+  private final ChangeDispatcher dispatcher;
+
+
+  private final Logger logger = Logger.getLogger(getClass().getName());
+
+
+  private final ScheduledThreadPoolExecutor maintenance;
+
+
+  private long reconnects;
+
+
+  private volatile long retryIntervalMillis = 1000L;
+
+
+  /**
+   * Routes each batch of changes to the subscribers of the searches that
+   * returned them; invoked by the thread of the dispatcher.
+   */
+  private final ChangeSubscriber router = new ChangeSubscriber() {
+
+    @Override
+    public void changesReceived(final List<ChangeEvent> changes) {
+      int start = 0;
+      while(start < changes.size()) {
+        final String searchName = changes.get(start).getSearchName();
+        int end = start + 1;
+        while((end < changes.size()) && searchName.equals(changes.get(end).getSearchName())) {
+          ++end;
+        }
+        final Watch watch = watches.get(searchName);
+        if((watch != null) && !watch.cancelled) {
+          synchronized(watch) {
+            watch.subscriber.changesReceived(changes.subList(start,end));
+            watch.delivered += end - start;
+          }
+        }
+        start = end;
+      }
+    }
+
+
+
+    @Override
+    public void changesMissed(final long count) {
+      // the searches whose changes were missed are not known
+      for(final Watch watch : watches.values()) {
+        synchronized(watch) {
+          watch.subscriber.changesMissed(count);
+        }
+      }
+    }
+  };
+
+
+  private final ServerSet serverSet;
+
+
+  private final Slot[] slots;
+
+
+  private final Map<String,Watch> watches = new ConcurrentHashMap<String,Watch>();
+
+}
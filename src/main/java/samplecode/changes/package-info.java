@@ -0,0 +1,11 @@
+/**
+ * Delivery of the changes returned by a persistent search to the parts
+ * of an application that act on them.
+ * <p>
+ * The connection reader thread that receives the entries of a
+ * persistent search publishes each change into a ring buffer, and each
+ * subscriber consumes the changes in batches on its own thread, so that
+ * a slow subscriber never delays the reading of the connection.
+ */
+
+package samplecode.changes;
@@ -47,7 +47,7 @@ public class CommandLineOptions
    * <li>--maxConnections</li> <li>--maxResponseTimeMillis</li> <li>--numThreads</li>
    * <li>--pageSize</li> <li>--reportCount</li> <li>--reportInterval</li> <li>--scope</li>
    * <li>--sizeLimit</li> <li>--timeLimit</li> <li>--usePropertiesFile</li> <li>--useSchema</li>
-   * <li>--verbose</li> </ul>
+   * <li>--verbose</li> <li>--virtualThreads</li> </ul>
    *
    * @param resourceBundle
    *   the resource bundle used for argument parameters
@@ -165,6 +165,11 @@ public class CommandLineOptions
       BooleanPropertiesBackedArgument.newBooleanPropertiesBackedArgument
         (resourceBundle,argName).getArgument();
 
+    argName = ARG_NAME_VIRTUAL_THREADS;
+    Argument virtualThreadsArgument =
+      BooleanPropertiesBackedArgument.newBooleanPropertiesBackedArgument
+        (resourceBundle,argName).getArgument();
+
     return new Argument[]{
       abandonOnTimeoutArgument,
       attributeArgument,
@@ -186,7 +191,8 @@ public class CommandLineOptions
       timeLimitArgument,
       usePropertiesFileArgument,
       useSchemaArgument,
-      verboseArgument
+      verboseArgument,
+      virtualThreadsArgument
     };
   }
 
@@ -384,6 +390,13 @@ public class CommandLineOptions
    */
   private static final String ARG_NAME_VERBOSE = "verbose";
 
+  /**
+   * The long identifier of the command line argument which indicates that concurrent operations
+   * should run on virtual threads when the JVM supports them. This command line argument is
+   * optional and can occur exactly once.
+   */
+  private static final String ARG_NAME_VIRTUAL_THREADS = "virtualThreads";
+
   /**
    * The command line argument parser provided as a service by the {@code LDAPCommandLineTool}
    * class.
@@ -807,13 +820,15 @@ public class CommandLineOptions
    * is the maximum number of reports, applicable to a tool that uses repeating reports. The time
    * interval between reports is specified by the {@code --reportInterval} command line argument.
    *
-   * @return the maximum number of reports.
+   * @return the maximum number of reports, or {@code Integer.MAX_VALUE} if the {@code
+   *         --reportCount} command line argument was not specified on the command line.
    */
   public int getReportCount()
   {
     int reportCount = Integer.MAX_VALUE;
     IntegerArgument arg = getNamedArgument(ARG_NAME_REPORT_COUNT);
-    if((arg != null) && arg.isPresent())
+    // isPresent() is also true when only the default value is set
+    if((arg != null) && (arg.getNumOccurrences() > 0))
     {
       reportCount = arg.getValue().intValue();
     }
@@ -982,6 +997,19 @@ public class CommandLineOptions
   }
 
 
+  /**
+   * Whether the {@code --virtualThreads} command line option is present.
+   *
+   * @return Whether the {@code --virtualThreads} command line option is present.
+   */
+  public boolean getVirtualThreads()
+  {
+    String argName = ARG_NAME_VIRTUAL_THREADS;
+    BooleanArgument arg = getNamedArgument(argName);
+    return (arg != null) && arg.isPresent();
+  }
+
+
   /**
    * Constructs a new {@code LDAPConnectionOptions} object with parameters set to values specified
    * by command line argument parameters.
@@ -16,9 +16,14 @@
 
 package samplecode.controls;
 
+import com.unboundid.asn1.ASN1OctetString;
 import com.unboundid.ldap.sdk.*;
 import com.unboundid.ldap.sdk.controls.ContentSyncRequestControl;
 import com.unboundid.ldap.sdk.controls.ContentSyncRequestMode;
+import com.unboundid.util.args.ArgumentException;
+import com.unboundid.util.args.ArgumentParser;
+import com.unboundid.util.args.IntegerArgument;
+import com.unboundid.util.args.StringArgument;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import samplecode.annotation.Author;
@@ -27,9 +32,15 @@ import samplecode.annotation.Launchable;
 import samplecode.annotation.Since;
 import samplecode.listener.DefaultLdapExceptionListener;
 import samplecode.listener.LdapExceptionListener;
+import samplecode.replica.LocalReplica;
+import samplecode.replica.ReplicaSyncListener;
 import samplecode.tools.AbstractTool;
 
+import java.io.File;
+import java.io.IOException;
 import java.util.List;
+import java.util.Timer;
+import java.util.TimerTask;
 
 import static com.unboundid.util.Validator.ensureNotNull;
 
@@ -37,6 +48,17 @@ import static com.unboundid.util.Validator.ensureNotNull;
 /**
  * A launchable demo of the content sync mechanism
  * defined in RFC4533.
+ * <p/>
+ * When --cookieFile is specified the latest sync cookie is kept in the
+ * file by a {@link SyncCookieStore}, and sent to the server the next time
+ * the demo is started, so that only the changes made in the meantime are
+ * returned instead of the whole content.
+ * <p/>
+ * When --replicaIndexAttribute is specified the entries are also kept in
+ * a {@link LocalReplica} with an equality index on each of the given
+ * attributes, and the size, staleness, and memory footprint of the
+ * replica are logged every --reportInterval milliseconds. The replica is
+ * held in memory only, so a saved cookie is not used with it.
  */
 @Author("terry.gardner@unboundid.com")
 @Since("May 22, 2013")
@@ -63,26 +85,77 @@ public final class ContentSyncDemo extends AbstractTool {
 
 
 
+  /**
+   * The long identifier of the command line argument whose parameter is
+   * the file in which the latest sync cookie is kept.
+   */
+  public static final String ARG_NAME_COOKIE_FILE = "cookieFile";
+
+
+  /**
+   * The long identifier of the command line argument whose parameter is
+   * the shortest time in milliseconds between two writes of the cookie
+   * file.
+   */
+  public static final String ARG_NAME_COOKIE_SAVE_INTERVAL_MILLIS = "cookieSaveIntervalMillis";
+
+
+  /**
+   * The long identifier of the command line argument whose parameter is
+   * an attribute indexed by the local replica.
+   */
+  public static final String ARG_NAME_REPLICA_INDEX_ATTRIBUTE = "replicaIndexAttribute";
+
+
+
   static class PrintingIntermediateResponseListener
     implements IntermediateResponseListener {
 
+    PrintingIntermediateResponseListener(final SyncCookieStore cookieStore) {
+      this.cookieStore = cookieStore;
+    }
+
+
     @Override
     public void intermediateResponseReturned(final IntermediateResponse intermediateResponse) {
       ensureNotNull(intermediateResponse);
 
       System.out.println(intermediateResponse);
+      if(cookieStore != null) {
+        try {
+          cookieStore.update(intermediateResponse);
+        } catch(final LDAPException ldapException) {
+          LogFactory.getLog(ContentSyncDemo.class).warn(ldapException.getExceptionMessage());
+        }
+      }
     }
+
+
+    // keeps the latest cookie, or null
+    private final SyncCookieStore cookieStore;
   }
 
 
   static class PrintingSearchResultListener implements SearchResultListener {
 
+    PrintingSearchResultListener(final SyncCookieStore cookieStore) {
+      this.cookieStore = cookieStore;
+    }
+
+
     @Override
     public void searchEntryReturned
       (final SearchResultEntry searchEntry) {
       ensureNotNull(searchEntry);
 
       System.out.println(searchEntry);
+      if(cookieStore != null) {
+        try {
+          cookieStore.update(searchEntry);
+        } catch(final LDAPException ldapException) {
+          LogFactory.getLog(ContentSyncDemo.class).warn(ldapException.getExceptionMessage());
+        }
+      }
     }
 
 
@@ -91,6 +164,36 @@ public final class ContentSyncDemo extends AbstractTool {
     public void searchReferenceReturned
       (final SearchResultReference searchReference) {
     }
+
+
+    // keeps the latest cookie, or null
+    private final SyncCookieStore cookieStore;
+  }
+
+
+
+  @Override
+  protected void addArguments(final ArgumentParser argumentParser) throws ArgumentException {
+    cookieFileArgument =
+      new StringArgument(null,ARG_NAME_COOKIE_FILE,false,1,"{path}","The file in which " +
+        "the latest sync cookie is kept. When the file contains a cookie for the same " +
+        "search, the cookie is sent to the server, which returns only the changes made " +
+        "since the cookie was returned instead of the whole content.");
+    argumentParser.addArgument(cookieFileArgument);
+
+    cookieSaveIntervalMillisArgument =
+      new IntegerArgument(null,ARG_NAME_COOKIE_SAVE_INTERVAL_MILLIS,false,1,
+        "{nonNegativeInteger}","The shortest time in milliseconds between two writes " +
+        "of the cookie file.",0,Integer.MAX_VALUE,Integer.valueOf(1000));
+    argumentParser.addArgument(cookieSaveIntervalMillisArgument);
+
+    replicaIndexAttributeArgument =
+      new StringArgument(null,ARG_NAME_REPLICA_INDEX_ATTRIBUTE,false,0,"{attribute}","An " +
+        "attribute with an equality index in a local replica of the entries returned by " +
+        "the search. When this argument is specified the entries are kept in memory and " +
+        "the state of the replica is reported every --reportInterval milliseconds. This " +
+        "argument may be specified multiple times.");
+    argumentParser.addArgument(replicaIndexAttributeArgument);
   }
 
 
@@ -100,12 +203,10 @@ public final class ContentSyncDemo extends AbstractTool {
     ResultCode resultCode = ResultCode.OTHER;
 
     LDAPConnection ldapConnection = null;
+    Timer replicaReportTimer = null;
     try {
       ldapConnection = connectToServer();
 
-      final SearchResultListener searchResultListener =
-        new PrintingSearchResultListener();
-
       /*
        * Create a search request using the command
        * line arguments
@@ -117,27 +218,94 @@ public final class ContentSyncDemo extends AbstractTool {
         commandLineOptions.getRequestedAttributes();
       final String[] requestedAttributes = new String[attributes.size()];
       attributes.toArray(requestedAttributes);
+      final SearchRequest template =
+        new SearchRequest(baseObject,scope,filter,requestedAttributes);
+      final SyncCookieStore cookieStore = newSyncCookieStore(template);
+
+      SearchResultListener searchResultListener =
+        new PrintingSearchResultListener(cookieStore);
+      IntermediateResponseListener irListener =
+        new PrintingIntermediateResponseListener(cookieStore);
+      final LocalReplica replica = newLocalReplica();
+      if(replica != null) {
+        final ReplicaSyncListener replicaSyncListener =
+          new ReplicaSyncListener(replica,searchResultListener,irListener);
+        searchResultListener = replicaSyncListener;
+        irListener = replicaSyncListener;
+        replicaReportTimer = new Timer("LocalReplica report",true);
+        final long reportInterval = commandLineOptions.getReportInterval();
+        replicaReportTimer.scheduleAtFixedRate(new TimerTask() {
+
+          @Override
+          public void run() {
+            getLogger().info(replica);
+          }
+        },reportInterval,reportInterval);
+      }
       final SearchRequest searchRequest =
         new SearchRequest(searchResultListener,baseObject,
           scope,filter,requestedAttributes);
       searchRequest.setTimeLimitSeconds(0);
       searchRequest.setResponseTimeoutMillis(0);
-      final IntermediateResponseListener irListener =
-        new PrintingIntermediateResponseListener();
       searchRequest.setIntermediateResponseListener(irListener);
 
-      final Control control =
-        new ContentSyncRequestControl(ContentSyncRequestMode.REFRESH_AND_PERSIST);
-      searchRequest.addControl(control);
-
-      final SearchResult searchResult = ldapConnection.search(searchRequest);
+      /*
+       * Send the cookie saved by the previous run, if any, so that the
+       * server returns only the changes made since then. A replica starts
+       * empty and needs the whole content.
+       */
+      final ASN1OctetString cookie =
+        (cookieStore == null) || (replica != null) ? null : cookieStore.load();
+      if(cookie != null) {
+        getLogger().info("resuming content synchronization from the cookie in " +
+          cookieFileArgument.getValue());
+      }
+      searchRequest.addControl(newContentSyncRequestControl(cookie));
+      if(cookieStore != null) {
+        // the persist phase normally ends when the tool is interrupted
+        Runtime.getRuntime().addShutdownHook(new Thread("SyncCookieStore flush") {
+
+          @Override
+          public void run() {
+            try {
+              cookieStore.flush();
+            } catch(final IOException ioException) {
+              System.err.println(ioException.getMessage());
+            }
+          }
+        });
+      }
 
+      SearchResult searchResult;
+      try {
+        searchResult = ldapConnection.search(searchRequest);
+      } catch(final LDAPSearchException ldapSearchException) {
+        if((cookie == null) ||
+          !ResultCode.E_SYNC_REFRESH_REQUIRED.equals(ldapSearchException.getResultCode())) {
+          throw ldapSearchException;
+        }
+        // the server can no longer send the changes since the cookie
+        getLogger().info("the server requires a full refresh; the saved cookie is discarded");
+        cookieStore.delete();
+        searchRequest.setControls(newContentSyncRequestControl(null));
+        searchResult = ldapConnection.search(searchRequest);
+      }
+      if(cookieStore != null) {
+        cookieStore.update(searchResult);
+      }
+      resultCode = searchResult.getResultCode();
+    } catch(final IOException ioException) {
+      getLogger().fatal(ioException.getMessage());
+      resultCode = ResultCode.LOCAL_ERROR;
     } catch(final LDAPException ldapException) {
       if(ldapConnection != null) {
         this.fireLdapExceptionListener(ldapConnection,ldapException);
       }
       resultCode = ldapException.getResultCode();
     } finally {
+      if(replicaReportTimer != null) {
+        replicaReportTimer.cancel();
+      }
       if(ldapConnection != null) {
         ldapConnection.close();
       }
@@ -152,4 +320,54 @@ public final class ContentSyncDemo extends AbstractTool {
   protected String classSpecificPropertiesResourceName() {
     return "ContentSyncDemo.properties";
   }
+
+
+
+  private static Control newContentSyncRequestControl(final ASN1OctetString cookie) {
+    return new ContentSyncRequestControl(ContentSyncRequestMode.REFRESH_AND_PERSIST,cookie,
+      false);
+  }
+
+
+
+  /**
+   * Creates the cookie store used when --cookieFile is specified.
+   *
+   * @return a new cookie store, or {@code null} if the cookie is not
+   *         kept.
+   */
+  private SyncCookieStore newSyncCookieStore(final SearchRequest searchRequest) {
+    if((cookieFileArgument == null) || (cookieFileArgument.getNumOccurrences() == 0)) {
+      return null;
+    }
+    return new SyncCookieStore(new File(cookieFileArgument.getValue()),searchRequest,
+      cookieSaveIntervalMillisArgument.getValue().longValue());
+  }
+
+
+
+  /**
+   * Creates the local replica used when --replicaIndexAttribute is
+   * specified.
+   *
+   * @return a new replica, or {@code null} if the entries are not kept.
+   */
+  private LocalReplica newLocalReplica() {
+    if((replicaIndexAttributeArgument == null) ||
+      (replicaIndexAttributeArgument.getNumOccurrences() == 0)) {
+      return null;
+    }
+    return new LocalReplica(replicaIndexAttributeArgument.getValues());
+  }
+
+
+
+  private StringArgument cookieFileArgument;
+
+
+  private IntegerArgument cookieSaveIntervalMillisArgument;
+
+
+  private StringArgument replicaIndexAttributeArgument;
+
 }
@@ -0,0 +1,376 @@
+/*
+ * Copyright 2008-2013 UnboundID Corp. All Rights Reserved.
+ */
+/*
+ * Copyright (C) 2008-2013 UnboundID Corp. This program is free
+ * software; you can redistribute it and/or modify it under the terms of
+ * the GNU General Public License (GPLv2 only) or the terms of the GNU
+ * Lesser General Public License (LGPLv2.1 only) as published by the
+ * Free Software Foundation. This program is distributed in the hope
+ * that it will be useful, but WITHOUT ANY WARRANTY; without even the
+ * implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR
+ * PURPOSE. See the GNU General Public License for more details. You
+ * should have received a copy of the GNU General Public License along
+ * with this program; if not, see <http://www.gnu.org/licenses>.
+ */
+
+package samplecode.controls;
+
+import com.unboundid.asn1.ASN1OctetString;
+import com.unboundid.ldap.sdk.IntermediateResponse;
+import com.unboundid.ldap.sdk.LDAPException;
+import com.unboundid.ldap.sdk.LDAPResult;
+import com.unboundid.ldap.sdk.SearchRequest;
+import com.unboundid.ldap.sdk.SearchResultEntry;
+import com.unboundid.ldap.sdk.controls.ContentSyncDoneControl;
+import com.unboundid.ldap.sdk.controls.ContentSyncInfoIntermediateResponse;
+import com.unboundid.ldap.sdk.controls.ContentSyncStateControl;
+import com.unboundid.util.Base64;
+import samplecode.annotation.CodeVersion;
+import samplecode.annotation.Since;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.text.ParseException;
+import java.util.Properties;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import static com.unboundid.util.Validator.ensureNotNull;
+
+
+/**
+ * Keeps the latest cookie of an RFC 4533 content synchronization search
+ * in a file, so that a client that is restarted can send the cookie in
+ * its {@code ContentSyncRequestControl} and receive only the changes made
+ * since the cookie was returned, instead of the whole content.
+ * <p/>
+ * The cookie is taken from the {@code ContentSyncStateControl} of an
+ * entry, from a sync info intermediate response, or from the
+ * {@code ContentSyncDoneControl} of the search result. Because every
+ * entry can carry a cookie, the file is written at most once every
+ * {@code saveIntervalMillis} milliseconds, and whenever
+ * {@link #flush()} is invoked. The file is replaced atomically: the new
+ * cookie is written to a temporary file, forced to the disk, and renamed
+ * over the previous file, so that a failure never leaves a damaged
+ * cookie.
+ * <p/>
+ * A cookie is only meaningful for the search that returned it. The file
+ * records the base object, scope, and filter of the search, and
+ * {@link #load()} ignores a cookie saved for a different search.
+ * <p/>
+ * example usage: <blockquote>
+ * <p/>
+ * <pre>
+ * SyncCookieStore cookieStore =
+ *   new SyncCookieStore(new File("sync.cookie"),searchRequest,1000L);
+ * searchRequest.addControl(new ContentSyncRequestControl(
+ *   ContentSyncRequestMode.REFRESH_AND_PERSIST,cookieStore.load(),false));
+ * // in the listeners of the search:
+ * cookieStore.update(searchResultEntry);
+ * cookieStore.update(intermediateResponse);
+ * </pre>
+ * </blockquote>
+ */
+@Since("Oct 16, 2026")
+@CodeVersion("1.0")
+public final class SyncCookieStore {
+
+  private static final String PROPERTY_COOKIE = "cookie";
+
+
+  private static final String PROPERTY_SEARCH = "search";
+
+
+
+  /**
+   * Creates a cookie store.
+   *
+   * @param file
+   *   the file in which the cookie is kept. Not permitted to be
+   *   {@code null}.
+   * @param searchRequest
+   *   the search whose cookie is kept. Not permitted to be
+   *   {@code null}.
+   * @param saveIntervalMillis
+   *   the shortest time between two writes of the file, which must not
+   *   be negative.
+   */
+  public SyncCookieStore(final File file, final SearchRequest searchRequest,
+                         final long saveIntervalMillis) {
+    ensureNotNull(file,searchRequest);
+    if(saveIntervalMillis < 0L) {
+      throw new IllegalArgumentException("saveIntervalMillis must not be negative.");
+    }
+    this.file = file;
+    this.search = searchRequest.getBaseDN() + " " + searchRequest.getScope().getName() + " " +
+      searchRequest.getFilter();
+    this.saveIntervalNanos = saveIntervalMillis * 1000000L;
+  }
+
+
+
+  /**
+   * Reads the cookie saved for the search.
+   *
+   * @return the cookie, or {@code null} if no cookie has been saved for
+   *         the search, in which case the search must begin with a full
+   *         refresh.
+   *
+   * @throws IOException
+   *   if the file exists but cannot be read.
+   */
+  public synchronized ASN1OctetString load() throws IOException {
+    if(!file.exists()) {
+      return null;
+    }
+    final Properties properties = new Properties();
+    final InputStream inputStream = new FileInputStream(file);
+    try {
+      properties.load(inputStream);
+    } finally {
+      inputStream.close();
+    }
+    final String value = properties.getProperty(PROPERTY_COOKIE);
+    if((value == null) || !search.equals(properties.getProperty(PROPERTY_SEARCH))) {
+      logger.info("ignoring the cookie in " + file + ", which was saved for another search.");
+      return null;
+    }
+    try {
+      cookie = new ASN1OctetString(Base64.decode(value));
+    } catch(final ParseException parseException) {
+      throw new IOException("Invalid cookie in " + file + ": " + parseException.getMessage());
+    }
+    savedCookie = cookie;
+    return cookie;
+  }
+
+
+
+  /**
+   * Records a cookie, writing the file if it has not been written for
+   * the save interval. A failure to write the file is logged and the
+   * file is written again with the next cookie, so this method may be
+   * invoked by a listener.
+   *
+   * @param newCookie
+   *   the cookie, or {@code null}, which is ignored.
+   */
+  public synchronized void update(final ASN1OctetString newCookie) {
+    if(newCookie == null) {
+      return;
+    }
+    cookie = newCookie;
+    ++updates;
+    if(System.nanoTime() - lastSaveNanos >= saveIntervalNanos) {
+      try {
+        save();
+      } catch(final IOException ioException) {
+        logger.log(Level.WARNING,"unable to save the cookie in " + file,ioException);
+      }
+    }
+  }
+
+
+
+  /**
+   * Records the cookie of the {@code ContentSyncStateControl} of an
+   * entry, if any.
+   *
+   * @param searchResultEntry
+   *   an entry returned by the content synchronization search. Not
+   *   permitted to be {@code null}.
+   *
+   * @throws LDAPException
+   *   if the control cannot be decoded.
+   */
+  public void update(final SearchResultEntry searchResultEntry) throws LDAPException {
+    final ContentSyncStateControl c = ContentSyncStateControl.get(searchResultEntry);
+    if(c != null) {
+      update(c.getCookie());
+    }
+  }
+
+
+
+  /**
+   * Records the cookie of a sync info intermediate response, if any.
+   * Other intermediate responses are ignored. The file is written
+   * immediately, because a sync info message marks the end of a phase of
+   * the synchronization.
+   *
+   * @param intermediateResponse
+   *   an intermediate response returned by the content synchronization
+   *   search. Not permitted to be {@code null}.
+   *
+   * @throws LDAPException
+   *   if the intermediate response cannot be decoded.
+   */
+  public void update(final IntermediateResponse intermediateResponse) throws LDAPException {
+    if(!ContentSyncInfoIntermediateResponse.SYNC_INFO_OID.equals(
+      intermediateResponse.getOID())) {
+      return;
+    }
+    final ASN1OctetString c =
+      ContentSyncInfoIntermediateResponse.decode(intermediateResponse).getCookie();
+    if(c != null) {
+      synchronized(this) {
+        update(c);
+        try {
+          flush();
+        } catch(final IOException ioException) {
+          logger.log(Level.WARNING,"unable to save the cookie in " + file,ioException);
+        }
+      }
+    }
+  }
+
+
+
+  /**
+   * Records the cookie of the {@code ContentSyncDoneControl} of the
+   * result of the search, if any, and writes the file.
+   *
+   * @param ldapResult
+   *   the result of the content synchronization search. Not permitted
+   *   to be {@code null}.
+   *
+   * @throws LDAPException
+   *   if the control cannot be decoded.
+   * @throws IOException
+   *   if the file cannot be written.
+   */
+  public synchronized void update(final LDAPResult ldapResult)
+    throws LDAPException, IOException {
+    final ContentSyncDoneControl c = ContentSyncDoneControl.get(ldapResult);
+    if(c != null) {
+      update(c.getCookie());
+    }
+    flush();
+  }
+
+
+
+  /**
+   * Writes the file if the latest cookie has not been written.
+   *
+   * @throws IOException
+   *   if the file cannot be written.
+   */
+  public synchronized void flush() throws IOException {
+    if((cookie != null) && (cookie != savedCookie)) {
+      save();
+    }
+  }
+
+
+
+  /**
+   * Removes the file, for example when the server replies that the
+   * cookie can no longer be used and a full refresh is required.
+   *
+   * @throws IOException
+   *   if the file exists and cannot be deleted.
+   */
+  public synchronized void delete() throws IOException {
+    cookie = null;
+    savedCookie = null;
+    if(!file.delete() && file.exists()) {
+      throw new IOException("Unable to delete " + file);
+    }
+  }
+
+
+
+  /**
+   * @return the latest cookie, or {@code null} if there is none.
+   */
+  public synchronized ASN1OctetString getCookie() {
+    return cookie;
+  }
+
+
+
+  /**
+   * @return the number of cookies recorded.
+   */
+  public synchronized long getUpdates() {
+    return updates;
+  }
+
+
+
+  /**
+   * @return the number of times the file was written.
+   */
+  public synchronized long getSaves() {
+    return saves;
+  }
+
+
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public synchronized String toString() {
+    return "SyncCookieStore [file=" + file + ", search=" + search + ", updates=" + updates +
+      ", saves=" + saves + "]";
+  }
+
+
+
+  private void save() throws IOException {
+    final Properties properties = new Properties();
+    properties.setProperty(PROPERTY_SEARCH,search);
+    properties.setProperty(PROPERTY_COOKIE,Base64.encode(cookie.getValue()));
+    final File temporaryFile = new File(file.getPath() + ".tmp");
+    final FileOutputStream outputStream = new FileOutputStream(temporaryFile);
+    try {
+      properties.store(outputStream,"content synchronization cookie");
+      outputStream.getFD().sync();
+    } finally {
+      outputStream.close();
+    }
+    if(!temporaryFile.renameTo(file)) {
+      if(!file.delete() || !temporaryFile.renameTo(file)) {
+        throw new IOException("Unable to replace " + file);
+      }
+    }
+    savedCookie = cookie;
+    lastSaveNanos = System.nanoTime();
+    ++saves;
+  }
+
+
+
+  private ASN1OctetString cookie;
+
+
+  private final File file;
+
+
+  private long lastSaveNanos = System.nanoTime() - Long.MAX_VALUE / 2L;
+
+
+  private final Logger logger = Logger.getLogger(getClass().getName());
+
+
+  private ASN1OctetString savedCookie;
+
+
+  private final long saveIntervalNanos;
+
+
+  private long saves;
+
+
+  private final String search;
+
+
+  private long updates;
+
+}
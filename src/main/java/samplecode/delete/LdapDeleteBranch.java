@@ -20,9 +20,16 @@ package samplecode.delete;
 import com.unboundid.ldap.sdk.Control;
 import com.unboundid.ldap.sdk.DN;
 import com.unboundid.ldap.sdk.DeleteRequest;
+import com.unboundid.ldap.sdk.Filter;
 import com.unboundid.ldap.sdk.LDAPConnection;
+import com.unboundid.ldap.sdk.LDAPConnectionPool;
 import com.unboundid.ldap.sdk.LDAPException;
 import com.unboundid.ldap.sdk.LDAPResult;
+import com.unboundid.ldap.sdk.ResultCode;
+import com.unboundid.ldap.sdk.SearchRequest;
+import com.unboundid.ldap.sdk.SearchResult;
+import com.unboundid.ldap.sdk.SearchResultEntry;
+import com.unboundid.ldap.sdk.SearchScope;
 import com.unboundid.ldap.sdk.controls.SubtreeDeleteRequestControl;
 import com.unboundid.util.NotMutable;
 import samplecode.annotation.Author;
@@ -34,10 +41,16 @@ import samplecode.ldap.SupportedFeature;
 import samplecode.listener.LdapExceptionEvent;
 import samplecode.listener.LdapExceptionListener;
 import samplecode.listener.ObservedByLdapExceptionListener;
+import samplecode.tools.PerformanceReporter;
 import samplecode.util.SampleCodeCollectionUtils;
 
 import java.util.List;
+import java.util.TreeMap;
 import java.util.Vector;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 
 import static com.unboundid.util.Validator.ensureNotNull;
 
@@ -209,4 +222,200 @@ public final class LdapDeleteBranch
     }
   }
 
+
+  /**
+   * Deletes the branch specified by {@code dnToDelete} without the
+   * subtree delete request control, for servers that do not support the
+   * control or when the deletes should be spread over many
+   * connections. The DNs of the branch are retrieved with a single
+   * subtree search and grouped by depth; the entries at one depth are
+   * deleted concurrently by tasks submitted to {@code executorService},
+   * each task using a connection checked out of {@code ldapConnectionPool},
+   * and a level is deleted only when every entry of the level below it
+   * has been deleted, so that no delete fails because the entry still
+   * has subordinates.
+   * <p/>
+   * The {@code executorService} is not shut down by this method.
+   *
+   * @param ldapConnectionPool connections to the LDAP server.
+   * @param dnToDelete         the branch to delete. {@code dnToDelete} is not
+   *                           permitted to be {@code null}.
+   * @param responseTimeout    the maximum time spent processing each request in
+   *                           milliseconds.
+   * @param executorService    runs the delete tasks.
+   *
+   * @return the number of entries deleted.
+   *
+   * @throws LDAPException if the search for the DNs of the branch fails,
+   *                       or the first exception thrown by a delete of
+   *                       the deepest level at which a delete failed.
+   */
+  public int deleteTreeConcurrently(final LDAPConnectionPool ldapConnectionPool,
+                                    final DN dnToDelete,
+                                    final int responseTimeout,
+                                    final ExecutorService executorService)
+    throws LDAPException
+  {
+    return deleteTreeConcurrently(ldapConnectionPool,dnToDelete,responseTimeout,
+      executorService,null);
+  }
+
+
+  /**
+   * Deletes the branch specified by {@code dnToDelete} as
+   * {@link #deleteTreeConcurrently(LDAPConnectionPool, DN, int, ExecutorService)}
+   * does, and records each successful delete with
+   * {@code performanceReporter}.
+   *
+   * @param ldapConnectionPool  connections to the LDAP server.
+   * @param dnToDelete          the branch to delete. {@code dnToDelete} is not
+   *                            permitted to be {@code null}.
+   * @param responseTimeout     the maximum time spent processing each request in
+   *                            milliseconds.
+   * @param executorService     runs the delete tasks.
+   * @param performanceReporter records the latency of each delete, or
+   *                            {@code null}.
+   *
+   * @return the number of entries deleted.
+   *
+   * @throws LDAPException if the search for the DNs of the branch fails,
+   *                       or the first exception thrown by a delete of
+   *                       the deepest level at which a delete failed.
+   */
+  public int deleteTreeConcurrently(final LDAPConnectionPool ldapConnectionPool,
+                                    final DN dnToDelete,
+                                    final int responseTimeout,
+                                    final ExecutorService executorService,
+                                    final PerformanceReporter performanceReporter)
+    throws LDAPException
+  {
+
+    ensureNotNull(ldapConnectionPool,dnToDelete,executorService);
+
+    /*
+     * Retrieve the DNs of the branch, deepest level first. No
+     * attributes are requested.
+     */
+    final SearchRequest searchRequest =
+      new SearchRequest(dnToDelete.toString(),SearchScope.SUB,
+        Filter.createPresenceFilter("objectClass"),SearchRequest.NO_ATTRIBUTES);
+    searchRequest.setResponseTimeoutMillis(responseTimeout);
+    final SearchResult searchResult = ldapConnectionPool.search(searchRequest);
+    final TreeMap<Integer,List<DN>> levels = new TreeMap<Integer,List<DN>>();
+    for(final SearchResultEntry entry : searchResult.getSearchEntries())
+    {
+      final DN dn = entry.getParsedDN();
+      final Integer depth = Integer.valueOf(dn.getRDNs().length);
+      List<DN> level = levels.get(depth);
+      if(level == null)
+      {
+        level = SampleCodeCollectionUtils.newArrayList();
+        levels.put(depth,level);
+      }
+      level.add(dn);
+    }
+
+    int numDeleted = 0;
+    for(final List<DN> level : levels.descendingMap().values())
+    {
+      final List<Future<Void>> futures = SampleCodeCollectionUtils.newArrayList();
+      for(final DN dn : level)
+      {
+        futures.add(executorService.submit(new DeleteTask(ldapConnectionPool,dn,
+          responseTimeout,performanceReporter)));
+      }
+      LDAPException firstException = null;
+      for(final Future<Void> future : futures)
+      {
+        try
+        {
+          future.get();
+          ++numDeleted;
+        }
+        catch(final ExecutionException executionException)
+        {
+          if((firstException == null) &&
+            (executionException.getCause() instanceof LDAPException))
+          {
+            firstException = (LDAPException)executionException.getCause();
+          }
+        }
+        catch(final InterruptedException interruptedException)
+        {
+          Thread.currentThread().interrupt();
+          throw new LDAPException(ResultCode.USER_CANCELED,interruptedException);
+        }
+      }
+      if(firstException != null)
+      {
+        throw firstException;
+      }
+    }
+    return numDeleted;
+  }
+
+
+  /**
+   * Deletes one entry using a connection checked out of the pool.
+   */
+  private final class DeleteTask implements Callable<Void>
+  {
+
+    private DeleteTask(final LDAPConnectionPool ldapConnectionPool,
+                       final DN dn,
+                       final int responseTimeout,
+                       final PerformanceReporter performanceReporter)
+    {
+      this.ldapConnectionPool = ldapConnectionPool;
+      this.dn = dn;
+      this.responseTimeout = responseTimeout;
+      this.performanceReporter = performanceReporter;
+    }
+
+
+    @Override
+    public Void call() throws LDAPException
+    {
+      final DeleteRequest deleteRequest = new DeleteRequest(dn);
+      deleteRequest.setResponseTimeoutMillis(responseTimeout);
+      final LDAPConnection ldapConnection = ldapConnectionPool.getConnection();
+      try
+      {
+        final long begin = System.nanoTime();
+        ldapConnection.delete(deleteRequest);
+        if(performanceReporter != null)
+        {
+          performanceReporter.recordOperation(System.nanoTime() - begin,1L);
+        }
+      }
+      catch(final LDAPException exception)
+      {
+        fireLdapExceptionListener(ldapConnection,exception);
+        if(ResultCode.isConnectionUsable(exception.getResultCode()))
+        {
+          ldapConnectionPool.releaseConnection(ldapConnection);
+        }
+        else
+        {
+          ldapConnectionPool.releaseDefunctConnection(ldapConnection);
+        }
+        throw exception;
+      }
+      ldapConnectionPool.releaseConnection(ldapConnection);
+      return null;
+    }
+
+
+    private final DN dn;
+
+
+    private final LDAPConnectionPool ldapConnectionPool;
+
+
+    private final PerformanceReporter performanceReporter;
+
+
+    private final int responseTimeout;
+  }
+
 }
@@ -17,24 +17,30 @@
 package samplecode.delete;
 
 import com.unboundid.ldap.sdk.*;
+import com.unboundid.ldap.sdk.controls.SubtreeDeleteRequestControl;
 import com.unboundid.ldif.LDIFException;
 import com.unboundid.util.args.*;
 import samplecode.annotation.Author;
 import samplecode.annotation.CodeVersion;
 import samplecode.annotation.Since;
 import samplecode.controls.ControlHandler;
+import samplecode.ldif.LdifBulkLoader;
 import samplecode.ldif.LdifLoadProgressEvent;
+import samplecode.ldap.SupportedFeature;
 import samplecode.ldif.ReadLdifFile;
 import samplecode.listener.ProgressListener;
 import samplecode.tools.AbstractTool;
 import samplecode.tools.BasicToolCompletedProcessing;
+import samplecode.tools.PerformanceReporter;
 import samplecode.tools.ToolCompletedProcessing;
 import samplecode.util.SampleCodeCollectionUtils;
+import samplecode.util.SampleCodeExecutors;
 
 import java.io.IOException;
 import java.io.OutputStream;
 import java.io.PrintStream;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
 
 
 /**
@@ -49,6 +55,16 @@ import java.util.List;
  * The tree delete tool provides a demonstration of how to use the Tree Delete
  * request control to delete a branch and all entries subordinate to the
  * branch.
+ * </pre>
+ * </blockquote>
+ * When the server does not support the subtree delete request control,
+ * or when --virtualThreads is specified, the entries of the branch are
+ * deleted by the client, one level at a time starting with the deepest,
+ * using --numThreads threads (or a virtual thread per entry) and a pool
+ * of --initialConnections to --maxConnections connections. When
+ * --numThreads is greater than one, the entries of the LDIF file are
+ * added over that many connections, with each entry held until its
+ * parent has been added.
  */
 @Author("terry.gardner@unboundid.com")
 @Since("Nov 30, 2011")
@@ -214,6 +230,14 @@ public final class LdapTreeDelete extends AbstractTool {
   public static final String ARG_NAME_LDIF_FILE = "ldifFile";
 
 
+  /**
+   * The largest number of add requests outstanding on each connection
+   * when the entries of the LDIF file are added over --numThreads
+   * connections.
+   */
+  private static final int MAX_OUTSTANDING_ADDS_PER_CONNECTION = 8;
+
+
 
   /**
    * Prepares {@code LdapTreeDelete} for use by a client - the
@@ -349,18 +373,39 @@ public final class LdapTreeDelete extends AbstractTool {
       /*
        * Add the entries from the file (in the form of LDIF) that was
        * specified as a parameter to the --ldifFile command line
-       * argument.
+       * argument. The progress listeners are notified every few seconds
+       * while the entries are added.
        */
       final Control[] controls = null;
-      adder.addEntriesInFile(ldapConnection,ldifFile,controls);
+      for(final ProgressListener<LdifLoadProgressEvent> l : listOfLoadProgressListeners) {
+        adder.addProgressListener(l);
+      }
+      try {
+        if(commandLineOptions.getNumThreads() > 1) {
+          addEntriesConcurrently(adder,ldifFile,controls);
+        } else {
+          adder.addEntriesInFile(ldapConnection,ldifFile,controls);
+        }
+      } finally {
+        for(final ProgressListener<LdifLoadProgressEvent> l : listOfLoadProgressListeners) {
+          adder.removeProgressListener(l);
+        }
+      }
 
       /*
        * Delete the DN and all its subordinates. The DN is specified by
        * the --deleteBranch command line argument.
        */
-      final ControlHandler[] controlHandlers = null;
-      deleter.deleteTree(ldapConnection,dnToDelete,
-        commandLineOptions.getMaxResponseTimeMillis(),controlHandlers);
+      final String controlOID =
+        SubtreeDeleteRequestControl.SUBTREE_DELETE_REQUEST_OID;
+      if(commandLineOptions.getVirtualThreads() ||
+        !SupportedFeature.isControlSupported(ldapConnection,controlOID)) {
+        deleteTreeConcurrently(deleter,ldapConnection,dnToDelete);
+      } else {
+        final ControlHandler[] controlHandlers = null;
+        deleter.deleteTree(ldapConnection,dnToDelete,
+          commandLineOptions.getMaxResponseTimeMillis(),controlHandlers);
+      }
     } catch(final LDAPException ldapException) {
       final StringBuilder builder = new StringBuilder();
       builder.append("An LDAP exception was detected:\n");
@@ -380,6 +425,15 @@ public final class LdapTreeDelete extends AbstractTool {
       builder.append(ldifException.getExceptionMessage());
       wrapErr(indentation,width,builder.toString());
       return ResultCode.OPERATIONS_ERROR;
+    } catch(final EntrySourceException entrySourceException) {
+      final StringBuilder builder = new StringBuilder();
+      builder.append("An LDIF exception was detected:\n");
+      builder.append(entrySourceException.getExceptionMessage());
+      wrapErr(indentation,width,builder.toString());
+      return ResultCode.OPERATIONS_ERROR;
+    } catch(final InterruptedException interruptedException) {
+      Thread.currentThread().interrupt();
+      return ResultCode.LOCAL_ERROR;
     }
 
     return ResultCode.SUCCESS;
@@ -387,6 +441,76 @@ public final class LdapTreeDelete extends AbstractTool {
 
 
 
+  /**
+   * Adds the entries of the LDIF file over --numThreads connections, at
+   * most --maxConnections, of a pool of new connections, with the adds of
+   * siblings in parallel and each entry held until its parent has been
+   * added. An entry that is not added is logged and does not stop the
+   * load.
+   */
+  private void addEntriesConcurrently(final ReadLdifFile adder, final String ldifFile,
+                                      final Control[] controls)
+    throws LDAPException, IOException, EntrySourceException, InterruptedException {
+    final LDAPConnectionPool pool = getBoundedLdapConnectionPool();
+    // each connection is held for the whole load
+    final int connections =
+      Math.min(commandLineOptions.getNumThreads(),commandLineOptions.getMaxConnections());
+    try {
+      final int numRead = adder.addEntriesInFile(pool,ldifFile,controls,
+        connections,MAX_OUTSTANDING_ADDS_PER_CONNECTION,
+        new LdifBulkLoader.FailureListener() {
+
+          @Override
+          public void entryNotAdded(final Entry entry, final LDAPResult ldapResult) {
+            getLogger().warn(String.format("%s was not added: %s",entry.getDN(),ldapResult));
+          }
+
+
+
+          @Override
+          public void entryNotRead(final EntrySourceException entrySourceException) {
+            getLogger().warn(entrySourceException.getExceptionMessage());
+          }
+        });
+      if(getLogger().isTraceEnabled()) {
+        getLogger().trace(String.format("read %d entries",numRead));
+      }
+    } finally {
+      pool.close();
+    }
+  }
+
+
+
+  /**
+   * Deletes the branch with client-side deletes spread over a pool of
+   * connections. The pool includes {@code ldapConnection} and is closed
+   * when the branch has been deleted. The throughput and latency of the
+   * deletes are reported every --reportInterval milliseconds.
+   */
+  private void deleteTreeConcurrently(final LdapDeleteBranch deleter,
+                                      final LDAPConnection ldapConnection,
+                                      final DN dnToDelete) throws LDAPException {
+    final LDAPConnectionPool pool = getBoundedLdapConnectionPool(ldapConnection);
+    final ExecutorService executorService =
+      SampleCodeExecutors.newExecutorService(Math.max(1,commandLineOptions.getNumThreads()),
+        commandLineOptions.getVirtualThreads());
+    final PerformanceReporter performanceReporter = startPerformanceReporter();
+    try {
+      final int numDeleted = deleter.deleteTreeConcurrently(pool,dnToDelete,
+        commandLineOptions.getMaxResponseTimeMillis(),executorService,performanceReporter);
+      if(getLogger().isTraceEnabled()) {
+        getLogger().trace(String.format("deleted %d entries",numDeleted));
+      }
+    } finally {
+      SampleCodeExecutors.shutdownAndAwaitTermination(executorService);
+      stopPerformanceReporter();
+      pool.close();
+    }
+  }
+
+
+
   /**
    * return the class-specific properties resource name
    */
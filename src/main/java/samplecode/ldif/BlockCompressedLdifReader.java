@@ -0,0 +1,685 @@
+/*
+ * Copyright 2008-2013 UnboundID Corp. All Rights Reserved.
+ */
+/*
+ * Copyright (C) 2008-2013 UnboundID Corp. This program is free
+ * software; you can redistribute it and/or modify it under the terms of
+ * the GNU General Public License (GPLv2 only) or the terms of the GNU
+ * Lesser General Public License (LGPLv2.1 only) as published by the
+ * Free Software Foundation. This program is distributed in the hope
+ * that it will be useful, but WITHOUT ANY WARRANTY; without even the
+ * implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR
+ * PURPOSE. See the GNU General Public License for more details. You
+ * should have received a copy of the GNU General Public License along
+ * with this program; if not, see <http://www.gnu.org/licenses>.
+ */
+
+package samplecode.ldif;
+
+import com.unboundid.ldap.sdk.Entry;
+import com.unboundid.ldap.sdk.EntrySource;
+import com.unboundid.ldap.sdk.EntrySourceException;
+import com.unboundid.ldif.LDIFAddChangeRecord;
+import com.unboundid.ldif.LDIFChangeRecord;
+import com.unboundid.ldif.LDIFException;
+import com.unboundid.ldif.LDIFRecord;
+import com.unboundid.util.Base64;
+import samplecode.annotation.CodeVersion;
+import samplecode.annotation.Since;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.InterruptedIOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.zip.GZIPInputStream;
+
+import static com.unboundid.util.Validator.ensureNotNull;
+
+
+/**
+ * Reads a block-compressed LDIF file written by a
+ * {@link BlockCompressedLdifWriter}. The index at the end of the file is
+ * read when the reader is created; the blocks are then decompressed and
+ * parsed by several threads while the records of the blocks before them
+ * are consumed, and the records are returned in the order of the file.
+ * <p/>
+ * A block can also be read on its own, without decompressing the blocks
+ * before it, with {@link #readBlock} or {@link #readRecord}, for example
+ * to verify a sample of the records of an export.
+ * <p/>
+ * A record that cannot be parsed is reported by an
+ * {@link LDIFException} whose message names its block, because its line
+ * number is counted from the start of the block.
+ * <p/>
+ * The reader is also an {@link EntrySource}, so that it can be passed
+ * to the {@link LdifBulkLoader}. The methods that read records in
+ * sequence are meant to be invoked by one thread.
+ * <p/>
+ * example usage: <blockquote>
+ * <p/>
+ * <pre>
+ * BlockCompressedLdifReader reader =
+ *   new BlockCompressedLdifReader(new File("dump.ldif.gz"),4);
+ * try {
+ *   LDIFRecord record = reader.readRecord(12345L);
+ *   ...
+ * } finally {
+ *   reader.close();
+ * }
+ * </pre>
+ * </blockquote>
+ */
+@Since("Oct 16, 2026")
+@CodeVersion("1.0")
+public final class BlockCompressedLdifReader extends EntrySource {
+
+  /**
+   * Determines whether a file is a block-compressed LDIF file, that is,
+   * whether it ends with the trailer of one.
+   *
+   * @param file
+   *   the file. Not permitted to be {@code null}.
+   *
+   * @return whether the file is a block-compressed LDIF file.
+   *
+   * @throws IOException
+   *   if the file cannot be read.
+   */
+  public static boolean isBlockCompressed(final File file) throws IOException {
+    ensureNotNull(file);
+    final RandomAccessFile randomAccessFile = new RandomAccessFile(file,"r");
+    try {
+      return indexOffset(randomAccessFile.getChannel()) >= 0L;
+    } finally {
+      randomAccessFile.close();
+    }
+  }
+
+
+
+  /**
+   * Retrieves the offset of the index from the trailer of a file.
+   *
+   * @return the offset, or a negative number if the file does not end
+   *         with a trailer.
+   */
+  private static long indexOffset(final FileChannel channel) throws IOException {
+    final long size = channel.size();
+    if(size < BlockCompressedLdifWriter.TRAILER_LENGTH) {
+      return -1L;
+    }
+    final byte[] trailer = new byte[BlockCompressedLdifWriter.TRAILER_LENGTH];
+    read(channel,size - trailer.length,trailer);
+    final long indexOffset = BlockCompressedLdifWriter.indexOffset(trailer);
+    return indexOffset <= size - trailer.length ? indexOffset : -1L;
+  }
+
+
+
+  /**
+   * Creates a reader, reading the index of the file.
+   *
+   * @param file
+   *   the block-compressed LDIF file. Not permitted to be {@code null}.
+   * @param parseThreads
+   *   the number of threads that decompress and parse blocks, which must
+   *   be greater than zero.
+   *
+   * @throws IOException
+   *   if the file cannot be read or is not a block-compressed LDIF file.
+   */
+  public BlockCompressedLdifReader(final File file, final int parseThreads) throws IOException {
+    ensureNotNull(file);
+    if(parseThreads <= 0) {
+      throw new IllegalArgumentException("parseThreads must be greater than zero.");
+    }
+    this.maxBlocksInFlight = 2 * parseThreads;
+    this.randomAccessFile = new RandomAccessFile(file,"r");
+    this.channel = randomAccessFile.getChannel();
+    try {
+      this.blocks = readIndex();
+    } catch(final IOException ioException) {
+      randomAccessFile.close();
+      throw ioException;
+    }
+    this.executorService = Executors.newFixedThreadPool(parseThreads,new ThreadFactory() {
+
+      @Override
+      public Thread newThread(final Runnable runnable) {
+        final Thread thread = new Thread(runnable,"BlockCompressedLdifReader");
+        thread.setDaemon(true);
+        return thread;
+      }
+    });
+  }
+
+
+
+  /**
+   * Reads the next record of the file.
+   *
+   * @return an {@link Entry} or an {@link LDIFChangeRecord}, or
+   *         {@code null} at the end of the file.
+   *
+   * @throws IOException
+   *   if the file cannot be read.
+   * @throws LDIFException
+   *   if the next record cannot be parsed.
+   */
+  public LDIFRecord readLDIFRecord() throws IOException, LDIFException {
+    while(true) {
+      if((records != null) && records.hasNext()) {
+        final Object record = records.next();
+        if(record instanceof LDIFException) {
+          throw (LDIFException) record;
+        }
+        if(record instanceof IOException) {
+          throw (IOException) record;
+        }
+        ++recordsRead;
+        return (LDIFRecord) record;
+      }
+      submitBlocks();
+      if(inOrder.isEmpty()) {
+        return null;
+      }
+      try {
+        records = inOrder.getFirst().get().iterator();
+        inOrder.removeFirst();
+      } catch(final InterruptedException interruptedException) {
+        Thread.currentThread().interrupt();
+        throw new InterruptedIOException();
+      } catch(final ExecutionException executionException) {
+        // the block is skipped if reading is resumed
+        inOrder.removeFirst();
+        ++nextBlockConsumed;
+        final Throwable cause = executionException.getCause();
+        if(cause instanceof IOException) {
+          throw (IOException) cause;
+        }
+        throw new IOException(cause);
+      }
+      bytesConsumed += blocks.get(nextBlockConsumed++).getCompressedLength();
+    }
+  }
+
+
+
+  /**
+   * Reads the next entry of the file. An add change record is returned
+   * as the entry it adds.
+   *
+   * @return the entry, or {@code null} at the end of the file.
+   *
+   * @throws IOException
+   *   if the file cannot be read.
+   * @throws LDIFException
+   *   if the next record cannot be parsed or is a change record other
+   *   than an add.
+   */
+  public Entry readEntry() throws IOException, LDIFException {
+    return toEntry(readLDIFRecord());
+  }
+
+
+
+  /**
+   * Reads the next change record of the file. An entry is returned as
+   * an add change record.
+   *
+   * @return the change record, or {@code null} at the end of the file.
+   *
+   * @throws IOException
+   *   if the file cannot be read.
+   * @throws LDIFException
+   *   if the next record cannot be parsed.
+   */
+  public LDIFChangeRecord readChangeRecord() throws IOException, LDIFException {
+    final LDIFRecord record = readLDIFRecord();
+    if(record instanceof Entry) {
+      return new LDIFAddChangeRecord((Entry) record);
+    }
+    return (LDIFChangeRecord) record;
+  }
+
+
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public Entry nextEntry() throws EntrySourceException {
+    try {
+      return readEntry();
+    } catch(final LDIFException ldifException) {
+      throw new EntrySourceException(ldifException.mayContinueReading(),ldifException);
+    } catch(final IOException ioException) {
+      throw new EntrySourceException(false,ioException);
+    }
+  }
+
+
+
+  /**
+   * Decompresses and parses one block, independently of the records
+   * read in sequence. This method may be invoked by several threads.
+   *
+   * @param blockIndex
+   *   the index of the block in {@link #getBlocks}.
+   *
+   * @return the records of the block.
+   *
+   * @throws IOException
+   *   if the block cannot be read.
+   * @throws LDIFException
+   *   if a record of the block cannot be parsed.
+   */
+  public List<LDIFRecord> readBlock(final int blockIndex) throws IOException, LDIFException {
+    final List<LDIFRecord> blockRecords = new ArrayList<LDIFRecord>();
+    for(final Object record : decode(blocks.get(blockIndex))) {
+      if(record instanceof LDIFException) {
+        throw (LDIFException) record;
+      }
+      if(record instanceof IOException) {
+        throw (IOException) record;
+      }
+      blockRecords.add((LDIFRecord) record);
+    }
+    return blockRecords;
+  }
+
+
+
+  /**
+   * Reads one record by its number, decompressing only the block that
+   * holds it. This method may be invoked by several threads.
+   *
+   * @param recordNumber
+   *   the number of the record, counted from zero in the order of the
+   *   file.
+   *
+   * @return the record, or {@code null} if the file has fewer records.
+   *
+   * @throws IOException
+   *   if the block cannot be read.
+   * @throws LDIFException
+   *   if a record of the block cannot be parsed.
+   */
+  public LDIFRecord readRecord(final long recordNumber) throws IOException, LDIFException {
+    int low = 0;
+    int high = blocks.size() - 1;
+    while(low <= high) {
+      final int middle = (low + high) >>> 1;
+      final Block block = blocks.get(middle);
+      if(recordNumber < block.getFirstRecord()) {
+        high = middle - 1;
+      } else if(recordNumber >= block.getFirstRecord() + block.getRecordCount()) {
+        low = middle + 1;
+      } else {
+        return readBlock(middle).get((int) (recordNumber - block.getFirstRecord()));
+      }
+    }
+    return null;
+  }
+
+
+
+  /**
+   * Stops the parsing threads and closes the file.
+   */
+  @Override
+  public void close() {
+    executorService.shutdownNow();
+    try {
+      channel.close();
+      randomAccessFile.close();
+    } catch(final IOException ioException) {
+      // nothing more can be read from the file
+    }
+  }
+
+
+
+  /**
+   * @return the blocks of the file, from its index.
+   */
+  public List<Block> getBlocks() {
+    return blocks;
+  }
+
+
+
+  /**
+   * @return the number of records in the file, from its index.
+   */
+  public long getRecordCount() {
+    if(blocks.isEmpty()) {
+      return 0L;
+    }
+    final Block last = blocks.get(blocks.size() - 1);
+    return last.getFirstRecord() + last.getRecordCount();
+  }
+
+
+
+  /**
+   * @return the number of compressed bytes of the blocks from which
+   *         records have been returned.
+   */
+  public long getBytesConsumed() {
+    return bytesConsumed;
+  }
+
+
+
+  /**
+   * @return the number of records returned in sequence.
+   */
+  public long getRecordsRead() {
+    return recordsRead;
+  }
+
+
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public String toString() {
+    return "BlockCompressedLdifReader [blocks=" + blocks.size() + ", recordCount=" +
+      getRecordCount() + ", recordsRead=" + recordsRead + "]";
+  }
+
+
+
+  /**
+   * Submits blocks for decompression and parsing until enough are
+   * decoded in advance of the records consumed.
+   */
+  private void submitBlocks() {
+    while((inOrder.size() < maxBlocksInFlight) && (nextBlockSubmitted < blocks.size())) {
+      final Block block = blocks.get(nextBlockSubmitted++);
+      inOrder.add(executorService.submit(new Callable<List<Object>>() {
+
+        @Override
+        public List<Object> call() throws IOException {
+          return decode(block);
+        }
+      }));
+    }
+  }
+
+
+
+  /**
+   * Reads, decompresses and parses a block.
+   */
+  private List<Object> decode(final Block block) throws IOException {
+    final byte[] compressed = new byte[block.getCompressedLength()];
+    read(channel,block.getCompressedOffset(),compressed);
+    return ParallelLdifReader.parse(ByteBuffer.wrap(gunzip(compressed)),"In block " +
+      block.getIndex());
+  }
+
+
+
+  /**
+   * Reads the trailer and the index of the file.
+   */
+  private List<Block> readIndex() throws IOException {
+    final long indexOffset = indexOffset(channel);
+    if(indexOffset < 0L) {
+      throw new IOException("The file does not end with the index of a block-compressed " +
+        "LDIF file.");
+    }
+    final long indexLength = channel.size() - BlockCompressedLdifWriter.TRAILER_LENGTH -
+      indexOffset;
+    if(indexLength > Integer.MAX_VALUE) {
+      throw new IOException("The index of the file is too large.");
+    }
+    final byte[] compressed = new byte[(int) indexLength];
+    read(channel,indexOffset,compressed);
+    final BufferedReader reader = new BufferedReader(new InputStreamReader(
+      new ByteArrayInputStream(gunzip(compressed)),"UTF-8"));
+    if(!BlockCompressedLdifWriter.INDEX_HEADER.equals(reader.readLine())) {
+      throw new IOException("The index of the file has an unknown format.");
+    }
+    final List<Block> index = new ArrayList<Block>();
+    String line;
+    while((line = reader.readLine()) != null) {
+      line = line.trim();
+      if(line.length() == 0) {
+        continue;
+      }
+      if(!line.startsWith(BlockCompressedLdifWriter.INDEX_BLOCK_PREFIX)) {
+        throw new IOException("The line '" + line + "' of the index is not a block.");
+      }
+      final String[] fields =
+        line.substring(BlockCompressedLdifWriter.INDEX_BLOCK_PREFIX.length()).split(" ",5);
+      try {
+        index.add(new Block(index.size(),Long.parseLong(fields[0]),
+          Integer.parseInt(fields[1]),Long.parseLong(fields[2]),Long.parseLong(fields[3]),
+          fields.length > 4 ? Base64.decodeToString(fields[4]) : ""));
+      } catch(final NumberFormatException numberFormatException) {
+        throw new IOException("The line '" + line + "' of the index is not a block.",
+          numberFormatException);
+      } catch(final ArrayIndexOutOfBoundsException arrayIndexOutOfBoundsException) {
+        throw new IOException("The line '" + line + "' of the index is not a block.",
+          arrayIndexOutOfBoundsException);
+      } catch(final ParseException parseException) {
+        throw new IOException("The line '" + line + "' of the index is not a block.",
+          parseException);
+      }
+    }
+    return Collections.unmodifiableList(index);
+  }
+
+
+
+  private static Entry toEntry(final LDIFRecord record) throws LDIFException {
+    if((record == null) || (record instanceof Entry)) {
+      return (Entry) record;
+    }
+    if(record instanceof LDIFAddChangeRecord) {
+      return ((LDIFAddChangeRecord) record).getEntryToAdd();
+    }
+    throw new LDIFException("The record for " + record.getDN() +
+      " is a change record that is not an add.",-1L,true);
+  }
+
+
+
+  /**
+   * Fills {@code bytes} from the file at {@code position}, without
+   * moving the position of the channel, so that several threads can
+   * read blocks at once.
+   */
+  private static void read(final FileChannel channel, final long position, final byte[] bytes)
+    throws IOException {
+    final ByteBuffer buffer = ByteBuffer.wrap(bytes);
+    while(buffer.hasRemaining()) {
+      if(channel.read(buffer,position + buffer.position()) < 0) {
+        throw new EOFException("The file ends before byte " + (position + bytes.length) + ".");
+      }
+    }
+  }
+
+
+
+  private static byte[] gunzip(final byte[] compressed) throws IOException {
+    final GZIPInputStream gzipInputStream =
+      new GZIPInputStream(new ByteArrayInputStream(compressed));
+    try {
+      final ByteArrayOutputStream decompressed =
+        new ByteArrayOutputStream(4 * compressed.length);
+      final byte[] buffer = new byte[8192];
+      int count;
+      while((count = gzipInputStream.read(buffer)) > 0) {
+        decompressed.write(buffer,0,count);
+      }
+      return decompressed.toByteArray();
+    } finally {
+      gzipInputStream.close();
+    }
+  }
+
+
+
+  /**
+   * A block of the file, as described by its index.
+   */
+  public static final class Block {
+
+    private Block(final int index, final long compressedOffset, final int compressedLength,
+                  final long firstRecord, final long recordCount, final String firstDN) {
+      this.index = index;
+      this.compressedOffset = compressedOffset;
+      this.compressedLength = compressedLength;
+      this.firstRecord = firstRecord;
+      this.recordCount = recordCount;
+      this.firstDN = firstDN;
+    }
+
+
+
+    /**
+     * @return the index of the block in the file, counted from zero.
+     */
+    public int getIndex() {
+      return index;
+    }
+
+
+
+    /**
+     * @return the offset in the file of the gzip member of the block.
+     */
+    public long getCompressedOffset() {
+      return compressedOffset;
+    }
+
+
+
+    /**
+     * @return the length of the gzip member of the block.
+     */
+    public int getCompressedLength() {
+      return compressedLength;
+    }
+
+
+
+    /**
+     * @return the number of the first record of the block.
+     */
+    public long getFirstRecord() {
+      return firstRecord;
+    }
+
+
+
+    /**
+     * @return the number of records of the block.
+     */
+    public long getRecordCount() {
+      return recordCount;
+    }
+
+
+
+    /**
+     * @return the DN of the first record of the block.
+     */
+    public String getFirstDN() {
+      return firstDN;
+    }
+
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String toString() {
+      return "Block [index=" + index + ", compressedOffset=" + compressedOffset +
+        ", compressedLength=" + compressedLength + ", firstRecord=" + firstRecord +
+        ", recordCount=" + recordCount + ", firstDN=" + firstDN + "]";
+    }
+
+
+
+    private final int compressedLength;
+
+
+    private final long compressedOffset;
+
+
+    private final String firstDN;
+
+
+    private final long firstRecord;
+
+
+    private final int index;
+
+
+    private final long recordCount;
+
+  }
+
+
+
+  private final List<Block> blocks;
+
+
+  private volatile long bytesConsumed;
+
+
+  private final FileChannel channel;
+
+
+  private final ExecutorService executorService;
+
+
+  // the blocks being decoded, in the order of the file
+  private final LinkedList<Future<List<Object>>> inOrder =
+    new LinkedList<Future<List<Object>>>();
+
+
+  private final int maxBlocksInFlight;
+
+
+  private int nextBlockConsumed;
+
+
+  private int nextBlockSubmitted;
+
+
+  private final RandomAccessFile randomAccessFile;
+
+
+  private Iterator<Object> records;
+
+
+  private long recordsRead;
+
+}
@@ -0,0 +1,409 @@
+/*
+ * Copyright 2008-2013 UnboundID Corp. All Rights Reserved.
+ */
+/*
+ * Copyright (C) 2008-2013 UnboundID Corp. This program is free
+ * software; you can redistribute it and/or modify it under the terms of
+ * the GNU General Public License (GPLv2 only) or the terms of the GNU
+ * Lesser General Public License (LGPLv2.1 only) as published by the
+ * Free Software Foundation. This program is distributed in the hope
+ * that it will be useful, but WITHOUT ANY WARRANTY; without even the
+ * implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR
+ * PURPOSE. See the GNU General Public License for more details. You
+ * should have received a copy of the GNU General Public License along
+ * with this program; if not, see <http://www.gnu.org/licenses>.
+ */
+
+package samplecode.ldif;
+
+import com.unboundid.ldap.sdk.Entry;
+import com.unboundid.ldif.LDIFChangeRecord;
+import com.unboundid.ldif.LDIFException;
+import com.unboundid.ldif.LDIFReader;
+import com.unboundid.ldif.LDIFRecord;
+import com.unboundid.util.Base64;
+import com.unboundid.util.ByteStringBuffer;
+import com.unboundid.util.StaticUtils;
+import samplecode.annotation.CodeVersion;
+import samplecode.annotation.Since;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.zip.GZIPOutputStream;
+
+import static com.unboundid.util.Validator.ensureNotNull;
+
+
+/**
+ * Writes LDIF records to a block-compressed LDIF file: the records are
+ * grouped in blocks of about the block size, each block starting on a
+ * record boundary and compressed independently as a gzip member, and
+ * the file ends with an index of the blocks. The blocks of such a file
+ * can be decompressed and parsed in parallel, and any one of them can
+ * be read without the others, by a {@link BlockCompressedLdifReader}.
+ * <p/>
+ * The file is also an ordinary gzip file, whose decompressed content is
+ * the LDIF followed by the index in LDIF comment lines, so tools such as
+ * {@code zcat} and {@code gunzip} read it as LDIF.
+ * <p/>
+ * The file is made of:
+ * <ul>
+ * <li>a gzip member for each block of records</li>
+ * <li>a gzip member of comment lines, the index: after a header line,
+ * a line for each block with its offset and length in the file, the
+ * number of its first record and its number of records, and the
+ * base64-encoded DN of its first record</li>
+ * <li>an empty gzip member of {@value #TRAILER_LENGTH} bytes whose
+ * extra field holds the offset of the index</li>
+ * </ul>
+ * <p/>
+ * example usage: <blockquote>
+ * <p/>
+ * <pre>
+ * BlockCompressedLdifWriter writer =
+ *   new BlockCompressedLdifWriter(new File("dump.ldif.gz"));
+ * try {
+ *   writer.copy(new LDIFReader("dump.ldif"));
+ * } finally {
+ *   writer.close();
+ * }
+ * </pre>
+ * </blockquote>
+ */
+@Since("Oct 16, 2026")
+@CodeVersion("1.0")
+public final class BlockCompressedLdifWriter implements Closeable {
+
+  /**
+   * The number of bytes of LDIF in a block, unless another size is
+   * specified.
+   */
+  public static final int DEFAULT_BLOCK_SIZE = 1024 * 1024;
+
+
+  /**
+   * The length of the empty gzip member that ends the file.
+   */
+  public static final int TRAILER_LENGTH = 34;
+
+
+  /**
+   * The first line of the index.
+   */
+  static final String INDEX_HEADER = "# block-compressed LDIF index, version 1";
+
+
+  /**
+   * The start of the line of the index that describes a block.
+   */
+  static final String INDEX_BLOCK_PREFIX = "# block ";
+
+
+  // the identifier of the subfield of the trailer that holds the
+  // offset of the index
+  private static final byte SUBFIELD_ID1 = 'L';
+
+
+  private static final byte SUBFIELD_ID2 = 'X';
+
+
+
+  /**
+   * Creates the trailer that points to the index.
+   */
+  static byte[] trailer(final long indexOffset) {
+    final byte[] trailer = new byte[TRAILER_LENGTH];
+    int i = 0;
+    // gzip magic, deflate, FEXTRA, no time, no extra flags, unknown OS
+    trailer[i++] = (byte) 0x1F;
+    trailer[i++] = (byte) 0x8B;
+    trailer[i++] = 8;
+    trailer[i++] = 4;
+    i += 5;
+    trailer[i++] = (byte) 0xFF;
+    // the extra field: one subfield of eight bytes
+    trailer[i++] = 12;
+    trailer[i++] = 0;
+    trailer[i++] = SUBFIELD_ID1;
+    trailer[i++] = SUBFIELD_ID2;
+    trailer[i++] = 8;
+    trailer[i++] = 0;
+    for(int b = 0; b < 8; ++b) {
+      trailer[i++] = (byte) (indexOffset >>> (8 * b));
+    }
+    // an empty final deflate block; the CRC and size of nothing are 0
+    trailer[i] = 3;
+    return trailer;
+  }
+
+
+
+  /**
+   * Retrieves the offset of the index from a trailer.
+   *
+   * @return the offset, or a negative number if {@code trailer} is not a
+   *         trailer.
+   */
+  static long indexOffset(final byte[] trailer) {
+    final byte[] expected = trailer(0L);
+    for(int i = 0; i < TRAILER_LENGTH; ++i) {
+      if(((i < 16) || (i >= 24)) && (trailer[i] != expected[i])) {
+        return -1L;
+      }
+    }
+    long indexOffset = 0L;
+    for(int b = 7; b >= 0; --b) {
+      indexOffset = (indexOffset << 8) | (trailer[16 + b] & 0xFFL);
+    }
+    return indexOffset;
+  }
+
+
+
+  /**
+   * Creates a writer with the default block size.
+   *
+   * @param file
+   *   the file to write, which is replaced if it exists. Not permitted
+   *   to be {@code null}.
+   *
+   * @throws IOException
+   *   if the file cannot be created.
+   */
+  public BlockCompressedLdifWriter(final File file) throws IOException {
+    this(file,DEFAULT_BLOCK_SIZE);
+  }
+
+
+
+  /**
+   * Creates a writer.
+   *
+   * @param file
+   *   the file to write, which is replaced if it exists. Not permitted
+   *   to be {@code null}.
+   * @param blockSize
+   *   the number of bytes of LDIF after which a block is ended, which
+   *   must be greater than zero. A block holds at least one record, so
+   *   it may be larger.
+   *
+   * @throws IOException
+   *   if the file cannot be created.
+   */
+  public BlockCompressedLdifWriter(final File file, final int blockSize) throws IOException {
+    ensureNotNull(file);
+    if(blockSize <= 0) {
+      throw new IllegalArgumentException("blockSize must be greater than zero.");
+    }
+    this.blockSize = blockSize;
+    this.outputStream = new BufferedOutputStream(new FileOutputStream(file));
+    index.append(INDEX_HEADER).append(StaticUtils.EOL_BYTES);
+  }
+
+
+
+  /**
+   * Writes a record.
+   *
+   * @param record
+   *   an entry or a change record. Not permitted to be {@code null}.
+   *
+   * @throws IOException
+   *   if a block cannot be written.
+   */
+  public void writeLDIFRecord(final LDIFRecord record) throws IOException {
+    ensureNotNull(record);
+    if(block.length() == 0) {
+      blockFirstDN = record.getDN();
+      blockFirstRecord = recordsWritten;
+    }
+    record.toLDIF(block);
+    block.append(StaticUtils.EOL_BYTES);
+    ++recordsWritten;
+    if(block.length() >= blockSize) {
+      writeBlock();
+    }
+  }
+
+
+
+  /**
+   * Writes an entry.
+   *
+   * @param entry
+   *   the entry. Not permitted to be {@code null}.
+   *
+   * @throws IOException
+   *   if a block cannot be written.
+   */
+  public void writeEntry(final Entry entry) throws IOException {
+    writeLDIFRecord(entry);
+  }
+
+
+
+  /**
+   * Writes a change record.
+   *
+   * @param changeRecord
+   *   the change record. Not permitted to be {@code null}.
+   *
+   * @throws IOException
+   *   if a block cannot be written.
+   */
+  public void writeChangeRecord(final LDIFChangeRecord changeRecord) throws IOException {
+    writeLDIFRecord(changeRecord);
+  }
+
+
+
+  /**
+   * Writes every record read from {@code ldifReader}. The reader is not
+   * closed.
+   *
+   * @param ldifReader
+   *   the reader of plain LDIF. Not permitted to be {@code null}.
+   *
+   * @return the number of records written.
+   *
+   * @throws IOException
+   *   if the LDIF cannot be read or a block cannot be written.
+   * @throws LDIFException
+   *   if a record cannot be parsed.
+   */
+  public long copy(final LDIFReader ldifReader) throws IOException, LDIFException {
+    ensureNotNull(ldifReader);
+    long copied = 0L;
+    LDIFRecord record;
+    while((record = ldifReader.readLDIFRecord()) != null) {
+      writeLDIFRecord(record);
+      ++copied;
+    }
+    return copied;
+  }
+
+
+
+  /**
+   * Writes the last block, the index and the trailer, and closes the
+   * file.
+   *
+   * @throws IOException
+   *   if the file cannot be written.
+   */
+  @Override
+  public void close() throws IOException {
+    if(closed) {
+      return;
+    }
+    closed = true;
+    try {
+      if(block.length() > 0) {
+        writeBlock();
+      }
+      final long indexOffset = offset;
+      write(gzip(index.getBackingArray(),index.length()));
+      write(trailer(indexOffset));
+    } finally {
+      outputStream.close();
+    }
+  }
+
+
+
+  /**
+   * @return the number of blocks written.
+   */
+  public int getBlocks() {
+    return blocks;
+  }
+
+
+
+  /**
+   * @return the number of records written.
+   */
+  public long getRecordsWritten() {
+    return recordsWritten;
+  }
+
+
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public String toString() {
+    return "BlockCompressedLdifWriter [blockSize=" + blockSize + ", blocks=" + blocks +
+      ", recordsWritten=" + recordsWritten + ", bytesWritten=" + offset + "]";
+  }
+
+
+
+  private void writeBlock() throws IOException {
+    final byte[] compressed = gzip(block.getBackingArray(),block.length());
+    index.append(INDEX_BLOCK_PREFIX).append(offset).append(' ').append(compressed.length)
+      .append(' ').append(blockFirstRecord).append(' ')
+      .append(recordsWritten - blockFirstRecord).append(' ');
+    Base64.encode(blockFirstDN,index);
+    index.append(StaticUtils.EOL_BYTES);
+    write(compressed);
+    ++blocks;
+    block.clear();
+  }
+
+
+
+  private void write(final byte[] bytes) throws IOException {
+    outputStream.write(bytes);
+    offset += bytes.length;
+  }
+
+
+
+  private static byte[] gzip(final byte[] bytes, final int length) throws IOException {
+    final ByteArrayOutputStream compressed = new ByteArrayOutputStream(length / 4 + 64);
+    final GZIPOutputStream gzipOutputStream = new GZIPOutputStream(compressed);
+    gzipOutputStream.write(bytes,0,length);
+    gzipOutputStream.close();
+    return compressed.toByteArray();
+  }
+
+
+
+  private final ByteStringBuffer block = new ByteStringBuffer();
+
+
+  private String blockFirstDN;
+
+
+  private long blockFirstRecord;
+
+
+  private final int blockSize;
+
+
+  private int blocks;
+
+
+  private boolean closed;
+
+
+  private final ByteStringBuffer index = new ByteStringBuffer();
+
+
+  // the number of bytes written to the file
+  private long offset;
+
+
+  private final OutputStream outputStream;
+
+
+  private long recordsWritten;
+
+}
@@ -0,0 +1,205 @@
+/*
+ * Copyright 2008-2013 UnboundID Corp. All Rights Reserved.
+ */
+/*
+ * Copyright (C) 2008-2013 UnboundID Corp. This program is free
+ * software; you can redistribute it and/or modify it under the terms of
+ * the GNU General Public License (GPLv2 only) or the terms of the GNU
+ * Lesser General Public License (LGPLv2.1 only) as published by the
+ * Free Software Foundation. This program is distributed in the hope
+ * that it will be useful, but WITHOUT ANY WARRANTY; without even the
+ * implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR
+ * PURPOSE. See the GNU General Public License for more details. You
+ * should have received a copy of the GNU General Public License along
+ * with this program; if not, see <http://www.gnu.org/licenses>.
+ */
+
+package samplecode.ldif;
+
+import com.unboundid.ldap.listener.InMemoryDirectoryServer;
+import com.unboundid.ldap.listener.InMemoryDirectoryServerConfig;
+import com.unboundid.ldap.sdk.Attribute;
+import com.unboundid.ldap.sdk.Entry;
+import com.unboundid.ldap.sdk.LDAPException;
+import com.unboundid.ldif.LDIFException;
+import com.unboundid.ldif.LDIFReader;
+import com.unboundid.ldif.LDIFWriter;
+import samplecode.annotation.CodeVersion;
+import samplecode.annotation.Launchable;
+import samplecode.annotation.Since;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * Compares the time taken to read a fixture of entries from LDIF and
+ * from an entry snapshot of the same entries, and to load the fixture
+ * into an in-memory directory server from each. The LDIF is loaded with
+ * {@link InMemoryDirectoryServer#importFromLDIF}, and the snapshot by
+ * adding the entries read from it with
+ * {@link InMemoryDirectoryServer#addEntries(List)}. Each is run a few
+ * times, and the time of each run is displayed.
+ * <p/>
+ * Decoding a snapshot takes a fraction of the time of parsing the
+ * LDIF, but the load of a large fixture is dominated by the processing
+ * of the adds by the server, which is the same for both.
+ * <p/>
+ * example usage: <blockquote>
+ * <p/>
+ * <pre>
+ * java samplecode.ldif.EntrySnapshotBenchmark 100000
+ * </pre>
+ * </blockquote>
+ * The argument is the number of entries of the fixture.
+ */
+@Since("Oct 16, 2026")
+@CodeVersion("1.0")
+@Launchable
+public final class EntrySnapshotBenchmark {
+
+  private static final String BASE_DN = "dc=example,dc=com";
+
+
+  private static final int DEFAULT_NUM_ENTRIES = 100000;
+
+
+  private static final int NUM_RUNS = 3;
+
+
+
+  /**
+   * Runs the benchmark.
+   *
+   * @param args
+   *   optionally the number of entries of the fixture.
+   *
+   * @throws LDAPException
+   *   if a server cannot be created or loaded.
+   * @throws IOException
+   *   if the fixture cannot be written or read.
+   * @throws LDIFException
+   *   if the fixture cannot be parsed.
+   */
+  public static void main(final String... args)
+    throws LDAPException, IOException, LDIFException {
+    final int numEntries = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_NUM_ENTRIES;
+
+    final File ldifFile = File.createTempFile("fixture",".ldif");
+    ldifFile.deleteOnExit();
+    final File snapshotFile = File.createTempFile("fixture",".snapshot");
+    snapshotFile.deleteOnExit();
+    writeFixture(ldifFile,numEntries);
+    final EntrySnapshotWriter writer = new EntrySnapshotWriter(snapshotFile);
+    final LDIFReader fixtureReader = new LDIFReader(ldifFile);
+    try {
+      writer.copy(fixtureReader);
+    } finally {
+      fixtureReader.close();
+      writer.close();
+    }
+    System.out.println(String.format("entries: %d, LDIF: %d bytes, snapshot: %d bytes",
+      numEntries + 1,ldifFile.length(),snapshotFile.length()));
+
+    for(int run = 1; run <= NUM_RUNS; ++run) {
+      long start = System.nanoTime();
+      final LDIFReader ldifReader = new LDIFReader(ldifFile);
+      try {
+        while(ldifReader.readEntry() != null) {
+          // the entries are only parsed
+        }
+      } finally {
+        ldifReader.close();
+      }
+      final long parseLdifNanos = System.nanoTime() - start;
+
+      start = System.nanoTime();
+      final EntrySnapshotReader snapshotReader = new EntrySnapshotReader(snapshotFile);
+      try {
+        while(snapshotReader.readEntry() != null) {
+          // the entries are only decoded
+        }
+      } finally {
+        snapshotReader.close();
+      }
+      final long readSnapshotNanos = System.nanoTime() - start;
+
+      InMemoryDirectoryServer directoryServer = newDirectoryServer();
+      start = System.nanoTime();
+      directoryServer.importFromLDIF(true,ldifFile.getPath());
+      final long loadLdifNanos = System.nanoTime() - start;
+      directoryServer.shutDown(true);
+
+      directoryServer = newDirectoryServer();
+      start = System.nanoTime();
+      directoryServer.addEntries(readSnapshot(snapshotFile));
+      final long loadSnapshotNanos = System.nanoTime() - start;
+      directoryServer.shutDown(true);
+
+      System.out.println(String.format("run %d: read LDIF %d ms, read snapshot %d ms; " +
+        "load LDIF %d ms, load snapshot %d ms",run,
+        TimeUnit.NANOSECONDS.toMillis(parseLdifNanos),
+        TimeUnit.NANOSECONDS.toMillis(readSnapshotNanos),
+        TimeUnit.NANOSECONDS.toMillis(loadLdifNanos),
+        TimeUnit.NANOSECONDS.toMillis(loadSnapshotNanos)));
+    }
+  }
+
+
+
+  private static InMemoryDirectoryServer newDirectoryServer() throws LDAPException {
+    return new InMemoryDirectoryServer(new InMemoryDirectoryServerConfig(BASE_DN));
+  }
+
+
+
+  private static List<Entry> readSnapshot(final File snapshotFile) throws IOException {
+    final List<Entry> entries = new ArrayList<Entry>();
+    final EntrySnapshotReader snapshotReader = new EntrySnapshotReader(snapshotFile);
+    try {
+      Entry entry;
+      while((entry = snapshotReader.readEntry()) != null) {
+        entries.add(entry);
+      }
+    } finally {
+      snapshotReader.close();
+    }
+    return entries;
+  }
+
+
+
+  /**
+   * Writes the base entry and {@code numEntries} users below it.
+   */
+  private static void writeFixture(final File ldifFile, final int numEntries) throws IOException {
+    final LDIFWriter ldifWriter = new LDIFWriter(ldifFile);
+    try {
+      ldifWriter.writeEntry(new Entry(BASE_DN,new Attribute("objectClass","top","domain"),
+        new Attribute("dc","example")));
+      for(int i = 0; i < numEntries; ++i) {
+        ldifWriter.writeEntry(new Entry("uid=user." + i + "," + BASE_DN,
+          new Attribute("objectClass","top","person","organizationalPerson","inetOrgPerson"),
+          new Attribute("uid","user." + i),
+          new Attribute("cn","User " + i),
+          new Attribute("sn",Integer.toString(i)),
+          new Attribute("givenName","User"),
+          new Attribute("mail","user." + i + "@example.com"),
+          new Attribute("telephoneNumber","+1 555 " + (1000000 + i)),
+          new Attribute("description","A user of the entry snapshot benchmark.")));
+      }
+    } finally {
+      ldifWriter.close();
+    }
+  }
+
+
+
+  private EntrySnapshotBenchmark() {
+    // the benchmark is run by main
+  }
+
+}
@@ -0,0 +1,318 @@
+/*
+ * Copyright 2008-2013 UnboundID Corp. All Rights Reserved.
+ */
+/*
+ * Copyright (C) 2008-2013 UnboundID Corp. This program is free
+ * software; you can redistribute it and/or modify it under the terms of
+ * the GNU General Public License (GPLv2 only) or the terms of the GNU
+ * Lesser General Public License (LGPLv2.1 only) as published by the
+ * Free Software Foundation. This program is distributed in the hope
+ * that it will be useful, but WITHOUT ANY WARRANTY; without even the
+ * implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR
+ * PURPOSE. See the GNU General Public License for more details. You
+ * should have received a copy of the GNU General Public License along
+ * with this program; if not, see <http://www.gnu.org/licenses>.
+ */
+
+package samplecode.ldif;
+
+import com.unboundid.asn1.ASN1Element;
+import com.unboundid.asn1.ASN1Exception;
+import com.unboundid.asn1.ASN1OctetString;
+import com.unboundid.asn1.ASN1Sequence;
+import com.unboundid.ldap.sdk.Attribute;
+import com.unboundid.ldap.sdk.Entry;
+import com.unboundid.ldap.sdk.EntrySource;
+import com.unboundid.ldap.sdk.EntrySourceException;
+import com.unboundid.ldap.sdk.LDAPException;
+import samplecode.annotation.CodeVersion;
+import samplecode.annotation.Since;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+
+import static com.unboundid.util.Validator.ensureNotNull;
+
+
+/**
+ * Reads the entries of an entry snapshot written by an
+ * {@link EntrySnapshotWriter}, one at a time from a stream. The entries
+ * are decoded from BER, which is much faster than parsing LDIF.
+ * <p/>
+ * The number of entries and the checksum in the footer are verified
+ * when the last entry has been read, so a truncated or corrupted
+ * snapshot is reported by an {@link IOException} at the latest when the
+ * reader reaches its end.
+ * <p/>
+ * The reader is also an {@link EntrySource}, so that it can be passed
+ * to the {@link LdifBulkLoader}.
+ * <p/>
+ * example usage: <blockquote>
+ * <p/>
+ * <pre>
+ * EntrySnapshotReader reader =
+ *   new EntrySnapshotReader(new File("fixture.snapshot"));
+ * try {
+ *   Entry entry;
+ *   while((entry = reader.readEntry()) != null) {
+ *     ...
+ *   }
+ * } finally {
+ *   reader.close();
+ * }
+ * </pre>
+ * </blockquote>
+ */
+@Since("Oct 16, 2026")
+@CodeVersion("1.0")
+public final class EntrySnapshotReader extends EntrySource {
+
+  /**
+   * Determines whether a file is an entry snapshot, that is, whether it
+   * starts with the magic number of one.
+   *
+   * @param file
+   *   the file. Not permitted to be {@code null}.
+   *
+   * @return whether the file is an entry snapshot.
+   *
+   * @throws IOException
+   *   if the file cannot be read.
+   */
+  public static boolean isSnapshot(final File file) throws IOException {
+    ensureNotNull(file);
+    final InputStream inputStream = new FileInputStream(file);
+    try {
+      final byte[] magic = EntrySnapshotWriter.MAGIC.getBytes("US-ASCII");
+      final byte[] start = new byte[magic.length];
+      int length = 0;
+      int count;
+      while((length < start.length) &&
+        ((count = inputStream.read(start,length,start.length - length)) > 0)) {
+        length += count;
+      }
+      return Arrays.equals(magic,start);
+    } finally {
+      inputStream.close();
+    }
+  }
+
+
+
+  /**
+   * Creates a reader of a snapshot file.
+   *
+   * @param file
+   *   the snapshot file. Not permitted to be {@code null}.
+   *
+   * @throws IOException
+   *   if the file cannot be opened or is not a snapshot.
+   */
+  public EntrySnapshotReader(final File file) throws IOException {
+    this(new FileInputStream(file));
+  }
+
+
+
+  /**
+   * Creates a reader of a snapshot from a stream, which is closed when
+   * the reader is closed.
+   *
+   * @param inputStream
+   *   the stream. Not permitted to be {@code null}.
+   *
+   * @throws IOException
+   *   if the header cannot be read or is not the header of a snapshot
+   *   of a version that this reader reads.
+   */
+  public EntrySnapshotReader(final InputStream inputStream) throws IOException {
+    ensureNotNull(inputStream);
+    final InputStream bufferedInputStream = new BufferedInputStream(inputStream);
+    this.rawInputStream = new DataInputStream(bufferedInputStream);
+    this.checkedInputStream = new CheckedInputStream(bufferedInputStream,new CRC32());
+    this.dataInputStream = new DataInputStream(checkedInputStream);
+    try {
+      final byte[] magic = new byte[EntrySnapshotWriter.MAGIC.length()];
+      dataInputStream.readFully(magic);
+      if(!EntrySnapshotWriter.MAGIC.equals(new String(magic,"US-ASCII"))) {
+        throw new IOException("The stream is not an entry snapshot.");
+      }
+      final int version = dataInputStream.readInt();
+      if(version != EntrySnapshotWriter.VERSION) {
+        throw new IOException("The entry snapshot has version " + version +
+          ", and only version " + EntrySnapshotWriter.VERSION + " can be read.");
+      }
+    } catch(final IOException ioException) {
+      inputStream.close();
+      throw ioException;
+    }
+  }
+
+
+
+  /**
+   * Reads the next entry of the snapshot.
+   *
+   * @return the entry, or {@code null} at the end of the snapshot.
+   *
+   * @throws IOException
+   *   if the snapshot cannot be read, is truncated or corrupted.
+   */
+  public Entry readEntry() throws IOException {
+    if(ended) {
+      return null;
+    }
+    final int length;
+    try {
+      length = dataInputStream.readInt();
+    } catch(final EOFException eofException) {
+      throw new IOException("The entry snapshot ends before its footer.",eofException);
+    }
+    if(length == 0) {
+      readFooter();
+      return null;
+    }
+    if((length < 0) || (length > EntrySnapshotWriter.MAX_ENTRY_LENGTH)) {
+      throw new IOException("The entry after " + entriesRead + " entries has an invalid " +
+        "length of " + length + ".");
+    }
+    final byte[] encoded = new byte[length];
+    try {
+      dataInputStream.readFully(encoded);
+    } catch(final EOFException eofException) {
+      throw new IOException("The entry snapshot ends within the entry after " + entriesRead +
+        " entries.",eofException);
+    }
+    final Entry entry = decode(encoded);
+    ++entriesRead;
+    return entry;
+  }
+
+
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public Entry nextEntry() throws EntrySourceException {
+    try {
+      return readEntry();
+    } catch(final IOException ioException) {
+      throw new EntrySourceException(false,ioException);
+    }
+  }
+
+
+
+  /**
+   * Closes the stream.
+   */
+  @Override
+  public void close() {
+    try {
+      dataInputStream.close();
+    } catch(final IOException ioException) {
+      // nothing more can be read from the stream
+    }
+  }
+
+
+
+  /**
+   * @return the number of entries read.
+   */
+  public long getEntriesRead() {
+    return entriesRead;
+  }
+
+
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public String toString() {
+    return "EntrySnapshotReader [entriesRead=" + entriesRead + ", ended=" + ended + "]";
+  }
+
+
+
+  /**
+   * Decodes an entry encoded by the {@link EntrySnapshotWriter}.
+   */
+  private Entry decode(final byte[] encoded) throws IOException {
+    try {
+      final ASN1Element[] elements =
+        ASN1Sequence.decodeAsSequence(ASN1Element.decode(encoded)).elements();
+      final ASN1Element[] encodedAttributes =
+        ASN1Sequence.decodeAsSequence(elements[1]).elements();
+      final Attribute[] attributes = new Attribute[encodedAttributes.length];
+      for(int i = 0; i < attributes.length; ++i) {
+        attributes[i] = Attribute.decode(ASN1Sequence.decodeAsSequence(encodedAttributes[i]));
+      }
+      return new Entry(ASN1OctetString.decodeAsOctetString(elements[0]).stringValue(),
+        attributes);
+    } catch(final ASN1Exception asn1Exception) {
+      throw new IOException("The entry after " + entriesRead + " entries cannot be decoded.",
+        asn1Exception);
+    } catch(final LDAPException ldapException) {
+      throw new IOException("The entry after " + entriesRead + " entries cannot be decoded.",
+        ldapException);
+    } catch(final ArrayIndexOutOfBoundsException arrayIndexOutOfBoundsException) {
+      throw new IOException("The entry after " + entriesRead + " entries cannot be decoded.",
+        arrayIndexOutOfBoundsException);
+    }
+  }
+
+
+
+  /**
+   * Reads the footer and verifies the number of entries and the
+   * checksum.
+   */
+  private void readFooter() throws IOException {
+    try {
+      final long entryCount = dataInputStream.readLong();
+      // the checksum covers the bytes before it
+      final long expectedChecksum = checkedInputStream.getChecksum().getValue();
+      final long checksum = rawInputStream.readLong();
+      if(entryCount != entriesRead) {
+        throw new IOException("The entry snapshot holds " + entryCount + " entries, but " +
+          entriesRead + " were read.");
+      }
+      if(checksum != expectedChecksum) {
+        throw new IOException("The checksum of the entry snapshot does not match its " +
+          "content.");
+      }
+    } catch(final EOFException eofException) {
+      throw new IOException("The entry snapshot ends within its footer.",eofException);
+    }
+    ended = true;
+  }
+
+
+
+  private final CheckedInputStream checkedInputStream;
+
+
+  private final DataInputStream dataInputStream;
+
+
+  private boolean ended;
+
+
+  private long entriesRead;
+
+
+  // reads the bytes that are not covered by the checksum
+  private final DataInputStream rawInputStream;
+
+}
@@ -0,0 +1,330 @@
+/*
+ * Copyright 2008-2013 UnboundID Corp. All Rights Reserved.
+ */
+/*
+ * Copyright (C) 2008-2013 UnboundID Corp. This program is free
+ * software; you can redistribute it and/or modify it under the terms of
+ * the GNU General Public License (GPLv2 only) or the terms of the GNU
+ * Lesser General Public License (LGPLv2.1 only) as published by the
+ * Free Software Foundation. This program is distributed in the hope
+ * that it will be useful, but WITHOUT ANY WARRANTY; without even the
+ * implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR
+ * PURPOSE. See the GNU General Public License for more details. You
+ * should have received a copy of the GNU General Public License along
+ * with this program; if not, see <http://www.gnu.org/licenses>.
+ */
+
+package samplecode.ldif;
+
+import com.unboundid.asn1.ASN1Element;
+import com.unboundid.asn1.ASN1OctetString;
+import com.unboundid.asn1.ASN1Sequence;
+import com.unboundid.ldap.sdk.Attribute;
+import com.unboundid.ldap.sdk.Entry;
+import com.unboundid.ldap.sdk.LDAPInterface;
+import com.unboundid.ldap.sdk.LDAPSearchException;
+import com.unboundid.ldap.sdk.SearchResultEntry;
+import com.unboundid.ldap.sdk.SearchResultListener;
+import com.unboundid.ldap.sdk.SearchResultReference;
+import com.unboundid.ldap.sdk.SearchScope;
+import com.unboundid.ldif.LDIFException;
+import com.unboundid.ldif.LDIFReader;
+import com.unboundid.util.ByteStringBuffer;
+import samplecode.annotation.CodeVersion;
+import samplecode.annotation.Since;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Collection;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+
+import static com.unboundid.util.Validator.ensureNotNull;
+
+
+/**
+ * Writes entries to an entry snapshot, a binary file that an
+ * {@link EntrySnapshotReader} reads back much faster than LDIF, because
+ * the entries are BER-encoded rather than text that must be parsed.
+ * <p/>
+ * A snapshot is made of:
+ * <ul>
+ * <li>a header: the {@value #MAGIC} magic number in ASCII and the
+ * format version, a 4-byte integer</li>
+ * <li>for each entry, its length as a 4-byte integer, at most
+ * {@value #MAX_ENTRY_LENGTH}, followed by its BER encoding: a sequence
+ * of the DN and the sequence of its attributes, which is the encoding
+ * of the entry in an LDAP add request</li>
+ * <li>a footer: a length of 0, the number of entries as an 8-byte
+ * integer, and the CRC-32 of every byte before it as an 8-byte
+ * integer</li>
+ * </ul>
+ * The integers are big-endian. A snapshot can be written from LDIF or
+ * from the entries of a server.
+ * <p/>
+ * example usage: <blockquote>
+ * <p/>
+ * <pre>
+ * EntrySnapshotWriter writer =
+ *   new EntrySnapshotWriter(new File("fixture.snapshot"));
+ * try {
+ *   writer.copy(new LDIFReader("fixture.ldif"));
+ * } finally {
+ *   writer.close();
+ * }
+ * </pre>
+ * </blockquote>
+ */
+@Since("Oct 16, 2026")
+@CodeVersion("1.0")
+public final class EntrySnapshotWriter implements Closeable {
+
+  /**
+   * The magic number at the start of a snapshot.
+   */
+  public static final String MAGIC = "LDAPSNAP";
+
+
+  /**
+   * The version of the format written.
+   */
+  public static final int VERSION = 1;
+
+
+  /**
+   * The largest encoded entry written or read, 64 MiB; a greater length
+   * in a snapshot is reported as corruption rather than allocated.
+   */
+  public static final int MAX_ENTRY_LENGTH = 64 * 1024 * 1024;
+
+
+
+  /**
+   * Encodes an entry as it is written to a snapshot.
+   */
+  private static void encode(final Entry entry, final ByteStringBuffer buffer) {
+    final Collection<Attribute> attributes = entry.getAttributes();
+    final ASN1Element[] encodedAttributes = new ASN1Element[attributes.size()];
+    int i = 0;
+    for(final Attribute attribute : attributes) {
+      encodedAttributes[i++] = attribute.encode();
+    }
+    new ASN1Sequence(new ASN1OctetString(entry.getDN()),new ASN1Sequence(encodedAttributes))
+      .encodeTo(buffer);
+  }
+
+
+
+  /**
+   * Creates a writer of a snapshot file.
+   *
+   * @param file
+   *   the file to write, which is replaced if it exists. Not permitted
+   *   to be {@code null}.
+   *
+   * @throws IOException
+   *   if the file cannot be created.
+   */
+  public EntrySnapshotWriter(final File file) throws IOException {
+    this(new FileOutputStream(file));
+  }
+
+
+
+  /**
+   * Creates a writer of a snapshot to a stream, which is closed when the
+   * writer is closed.
+   *
+   * @param outputStream
+   *   the stream. Not permitted to be {@code null}.
+   *
+   * @throws IOException
+   *   if the header cannot be written.
+   */
+  public EntrySnapshotWriter(final OutputStream outputStream) throws IOException {
+    ensureNotNull(outputStream);
+    this.checkedOutputStream =
+      new CheckedOutputStream(new BufferedOutputStream(outputStream),new CRC32());
+    this.dataOutputStream = new DataOutputStream(checkedOutputStream);
+    dataOutputStream.write(MAGIC.getBytes("US-ASCII"));
+    dataOutputStream.writeInt(VERSION);
+  }
+
+
+
+  /**
+   * Writes an entry.
+   *
+   * @param entry
+   *   the entry. Not permitted to be {@code null}.
+   *
+   * @throws IOException
+   *   if the entry cannot be written, or its encoding is longer than
+   *   {@link #MAX_ENTRY_LENGTH}.
+   */
+  public void writeEntry(final Entry entry) throws IOException {
+    ensureNotNull(entry);
+    buffer.clear();
+    encode(entry,buffer);
+    if(buffer.length() > MAX_ENTRY_LENGTH) {
+      throw new IOException("The entry " + entry.getDN() + " is encoded in " + buffer.length() +
+        " bytes, more than the " + MAX_ENTRY_LENGTH + " bytes of an entry of a snapshot.");
+    }
+    dataOutputStream.writeInt(buffer.length());
+    dataOutputStream.write(buffer.getBackingArray(),0,buffer.length());
+    ++entriesWritten;
+  }
+
+
+
+  /**
+   * Writes every entry read from {@code ldifReader}; an add change
+   * record is written as the entry it adds. The reader is not closed.
+   *
+   * @param ldifReader
+   *   the reader of the LDIF. Not permitted to be {@code null}.
+   *
+   * @return the number of entries written.
+   *
+   * @throws IOException
+   *   if the LDIF cannot be read or an entry cannot be written.
+   * @throws LDIFException
+   *   if an entry cannot be parsed or a change record is not an add.
+   */
+  public long copy(final LDIFReader ldifReader) throws IOException, LDIFException {
+    ensureNotNull(ldifReader);
+    long copied = 0L;
+    Entry entry;
+    while((entry = ldifReader.readEntry()) != null) {
+      writeEntry(entry);
+      ++copied;
+    }
+    return copied;
+  }
+
+
+
+  /**
+   * Writes the entries of a server: {@code baseDN} and its subordinates.
+   * The entries are written as the search returns them. The in-memory
+   * directory server returns every entry after its parent; other
+   * servers may not.
+   *
+   * @param ldapInterface
+   *   a connection to the server, or the in-memory directory server.
+   *   Not permitted to be {@code null}.
+   * @param baseDN
+   *   the DN of the entry at the top of the entries written. Not
+   *   permitted to be {@code null}.
+   * @param attributes
+   *   the attributes of the entries written; the user attributes if
+   *   none are specified.
+   *
+   * @return the number of entries written.
+   *
+   * @throws LDAPSearchException
+   *   if the entries cannot be searched.
+   * @throws IOException
+   *   if an entry cannot be written.
+   */
+  public long copy(final LDAPInterface ldapInterface, final String baseDN,
+                   final String... attributes) throws LDAPSearchException, IOException {
+    ensureNotNull(ldapInterface,baseDN);
+    final long before = entriesWritten;
+    final IOException[] writeFailure = new IOException[1];
+    ldapInterface.search(new SearchResultListener() {
+
+      private static final long serialVersionUID = 1L;
+
+
+
+      @Override
+      public void searchEntryReturned(final SearchResultEntry searchEntry) {
+        if(writeFailure[0] != null) {
+          return;
+        }
+        try {
+          writeEntry(searchEntry);
+        } catch(final IOException ioException) {
+          writeFailure[0] = ioException;
+        }
+      }
+
+
+
+      @Override
+      public void searchReferenceReturned(final SearchResultReference searchReference) {
+        // only the entries of the server are written
+      }
+    },baseDN,SearchScope.SUB,"(objectClass=*)",attributes);
+    if(writeFailure[0] != null) {
+      throw writeFailure[0];
+    }
+    return entriesWritten - before;
+  }
+
+
+
+  /**
+   * Writes the footer and closes the stream.
+   *
+   * @throws IOException
+   *   if the footer cannot be written.
+   */
+  @Override
+  public void close() throws IOException {
+    if(closed) {
+      return;
+    }
+    closed = true;
+    try {
+      dataOutputStream.writeInt(0);
+      dataOutputStream.writeLong(entriesWritten);
+      // the checksum covers the bytes before it
+      dataOutputStream.writeLong(checkedOutputStream.getChecksum().getValue());
+    } finally {
+      dataOutputStream.close();
+    }
+  }
+
+
+
+  /**
+   * @return the number of entries written.
+   */
+  public long getEntriesWritten() {
+    return entriesWritten;
+  }
+
+
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public String toString() {
+    return "EntrySnapshotWriter [entriesWritten=" + entriesWritten + "]";
+  }
+
+
+
+  private final ByteStringBuffer buffer = new ByteStringBuffer();
+
+
+  private final CheckedOutputStream checkedOutputStream;
+
+
+  private boolean closed;
+
+
+  private final DataOutputStream dataOutputStream;
+
+
+  private long entriesWritten;
+
+}
@@ -0,0 +1,372 @@
+/*
+ * Copyright 2008-2013 UnboundID Corp. All Rights Reserved.
+ */
+/*
+ * Copyright (C) 2008-2013 UnboundID Corp. This program is free
+ * software; you can redistribute it and/or modify it under the terms of
+ * the GNU General Public License (GPLv2 only) or the terms of the GNU
+ * Lesser General Public License (LGPLv2.1 only) as published by the
+ * Free Software Foundation. This program is distributed in the hope
+ * that it will be useful, but WITHOUT ANY WARRANTY; without even the
+ * implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR
+ * PURPOSE. See the GNU General Public License for more details. You
+ * should have received a copy of the GNU General Public License along
+ * with this program; if not, see <http://www.gnu.org/licenses>.
+ */
+
+package samplecode.ldif;
+
+import com.unboundid.ldap.sdk.DN;
+import com.unboundid.ldap.sdk.Entry;
+import com.unboundid.ldap.sdk.LDAPException;
+import com.unboundid.ldap.sdk.LDAPResult;
+import com.unboundid.ldap.sdk.ResultCode;
+import com.unboundid.util.StaticUtils;
+import samplecode.annotation.CodeVersion;
+import samplecode.annotation.Since;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+
+import static com.unboundid.util.Validator.ensureNotNull;
+
+
+/**
+ * Decides when each entry of a parallel load may be sent, so that an
+ * entry reaches the server after its parent has been added while
+ * entries that do not depend on one another are sent without waiting.
+ * <p/>
+ * The scheduler tracks the DNs of the entries that are in flight, the
+ * entries that are held, and the DNs of the entries whose add has
+ * completed:
+ * <ul>
+ * <li>an entry whose parent is in flight or held is held until the add
+ * of the parent completes; an entry whose DN is in flight or held is
+ * held in the same way, so that duplicates are sent in order</li>
+ * <li>any other entry is sent at once: its parent was added earlier in
+ * the load, or is expected to exist in the server</li>
+ * <li>an entry rejected with {@code NO_SUCH_OBJECT} because its parent
+ * appears later in the input is held until the parent is added, and an
+ * entry rejected because it was sent just before its parent completed
+ * is sent again, so that the input does not need to be sorted</li>
+ * </ul>
+ * The children of an entry are released when its add completes, even if
+ * it failed, because the parent may already exist; their own results
+ * are reported. The entries still held when the input is exhausted and
+ * nothing is in flight have a parent that was never added, and are
+ * returned by {@link #drainUnresolved()}.
+ * <p/>
+ * The memory used grows with the number of entries completed, because
+ * the DN of each is kept so that the children that follow it are not
+ * held.
+ * <p/>
+ * The scheduler is thread-safe: entries are offered and sent by the
+ * thread of the load, and completions are reported by the threads that
+ * read the responses.
+ */
+@Since("Oct 16, 2026")
+@CodeVersion("1.0")
+public final class HierarchicalAddScheduler {
+
+  /**
+   * An entry scheduled by this scheduler.
+   */
+  public static final class Add {
+
+    private Add(final Entry entry) {
+      this.entry = entry;
+      String normalizedDN;
+      String normalizedParentDN = null;
+      try {
+        final DN dn = entry.getParsedDN();
+        normalizedDN = dn.toNormalizedString();
+        final DN parentDN = dn.getParent();
+        if(parentDN != null) {
+          normalizedParentDN = parentDN.toNormalizedString();
+        }
+      } catch(final LDAPException ldapException) {
+        // the server rejects the entry, which is not held
+        normalizedDN = StaticUtils.toLowerCase(entry.getDN());
+      }
+      this.key = normalizedDN;
+      this.parentKey = normalizedParentDN;
+    }
+
+
+
+    /**
+     * @return the entry to add.
+     */
+    public Entry getEntry() {
+      return entry;
+    }
+
+
+
+    /**
+     * @return the result of the last attempt to add the entry, or
+     *         {@code null} if it was never sent.
+     */
+    public LDAPResult getResult() {
+      return result;
+    }
+
+
+
+    private final Entry entry;
+
+
+    private final String key;
+
+
+    private final String parentKey;
+
+
+    private LDAPResult result;
+
+
+    // the number of completions when the entry was last sent
+    private long sentAfter;
+
+  }
+
+
+
+  /**
+   * Schedules an entry read from the input.
+   *
+   * @param entry
+   *   the entry. Not permitted to be {@code null}.
+   *
+   * @return the entry to send now, or {@code null} if it is held.
+   */
+  public synchronized Add offer(final Entry entry) {
+    ensureNotNull(entry);
+    final Add add = new Add(entry);
+    final String awaited;
+    if(pending.containsKey(add.key)) {
+      awaited = add.key;
+    } else if((add.parentKey != null) && pending.containsKey(add.parentKey)) {
+      awaited = add.parentKey;
+    } else {
+      awaited = null;
+    }
+    increment(add.key);
+    if(awaited != null) {
+      hold(add,awaited);
+      return null;
+    }
+    return send(add);
+  }
+
+
+
+  /**
+   * @return an entry that was released and is to be sent now, or
+   *         {@code null} if there is none.
+   */
+  public synchronized Add poll() {
+    final Add add = ready.poll();
+    return add == null ? null : send(add);
+  }
+
+
+
+  /**
+   * Waits for an entry to be released.
+   *
+   * @return the entry to send now, or {@code null} when no entry is in
+   *         flight and none is ready, that is, when no entry can be
+   *         released any more.
+   *
+   * @throws InterruptedException
+   *   if the calling thread is interrupted while waiting.
+   */
+  public synchronized Add take() throws InterruptedException {
+    while(ready.isEmpty() && (inFlight > 0)) {
+      wait();
+    }
+    return poll();
+  }
+
+
+
+  /**
+   * Records the completion of an add.
+   *
+   * @param add
+   *   an entry returned by this scheduler. Not permitted to be
+   *   {@code null}.
+   * @param ldapResult
+   *   the result of the add. Not permitted to be {@code null}.
+   *
+   * @return {@code true} if the result is final, or {@code false} if
+   *         the entry is held or will be sent again because its parent
+   *         had not been added.
+   */
+  public synchronized boolean completed(final Add add, final LDAPResult ldapResult) {
+    ensureNotNull(add,ldapResult);
+    --inFlight;
+    add.result = ldapResult;
+    try {
+      if((ldapResult.getResultCode() == ResultCode.NO_SUCH_OBJECT) && (add.parentKey != null)) {
+        final Long parentCompleted = completed.get(add.parentKey);
+        if(parentCompleted == null) {
+          // the parent may be later in the input
+          ++retried;
+          hold(add,add.parentKey);
+          return false;
+        }
+        if(parentCompleted > add.sentAfter) {
+          // the parent was added while the entry was in flight
+          ++retried;
+          ready.add(add);
+          return false;
+        }
+      }
+      completed.put(add.key,++completions);
+      decrement(add.key);
+      final List<Add> released = waiting.remove(add.key);
+      if(released != null) {
+        held -= released.size();
+        ready.addAll(released);
+      }
+      return true;
+    } finally {
+      notifyAll();
+    }
+  }
+
+
+
+  /**
+   * Removes the entries that are still held. This method is meant to be
+   * invoked when the input is exhausted and {@link #take()} returned
+   * {@code null}: the entries are then held for a parent that was never
+   * added.
+   *
+   * @return the entries, with the result of their last attempt, if any.
+   */
+  public synchronized List<Add> drainUnresolved() {
+    final List<Add> unresolved = new ArrayList<Add>(held);
+    for(final List<Add> adds : waiting.values()) {
+      for(final Add add : adds) {
+        decrement(add.key);
+        unresolved.add(add);
+      }
+    }
+    waiting.clear();
+    held = 0;
+    return unresolved;
+  }
+
+
+
+  /**
+   * @return the number of entries held.
+   */
+  public synchronized int getHeld() {
+    return held;
+  }
+
+
+
+  /**
+   * @return the number of entries in flight.
+   */
+  public synchronized int getInFlight() {
+    return inFlight;
+  }
+
+
+
+  /**
+   * @return the number of times an entry was rejected because its
+   *         parent had not yet been added, and was held or sent again.
+   */
+  public synchronized long getRetried() {
+    return retried;
+  }
+
+
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public synchronized String toString() {
+    return "HierarchicalAddScheduler [inFlight=" + inFlight + ", held=" + held + ", ready=" +
+      ready.size() + ", completed=" + completed.size() + ", retried=" + retried + "]";
+  }
+
+
+
+  private void hold(final Add add, final String awaited) {
+    List<Add> adds = waiting.get(awaited);
+    if(adds == null) {
+      adds = new LinkedList<Add>();
+      waiting.put(awaited,adds);
+    }
+    adds.add(add);
+    ++held;
+  }
+
+
+
+  private Add send(final Add add) {
+    add.sentAfter = completions;
+    ++inFlight;
+    return add;
+  }
+
+
+
+  private void increment(final String key) {
+    final Integer count = pending.get(key);
+    pending.put(key,count == null ? 1 : count + 1);
+  }
+
+
+
+  private void decrement(final String key) {
+    final Integer count = pending.get(key);
+    if((count == null) || (count <= 1)) {
+      pending.remove(key);
+    } else {
+      pending.put(key,count - 1);
+    }
+  }
+
+
+
+  // the completion number of each entry, by normalized DN
+  private final Map<String,Long> completed = new HashMap<String,Long>();
+
+
+  private long completions;
+
+
+  private int held;
+
+
+  private int inFlight;
+
+
+  // the number of entries in flight or held, by normalized DN
+  private final Map<String,Integer> pending = new HashMap<String,Integer>();
+
+
+  private final LinkedList<Add> ready = new LinkedList<Add>();
+
+
+  private long retried;
+
+
+  // the entries held until the add of an entry completes, by the
+  // normalized DN of that entry
+  private final Map<String,List<Add>> waiting = new HashMap<String,List<Add>>();
+
+}
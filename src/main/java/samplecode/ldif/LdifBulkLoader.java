@@ -0,0 +1,619 @@
+/*
+ * Copyright 2008-2013 UnboundID Corp. All Rights Reserved.
+ */
+/*
+ * Copyright (C) 2008-2013 UnboundID Corp. This program is free
+ * software; you can redistribute it and/or modify it under the terms of
+ * the GNU General Public License (GPLv2 only) or the terms of the GNU
+ * Lesser General Public License (LGPLv2.1 only) as published by the
+ * Free Software Foundation. This program is distributed in the hope
+ * that it will be useful, but WITHOUT ANY WARRANTY; without even the
+ * implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR
+ * PURPOSE. See the GNU General Public License for more details. You
+ * should have received a copy of the GNU General Public License along
+ * with this program; if not, see <http://www.gnu.org/licenses>.
+ */
+
+package samplecode.ldif;
+
+import com.unboundid.ldap.sdk.AddRequest;
+import com.unboundid.ldap.sdk.AsyncRequestID;
+import com.unboundid.ldap.sdk.AsyncResultListener;
+import com.unboundid.ldap.sdk.Control;
+import com.unboundid.ldap.sdk.DisconnectHandler;
+import com.unboundid.ldap.sdk.DisconnectType;
+import com.unboundid.ldap.sdk.Entry;
+import com.unboundid.ldap.sdk.EntrySource;
+import com.unboundid.ldap.sdk.EntrySourceException;
+import com.unboundid.ldap.sdk.LDAPConnection;
+import com.unboundid.ldap.sdk.LDAPConnectionOptions;
+import com.unboundid.ldap.sdk.LDAPConnectionPool;
+import com.unboundid.ldap.sdk.LDAPException;
+import com.unboundid.ldap.sdk.LDAPResult;
+import com.unboundid.ldap.sdk.ResultCode;
+import samplecode.annotation.CodeVersion;
+import samplecode.annotation.Since;
+import samplecode.util.StripedCounter;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static com.unboundid.util.Validator.ensureNotNull;
+
+
+/**
+ * Adds the entries supplied by an {@link EntrySource} to a directory
+ * server over several connections, keeping several add requests
+ * outstanding on each connection, so that the time taken by a load is
+ * not the sum of the round trips of its entries.
+ * <p/>
+ * The entries are read by the thread that invokes {@link #load}, which
+ * sends each entry as soon as one of the connections has fewer than the
+ * maximum number of requests outstanding. Parsing is left to the entry
+ * source: an {@code LDIFEntrySource} whose {@code LDIFReader} was
+ * created with parse threads decodes the entries in the background
+ * while they are sent.
+ * <p/>
+ * An entry that cannot be added, or cannot be read, does not stop the
+ * load: it is counted and reported to the {@link FailureListener}, if
+ * any. An entry whose connection is lost before the response arrives is
+ * reported with the result code {@code SERVER_DOWN}, and the connection
+ * is replaced from the pool before the next entry is sent on it.
+ * <p/>
+ * A server may process the requests outstanding on a connection, and
+ * on different connections, in any order, so the entries are scheduled
+ * by a {@link HierarchicalAddScheduler}: an entry is held only while the
+ * add of its parent is outstanding, and siblings are sent in parallel.
+ * The input does not need to list parents before their children.
+ * <p/>
+ * example usage: <blockquote>
+ * <p/>
+ * <pre>
+ * LdifBulkLoader loader = new LdifBulkLoader(ldapConnectionPool,4,16);
+ * loader.setFailureListener(failureListener);
+ * loader.load(new LDIFEntrySource(new LDIFReader(ldifFile,2)));
+ * System.out.println(loader);
+ * </pre>
+ * </blockquote>
+ */
+@Since("Oct 16, 2026")
+@CodeVersion("1.0")
+public final class LdifBulkLoader {
+
+  /**
+   * Notified of each entry that is not added. The methods are invoked
+   * by the thread that invokes {@link LdifBulkLoader#load} and by the
+   * threads that read the responses of the connections, so they must be
+   * thread-safe.
+   */
+  public interface FailureListener {
+
+    /**
+     * The server rejected the add of an entry, or the add could not be
+     * sent or did not complete.
+     *
+     * @param entry
+     *   the entry that was not added
+     * @param ldapResult
+     *   the result of the add
+     */
+    void entryNotAdded(Entry entry, LDAPResult ldapResult);
+
+
+
+    /**
+     * An entry could not be read from the entry source.
+     *
+     * @param entrySourceException
+     *   the exception thrown by the entry source
+     */
+    void entryNotRead(EntrySourceException entrySourceException);
+
+  }
+
+
+
+  /**
+   * Creates a loader that uses connections of a pool.
+   *
+   * @param ldapConnectionPool
+   *   the pool from which the connections are taken for the duration
+   *   of each load. Not permitted to be {@code null}.
+   * @param connections
+   *   the number of connections used, which must be greater than
+   *   zero.
+   * @param maxOutstandingPerConnection
+   *   the largest number of add requests outstanding on a connection,
+   *   which must be greater than zero.
+   */
+  public LdifBulkLoader(final LDAPConnectionPool ldapConnectionPool, final int connections,
+                        final int maxOutstandingPerConnection) {
+    ensureNotNull(ldapConnectionPool);
+    if(connections <= 0) {
+      throw new IllegalArgumentException("connections must be greater than zero.");
+    }
+    if(maxOutstandingPerConnection <= 0) {
+      throw new IllegalArgumentException("maxOutstandingPerConnection must be greater than zero.");
+    }
+    this.ldapConnectionPool = ldapConnectionPool;
+    this.connections = connections;
+    this.maxOutstandingPerConnection = maxOutstandingPerConnection;
+  }
+
+
+
+  /**
+   * Reads the entries from {@code entrySource} and adds them. This
+   * method returns when every entry read has been added or reported to
+   * the failure listener. The entry source is closed.
+   *
+   * @param entrySource
+   *   the source of the entries. Not permitted to be {@code null}.
+   *
+   * @return the number of entries added by this load.
+   *
+   * @throws LDAPException
+   *   if no connection can be taken from the pool.
+   * @throws EntrySourceException
+   *   if the entry source cannot continue to be read; the entries read
+   *   before are added or reported before the exception is thrown.
+   * @throws InterruptedException
+   *   if the calling thread is interrupted while waiting for a
+   *   connection to have fewer requests outstanding.
+   */
+  public long load(final EntrySource entrySource)
+    throws LDAPException, EntrySourceException, InterruptedException {
+    ensureNotNull(entrySource);
+    final long addedBefore = added.sum();
+    final List<Lane> lanes = new ArrayList<Lane>(connections);
+    EntrySourceException unreadable = null;
+    try {
+      for(int i = 0; i < connections; ++i) {
+        final Lane lane = new Lane();
+        lane.connect();
+        lanes.add(lane);
+      }
+      final HierarchicalAddScheduler scheduler = new HierarchicalAddScheduler();
+      boolean exhausted = false;
+      int next = 0;
+      while(true) {
+        HierarchicalAddScheduler.Add add = scheduler.poll();
+        if((add == null) && !exhausted) {
+          final Entry entry;
+          try {
+            entry = entrySource.nextEntry();
+          } catch(final EntrySourceException entrySourceException) {
+            notRead.increment();
+            if(failureListener != null) {
+              failureListener.entryNotRead(entrySourceException);
+            }
+            if(!entrySourceException.mayContinueReading()) {
+              unreadable = entrySourceException;
+              exhausted = true;
+            }
+            continue;
+          }
+          if(entry == null) {
+            exhausted = true;
+            continue;
+          }
+          read.increment();
+          if(progressReporter != null) {
+            progressReporter.entryRead();
+          }
+          add = scheduler.offer(entry);
+          if(add == null) {
+            continue;
+          }
+        }
+        if(add == null) {
+          // the input is exhausted: send the entries released by the
+          // adds still in flight
+          add = scheduler.take();
+          if(add == null) {
+            break;
+          }
+        }
+        final Lane lane = acquire(lanes,next);
+        next = (lanes.indexOf(lane) + 1) % lanes.size();
+        lane.send(scheduler,add);
+      }
+
+      // wait for the last completions to be counted
+      for(final Lane lane : lanes) {
+        lane.permits.acquire(maxOutstandingPerConnection);
+        lane.permits.release(maxOutstandingPerConnection);
+      }
+
+      // the entries whose parent was never added
+      for(final HierarchicalAddScheduler.Add add : scheduler.drainUnresolved()) {
+        LDAPResult ldapResult = add.getResult();
+        if(ldapResult == null) {
+          ldapResult = new LDAPResult(-1,ResultCode.NO_SUCH_OBJECT,
+            "The parent entry was not added.",null,(String[]) null,(Control[]) null);
+        }
+        completed(add.getEntry(),ldapResult);
+      }
+    } finally {
+      entrySource.close();
+      for(final Lane lane : lanes) {
+        lane.release();
+      }
+    }
+    if(unreadable != null) {
+      throw unreadable;
+    }
+    return added.sum() - addedBefore;
+  }
+
+
+
+  /**
+   * Sets the controls added to each add request.
+   *
+   * @param controls
+   *   the controls, or none.
+   */
+  public void setControls(final Control... controls) {
+    this.controls = controls == null ? new Control[0] : controls.clone();
+  }
+
+
+
+  /**
+   * Sets the listener notified of each entry that is not added.
+   *
+   * @param failureListener
+   *   the listener, or {@code null} to only count the failures.
+   */
+  public void setFailureListener(final FailureListener failureListener) {
+    this.failureListener = failureListener;
+  }
+
+
+
+  /**
+   * Sets the reporter that counts the entries read and added.
+   *
+   * @param progressReporter
+   *   the reporter, or {@code null}.
+   */
+  public void setProgressReporter(final LdifLoadProgressReporter progressReporter) {
+    this.progressReporter = progressReporter;
+  }
+
+
+
+  /**
+   * Sets the time after which an add request without a response is
+   * reported as failed with the result code {@code TIMEOUT}.
+   *
+   * @param responseTimeoutMillis
+   *   the time in milliseconds, zero for no time limit, or a negative
+   *   value to use the response timeout of the connection.
+   */
+  public void setResponseTimeoutMillis(final long responseTimeoutMillis) {
+    this.responseTimeoutMillis = responseTimeoutMillis;
+  }
+
+
+
+  /**
+   * @return the number of entries added.
+   */
+  public long getAdded() {
+    return added.sum();
+  }
+
+
+
+  /**
+   * @return the number of entries that were read but not added.
+   */
+  public long getFailed() {
+    return failed.sum();
+  }
+
+
+
+  /**
+   * @return the number of entries that could not be read.
+   */
+  public long getNotRead() {
+    return notRead.sum();
+  }
+
+
+
+  /**
+   * @return the number of entries read.
+   */
+  public long getRead() {
+    return read.sum();
+  }
+
+
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public String toString() {
+    return "LdifBulkLoader [connections=" + connections + ", maxOutstandingPerConnection=" +
+      maxOutstandingPerConnection + ", read=" + read + ", added=" + added + ", failed=" +
+      failed + ", notRead=" + notRead + "]";
+  }
+
+
+
+  /**
+   * Takes a permit of the first lane, starting with {@code next}, that
+   * has one, waiting for the lane {@code next} if none has.
+   */
+  private Lane acquire(final List<Lane> lanes, final int next) throws InterruptedException {
+    for(int i = 0; i < lanes.size(); ++i) {
+      final Lane lane = lanes.get((next + i) % lanes.size());
+      if(lane.permits.tryAcquire()) {
+        return lane;
+      }
+    }
+    final Lane lane = lanes.get(next);
+    lane.permits.acquire();
+    return lane;
+  }
+
+
+
+  /**
+   * Counts the result of an add and reports it if it failed.
+   */
+  private void completed(final Entry entry, final LDAPResult ldapResult) {
+    if(ldapResult.getResultCode() == ResultCode.SUCCESS) {
+      added.increment();
+      if(progressReporter != null) {
+        progressReporter.entryApplied();
+      }
+      return;
+    }
+    failed.increment();
+    if(failureListener != null) {
+      failureListener.entryNotAdded(entry,ldapResult);
+    }
+  }
+
+
+
+  /**
+   * A connection taken from the pool, with the permits for the requests
+   * that may be outstanding on it and the requests that are.
+   */
+  private final class Lane implements DisconnectHandler {
+
+    /**
+     * Takes a connection from the pool and watches it for a disconnect.
+     */
+    private void connect() throws LDAPException {
+      final LDAPConnection ldapConnection = ldapConnectionPool.getConnection();
+      originalOptions = ldapConnection.getConnectionOptions();
+      final LDAPConnectionOptions options = originalOptions.duplicate();
+      options.setDisconnectHandler(this);
+      ldapConnection.setConnectionOptions(options);
+      lost = false;
+      connection = ldapConnection;
+    }
+
+
+
+    /**
+     * Sends the add of an entry, for which a permit was taken.
+     */
+    private void send(final HierarchicalAddScheduler scheduler,
+                      final HierarchicalAddScheduler.Add add) {
+      final PendingAdd pendingAdd = new PendingAdd(this,scheduler,add);
+      if(lost || !connection.isConnected()) {
+        // the connection may be closed before its disconnect is handled;
+        // its requests are reported now, so the new connection starts
+        // with every permit and the late disconnect is ignored
+        lost = true;
+        failPending();
+        final LDAPConnection lostConnection = connection;
+        connection = null;
+        ldapConnectionPool.releaseDefunctConnection(lostConnection);
+        try {
+          connect();
+        } catch(final LDAPException ldapException) {
+          lost = true;
+          pendingAdd.complete(ldapException.toLDAPResult());
+          return;
+        }
+      }
+      pending.add(pendingAdd);
+      final AddRequest addRequest = new AddRequest(add.getEntry(),controls);
+      if(responseTimeoutMillis >= 0L) {
+        addRequest.setResponseTimeoutMillis(responseTimeoutMillis);
+      }
+      try {
+        connection.asyncAdd(addRequest,pendingAdd);
+      } catch(final LDAPException ldapException) {
+        pendingAdd.complete(ldapException.toLDAPResult());
+        if(!ResultCode.isConnectionUsable(ldapException.getResultCode())) {
+          // the connection was closed before its disconnect is handled:
+          // it is replaced before the next entry is sent on it, rather
+          // than failing every entry until then
+          lost = true;
+        }
+        return;
+      }
+      if(lost) {
+        // the connection was lost while the request was sent, after the
+        // requests outstanding were reported
+        failPending();
+      }
+    }
+
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void handleDisconnect(final LDAPConnection ldapConnection, final String host,
+                                 final int port, final DisconnectType disconnectType,
+                                 final String message, final Throwable cause) {
+      if(ldapConnection != connection) {
+        return;
+      }
+      lost = true;
+      failPending();
+    }
+
+
+
+    /**
+     * Reports the requests outstanding on a lost connection, which are
+     * never answered.
+     */
+    private void failPending() {
+      final LDAPResult ldapResult = new LDAPResult(-1,ResultCode.SERVER_DOWN,
+        "The connection was lost before the response was received.",null,(String[]) null,
+        (Control[]) null);
+      for(final PendingAdd pendingAdd : pending) {
+        pendingAdd.complete(ldapResult);
+      }
+    }
+
+
+
+    /**
+     * Returns the connection to the pool, or closes it if it was lost or
+     * requests are still outstanding on it.
+     */
+    private void release() {
+      if(connection == null) {
+        return;
+      }
+      connection.setConnectionOptions(originalOptions);
+      if(lost || !pending.isEmpty()) {
+        ldapConnectionPool.releaseDefunctConnection(connection);
+      } else {
+        ldapConnectionPool.releaseConnection(connection);
+      }
+      connection = null;
+    }
+
+
+
+    private volatile LDAPConnection connection;
+
+
+    private volatile boolean lost;
+
+
+    private LDAPConnectionOptions originalOptions;
+
+
+    private final Set<PendingAdd> pending =
+      Collections.newSetFromMap(new ConcurrentHashMap<PendingAdd,Boolean>());
+
+
+    private final Semaphore permits = new Semaphore(maxOutstandingPerConnection);
+
+  }
+
+
+
+  /**
+   * An add request that was sent, completed once by its response, by the
+   * failure to send it, or by the loss of its connection.
+   */
+  private final class PendingAdd implements AsyncResultListener {
+
+    private PendingAdd(final Lane lane, final HierarchicalAddScheduler scheduler,
+                       final HierarchicalAddScheduler.Add add) {
+      this.lane = lane;
+      this.scheduler = scheduler;
+      this.add = add;
+    }
+
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void ldapResultReceived(final AsyncRequestID requestID, final LDAPResult ldapResult) {
+      complete(ldapResult);
+    }
+
+
+
+    private void complete(final LDAPResult ldapResult) {
+      if(!done.compareAndSet(false,true)) {
+        return;
+      }
+      lane.pending.remove(this);
+      try {
+        if(scheduler.completed(add,ldapResult)) {
+          completed(add.getEntry(),ldapResult);
+        }
+      } finally {
+        // the load is not finished before the entry is counted
+        lane.permits.release();
+      }
+    }
+
+
+
+    private final HierarchicalAddScheduler.Add add;
+
+
+    private final AtomicBoolean done = new AtomicBoolean();
+
+
+    private final Lane lane;
+
+
+    private final HierarchicalAddScheduler scheduler;
+
+  }
+
+
+
+  private final StripedCounter added = new StripedCounter();
+
+
+  private final int connections;
+
+
+  private volatile Control[] controls = new Control[0];
+
+
+  private final StripedCounter failed = new StripedCounter();
+
+
+  private volatile FailureListener failureListener;
+
+
+  private final LDAPConnectionPool ldapConnectionPool;
+
+
+  private final int maxOutstandingPerConnection;
+
+
+  private final StripedCounter notRead = new StripedCounter();
+
+
+  private volatile LdifLoadProgressReporter progressReporter;
+
+
+  private final StripedCounter read = new StripedCounter();
+
+
+  private volatile long responseTimeoutMillis = -1L;
+
+}
@@ -0,0 +1,489 @@
+/*
+ * Copyright 2008-2013 UnboundID Corp. All Rights Reserved.
+ */
+/*
+ * Copyright (C) 2008-2013 UnboundID Corp. This program is free
+ * software; you can redistribute it and/or modify it under the terms of
+ * the GNU General Public License (GPLv2 only) or the terms of the GNU
+ * Lesser General Public License (LGPLv2.1 only) as published by the
+ * Free Software Foundation. This program is distributed in the hope
+ * that it will be useful, but WITHOUT ANY WARRANTY; without even the
+ * implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR
+ * PURPOSE. See the GNU General Public License for more details. You
+ * should have received a copy of the GNU General Public License along
+ * with this program; if not, see <http://www.gnu.org/licenses>.
+ */
+
+package samplecode.ldif;
+
+import com.unboundid.ldap.sdk.Control;
+import com.unboundid.ldap.sdk.Entry;
+import com.unboundid.ldap.sdk.EntrySourceException;
+import com.unboundid.ldap.sdk.LDAPConnectionPool;
+import com.unboundid.ldap.sdk.LDAPResult;
+import samplecode.annotation.CodeVersion;
+import samplecode.annotation.Since;
+import samplecode.listener.ProgressListener;
+import samplecode.util.StripedCounter;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import static com.unboundid.util.Validator.ensureNotNull;
+
+
+/**
+ * Imports several LDIF files or CLASSPATH resources concurrently, with
+ * the connections of one bounded pool.
+ * <p/>
+ * Each import is made by its own {@link ReadLdifFile} instance, rather
+ * than the shared instance, so that the counts and listeners of one
+ * import are not disturbed by the others, and each import has its own
+ * statistics in an {@link Import}. An import uses
+ * {@code connectionsPerImport} connections of the pool; as many imports
+ * run at once as the maximum size of the pool allows, and the others
+ * wait for one of them to complete.
+ * <p/>
+ * An import that fails does not stop the others: its exception is
+ * recorded in its {@code Import}.
+ * <p/>
+ * example usage: <blockquote>
+ * <p/>
+ * <pre>
+ * LdifImportCoordinator coordinator =
+ *   new LdifImportCoordinator(ldapConnectionPool,4,8);
+ * coordinator.addFile(new File("people.ldif"));
+ * coordinator.addFile(new File("groups.ldif"));
+ * for(LdifImportCoordinator.Import i : coordinator.importAll()) {
+ *   System.out.println(i);
+ * }
+ * </pre>
+ * </blockquote>
+ */
+@Since("Oct 16, 2026")
+@CodeVersion("1.0")
+public final class LdifImportCoordinator {
+
+  /**
+   * The statistics of the import of one file or resource. They are
+   * updated while the import runs.
+   */
+  public static final class Import {
+
+    private Import(final String name, final File file, final String resource) {
+      this.name = name;
+      this.file = file;
+      this.resource = resource;
+    }
+
+
+
+    /**
+     * @return the path of the file, or the name of the resource.
+     */
+    public String getName() {
+      return name;
+    }
+
+
+
+    /**
+     * @return the number of entries read.
+     */
+    public long getEntriesRead() {
+      return readLdifFile == null ? entriesRead : readLdifFile.getNumberOfEntriesRead();
+    }
+
+
+
+    /**
+     * @return the number of entries read and not added.
+     */
+    public long getEntriesFailed() {
+      return entriesFailed.sum();
+    }
+
+
+
+    /**
+     * @return the number of entries that could not be read.
+     */
+    public long getEntriesNotRead() {
+      return entriesNotRead.sum();
+    }
+
+
+
+    /**
+     * @return the number of entries added, once the import has
+     *         completed.
+     */
+    public long getEntriesAdded() {
+      return completed ? getEntriesRead() - getEntriesFailed() : 0L;
+    }
+
+
+
+    /**
+     * @return the time in milliseconds that the import took, or has
+     *         taken so far.
+     */
+    public long getElapsedMillis() {
+      if(startNanos == 0L) {
+        return 0L;
+      }
+      return TimeUnit.NANOSECONDS.toMillis((completed ? endNanos : System.nanoTime()) -
+        startNanos);
+    }
+
+
+
+    /**
+     * @return the exception that stopped the import, or {@code null}.
+     */
+    public Exception getException() {
+      return exception;
+    }
+
+
+
+    /**
+     * @return whether the import has completed without an exception.
+     */
+    public boolean isSuccessful() {
+      return completed && (exception == null);
+    }
+
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String toString() {
+      return "Import [name=" + name + ", entriesRead=" + getEntriesRead() + ", entriesAdded=" +
+        getEntriesAdded() + ", entriesFailed=" + getEntriesFailed() + ", entriesNotRead=" +
+        getEntriesNotRead() + ", elapsedMillis=" + getElapsedMillis() + ", exception=" +
+        exception + "]";
+    }
+
+
+
+    private volatile boolean completed;
+
+
+    private volatile long endNanos;
+
+
+    private final StripedCounter entriesFailed = new StripedCounter();
+
+
+    private final StripedCounter entriesNotRead = new StripedCounter();
+
+
+    private volatile long entriesRead;
+
+
+    private volatile Exception exception;
+
+
+    private final File file;
+
+
+    private final String name;
+
+
+    private volatile ReadLdifFile readLdifFile;
+
+
+    private final String resource;
+
+
+    private volatile long startNanos;
+
+  }
+
+
+
+  /**
+   * Creates a coordinator.
+   *
+   * @param ldapConnectionPool
+   *   the pool from which the connections are taken. Not permitted to
+   *   be {@code null}.
+   * @param connectionsPerImport
+   *   the number of connections used by each import, which must be
+   *   greater than zero and no greater than the maximum size of the
+   *   pool.
+   * @param maxOutstandingPerConnection
+   *   the largest number of add requests outstanding on a connection,
+   *   which must be greater than zero.
+   */
+  public LdifImportCoordinator(final LDAPConnectionPool ldapConnectionPool,
+                               final int connectionsPerImport,
+                               final int maxOutstandingPerConnection) {
+    ensureNotNull(ldapConnectionPool);
+    if(connectionsPerImport <= 0) {
+      throw new IllegalArgumentException("connectionsPerImport must be greater than zero.");
+    }
+    if(connectionsPerImport > ldapConnectionPool.getMaximumAvailableConnections()) {
+      throw new IllegalArgumentException("connectionsPerImport must not be greater than the " +
+        "maximum number of connections of the pool.");
+    }
+    if(maxOutstandingPerConnection <= 0) {
+      throw new IllegalArgumentException("maxOutstandingPerConnection must be greater than zero.");
+    }
+    this.ldapConnectionPool = ldapConnectionPool;
+    this.connectionsPerImport = connectionsPerImport;
+    this.maxOutstandingPerConnection = maxOutstandingPerConnection;
+  }
+
+
+
+  /**
+   * Adds a file to the files and resources to import.
+   *
+   * @param ldifFile
+   *   a file of entries in the form of LDIF. Not permitted to be
+   *   {@code null}.
+   *
+   * @return the statistics of the import of the file.
+   */
+  public synchronized Import addFile(final File ldifFile) {
+    ensureNotNull(ldifFile);
+    final Import i = new Import(ldifFile.getPath(),ldifFile,null);
+    imports.add(i);
+    return i;
+  }
+
+
+
+  /**
+   * Adds a CLASSPATH resource to the files and resources to import.
+   *
+   * @param resourceContainingLdif
+   *   the name of a resource of entries in the form of LDIF. Not
+   *   permitted to be {@code null}.
+   *
+   * @return the statistics of the import of the resource.
+   */
+  public synchronized Import addResource(final String resourceContainingLdif) {
+    ensureNotNull(resourceContainingLdif);
+    final Import i = new Import(resourceContainingLdif,null,resourceContainingLdif);
+    imports.add(i);
+    return i;
+  }
+
+
+
+  /**
+   * Sets the controls added to each add request.
+   *
+   * @param controls
+   *   the controls, or none.
+   */
+  public void setControls(final Control... controls) {
+    this.controls = controls == null ? null : controls.clone();
+  }
+
+
+
+  /**
+   * Sets the listener notified of each entry that is not added or not
+   * read, by any import. It is invoked by the threads of every import,
+   * so it must be thread-safe.
+   *
+   * @param failureListener
+   *   the listener, or {@code null} to only count the failures.
+   */
+  public void setFailureListener(final LdifBulkLoader.FailureListener failureListener) {
+    this.failureListener = failureListener;
+  }
+
+
+
+  /**
+   * Adds a listener to which the progress of every import is reported.
+   * It is invoked by the threads of every import, so it must be
+   * thread-safe.
+   *
+   * @param progressListener
+   *   the listener, which is ignored if {@code null}.
+   */
+  public synchronized void addProgressListener(
+    final ProgressListener<LdifLoadProgressEvent> progressListener) {
+    if(progressListener != null) {
+      progressListeners.add(progressListener);
+    }
+  }
+
+
+
+  /**
+   * @return the largest number of imports that run at once.
+   */
+  public int getMaxConcurrentImports() {
+    return Math.max(1,ldapConnectionPool.getMaximumAvailableConnections() / connectionsPerImport);
+  }
+
+
+
+  /**
+   * Imports the files and resources added, and waits for every import
+   * to complete. The files and resources are then forgotten.
+   *
+   * @return the statistics of the imports, in the order in which the
+   *         files and resources were added.
+   *
+   * @throws InterruptedException
+   *   if the calling thread is interrupted; the imports are
+   *   interrupted.
+   */
+  public List<Import> importAll() throws InterruptedException {
+    final List<Import> toImport;
+    synchronized(this) {
+      toImport = new ArrayList<Import>(imports);
+      imports.clear();
+    }
+    if(toImport.isEmpty()) {
+      return toImport;
+    }
+    final ExecutorService executorService =
+      Executors.newFixedThreadPool(Math.min(toImport.size(),getMaxConcurrentImports()),
+        new ThreadFactory() {
+
+          @Override
+          public Thread newThread(final Runnable runnable) {
+            final Thread thread = new Thread(runnable,"LdifImportCoordinator");
+            thread.setDaemon(true);
+            return thread;
+          }
+        });
+    try {
+      final List<Future<Void>> futures = new ArrayList<Future<Void>>(toImport.size());
+      for(final Import i : toImport) {
+        futures.add(executorService.submit(new Callable<Void>() {
+
+          @Override
+          public Void call() throws InterruptedException {
+            run(i);
+            return null;
+          }
+        }));
+      }
+      for(final Future<Void> future : futures) {
+        try {
+          future.get();
+        } catch(final ExecutionException executionException) {
+          // the exception of an import is recorded in its statistics
+        }
+      }
+    } finally {
+      executorService.shutdownNow();
+    }
+    return Collections.unmodifiableList(toImport);
+  }
+
+
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public synchronized String toString() {
+    return "LdifImportCoordinator [connectionsPerImport=" + connectionsPerImport +
+      ", maxOutstandingPerConnection=" + maxOutstandingPerConnection +
+      ", maxConcurrentImports=" + getMaxConcurrentImports() + ", pending=" + imports.size() +
+      "]";
+  }
+
+
+
+  /**
+   * Imports a file or resource with a new {@code ReadLdifFile}.
+   */
+  private void run(final Import i) throws InterruptedException {
+    final ReadLdifFile readLdifFile = new ReadLdifFile();
+    synchronized(this) {
+      for(final ProgressListener<LdifLoadProgressEvent> l : progressListeners) {
+        readLdifFile.addProgressListener(l);
+      }
+    }
+    final LdifBulkLoader.FailureListener sharedFailureListener = failureListener;
+    final LdifBulkLoader.FailureListener countingFailureListener =
+      new LdifBulkLoader.FailureListener() {
+
+        @Override
+        public void entryNotAdded(final Entry entry, final LDAPResult ldapResult) {
+          i.entriesFailed.increment();
+          if(sharedFailureListener != null) {
+            sharedFailureListener.entryNotAdded(entry,ldapResult);
+          }
+        }
+
+
+
+        @Override
+        public void entryNotRead(final EntrySourceException entrySourceException) {
+          i.entriesNotRead.increment();
+          if(sharedFailureListener != null) {
+            sharedFailureListener.entryNotRead(entrySourceException);
+          }
+        }
+      };
+    i.readLdifFile = readLdifFile;
+    i.startNanos = System.nanoTime();
+    try {
+      if(i.file != null) {
+        readLdifFile.addEntriesFromFile(ldapConnectionPool,i.file,controls,connectionsPerImport,
+          maxOutstandingPerConnection,countingFailureListener);
+      } else {
+        readLdifFile.addEntriesInFile(ldapConnectionPool,i.resource,controls,
+          connectionsPerImport,maxOutstandingPerConnection,countingFailureListener);
+      }
+    } catch(final InterruptedException interruptedException) {
+      i.exception = interruptedException;
+      throw interruptedException;
+    } catch(final Exception exception) {
+      i.exception = exception;
+    } finally {
+      i.entriesRead = readLdifFile.getNumberOfEntriesRead();
+      i.readLdifFile = null;
+      i.endNanos = System.nanoTime();
+      i.completed = true;
+    }
+  }
+
+
+
+  private final int connectionsPerImport;
+
+
+  private volatile Control[] controls;
+
+
+  private volatile LdifBulkLoader.FailureListener failureListener;
+
+
+  private final List<Import> imports = new ArrayList<Import>();
+
+
+  private final LDAPConnectionPool ldapConnectionPool;
+
+
+  private final int maxOutstandingPerConnection;
+
+
+  private final List<ProgressListener<LdifLoadProgressEvent>> progressListeners =
+    new ArrayList<ProgressListener<LdifLoadProgressEvent>>();
+
+}
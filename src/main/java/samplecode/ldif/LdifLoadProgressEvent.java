@@ -7,6 +7,15 @@ package samplecode.ldif;
 import samplecode.listener.ProgressEvent;
 
 
+/**
+ * The progress of a load of LDIF: the entries read and applied so far,
+ * the bytes of LDIF consumed, the current rate, and the estimated time
+ * until the load completes. A quantity that is not known is negative.
+ * The progress message is a summary of the quantities, suitable for a
+ * log.
+ *
+ * @see LdifLoadProgressReporter
+ */
 public class LdifLoadProgressEvent implements ProgressEvent<String> {
 
   /**
@@ -16,6 +25,65 @@ public class LdifLoadProgressEvent implements ProgressEvent<String> {
    */
   public LdifLoadProgressEvent(final String progressMessage) {
     this.progressMessage = progressMessage;
+    this.entriesRead = -1L;
+    this.entriesApplied = -1L;
+    this.bytesConsumed = -1L;
+    this.totalBytes = -1L;
+    this.elapsedMillis = -1L;
+    this.currentRate = -1.0;
+    this.etaMillis = -1L;
+  }
+
+
+
+  /**
+   * Creates a {@code LdifLoadProgressEvent} from the quantities of a
+   * load.
+   *
+   * @param entriesRead
+   *   the number of entries or change records read.
+   * @param entriesApplied
+   *   the number of entries or change records applied to the server.
+   * @param bytesConsumed
+   *   the number of bytes of LDIF consumed, or a negative number if
+   *   not known.
+   * @param totalBytes
+   *   the size of the LDIF in bytes, or a negative number if not known.
+   * @param elapsedMillis
+   *   the time since the load started.
+   * @param currentRate
+   *   the number of entries applied per second since the previous
+   *   event.
+   * @param etaMillis
+   *   the estimated time until the load completes, or a negative number
+   *   if not known.
+   */
+  public LdifLoadProgressEvent(final long entriesRead, final long entriesApplied,
+                               final long bytesConsumed, final long totalBytes,
+                               final long elapsedMillis, final double currentRate,
+                               final long etaMillis) {
+    this.entriesRead = entriesRead;
+    this.entriesApplied = entriesApplied;
+    this.bytesConsumed = bytesConsumed;
+    this.totalBytes = totalBytes;
+    this.elapsedMillis = elapsedMillis;
+    this.currentRate = currentRate;
+    this.etaMillis = etaMillis;
+    final StringBuilder builder = new StringBuilder();
+    builder.append(String.format("read %d, applied %d entries",entriesRead,entriesApplied));
+    if(bytesConsumed >= 0L) {
+      builder.append(String.format(", consumed %d",bytesConsumed));
+      if(totalBytes >= 0L) {
+        builder.append(String.format(" of %d",totalBytes));
+      }
+      builder.append(" bytes");
+    }
+    builder.append(String.format(" in %.1f s, %.1f entries/s",elapsedMillis / 1000.0,
+      currentRate));
+    if(etaMillis >= 0L) {
+      builder.append(String.format(", %.1f s remaining",etaMillis / 1000.0));
+    }
+    this.progressMessage = builder.toString();
   }
 
 
@@ -24,6 +92,27 @@ public class LdifLoadProgressEvent implements ProgressEvent<String> {
   private final String progressMessage;
 
 
+  private final long bytesConsumed;
+
+
+  private final double currentRate;
+
+
+  private final long elapsedMillis;
+
+
+  private final long entriesApplied;
+
+
+  private final long entriesRead;
+
+
+  private final long etaMillis;
+
+
+  private final long totalBytes;
+
+
 
   /**
    * @return the progressMessage
@@ -33,4 +122,82 @@ public class LdifLoadProgressEvent implements ProgressEvent<String> {
     return progressMessage;
   }
 
+
+
+  /**
+   * @return the number of bytes of LDIF consumed, or a negative number
+   *         if not known.
+   */
+  public final long getBytesConsumed() {
+    return bytesConsumed;
+  }
+
+
+
+  /**
+   * @return the number of entries applied per second since the previous
+   *         event.
+   */
+  public final double getCurrentRate() {
+    return currentRate;
+  }
+
+
+
+  /**
+   * @return the time in milliseconds since the load started.
+   */
+  public final long getElapsedMillis() {
+    return elapsedMillis;
+  }
+
+
+
+  /**
+   * @return the number of entries or change records applied to the
+   *         server.
+   */
+  public final long getEntriesApplied() {
+    return entriesApplied;
+  }
+
+
+
+  /**
+   * @return the number of entries or change records read.
+   */
+  public final long getEntriesRead() {
+    return entriesRead;
+  }
+
+
+
+  /**
+   * @return the estimated time in milliseconds until the load
+   *         completes, or a negative number if not known.
+   */
+  public final long getEtaMillis() {
+    return etaMillis;
+  }
+
+
+
+  /**
+   * @return the size of the LDIF in bytes, or a negative number if not
+   *         known.
+   */
+  public final long getTotalBytes() {
+    return totalBytes;
+  }
+
+
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public String toString() {
+    return "LdifLoadProgressEvent [" + progressMessage + "]";
+  }
+
 }
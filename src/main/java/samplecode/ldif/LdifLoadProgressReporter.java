@@ -0,0 +1,356 @@
+/*
+ * Copyright 2008-2013 UnboundID Corp. All Rights Reserved.
+ */
+/*
+ * Copyright (C) 2008-2013 UnboundID Corp. This program is free
+ * software; you can redistribute it and/or modify it under the terms of
+ * the GNU General Public License (GPLv2 only) or the terms of the GNU
+ * Lesser General Public License (LGPLv2.1 only) as published by the
+ * Free Software Foundation. This program is distributed in the hope
+ * that it will be useful, but WITHOUT ANY WARRANTY; without even the
+ * implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR
+ * PURPOSE. See the GNU General Public License for more details. You
+ * should have received a copy of the GNU General Public License along
+ * with this program; if not, see <http://www.gnu.org/licenses>.
+ */
+
+package samplecode.ldif;
+
+import samplecode.annotation.CodeVersion;
+import samplecode.annotation.Since;
+import samplecode.listener.ProgressListener;
+import samplecode.util.StripedCounter;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import static com.unboundid.util.Validator.ensureNotNull;
+
+
+/**
+ * Counts the progress of a load of LDIF and reports it to progress
+ * listeners at a fixed interval, rather than for every entry, in
+ * {@link LdifLoadProgressEvent LdifLoadProgressEvents}.
+ * <p/>
+ * The loader threads update {@link StripedCounter StripedCounters}, so
+ * that threads reading and applying entries in parallel do not
+ * serialize on a lock; the counters are only summed by the reporting
+ * thread. The events are delivered by a daemon thread of the reporter,
+ * and the last event is delivered by the thread that invokes
+ * {@link #stop}.
+ * <p/>
+ * The estimated time until the load completes is extrapolated from the
+ * bytes consumed, so it is only known when the size of the LDIF is
+ * known and its bytes are counted, either by reading the LDIF through
+ * {@link #countBytes} or by invoking {@link #bytesConsumed}.
+ * <p/>
+ * example usage: <blockquote>
+ * <p/>
+ * <pre>
+ * LdifLoadProgressReporter reporter =
+ *   new LdifLoadProgressReporter(progressListeners,5000L);
+ * reporter.setTotalBytes(ldifFile.length());
+ * LDIFReader reader =
+ *   new LDIFReader(reporter.countBytes(new FileInputStream(ldifFile)));
+ * reporter.start();
+ * try {
+ *   // reporter.entryRead() and reporter.entryApplied() per entry
+ * } finally {
+ *   reporter.stop();
+ * }
+ * </pre>
+ * </blockquote>
+ */
+@Since("Oct 16, 2026")
+@CodeVersion("1.0")
+public final class LdifLoadProgressReporter {
+
+  /**
+   * The interval between progress events used by {@link ReadLdifFile}
+   * unless another is set.
+   */
+  public static final long DEFAULT_INTERVAL_MILLIS = 5000L;
+
+
+
+  /**
+   * Creates a reporter.
+   *
+   * @param progressListeners
+   *   the listeners to which the events are delivered. Not permitted
+   *   to be {@code null}; the list is copied.
+   * @param intervalMillis
+   *   the time between events, which must be greater than zero.
+   */
+  public LdifLoadProgressReporter(
+    final List<ProgressListener<LdifLoadProgressEvent>> progressListeners,
+    final long intervalMillis) {
+    ensureNotNull(progressListeners);
+    if(intervalMillis <= 0L) {
+      throw new IllegalArgumentException("intervalMillis must be greater than zero.");
+    }
+    this.progressListeners = new ArrayList<ProgressListener<LdifLoadProgressEvent>>(progressListeners);
+    this.intervalMillis = intervalMillis;
+  }
+
+
+
+  /**
+   * Sets the size of the LDIF, from which the time until the load
+   * completes is estimated.
+   *
+   * @param totalBytes
+   *   the size in bytes, or a negative number if not known.
+   */
+  public void setTotalBytes(final long totalBytes) {
+    this.totalBytes = totalBytes;
+  }
+
+
+
+  /**
+   * Wraps {@code inputStream} in a stream that counts the bytes read
+   * from it as consumed.
+   *
+   * @param inputStream
+   *   the stream of LDIF. Not permitted to be {@code null}.
+   *
+   * @return the counting stream.
+   */
+  public InputStream countBytes(final InputStream inputStream) {
+    ensureNotNull(inputStream);
+    countingBytes = true;
+    return new FilterInputStream(inputStream) {
+
+      @Override
+      public int read() throws IOException {
+        final int b = super.read();
+        if(b >= 0) {
+          bytesConsumed.increment();
+        }
+        return b;
+      }
+
+
+
+      @Override
+      public int read(final byte[] bytes, final int offset, final int length)
+        throws IOException {
+        final int count = super.read(bytes,offset,length);
+        if(count > 0) {
+          bytesConsumed.add(count);
+        }
+        return count;
+      }
+
+
+
+      @Override
+      public long skip(final long n) throws IOException {
+        final long count = super.skip(n);
+        bytesConsumed.add(count);
+        return count;
+      }
+    };
+  }
+
+
+
+  /**
+   * Starts delivering events at the interval. Nothing is started if
+   * there are no listeners.
+   */
+  public synchronized void start() {
+    startNanos = System.nanoTime();
+    lastNanos = startNanos;
+    lastApplied = entriesApplied.sum();
+    if(progressListeners.isEmpty() || (scheduler != null)) {
+      return;
+    }
+    scheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+
+      @Override
+      public Thread newThread(final Runnable runnable) {
+        final Thread thread = new Thread(runnable,"LdifLoadProgressReporter");
+        thread.setDaemon(true);
+        return thread;
+      }
+    });
+    scheduler.scheduleAtFixedRate(new Runnable() {
+
+      @Override
+      public void run() {
+        report();
+      }
+    },intervalMillis,intervalMillis,TimeUnit.MILLISECONDS);
+  }
+
+
+
+  /**
+   * Stops delivering events at the interval, and delivers a last event.
+   *
+   * @return the last event.
+   */
+  public LdifLoadProgressEvent stop() {
+    final ScheduledExecutorService stopped;
+    synchronized(this) {
+      stopped = scheduler;
+      scheduler = null;
+    }
+    if(stopped != null) {
+      stopped.shutdown();
+      try {
+        stopped.awaitTermination(intervalMillis,TimeUnit.MILLISECONDS);
+      } catch(final InterruptedException interruptedException) {
+        Thread.currentThread().interrupt();
+      }
+    }
+    return report();
+  }
+
+
+
+  /**
+   * Counts an entry or change record read.
+   */
+  public void entryRead() {
+    entriesRead.increment();
+  }
+
+
+
+  /**
+   * Counts an entry or change record applied to the server.
+   */
+  public void entryApplied() {
+    entriesApplied.increment();
+  }
+
+
+
+  /**
+   * Counts entries or change records applied to the server.
+   *
+   * @param count
+   *   the number of entries or change records applied.
+   */
+  public void entriesApplied(final long count) {
+    entriesApplied.add(count);
+  }
+
+
+
+  /**
+   * Counts bytes of LDIF consumed by a reader that does not read
+   * through {@link #countBytes}.
+   *
+   * @param count
+   *   the number of bytes consumed since the last invocation.
+   */
+  public void bytesConsumed(final long count) {
+    countingBytes = true;
+    bytesConsumed.add(count);
+  }
+
+
+
+  /**
+   * @return the number of entries or change records read.
+   */
+  public long getEntriesRead() {
+    return entriesRead.sum();
+  }
+
+
+
+  /**
+   * @return the number of entries or change records applied.
+   */
+  public long getEntriesApplied() {
+    return entriesApplied.sum();
+  }
+
+
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public String toString() {
+    return "LdifLoadProgressReporter [intervalMillis=" + intervalMillis + ", entriesRead=" +
+      entriesRead + ", entriesApplied=" + entriesApplied + ", bytesConsumed=" +
+      bytesConsumed + "]";
+  }
+
+
+
+  /**
+   * Creates an event from the counters and delivers it.
+   */
+  private synchronized LdifLoadProgressEvent report() {
+    final long now = System.nanoTime();
+    final long applied = entriesApplied.sum();
+    final long bytes = countingBytes ? bytesConsumed.sum() : -1L;
+    final long elapsedNanos = now - startNanos;
+    final long intervalNanos = now - lastNanos;
+    final double currentRate = intervalNanos <= 0L ? 0.0 :
+      (applied - lastApplied) * (double) TimeUnit.SECONDS.toNanos(1L) / intervalNanos;
+    long etaMillis = -1L;
+    if((bytes > 0L) && (totalBytes >= bytes)) {
+      etaMillis = TimeUnit.NANOSECONDS.toMillis((long) (elapsedNanos *
+        ((double) (totalBytes - bytes) / bytes)));
+    }
+    lastNanos = now;
+    lastApplied = applied;
+    final LdifLoadProgressEvent progressEvent = new LdifLoadProgressEvent(entriesRead.sum(),
+      applied,bytes,totalBytes,TimeUnit.NANOSECONDS.toMillis(elapsedNanos),currentRate,
+      etaMillis);
+    for(final ProgressListener<LdifLoadProgressEvent> progressListener : progressListeners) {
+      progressListener.progress(progressEvent);
+    }
+    return progressEvent;
+  }
+
+
+
+  private final StripedCounter bytesConsumed = new StripedCounter();
+
+
+  private volatile boolean countingBytes;
+
+
+  private final StripedCounter entriesApplied = new StripedCounter();
+
+
+  private final StripedCounter entriesRead = new StripedCounter();
+
+
+  private final long intervalMillis;
+
+
+  private long lastApplied;
+
+
+  private long lastNanos;
+
+
+  private final List<ProgressListener<LdifLoadProgressEvent>> progressListeners;
+
+
+  private ScheduledExecutorService scheduler;
+
+
+  private long startNanos;
+
+
+  private volatile long totalBytes = -1L;
+
+}
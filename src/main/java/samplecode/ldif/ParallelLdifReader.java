@@ -0,0 +1,565 @@
+/*
+ * Copyright 2008-2013 UnboundID Corp. All Rights Reserved.
+ */
+/*
+ * Copyright (C) 2008-2013 UnboundID Corp. This program is free
+ * software; you can redistribute it and/or modify it under the terms of
+ * the GNU General Public License (GPLv2 only) or the terms of the GNU
+ * Lesser General Public License (LGPLv2.1 only) as published by the
+ * Free Software Foundation. This program is distributed in the hope
+ * that it will be useful, but WITHOUT ANY WARRANTY; without even the
+ * implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR
+ * PURPOSE. See the GNU General Public License for more details. You
+ * should have received a copy of the GNU General Public License along
+ * with this program; if not, see <http://www.gnu.org/licenses>.
+ */
+
+package samplecode.ldif;
+
+import com.unboundid.ldap.sdk.Entry;
+import com.unboundid.ldap.sdk.EntrySource;
+import com.unboundid.ldap.sdk.EntrySourceException;
+import com.unboundid.ldif.LDIFAddChangeRecord;
+import com.unboundid.ldif.LDIFChangeRecord;
+import com.unboundid.ldif.LDIFException;
+import com.unboundid.ldif.LDIFReader;
+import com.unboundid.ldif.LDIFRecord;
+import samplecode.annotation.CodeVersion;
+import samplecode.annotation.Since;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+import static com.unboundid.util.Validator.ensureNotNull;
+
+
+/**
+ * Reads the records of an LDIF file with several threads. The file is
+ * memory-mapped and split into chunks that end at record boundaries,
+ * that is, after a blank line that is not followed by a continuation
+ * line, and the chunks are parsed in parallel into {@link Entry} and
+ * {@link LDIFChangeRecord} objects while the records of the chunks
+ * parsed before are consumed.
+ * <p/>
+ * The records are returned in the order of the file when the reader is
+ * created with {@code preserveOrder}; otherwise the records of a chunk
+ * are returned in order, but the chunks are returned in the order in
+ * which their parsing completes, so that a slow chunk does not hold
+ * back the others.
+ * <p/>
+ * A record that cannot be parsed is reported by an
+ * {@link LDIFException} whose message names the byte offset of its
+ * chunk, because its line number is counted from the start of the
+ * chunk. A record that a single-threaded {@link LDIFReader} would
+ * reject as not continuable ends its chunk only.
+ * <p/>
+ * The reader is also an {@link EntrySource}, so that it can be passed
+ * to the {@link LdifBulkLoader}. The methods that read records are
+ * meant to be invoked by one thread.
+ * <p/>
+ * example usage: <blockquote>
+ * <p/>
+ * <pre>
+ * ParallelLdifReader reader = new ParallelLdifReader(ldifFile,4,true);
+ * try {
+ *   Entry entry;
+ *   while((entry = reader.readEntry()) != null) {
+ *     ...
+ *   }
+ * } finally {
+ *   reader.close();
+ * }
+ * </pre>
+ * </blockquote>
+ */
+@Since("Oct 16, 2026")
+@CodeVersion("1.0")
+public final class ParallelLdifReader extends EntrySource {
+
+  /**
+   * The size in bytes of a chunk when none is specified.
+   */
+  public static final int DEFAULT_CHUNK_SIZE = 4 * 1024 * 1024;
+
+
+
+  /**
+   * Creates a reader with chunks of {@link #DEFAULT_CHUNK_SIZE} bytes.
+   *
+   * @param ldifFile
+   *   the LDIF file. Not permitted to be {@code null}.
+   * @param parseThreads
+   *   the number of threads that parse chunks, which must be greater
+   *   than zero.
+   * @param preserveOrder
+   *   whether the records are returned in the order of the file.
+   *
+   * @throws IOException
+   *   if the file cannot be opened.
+   */
+  public ParallelLdifReader(final File ldifFile, final int parseThreads,
+                            final boolean preserveOrder) throws IOException {
+    this(ldifFile,parseThreads,preserveOrder,DEFAULT_CHUNK_SIZE);
+  }
+
+
+
+  /**
+   * Creates a reader.
+   *
+   * @param ldifFile
+   *   the LDIF file. Not permitted to be {@code null}.
+   * @param parseThreads
+   *   the number of threads that parse chunks, which must be greater
+   *   than zero.
+   * @param preserveOrder
+   *   whether the records are returned in the order of the file.
+   * @param chunkSize
+   *   the size in bytes after which a chunk ends at the next record
+   *   boundary, which must be greater than zero.
+   *
+   * @throws IOException
+   *   if the file cannot be opened.
+   */
+  public ParallelLdifReader(final File ldifFile, final int parseThreads,
+                            final boolean preserveOrder, final int chunkSize) throws IOException {
+    ensureNotNull(ldifFile);
+    if(parseThreads <= 0) {
+      throw new IllegalArgumentException("parseThreads must be greater than zero.");
+    }
+    if(chunkSize <= 0) {
+      throw new IllegalArgumentException("chunkSize must be greater than zero.");
+    }
+    this.preserveOrder = preserveOrder;
+    this.chunkSize = chunkSize;
+    this.maxChunksInFlight = 2 * parseThreads;
+    this.randomAccessFile = new RandomAccessFile(ldifFile,"r");
+    this.channel = randomAccessFile.getChannel();
+    this.size = channel.size();
+    this.executorService = Executors.newFixedThreadPool(parseThreads,new ThreadFactory() {
+
+      @Override
+      public Thread newThread(final Runnable runnable) {
+        final Thread thread = new Thread(runnable,"ParallelLdifReader");
+        thread.setDaemon(true);
+        return thread;
+      }
+    });
+    this.completionService = new ExecutorCompletionService<List<Object>>(executorService);
+  }
+
+
+
+  /**
+   * Reads the next record of the file.
+   *
+   * @return an {@link Entry} or an {@link LDIFChangeRecord}, or
+   *         {@code null} at the end of the file.
+   *
+   * @throws IOException
+   *   if the file cannot be read.
+   * @throws LDIFException
+   *   if the next record cannot be parsed.
+   */
+  public LDIFRecord readLDIFRecord() throws IOException, LDIFException {
+    while(true) {
+      if((records != null) && records.hasNext()) {
+        final Object record = records.next();
+        if(record instanceof LDIFException) {
+          throw (LDIFException) record;
+        }
+        if(record instanceof IOException) {
+          throw (IOException) record;
+        }
+        ++recordsRead;
+        return (LDIFRecord) record;
+      }
+      submitChunks();
+      if(chunksInFlight == 0) {
+        return null;
+      }
+      final Future<List<Object>> future;
+      try {
+        future = preserveOrder ? inOrder.removeFirst() : completionService.take();
+        --chunksInFlight;
+        records = future.get().iterator();
+        bytesConsumed += chunkLengths.remove(future);
+      } catch(final InterruptedException interruptedException) {
+        Thread.currentThread().interrupt();
+        throw new InterruptedIOException();
+      } catch(final ExecutionException executionException) {
+        throw new IOException(executionException.getCause());
+      }
+    }
+  }
+
+
+
+  /**
+   * Reads the next entry of the file. An add change record is returned
+   * as the entry it adds.
+   *
+   * @return the entry, or {@code null} at the end of the file.
+   *
+   * @throws IOException
+   *   if the file cannot be read.
+   * @throws LDIFException
+   *   if the next record cannot be parsed or is a change record other
+   *   than an add.
+   */
+  public Entry readEntry() throws IOException, LDIFException {
+    final LDIFRecord record = readLDIFRecord();
+    if((record == null) || (record instanceof Entry)) {
+      return (Entry) record;
+    }
+    if(record instanceof LDIFAddChangeRecord) {
+      return ((LDIFAddChangeRecord) record).getEntryToAdd();
+    }
+    throw new LDIFException("The record for " + record.getDN() +
+      " is a change record that is not an add.",-1L,true);
+  }
+
+
+
+  /**
+   * Reads the next change record of the file. An entry is returned as
+   * an add change record.
+   *
+   * @return the change record, or {@code null} at the end of the file.
+   *
+   * @throws IOException
+   *   if the file cannot be read.
+   * @throws LDIFException
+   *   if the next record cannot be parsed.
+   */
+  public LDIFChangeRecord readChangeRecord() throws IOException, LDIFException {
+    final LDIFRecord record = readLDIFRecord();
+    if(record instanceof Entry) {
+      return new LDIFAddChangeRecord((Entry) record);
+    }
+    return (LDIFChangeRecord) record;
+  }
+
+
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public Entry nextEntry() throws EntrySourceException {
+    try {
+      return readEntry();
+    } catch(final LDIFException ldifException) {
+      throw new EntrySourceException(ldifException.mayContinueReading(),ldifException);
+    } catch(final IOException ioException) {
+      throw new EntrySourceException(false,ioException);
+    }
+  }
+
+
+
+  /**
+   * Stops the parsing threads and closes the file.
+   */
+  @Override
+  public void close() {
+    executorService.shutdownNow();
+    try {
+      channel.close();
+      randomAccessFile.close();
+    } catch(final IOException ioException) {
+      // nothing more can be read from the file
+    }
+  }
+
+
+
+  /**
+   * @return the number of chunks into which the file was split so far.
+   */
+  public int getChunks() {
+    return chunks;
+  }
+
+
+
+  /**
+   * @return the number of bytes of the chunks from which records have
+   *         been returned, which reaches the size of the file when every
+   *         record has been returned.
+   */
+  public long getBytesConsumed() {
+    return bytesConsumed;
+  }
+
+
+
+  /**
+   * @return the number of records returned.
+   */
+  public long getRecordsRead() {
+    return recordsRead;
+  }
+
+
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public String toString() {
+    return "ParallelLdifReader [size=" + size + ", chunkSize=" + chunkSize + ", preserveOrder=" +
+      preserveOrder + ", chunks=" + chunks + ", recordsRead=" + recordsRead + "]";
+  }
+
+
+
+  /**
+   * Splits the file into chunks until enough are parsed in advance of
+   * the records consumed.
+   */
+  private void submitChunks() throws IOException {
+    while((chunksInFlight < maxChunksInFlight) && (nextChunkStart < size)) {
+      final long start = nextChunkStart;
+      final long end = nextBoundary(Math.min(size,start + chunkSize));
+      if(end - start > Integer.MAX_VALUE) {
+        throw new IOException("The record that starts after byte " + start +
+          " is too large to be mapped.");
+      }
+      final MappedByteBuffer chunk =
+        channel.map(FileChannel.MapMode.READ_ONLY,start,end - start);
+      final Callable<List<Object>> parser = new Callable<List<Object>>() {
+
+        @Override
+        public List<Object> call() {
+          return parse(chunk,"In the chunk that starts at byte " + start);
+        }
+      };
+      final Future<List<Object>> future = preserveOrder ?
+        executorService.submit(parser) : completionService.submit(parser);
+      if(preserveOrder) {
+        inOrder.add(future);
+      }
+      chunkLengths.put(future,end - start);
+      nextChunkStart = end;
+      ++chunksInFlight;
+      ++chunks;
+    }
+  }
+
+
+
+  /**
+   * Finds the end of the record that includes the byte at
+   * {@code position}: the offset after a blank line that is not
+   * followed by a continuation line, or the size of the file.
+   */
+  private long nextBoundary(final long position) throws IOException {
+    if(position >= size) {
+      return size;
+    }
+    // the line breaks seen since the last byte of text
+    int lineBreaks = 0;
+    long candidate = -1L;
+    long offset = Math.max(0L,position - 2L);
+    while(offset < size) {
+      final int length = (int) Math.min(SCAN_WINDOW_SIZE,size - offset);
+      final MappedByteBuffer window = channel.map(FileChannel.MapMode.READ_ONLY,offset,length);
+      for(int i = 0; i < length; ++i) {
+        final byte b = window.get(i);
+        if(candidate >= 0L) {
+          if(b != ' ') {
+            return candidate;
+          }
+          candidate = -1L;
+        }
+        if(b == '\n') {
+          ++lineBreaks;
+          if((lineBreaks >= 2) && (offset + i + 1 > position)) {
+            candidate = offset + i + 1;
+          }
+        } else if(b != '\r') {
+          lineBreaks = 0;
+        }
+      }
+      offset += length;
+    }
+    return size;
+  }
+
+
+
+  /**
+   * Parses the records of a chunk. The message of an exception is
+   * prefixed with {@code location}, which describes the chunk.
+   *
+   * @return the records, and the exception that ended the chunk or
+   *         replaced a record that could not be parsed.
+   */
+  static List<Object> parse(final ByteBuffer chunk, final String location) {
+    final List<Object> parsed = new ArrayList<Object>();
+    final LDIFReader reader = new LDIFReader(new ByteBufferInputStream(chunk));
+    while(true) {
+      try {
+        final LDIFRecord record = reader.readLDIFRecord();
+        if(record == null) {
+          break;
+        }
+        parsed.add(record);
+      } catch(final LDIFException ldifException) {
+        parsed.add(new LDIFException(location + ": " +
+          ldifException.getMessage(),ldifException.getLineNumber(),
+          ldifException.mayContinueReading(),ldifException.getDataLines(),ldifException));
+        if(!ldifException.mayContinueReading()) {
+          break;
+        }
+      } catch(final IOException ioException) {
+        parsed.add(ioException);
+        break;
+      }
+    }
+    try {
+      reader.close();
+    } catch(final IOException ioException) {
+      // the chunk is in memory
+    }
+    return parsed;
+  }
+
+
+
+  /**
+   * An input stream over the bytes of a buffer.
+   */
+  private static final class ByteBufferInputStream extends InputStream {
+
+    private ByteBufferInputStream(final ByteBuffer buffer) {
+      this.buffer = buffer;
+    }
+
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int read() {
+      return buffer.hasRemaining() ? (buffer.get() & 0xFF) : -1;
+    }
+
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int read(final byte[] bytes, final int offset, final int length) {
+      if(length == 0) {
+        return 0;
+      }
+      if(!buffer.hasRemaining()) {
+        return -1;
+      }
+      final int count = Math.min(length,buffer.remaining());
+      buffer.get(bytes,offset,count);
+      return count;
+    }
+
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int available() {
+      return buffer.remaining();
+    }
+
+
+
+    private final ByteBuffer buffer;
+
+  }
+
+
+
+  /**
+   * The number of bytes mapped at a time while looking for the end of a
+   * chunk.
+   */
+  private static final int SCAN_WINDOW_SIZE = 64 * 1024;
+
+
+  private final FileChannel channel;
+
+
+  private volatile long bytesConsumed;
+
+
+  // the length of each chunk being parsed
+  private final Map<Future<List<Object>>,Long> chunkLengths =
+    new IdentityHashMap<Future<List<Object>>,Long>();
+
+
+  private final int chunkSize;
+
+
+  private int chunks;
+
+
+  private int chunksInFlight;
+
+
+  private final CompletionService<List<Object>> completionService;
+
+
+  private final ExecutorService executorService;
+
+
+  // the chunks being parsed, in the order of the file, when the order
+  // is preserved
+  private final LinkedList<Future<List<Object>>> inOrder =
+    new LinkedList<Future<List<Object>>>();
+
+
+  private final int maxChunksInFlight;
+
+
+  private long nextChunkStart;
+
+
+  private final boolean preserveOrder;
+
+
+  private final RandomAccessFile randomAccessFile;
+
+
+  private Iterator<Object> records;
+
+
+  private long recordsRead;
+
+
+  private final long size;
+
+}
@@ -0,0 +1,667 @@
+/*
+ * Copyright 2008-2013 UnboundID Corp. All Rights Reserved.
+ */
+/*
+ * Copyright (C) 2008-2013 UnboundID Corp. This program is free
+ * software; you can redistribute it and/or modify it under the terms of
+ * the GNU General Public License (GPLv2 only) or the terms of the GNU
+ * Lesser General Public License (LGPLv2.1 only) as published by the
+ * Free Software Foundation. This program is distributed in the hope
+ * that it will be useful, but WITHOUT ANY WARRANTY; without even the
+ * implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR
+ * PURPOSE. See the GNU General Public License for more details. You
+ * should have received a copy of the GNU General Public License along
+ * with this program; if not, see <http://www.gnu.org/licenses>.
+ */
+
+package samplecode.ldif;
+
+import com.unboundid.ldap.sdk.AddRequest;
+import com.unboundid.ldap.sdk.AsyncRequestID;
+import com.unboundid.ldap.sdk.AsyncResultListener;
+import com.unboundid.ldap.sdk.Control;
+import com.unboundid.ldap.sdk.DN;
+import com.unboundid.ldap.sdk.DeleteRequest;
+import com.unboundid.ldap.sdk.DisconnectHandler;
+import com.unboundid.ldap.sdk.DisconnectType;
+import com.unboundid.ldap.sdk.LDAPConnection;
+import com.unboundid.ldap.sdk.LDAPConnectionOptions;
+import com.unboundid.ldap.sdk.LDAPException;
+import com.unboundid.ldap.sdk.LDAPResult;
+import com.unboundid.ldap.sdk.ModifyDNRequest;
+import com.unboundid.ldap.sdk.ModifyRequest;
+import com.unboundid.ldap.sdk.ResultCode;
+import com.unboundid.ldap.sdk.UpdatableLDAPRequest;
+import com.unboundid.ldif.LDIFAddChangeRecord;
+import com.unboundid.ldif.LDIFChangeRecord;
+import com.unboundid.ldif.LDIFDeleteChangeRecord;
+import com.unboundid.ldif.LDIFException;
+import com.unboundid.ldif.LDIFModifyChangeRecord;
+import com.unboundid.ldif.LDIFModifyDNChangeRecord;
+import com.unboundid.ldif.LDIFReader;
+import com.unboundid.util.StaticUtils;
+import samplecode.annotation.CodeVersion;
+import samplecode.annotation.Since;
+import samplecode.util.TokenBucket;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static com.unboundid.util.Validator.ensureNotNull;
+
+
+/**
+ * Applies the change records read from LDIF to a directory server at a
+ * target rate, for example to replay a production change stream into a
+ * staging server at a realistic load.
+ * <p/>
+ * The start of each change is paced by a {@link TokenBucket}, so that
+ * the rate is the target rate on average and bursts of up to the burst
+ * size follow a quiet period; the time spent parsing and waiting for
+ * responses does not slow the rate down, because up to the concurrency
+ * setting of changes are outstanding on the connection at once.
+ * <p/>
+ * A change is not sent while a change that it depends on is
+ * outstanding: a change to the same entry, to its parent, or to one of
+ * its children. The order of the changes that depend on one another is
+ * therefore the order of the input.
+ * <p/>
+ * A change that fails does not stop the stream: it is counted and
+ * reported to the {@link FailureListener}, if any.
+ * <p/>
+ * example usage: <blockquote>
+ * <p/>
+ * <pre>
+ * RateLimitedChangeApplier applier =
+ *   new RateLimitedChangeApplier(ldapConnection,500.0,50,16);
+ * applier.apply(new LDIFReader(changesFile));
+ * System.out.println(applier.getAchievedRate());
+ * </pre>
+ * </blockquote>
+ */
+@Since("Oct 16, 2026")
+@CodeVersion("1.0")
+public final class RateLimitedChangeApplier {
+
+  /**
+   * Notified of each change that is not applied. The methods are
+   * invoked by the thread that invokes
+   * {@link RateLimitedChangeApplier#apply} and by the thread that reads
+   * the responses of the connection, so they must be thread-safe.
+   */
+  public interface FailureListener {
+
+    /**
+     * The server rejected a change, or the change could not be sent or
+     * did not complete.
+     *
+     * @param changeRecord
+     *   the change that was not applied
+     * @param ldapResult
+     *   the result of the change
+     */
+    void changeNotApplied(LDIFChangeRecord changeRecord, LDAPResult ldapResult);
+
+
+
+    /**
+     * A change record could not be read.
+     *
+     * @param ldifException
+     *   the exception thrown by the reader
+     */
+    void changeNotRead(LDIFException ldifException);
+
+  }
+
+
+
+  /**
+   * Creates an applier.
+   *
+   * @param ldapConnection
+   *   the connection on which the changes are sent. Not permitted to
+   *   be {@code null}.
+   * @param changesPerSecond
+   *   the target rate, or zero for no limit.
+   * @param burst
+   *   the largest number of changes started at once after a quiet
+   *   period, which must be greater than zero.
+   * @param concurrency
+   *   the largest number of changes outstanding, which must be greater
+   *   than zero.
+   */
+  public RateLimitedChangeApplier(final LDAPConnection ldapConnection,
+                                  final double changesPerSecond, final int burst,
+                                  final int concurrency) {
+    ensureNotNull(ldapConnection);
+    if(changesPerSecond < 0.0) {
+      throw new IllegalArgumentException("changesPerSecond must not be negative.");
+    }
+    if(concurrency <= 0) {
+      throw new IllegalArgumentException("concurrency must be greater than zero.");
+    }
+    this.ldapConnection = ldapConnection;
+    this.tokenBucket = changesPerSecond == 0.0 ? null : new TokenBucket(changesPerSecond,burst);
+    this.concurrency = concurrency;
+  }
+
+
+
+  /**
+   * Reads the change records from {@code ldifReader} and applies them.
+   * This method returns when every change read has completed. The
+   * reader is not closed.
+   *
+   * @param ldifReader
+   *   the reader of the changes. Not permitted to be {@code null}.
+   *
+   * @return the number of change records read.
+   *
+   * @throws IOException
+   *   if the changes cannot be read.
+   * @throws LDIFException
+   *   if the changes cannot continue to be read; the changes read
+   *   before have completed.
+   * @throws InterruptedException
+   *   if the calling thread is interrupted.
+   */
+  public long apply(final LDIFReader ldifReader)
+    throws IOException, LDIFException, InterruptedException {
+    ensureNotNull(ldifReader);
+    final LDAPConnectionOptions originalOptions = ldapConnection.getConnectionOptions();
+    final LDAPConnectionOptions options = originalOptions.duplicate();
+    options.setDisconnectHandler(newDisconnectHandler(originalOptions.getDisconnectHandler()));
+    ldapConnection.setConnectionOptions(options);
+    final long readBefore = read;
+    try {
+      while(true) {
+        final LDIFChangeRecord changeRecord;
+        try {
+          changeRecord = ldifReader.readChangeRecord();
+        } catch(final LDIFException ldifException) {
+          synchronized(this) {
+            ++notRead;
+          }
+          if(failureListener != null) {
+            failureListener.changeNotRead(ldifException);
+          }
+          if(ldifException.mayContinueReading()) {
+            continue;
+          }
+          throw ldifException;
+        }
+        if(changeRecord == null) {
+          break;
+        }
+        synchronized(this) {
+          ++read;
+        }
+        if(progressReporter != null) {
+          progressReporter.entryRead();
+        }
+        send(new PendingChange(changeRecord));
+      }
+    } finally {
+      synchronized(this) {
+        while(outstanding.size() > 0) {
+          wait();
+        }
+      }
+      ldapConnection.setConnectionOptions(originalOptions);
+    }
+    return read - readBefore;
+  }
+
+
+
+  /**
+   * Returns a handler that completes the changes outstanding on the
+   * connection when it is lost, because they are never answered, and
+   * then passes the disconnect on to {@code callerHandler}.
+   *
+   * @param callerHandler
+   *   the disconnect handler of the caller, or {@code null}.
+   */
+  private DisconnectHandler newDisconnectHandler(final DisconnectHandler callerHandler) {
+    return new DisconnectHandler() {
+
+      @Override
+      public void handleDisconnect(final LDAPConnection ldapConnection, final String host,
+                                   final int port, final DisconnectType disconnectType,
+                                   final String message, final Throwable cause) {
+        final List<PendingChange> lost;
+        synchronized(RateLimitedChangeApplier.this) {
+          lost = new ArrayList<PendingChange>(outstanding);
+        }
+        final LDAPResult ldapResult = new LDAPResult(-1,ResultCode.SERVER_DOWN,
+          "The connection was lost before the response was received.",null,(String[]) null,
+          (Control[]) null);
+        for(final PendingChange change : lost) {
+          change.complete(ldapResult);
+        }
+        if(callerHandler != null) {
+          callerHandler.handleDisconnect(ldapConnection,host,port,disconnectType,message,cause);
+        }
+      }
+    };
+  }
+
+
+
+  /**
+   * Sets the controls added to each request.
+   *
+   * @param controls
+   *   the controls, or none.
+   */
+  public void setControls(final Control... controls) {
+    this.controls = controls == null ? new Control[0] : controls.clone();
+  }
+
+
+
+  /**
+   * Sets the listener notified of each change that is not applied.
+   *
+   * @param failureListener
+   *   the listener, or {@code null} to only count the failures.
+   */
+  public void setFailureListener(final FailureListener failureListener) {
+    this.failureListener = failureListener;
+  }
+
+
+
+  /**
+   * Sets the reporter that counts the changes read and applied.
+   *
+   * @param progressReporter
+   *   the reporter, or {@code null}.
+   */
+  public void setProgressReporter(final LdifLoadProgressReporter progressReporter) {
+    this.progressReporter = progressReporter;
+  }
+
+
+
+  /**
+   * Sets the time after which a change without a response is reported
+   * as failed with the result code {@code TIMEOUT}.
+   *
+   * @param responseTimeoutMillis
+   *   the time in milliseconds, zero for no time limit, or a negative
+   *   value to use the response timeout of the connection.
+   */
+  public void setResponseTimeoutMillis(final long responseTimeoutMillis) {
+    this.responseTimeoutMillis = responseTimeoutMillis;
+  }
+
+
+
+  /**
+   * @return the number of changes applied.
+   */
+  public synchronized long getApplied() {
+    return applied;
+  }
+
+
+
+  /**
+   * @return the number of changes that were read but not applied.
+   */
+  public synchronized long getFailed() {
+    return failed;
+  }
+
+
+
+  /**
+   * @return the number of change records that could not be read.
+   */
+  public synchronized long getNotRead() {
+    return notRead;
+  }
+
+
+
+  /**
+   * @return the number of change records read.
+   */
+  public synchronized long getRead() {
+    return read;
+  }
+
+
+
+  /**
+   * Retrieves the rate at which changes completed, from the start of the
+   * first change to the completion of the last, whether they were
+   * applied or failed.
+   *
+   * @return the number of changes per second, or zero if none has
+   *         completed.
+   */
+  public synchronized double getAchievedRate() {
+    final long completed = applied + failed;
+    if(completed == 0L) {
+      return 0.0;
+    }
+    final long elapsedNanos = Math.max(1L,lastCompletionNanos - firstStartNanos);
+    return completed * (double) TimeUnit.SECONDS.toNanos(1L) / elapsedNanos;
+  }
+
+
+
+  /**
+   * @return the total time in milliseconds that changes waited for the
+   *         rate limit.
+   */
+  public long getThrottledMillis() {
+    return tokenBucket == null ? 0L :
+      TimeUnit.NANOSECONDS.toMillis(tokenBucket.getWaitedNanos());
+  }
+
+
+
+  /**
+   * @return the total time in milliseconds that changes waited for a
+   *         change they depend on, or for the concurrency limit.
+   */
+  public synchronized long getBlockedMillis() {
+    return TimeUnit.NANOSECONDS.toMillis(blockedNanos);
+  }
+
+
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public synchronized String toString() {
+    return String.format("RateLimitedChangeApplier [read=%d, applied=%d, failed=%d, " +
+      "notRead=%d, achievedRate=%.1f/s, throttledMillis=%d, blockedMillis=%d]",read,applied,
+      failed,notRead,getAchievedRate(),getThrottledMillis(),getBlockedMillis());
+  }
+
+
+
+  /**
+   * Waits for the rate limit, the concurrency limit and the changes on
+   * which {@code change} depends, then sends it.
+   */
+  private void send(final PendingChange change) throws InterruptedException {
+    if(tokenBucket != null) {
+      tokenBucket.acquire();
+    }
+    synchronized(this) {
+      final long blockedSince = System.nanoTime();
+      while((outstanding.size() >= concurrency) || conflicts(change)) {
+        wait();
+      }
+      final long now = System.nanoTime();
+      blockedNanos += now - blockedSince;
+      if(applied + failed + outstanding.size() == 0L) {
+        firstStartNanos = now;
+      }
+      outstanding.add(change);
+      for(final String key : change.keys) {
+        increment(outstandingDNs,key);
+      }
+      for(final String key : change.parentKeys) {
+        increment(outstandingParents,key);
+      }
+    }
+    try {
+      final UpdatableLDAPRequest request = toRequest(change.changeRecord);
+      request.setControls(controls);
+      if(responseTimeoutMillis >= 0L) {
+        request.setResponseTimeoutMillis(responseTimeoutMillis);
+      }
+      sendAsync(ldapConnection,request,change);
+    } catch(final LDAPException ldapException) {
+      change.complete(ldapException.toLDAPResult());
+    }
+  }
+
+
+
+  /**
+   * Whether an outstanding change touches the entry of {@code change},
+   * its parent, or one of its children.
+   */
+  private boolean conflicts(final PendingChange change) {
+    for(final String key : change.keys) {
+      if(outstandingDNs.containsKey(key) || outstandingParents.containsKey(key)) {
+        return true;
+      }
+    }
+    for(final String key : change.parentKeys) {
+      if(outstandingDNs.containsKey(key)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+
+
+  private synchronized void completed(final PendingChange change, final LDAPResult ldapResult) {
+    outstanding.remove(change);
+    for(final String key : change.keys) {
+      decrement(outstandingDNs,key);
+    }
+    for(final String key : change.parentKeys) {
+      decrement(outstandingParents,key);
+    }
+    if(ldapResult.getResultCode() == ResultCode.SUCCESS) {
+      ++applied;
+      if(progressReporter != null) {
+        progressReporter.entryApplied();
+      }
+    } else {
+      ++failed;
+    }
+    lastCompletionNanos = System.nanoTime();
+    notifyAll();
+  }
+
+
+
+  private static void increment(final Map<String,Integer> counts, final String key) {
+    final Integer count = counts.get(key);
+    counts.put(key,count == null ? 1 : count + 1);
+  }
+
+
+
+  private static void decrement(final Map<String,Integer> counts, final String key) {
+    final Integer count = counts.get(key);
+    if((count == null) || (count <= 1)) {
+      counts.remove(key);
+    } else {
+      counts.put(key,count - 1);
+    }
+  }
+
+
+
+  /**
+   * Converts a change record to the request that applies it.
+   *
+   * @throws LDAPException
+   *   if the change type is not supported.
+   */
+  static UpdatableLDAPRequest toRequest(final LDIFChangeRecord changeRecord)
+    throws LDAPException {
+    if(changeRecord instanceof LDIFAddChangeRecord) {
+      return ((LDIFAddChangeRecord) changeRecord).toAddRequest();
+    } else if(changeRecord instanceof LDIFDeleteChangeRecord) {
+      return ((LDIFDeleteChangeRecord) changeRecord).toDeleteRequest();
+    } else if(changeRecord instanceof LDIFModifyChangeRecord) {
+      return ((LDIFModifyChangeRecord) changeRecord).toModifyRequest();
+    } else if(changeRecord instanceof LDIFModifyDNChangeRecord) {
+      return ((LDIFModifyDNChangeRecord) changeRecord).toModifyDNRequest();
+    }
+    throw new LDAPException(ResultCode.NOT_SUPPORTED,
+      "The change type " + changeRecord.getChangeType() + " is not supported.");
+  }
+
+
+
+  /**
+   * Sends a request created by {@link #toRequest} without waiting for
+   * the response.
+   *
+   * @throws LDAPException
+   *   if the request cannot be sent.
+   */
+  static AsyncRequestID sendAsync(final LDAPConnection ldapConnection,
+                                  final UpdatableLDAPRequest request,
+                                  final AsyncResultListener resultListener)
+    throws LDAPException {
+    if(request instanceof AddRequest) {
+      return ldapConnection.asyncAdd((AddRequest) request,resultListener);
+    } else if(request instanceof DeleteRequest) {
+      return ldapConnection.asyncDelete((DeleteRequest) request,resultListener);
+    } else if(request instanceof ModifyRequest) {
+      return ldapConnection.asyncModify((ModifyRequest) request,resultListener);
+    }
+    return ldapConnection.asyncModifyDN((ModifyDNRequest) request,resultListener);
+  }
+
+
+
+  private static String normalize(final DN dn) {
+    return dn.toNormalizedString();
+  }
+
+
+
+  /**
+   * A change, with the normalized DNs of the entries that it touches
+   * and of their parents.
+   */
+  private final class PendingChange implements AsyncResultListener {
+
+    private PendingChange(final LDIFChangeRecord changeRecord) {
+      this.changeRecord = changeRecord;
+      final List<DN> dns = new ArrayList<DN>(2);
+      try {
+        dns.add(changeRecord.getParsedDN());
+        if(changeRecord instanceof LDIFModifyDNChangeRecord) {
+          dns.add(((LDIFModifyDNChangeRecord) changeRecord).getNewDN());
+        }
+      } catch(final LDAPException ldapException) {
+        // the server rejects the change, which depends on nothing else
+        keys.add(StaticUtils.toLowerCase(changeRecord.getDN()));
+        return;
+      }
+      for(final DN dn : dns) {
+        keys.add(normalize(dn));
+        final DN parentDN = dn.getParent();
+        if(parentDN != null) {
+          parentKeys.add(normalize(parentDN));
+        }
+      }
+    }
+
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void ldapResultReceived(final AsyncRequestID requestID, final LDAPResult ldapResult) {
+      complete(ldapResult);
+    }
+
+
+
+    private void complete(final LDAPResult ldapResult) {
+      if(!done.compareAndSet(false,true)) {
+        return;
+      }
+      if((ldapResult.getResultCode() != ResultCode.SUCCESS) && (failureListener != null)) {
+        failureListener.changeNotApplied(changeRecord,ldapResult);
+      }
+      completed(this,ldapResult);
+    }
+
+
+
+    private final LDIFChangeRecord changeRecord;
+
+
+    // the response and the loss of the connection may both complete it
+    private final AtomicBoolean done = new AtomicBoolean();
+
+
+    private final List<String> keys = new ArrayList<String>(2);
+
+
+    private final List<String> parentKeys = new ArrayList<String>(2);
+
+  }
+
+
+
+  private long applied;
+
+
+  private long blockedNanos;
+
+
+  private final int concurrency;
+
+
+  private volatile Control[] controls = new Control[0];
+
+
+  private long failed;
+
+
+  private volatile FailureListener failureListener;
+
+
+  private long firstStartNanos;
+
+
+  private long lastCompletionNanos;
+
+
+  private final LDAPConnection ldapConnection;
+
+
+  private long notRead;
+
+
+  private final List<PendingChange> outstanding = new ArrayList<PendingChange>();
+
+
+  // the number of outstanding changes, by normalized DN of the entry
+  private final Map<String,Integer> outstandingDNs = new HashMap<String,Integer>();
+
+
+  // the number of outstanding changes, by normalized DN of the parent
+  private final Map<String,Integer> outstandingParents = new HashMap<String,Integer>();
+
+
+  private volatile LdifLoadProgressReporter progressReporter;
+
+
+  private long read;
+
+
+  private volatile long responseTimeoutMillis = -1L;
+
+
+  private final TokenBucket tokenBucket;
+
+}
@@ -19,6 +19,7 @@ package samplecode.ldif;
 
 import com.unboundid.ldap.sdk.*;
 import com.unboundid.ldif.LDIFChangeRecord;
+import com.unboundid.ldif.LDIFEntrySource;
 import com.unboundid.ldif.LDIFException;
 import com.unboundid.ldif.LDIFReader;
 import com.unboundid.util.Validator;
@@ -26,12 +27,19 @@ import samplecode.annotation.Author;
 import samplecode.annotation.CodeVersion;
 import samplecode.annotation.Since;
 import samplecode.listener.*;
+import samplecode.util.StripedCounter;
 
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
+import java.net.URISyntaxException;
+import java.net.URL;
 import java.util.List;
 import java.util.Vector;
+import java.util.zip.GZIPInputStream;
 
 
 /**
@@ -88,11 +96,14 @@ public class ReadLdifFile
 
 
   /**
-   * get an instance of {@code LdapAddEntriesFromResource}.
+   * get an instance of {@code LdapAddEntriesFromResource}. The instance
+   * is shared by every caller, so its listeners and counts are too; a
+   * load that runs concurrently with others should use its own
+   * instance, see {@link #ReadLdifFile()}.
    *
    * @return an instance of {@code LdapAddEntriesFromResource}
    */
-  public static ReadLdifFile getInstance() {
+  public static synchronized ReadLdifFile getInstance() {
     if(ReadLdifFile.instance == null) {
       ReadLdifFile.instance = new ReadLdifFile();
     }
@@ -101,6 +112,18 @@ public class ReadLdifFile
 
 
 
+  /**
+   * Creates an instance with its own listeners and counts, which can
+   * load LDIF concurrently with other instances.
+   *
+   * @see LdifImportCoordinator
+   */
+  public ReadLdifFile() {
+    // the listeners and counts are initialized by their declarations
+  }
+
+
+
   /**
    * Adds the entries from the specified resource. The resource must be
    * on the CLASSPATH.
@@ -146,6 +169,215 @@ public class ReadLdifFile
 
 
 
+  /**
+   * Adds the entries from the specified resource over several
+   * connections taken from {@code ldapConnectionPool}, keeping several
+   * add requests outstanding on each connection. The resource must be
+   * on the CLASSPATH. An entry that is not added does not stop the load;
+   * it is reported to {@code failureListener}.
+   *
+   * @param ldapConnectionPool
+   *   the pool from which the connections are taken.
+   *   {@code ldapConnectionPool} is not permitted to be {@code null}.
+   * @param resourceContainingLdif
+   *   a file containing entries in the form of LDIF to add to
+   *   the directory server database.
+   *   {@code resourceContainingLdif} is not permitted to be
+   *   {@code null}.
+   * @param controls
+   *   any controls to be added to the add requests.
+   *   {@code controls} is permitted to be {@code null}.
+   * @param connections
+   *   the number of connections used to add the entries.
+   * @param maxOutstandingPerConnection
+   *   the largest number of add requests outstanding on a connection.
+   * @param failureListener
+   *   notified of each entry that is not added, or {@code null}.
+   *
+   * @return number of entries read from the resource file.
+   *
+   * @throws IOException
+   *   if the file cannot be found.
+   * @throws EntrySourceException
+   *   if the file cannot continue to be read.
+   * @throws LDAPException
+   *   if no connection can be taken from the pool.
+   * @throws InterruptedException
+   *   if the calling thread is interrupted.
+   *
+   * @see LdifBulkLoader
+   */
+  public int addEntriesInFile(final LDAPConnectionPool ldapConnectionPool,
+                              final String resourceContainingLdif, final Control[] controls,
+                              final int connections, final int maxOutstandingPerConnection,
+                              final LdifBulkLoader.FailureListener failureListener)
+    throws IOException, EntrySourceException, LDAPException, InterruptedException {
+    Validator.ensureNotNull(ldapConnectionPool,resourceContainingLdif);
+
+    final URL resource = getClass().getClassLoader().getResource(resourceContainingLdif);
+    if(resource == null) {
+      final String exceptionMsg =
+        String.format("An error has occurred because the "
+          + "specified resource '%s' was not found on the CLASSPATH.",
+          resourceContainingLdif);
+      throw new FileNotFoundException(exceptionMsg);
+    }
+    if("file".equals(resource.getProtocol())) {
+      try {
+        return addEntriesFromFile(ldapConnectionPool,new File(resource.toURI()),controls,
+          connections,maxOutstandingPerConnection,failureListener);
+      } catch(final URISyntaxException uriSyntaxException) {
+        // read the resource as a stream
+      }
+    }
+    return addEntriesFromInputStream(ldapConnectionPool,resource.openStream(),controls,
+      connections,maxOutstandingPerConnection,failureListener);
+  }
+
+
+
+  /**
+   * Adds the entries of {@code ldifFile} over several connections taken
+   * from {@code ldapConnectionPool}, keeping several add requests
+   * outstanding on each connection. The file is read by the reader that
+   * {@link #newEntrySource(File,int)} chooses for it, so it may be
+   * gzip-compressed, and it is parsed in parallel while the entries are
+   * sent. An entry that is not added does not stop the load; it is
+   * reported to {@code failureListener}.
+   *
+   * @param ldapConnectionPool
+   *   the pool from which the connections are taken.
+   *   {@code ldapConnectionPool} is not permitted to be {@code null}.
+   * @param ldifFile
+   *   a file containing entries in the form of LDIF.
+   *   {@code ldifFile} is not permitted to be {@code null}.
+   * @param controls
+   *   any controls to be added to the add requests.
+   *   {@code controls} is permitted to be {@code null}.
+   * @param connections
+   *   the number of connections used to add the entries.
+   * @param maxOutstandingPerConnection
+   *   the largest number of add requests outstanding on a connection.
+   * @param failureListener
+   *   notified of each entry that is not added, or {@code null}.
+   *
+   * @return number of entries read from the file.
+   *
+   * @throws IOException
+   *   if the file cannot be opened.
+   * @throws EntrySourceException
+   *   if the file cannot continue to be read.
+   * @throws LDAPException
+   *   if no connection can be taken from the pool.
+   * @throws InterruptedException
+   *   if the calling thread is interrupted.
+   *
+   * @see LdifBulkLoader
+   * @see #newEntrySource(File,int)
+   */
+  public int addEntriesFromFile(final LDAPConnectionPool ldapConnectionPool,
+                                final File ldifFile, final Control[] controls,
+                                final int connections, final int maxOutstandingPerConnection,
+                                final LdifBulkLoader.FailureListener failureListener)
+    throws IOException, EntrySourceException, LDAPException, InterruptedException {
+    Validator.ensureNotNull(ldapConnectionPool,ldifFile);
+
+    final LdifLoadProgressReporter progressReporter = newProgressReporter();
+    final EntrySource ldifEntrySource =
+      newEntrySource(ldifFile,parseThreads(connections),progressReporter);
+    return addEntries(ldapConnectionPool,ldifEntrySource,progressReporter,controls,connections,
+      maxOutstandingPerConnection,failureListener);
+  }
+
+
+
+  /**
+   * Creates a reader of the entries of an LDIF file that suits the
+   * file: an {@link EntrySnapshotReader} for an entry snapshot, a
+   * {@link BlockCompressedLdifReader} for a block-compressed LDIF file,
+   * an {@link LDIFReader} over the decompressed content of any other
+   * gzip-compressed file, and a {@link ParallelLdifReader} that
+   * preserves the order of the file otherwise. The entries are parsed
+   * by {@code parseThreads} threads, except those of a snapshot, which
+   * are not parsed.
+   *
+   * @param ldifFile
+   *   the LDIF file. Not permitted to be {@code null}.
+   * @param parseThreads
+   *   the number of threads that parse entries, which must be greater
+   *   than zero.
+   *
+   * @return the reader of the entries.
+   *
+   * @throws IOException
+   *   if the file cannot be opened.
+   */
+  public static EntrySource newEntrySource(final File ldifFile, final int parseThreads)
+    throws IOException {
+    return newEntrySource(ldifFile,parseThreads,null);
+  }
+
+
+
+  /**
+   * Adds the entries read from {@code ldifInputStream} over several
+   * connections taken from {@code ldapConnectionPool}, keeping several
+   * add requests outstanding on each connection. The entries are parsed
+   * by threads of the LDIF reader while they are sent. A gzip-compressed
+   * stream is decompressed. An entry that is not added does not stop the
+   * load; it is reported to {@code failureListener}. The stream is
+   * closed.
+   *
+   * @param ldapConnectionPool
+   *   the pool from which the connections are taken.
+   *   {@code ldapConnectionPool} is not permitted to be {@code null}.
+   * @param ldifInputStream
+   *   the stream from which LDIF entries are read.
+   *   {@code ldifInputStream} is not permitted to be {@code null}.
+   * @param controls
+   *   any controls to be added to the add requests.
+   *   {@code controls} is permitted to be {@code null}.
+   * @param connections
+   *   the number of connections used to add the entries.
+   * @param maxOutstandingPerConnection
+   *   the largest number of add requests outstanding on a connection.
+   * @param failureListener
+   *   notified of each entry that is not added, or {@code null}.
+   *
+   * @return number of entries read from the stream.
+   *
+   * @throws EntrySourceException
+   *   if the stream cannot continue to be read.
+   * @throws LDAPException
+   *   if no connection can be taken from the pool.
+   * @throws InterruptedException
+   *   if the calling thread is interrupted.
+   *
+   * @see LdifBulkLoader
+   */
+  public int addEntriesFromInputStream(final LDAPConnectionPool ldapConnectionPool,
+                                       final InputStream ldifInputStream,
+                                       final Control[] controls, final int connections,
+                                       final int maxOutstandingPerConnection,
+                                       final LdifBulkLoader.FailureListener failureListener)
+    throws EntrySourceException, LDAPException, InterruptedException {
+    Validator.ensureNotNull(ldapConnectionPool,ldifInputStream);
+
+    final LdifLoadProgressReporter progressReporter = newProgressReporter();
+    final InputStream decompressedInputStream;
+    try {
+      decompressedInputStream = decompressIfGzipped(progressReporter.countBytes(ldifInputStream));
+    } catch(final IOException ioException) {
+      throw new EntrySourceException(false,ioException);
+    }
+    final EntrySource ldifEntrySource = new LDIFEntrySource(
+      new LDIFReader(decompressedInputStream,parseThreads(connections)));
+    return addEntries(ldapConnectionPool,ldifEntrySource,progressReporter,controls,connections,
+      maxOutstandingPerConnection,failureListener);
+  }
+
+
+
   /**
    * {@inheritDoc}
    */
@@ -184,10 +416,61 @@ public class ReadLdifFile
 
 
 
+  /**
+   * Adds a listener to which the progress of each load is reported in
+   * an {@link LdifLoadProgressEvent} at the progress interval, and at
+   * the end of the load.
+   *
+   * @param progressListener
+   *   the listener, which is ignored if {@code null}.
+   */
+  public synchronized void addProgressListener(
+    final ProgressListener<LdifLoadProgressEvent> progressListener) {
+    if(progressListener != null) {
+      progressListeners.add(progressListener);
+    }
+  }
+
+
+
+  /**
+   * Removes a listener added by {@link #addProgressListener}.
+   *
+   * @param progressListener
+   *   the listener, which is ignored if {@code null}.
+   */
+  public synchronized void removeProgressListener(
+    final ProgressListener<LdifLoadProgressEvent> progressListener) {
+    if(progressListener != null) {
+      progressListeners.remove(progressListener);
+    }
+  }
+
+
+
+  /**
+   * Sets the interval between the progress events of a load.
+   *
+   * @param progressIntervalMillis
+   *   the interval in milliseconds, which must be greater than zero.
+   */
+  public void setProgressIntervalMillis(final long progressIntervalMillis) {
+    if(progressIntervalMillis <= 0L) {
+      throw new IllegalArgumentException("progressIntervalMillis must be greater than zero.");
+    }
+    this.progressIntervalMillis = progressIntervalMillis;
+  }
+
+
+
   /**
    * Apply changes that arrive in LDIF format via the
-   * {@code ldifInputStream}. Changes are processed in a single-threaded
-   * fashion (like the {@code ldapmodify} tool).
+   * {@code ldifInputStream}. Changes are sent one at a time, at most one
+   * every {@code millisBetweenChanges} milliseconds; the time taken by a
+   * change counts towards the interval. Unlike the {@code ldapmodify}
+   * tool, a change that fails does not stop the stream: it is reported
+   * to the LDAP exception listeners, and a record that cannot be read is
+   * reported to the IO exception listeners and skipped.
    * <p/>
    * <b>example LDIF</b><blockquote>
    * <p/>
@@ -212,60 +495,180 @@ public class ReadLdifFile
    */
   public int applyChangesFromLdifInputStream(final LDAPConnection ldapConnection,
                                              final InputStream ldifInputStream, final long millisBetweenChanges) {
+    final double changesPerSecond = millisBetweenChanges > 0 ? 1000.0 / millisBetweenChanges : 0.0;
+    return applyChangesFromLdifInputStream(ldapConnection,ldifInputStream,changesPerSecond,1,1);
+  }
+
+
+
+  /**
+   * Apply changes that arrive in LDIF format via the
+   * {@code ldifInputStream} at a target rate, with up to
+   * {@code concurrency} changes outstanding on the connection at once.
+   * A change that fails is reported to the LDAP exception listeners and
+   * does not stop the stream; a record that cannot be read is reported
+   * to the IO exception listeners and skipped. See
+   * {@link RateLimitedChangeApplier}.
+   *
+   * @param ldapConnection
+   *   a connection to the LDAP server that will receive the
+   *   changes
+   * @param ldifInputStream
+   *   the stream from which LDIF entries are read
+   * @param changesPerSecond
+   *   the target rate, or zero for no limit
+   * @param burst
+   *   the largest number of changes started at once after a quiet
+   *   period
+   * @param concurrency
+   *   the largest number of changes outstanding at once
+   *
+   * @return the number of entries read from the stream.
+   */
+  public int applyChangesFromLdifInputStream(final LDAPConnection ldapConnection,
+                                             final InputStream ldifInputStream,
+                                             final double changesPerSecond, final int burst,
+                                             final int concurrency) {
     Validator.ensureNotNull(ldapConnection,ldifInputStream);
 
-    final LDIFReader reader = new LDIFReader(ldifInputStream);
-    numberOfEntriesRead = 0;
-    while(true) {
-      LDIFChangeRecord ldifChangeRecord = null;
-      try {
+    final LdifLoadProgressReporter progressReporter = newProgressReporter();
+    final RateLimitedChangeApplier applier =
+      new RateLimitedChangeApplier(ldapConnection,changesPerSecond,burst,concurrency);
+    applier.setFailureListener(newChangeFailureListener(ldapConnection));
+    applier.setProgressReporter(progressReporter);
+    return applyChanges(ldifInputStream,progressReporter,new ChangeApplier() {
+
+      @Override
+      public long apply(final LDIFReader ldifReader)
+        throws IOException, LDIFException, InterruptedException {
+        return applier.apply(ldifReader);
+      }
 
-        /*
-         * read a change record and update the number of entries that
-         * have been read.
-         */
-        ldifChangeRecord = reader.readChangeRecord();
-        if(ldifChangeRecord == null) {
-          break;
-        }
-        synchronized(this) {
-          ++numberOfEntriesRead;
-        }
 
-        /*
-         * transmit the change to the server.
-         */
-        ldifChangeRecord.processChange(ldapConnection);
 
-        /*
-         * pause if desired.
-         */
-        if(millisBetweenChanges > 0) {
-          Thread.sleep(millisBetweenChanges);
-        }
-      } catch(final LDIFException ldifException) {
-        if(ldifException.mayContinueReading()) {
-          continue;
-        }
-        ldifException.printStackTrace();
-        break;
-      } catch(final IOException iox) {
-        fireIOExceptionListener(iox);
-        break;
-      } catch(final LDAPException ldapException) {
-        fireLdapExceptionListener(ldapConnection,ldapException);
-        break;
-      } catch(final InterruptedException exception) {
-        // this block deliberately left empty.
+      @Override
+      public long getRead() {
+        return applier.getRead();
       }
+    });
+  }
+
+
+
+  /**
+   * Apply changes that arrive in LDIF format via the
+   * {@code ldifInputStream} in transactions of up to {@code batchSize}
+   * changes, if the server supports transactions, and otherwise as
+   * single operations with up to {@code concurrency} outstanding at
+   * once. A change that fails is reported to the LDAP exception
+   * listeners and does not stop the stream; a record that cannot be
+   * read is reported to the IO exception listeners and skipped. See
+   * {@link TransactionalChangeApplier}.
+   *
+   * @param ldapConnection
+   *   a connection to the LDAP server that will receive the
+   *   changes
+   * @param ldifInputStream
+   *   the stream from which LDIF entries are read
+   * @param batchSize
+   *   the largest number of changes in a transaction
+   * @param concurrency
+   *   the largest number of single operations outstanding at once
+   *
+   * @return the number of entries read from the stream.
+   */
+  public int applyChangesInTransactions(final LDAPConnection ldapConnection,
+                                        final InputStream ldifInputStream, final int batchSize,
+                                        final int concurrency) {
+    Validator.ensureNotNull(ldapConnection,ldifInputStream);
+
+    final LdifLoadProgressReporter progressReporter = newProgressReporter();
+    final TransactionalChangeApplier applier =
+      new TransactionalChangeApplier(ldapConnection,batchSize,concurrency);
+    applier.setFailureListener(newChangeFailureListener(ldapConnection));
+    applier.setProgressReporter(progressReporter);
+    return applyChanges(ldifInputStream,progressReporter,new ChangeApplier() {
+
+      @Override
+      public long apply(final LDIFReader ldifReader)
+        throws IOException, LDIFException, InterruptedException {
+        return applier.apply(ldifReader);
+      }
+
+
+
+      @Override
+      public long getRead() {
+        return applier.getRead();
+      }
+    });
+  }
+
+
+
+  /**
+   * Reads the changes from {@code ldifInputStream} and applies them with
+   * {@code changeApplier}. A failure to read the stream is reported to
+   * the IO exception listeners, and the stream is closed.
+   *
+   * @return the number of entries read from the stream.
+   */
+  private int applyChanges(final InputStream ldifInputStream,
+                           final LdifLoadProgressReporter progressReporter,
+                           final ChangeApplier changeApplier) {
+    numberOfEntriesRead.reset();
+    final LDIFReader reader;
+    try {
+      reader = new LDIFReader(decompressIfGzipped(progressReporter.countBytes(ldifInputStream)));
+    } catch(final IOException iox) {
+      fireIOExceptionListener(iox);
+      return getNumberOfEntriesRead();
     }
+    progressReporter.start();
     try {
-      reader.close();
-    } catch(final IOException exception) {
-      // TODO Auto-generated catch block
-      exception.printStackTrace();
+      changeApplier.apply(reader);
+    } catch(final LDIFException ldifException) {
+      fireIOExceptionListener(new IOException(ldifException.getMessage(),ldifException));
+    } catch(final IOException iox) {
+      fireIOExceptionListener(iox);
+    } catch(final InterruptedException exception) {
+      Thread.currentThread().interrupt();
+    } finally {
+      progressReporter.stop();
+      numberOfEntriesRead.add(changeApplier.getRead());
+      try {
+        reader.close();
+      } catch(final IOException iox) {
+        fireIOExceptionListener(iox);
+      }
     }
-    return numberOfEntriesRead;
+    return getNumberOfEntriesRead();
+  }
+
+
+
+  /**
+   * Reports the changes that are not applied to the LDAP exception
+   * listeners, and the records that cannot be read to the IO exception
+   * listeners.
+   */
+  private RateLimitedChangeApplier.FailureListener newChangeFailureListener(
+    final LDAPConnection ldapConnection) {
+    return new RateLimitedChangeApplier.FailureListener() {
+
+      @Override
+      public void changeNotApplied(final LDIFChangeRecord changeRecord,
+                                   final LDAPResult ldapResult) {
+        fireLdapExceptionListener(ldapConnection,new LDAPException(ldapResult));
+      }
+
+
+
+      @Override
+      public void changeNotRead(final LDIFException ldifException) {
+        fireIOExceptionListener(new IOException(ldifException.getMessage(),ldifException));
+      }
+    };
   }
 
 
@@ -340,8 +743,8 @@ public class ReadLdifFile
   /**
    * @return the numberOfEntriesRead
    */
-  public synchronized int getNumberOfEntriesRead() {
-    return numberOfEntriesRead;
+  public int getNumberOfEntriesRead() {
+    return (int) numberOfEntriesRead.sum();
   }
 
 
@@ -385,6 +788,171 @@ public class ReadLdifFile
 
 
 
+  private int addEntries(final LDAPConnectionPool ldapConnectionPool,
+                         final EntrySource ldifEntrySource,
+                         final LdifLoadProgressReporter progressReporter,
+                         final Control[] controls, final int connections,
+                         final int maxOutstandingPerConnection,
+                         final LdifBulkLoader.FailureListener failureListener)
+    throws EntrySourceException, LDAPException, InterruptedException {
+    final LdifBulkLoader loader =
+      new LdifBulkLoader(ldapConnectionPool,connections,maxOutstandingPerConnection);
+    loader.setControls(controls);
+    loader.setFailureListener(failureListener);
+    loader.setProgressReporter(progressReporter);
+    numberOfEntriesRead.reset();
+    progressReporter.start();
+    try {
+      loader.load(new EntrySource() {
+
+        @Override
+        public Entry nextEntry() throws EntrySourceException {
+          final Entry entry = ldifEntrySource.nextEntry();
+          if(entry != null) {
+            fireLdifEventListener(entry);
+            numberOfEntriesRead.increment();
+          }
+          return entry;
+        }
+
+
+
+        @Override
+        public void close() {
+          ldifEntrySource.close();
+        }
+      });
+    } finally {
+      progressReporter.stop();
+    }
+    return getNumberOfEntriesRead();
+  }
+
+
+
+  @SuppressWarnings("unchecked")
+  private LdifLoadProgressReporter newProgressReporter() {
+    final Vector<ProgressListener<LdifLoadProgressEvent>> copy;
+    synchronized(this) {
+      copy = (Vector<ProgressListener<LdifLoadProgressEvent>>) progressListeners.clone();
+    }
+    return new LdifLoadProgressReporter(copy,progressIntervalMillis);
+  }
+
+
+
+  /**
+   * Creates the reader of {@link #newEntrySource(File,int)}, which
+   * counts the bytes of the file it consumes in
+   * {@code progressReporter} unless it is {@code null}.
+   */
+  private static EntrySource newEntrySource(final File ldifFile, final int parseThreads,
+                                            final LdifLoadProgressReporter progressReporter)
+    throws IOException {
+    Validator.ensureNotNull(ldifFile);
+    if(parseThreads <= 0) {
+      throw new IllegalArgumentException("parseThreads must be greater than zero.");
+    }
+    if(progressReporter != null) {
+      progressReporter.setTotalBytes(ldifFile.length());
+    }
+    if(EntrySnapshotReader.isSnapshot(ldifFile)) {
+      final InputStream inputStream = new FileInputStream(ldifFile);
+      return new EntrySnapshotReader(progressReporter == null ? inputStream :
+        progressReporter.countBytes(inputStream));
+    }
+    final EntrySource ldifReader;
+    if(BlockCompressedLdifReader.isBlockCompressed(ldifFile)) {
+      ldifReader = new BlockCompressedLdifReader(ldifFile,parseThreads);
+    } else {
+      InputStream inputStream = new FileInputStream(ldifFile);
+      final boolean gzipped;
+      try {
+        gzipped = isGzipped(inputStream);
+      } finally {
+        inputStream.close();
+      }
+      if(gzipped) {
+        inputStream = new FileInputStream(ldifFile);
+        if(progressReporter != null) {
+          inputStream = progressReporter.countBytes(inputStream);
+        }
+        try {
+          return new LDIFEntrySource(new LDIFReader(new GZIPInputStream(inputStream),parseThreads));
+        } catch(final IOException ioException) {
+          inputStream.close();
+          throw ioException;
+        }
+      }
+      ldifReader = new ParallelLdifReader(ldifFile,parseThreads,true);
+    }
+    if(progressReporter == null) {
+      return ldifReader;
+    }
+    return new EntrySource() {
+
+      @Override
+      public Entry nextEntry() throws EntrySourceException {
+        final Entry entry = ldifReader.nextEntry();
+        final long bytesConsumed = ldifReader instanceof BlockCompressedLdifReader ?
+          ((BlockCompressedLdifReader) ldifReader).getBytesConsumed() :
+          ((ParallelLdifReader) ldifReader).getBytesConsumed();
+        progressReporter.bytesConsumed(bytesConsumed - bytesReported);
+        bytesReported = bytesConsumed;
+        return entry;
+      }
+
+
+
+      @Override
+      public void close() {
+        ldifReader.close();
+      }
+
+
+
+      private long bytesReported;
+    };
+  }
+
+
+
+  /**
+   * Returns a stream of the decompressed content of
+   * {@code inputStream} if it starts with the gzip magic number, and
+   * otherwise a stream of its content.
+   */
+  private static InputStream decompressIfGzipped(final InputStream inputStream)
+    throws IOException {
+    final InputStream bufferedInputStream = new BufferedInputStream(inputStream);
+    bufferedInputStream.mark(2);
+    final boolean gzipped = isGzipped(bufferedInputStream);
+    bufferedInputStream.reset();
+    return gzipped ? new GZIPInputStream(bufferedInputStream) : bufferedInputStream;
+  }
+
+
+
+  /**
+   * Reads the first two bytes of {@code inputStream} and compares them
+   * to the gzip magic number.
+   */
+  private static boolean isGzipped(final InputStream inputStream) throws IOException {
+    final int first = inputStream.read();
+    final int second = first < 0 ? -1 : inputStream.read();
+    return (first == 0x1F) && (second == 0x8B);
+  }
+
+
+
+  // the entries are parsed while they are sent, by no more threads
+  // than there are processors
+  private static int parseThreads(final int connections) {
+    return Math.max(1,Math.min(connections,Runtime.getRuntime().availableProcessors()));
+  }
+
+
+
   // TODO: fire the ldap exception listener.
   private int addEntriesFromInputStream(final LDAPConnection ldapConnection,
                                         final InputStream inputStreamConnectionToResourceContainingLdif,
@@ -402,22 +970,46 @@ public class ReadLdifFile
      * from the add(), therefore the result code from the add() is
      * ignored.
      */
-    final LDIFReader reader = new LDIFReader(inputStreamConnectionToResourceContainingLdif);
-    numberOfEntriesRead = 0;
-    while(true) {
-      final Entry entry = reader.readEntry();
-      if(entry == null) {
-        break;
-      }
-      fireLdifEventListener(entry);
-      final AddRequest addRequest = new AddRequest(entry,controls);
-      ldapConnection.add(addRequest);
-      synchronized(this) {
-        ++numberOfEntriesRead;
+    final LdifLoadProgressReporter progressReporter = newProgressReporter();
+    final LDIFReader reader = new LDIFReader(
+      decompressIfGzipped(progressReporter.countBytes(inputStreamConnectionToResourceContainingLdif)));
+    numberOfEntriesRead.reset();
+    progressReporter.start();
+    try {
+      while(true) {
+        final Entry entry = reader.readEntry();
+        if(entry == null) {
+          break;
+        }
+        progressReporter.entryRead();
+        fireLdifEventListener(entry);
+        final AddRequest addRequest = new AddRequest(entry,controls);
+        ldapConnection.add(addRequest);
+        progressReporter.entryApplied();
+        numberOfEntriesRead.increment();
       }
+    } finally {
+      progressReporter.stop();
     }
     reader.close();
-    return numberOfEntriesRead;
+    return getNumberOfEntriesRead();
+  }
+
+
+
+  /**
+   * Applies the changes read by an {@code LDIFReader}, so that the
+   * rate-limited and transactional appliers can share the reading and
+   * reporting of {@link #applyChanges}.
+   */
+  private interface ChangeApplier {
+
+    long apply(LDIFReader ldifReader) throws IOException, LDIFException, InterruptedException;
+
+
+
+    long getRead();
+
   }
 
 
@@ -443,5 +1035,23 @@ public class ReadLdifFile
     new Vector<LdifEntryEventListener>();
 
 
-  private int numberOfEntriesRead = 0;
+  /**
+   * The entries read by the current load, counted without a lock, so
+   * that the threads of a parallel load do not serialize on this
+   * object.
+   */
+  private final StripedCounter numberOfEntriesRead = new StripedCounter();
+
+
+  /**
+   * The interval between the progress events of a load.
+   */
+  private volatile long progressIntervalMillis = LdifLoadProgressReporter.DEFAULT_INTERVAL_MILLIS;
+
+
+  /**
+   * The list of progress listeners.
+   */
+  private volatile Vector<ProgressListener<LdifLoadProgressEvent>> progressListeners =
+    new Vector<ProgressListener<LdifLoadProgressEvent>>();
 }
@@ -0,0 +1,175 @@
+/*
+ * Copyright 2008-2013 UnboundID Corp. All Rights Reserved.
+ */
+/*
+ * Copyright (C) 2008-2013 UnboundID Corp. This program is free
+ * software; you can redistribute it and/or modify it under the terms of
+ * the GNU General Public License (GPLv2 only) or the terms of the GNU
+ * Lesser General Public License (LGPLv2.1 only) as published by the
+ * Free Software Foundation. This program is distributed in the hope
+ * that it will be useful, but WITHOUT ANY WARRANTY; without even the
+ * implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR
+ * PURPOSE. See the GNU General Public License for more details. You
+ * should have received a copy of the GNU General Public License along
+ * with this program; if not, see <http://www.gnu.org/licenses>.
+ */
+
+package samplecode.ldif;
+
+import com.unboundid.ldap.listener.InMemoryDirectoryServer;
+import com.unboundid.ldap.listener.InMemoryDirectoryServerConfig;
+import com.unboundid.ldap.sdk.Attribute;
+import com.unboundid.ldap.sdk.Entry;
+import com.unboundid.ldap.sdk.LDAPConnection;
+import com.unboundid.ldap.sdk.LDAPException;
+import com.unboundid.ldif.LDIFException;
+import com.unboundid.ldif.LDIFReader;
+import samplecode.annotation.CodeVersion;
+import samplecode.annotation.Launchable;
+import samplecode.annotation.Since;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+
+
+/**
+ * Compares the rate at which a {@link TransactionalChangeApplier}
+ * applies modifications to an in-memory directory server for several
+ * batch sizes. A batch size of one applies single operations, which are
+ * pipelined up to the given concurrency; larger batch sizes apply each
+ * batch in one transaction. Each batch size is run a few times, and the
+ * rate of each run is displayed.
+ * <p/>
+ * The in-memory server runs in the same JVM and holds its data in
+ * memory, so a commit costs it little; a server that writes each commit
+ * to disk gains much more from larger batches.
+ * <p/>
+ * example usage: <blockquote>
+ * <p/>
+ * <pre>
+ * java samplecode.ldif.TransactionBatchBenchmark 20000 16 1 10 100 1000
+ * </pre>
+ * </blockquote>
+ * The arguments are the number of changes, the concurrency of single
+ * operations, and the batch sizes.
+ */
+@Since("Oct 16, 2026")
+@CodeVersion("1.0")
+@Launchable
+public final class TransactionBatchBenchmark {
+
+  private static final String BASE_DN = "dc=example,dc=com";
+
+
+  private static final int[] DEFAULT_BATCH_SIZES = {1,10,100,1000};
+
+
+  private static final int DEFAULT_CONCURRENCY = 16;
+
+
+  private static final int DEFAULT_NUM_CHANGES = 20000;
+
+
+  private static final int NUM_ENTRIES = 1000;
+
+
+  private static final int NUM_RUNS = 3;
+
+
+
+  /**
+   * Runs the benchmark.
+   *
+   * @param args
+   *   optionally the number of changes, the concurrency of single
+   *   operations, and the batch sizes.
+   *
+   * @throws LDAPException
+   *   if the server cannot be started or populated.
+   * @throws IOException
+   *   if the changes cannot be read.
+   * @throws LDIFException
+   *   if the changes cannot be parsed.
+   * @throws InterruptedException
+   *   if the benchmark is interrupted.
+   */
+  public static void main(final String... args)
+    throws LDAPException, IOException, LDIFException, InterruptedException {
+    final int numChanges = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_NUM_CHANGES;
+    final int concurrency = args.length > 1 ? Integer.parseInt(args[1]) : DEFAULT_CONCURRENCY;
+    int[] batchSizes = DEFAULT_BATCH_SIZES;
+    if(args.length > 2) {
+      batchSizes = new int[args.length - 2];
+      for(int i = 2; i < args.length; ++i) {
+        batchSizes[i - 2] = Integer.parseInt(args[i]);
+      }
+    }
+
+    final InMemoryDirectoryServer directoryServer = newDirectoryServer();
+    final LDAPConnection ldapConnection =
+      new LDAPConnection("localhost",directoryServer.getListenPort());
+    try {
+      final byte[] changes = newChanges(numChanges);
+      System.out.println(String.format("changes: %d, concurrency of single operations: %d",
+        numChanges,concurrency));
+      for(final int batchSize : batchSizes) {
+        for(int run = 1; run <= NUM_RUNS; ++run) {
+          final TransactionalChangeApplier applier =
+            new TransactionalChangeApplier(ldapConnection,batchSize,concurrency);
+          final LDIFReader ldifReader = new LDIFReader(new ByteArrayInputStream(changes));
+          try {
+            applier.apply(ldifReader);
+          } finally {
+            ldifReader.close();
+          }
+          System.out.println(String.format("batch size %d run %d (%s): %.0f changes/s, " +
+            "%d applied, %d failed",batchSize,run,
+            applier.isUsingTransactions() ? "transactions" : "single operations",
+            applier.getAchievedRate(),applier.getApplied(),applier.getFailed()));
+        }
+      }
+    } finally {
+      ldapConnection.close();
+      directoryServer.shutDown(true);
+    }
+  }
+
+
+
+  private static InMemoryDirectoryServer newDirectoryServer() throws LDAPException {
+    final InMemoryDirectoryServer directoryServer =
+      new InMemoryDirectoryServer(new InMemoryDirectoryServerConfig(BASE_DN));
+    directoryServer.add(new Entry(BASE_DN,new Attribute("objectClass","top","domain"),
+      new Attribute("dc","example")));
+    for(int i = 0; i < NUM_ENTRIES; ++i) {
+      directoryServer.add(new Entry("cn=user." + i + "," + BASE_DN,
+        new Attribute("objectClass","top","person"),
+        new Attribute("cn","user." + i),
+        new Attribute("sn",Integer.toString(i))));
+    }
+    directoryServer.startListening();
+    return directoryServer;
+  }
+
+
+
+  /**
+   * Creates LDIF that replaces the description of the entries in turn.
+   */
+  private static byte[] newChanges(final int numChanges) throws IOException {
+    final StringBuilder ldif = new StringBuilder();
+    for(int i = 0; i < numChanges; ++i) {
+      ldif.append("dn: cn=user.").append(i % NUM_ENTRIES).append(',').append(BASE_DN)
+        .append("\nchangetype: modify\nreplace: description\ndescription: change ")
+        .append(i).append("\n\n");
+    }
+    return ldif.toString().getBytes("UTF-8");
+  }
+
+
+
+  private TransactionBatchBenchmark() {
+    // the benchmark is run by main
+  }
+
+}
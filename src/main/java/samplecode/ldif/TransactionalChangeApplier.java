@@ -0,0 +1,597 @@
+/*
+ * Copyright 2008-2013 UnboundID Corp. All Rights Reserved.
+ */
+/*
+ * Copyright (C) 2008-2013 UnboundID Corp. This program is free
+ * software; you can redistribute it and/or modify it under the terms of
+ * the GNU General Public License (GPLv2 only) or the terms of the GNU
+ * Lesser General Public License (LGPLv2.1 only) as published by the
+ * Free Software Foundation. This program is distributed in the hope
+ * that it will be useful, but WITHOUT ANY WARRANTY; without even the
+ * implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR
+ * PURPOSE. See the GNU General Public License for more details. You
+ * should have received a copy of the GNU General Public License along
+ * with this program; if not, see <http://www.gnu.org/licenses>.
+ */
+
+package samplecode.ldif;
+
+import com.unboundid.asn1.ASN1OctetString;
+import com.unboundid.ldap.sdk.AsyncRequestID;
+import com.unboundid.ldap.sdk.AsyncResultListener;
+import com.unboundid.ldap.sdk.Control;
+import com.unboundid.ldap.sdk.ExtendedResult;
+import com.unboundid.ldap.sdk.LDAPConnection;
+import com.unboundid.ldap.sdk.LDAPException;
+import com.unboundid.ldap.sdk.LDAPResult;
+import com.unboundid.ldap.sdk.ResultCode;
+import com.unboundid.ldap.sdk.RootDSE;
+import com.unboundid.ldap.sdk.UpdatableLDAPRequest;
+import com.unboundid.ldap.sdk.controls.TransactionSpecificationRequestControl;
+import com.unboundid.ldap.sdk.extensions.EndTransactionExtendedRequest;
+import com.unboundid.ldap.sdk.extensions.StartTransactionExtendedRequest;
+import com.unboundid.ldap.sdk.extensions.StartTransactionExtendedResult;
+import com.unboundid.ldif.LDIFChangeRecord;
+import com.unboundid.ldif.LDIFException;
+import com.unboundid.ldif.LDIFReader;
+import samplecode.annotation.CodeVersion;
+import samplecode.annotation.Since;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static com.unboundid.util.Validator.ensureNotNull;
+
+
+/**
+ * Applies the change records read from LDIF to a directory server in
+ * batches, each batch in one RFC 5805 transaction, so that the server
+ * commits once per batch rather than once per change. The requests of
+ * a batch are sent without waiting for each other's responses; within
+ * a transaction the server only acknowledges them, and the end of the
+ * transaction applies them in order.
+ * <p/>
+ * If the server does not advertise the start and end transaction
+ * extended operations in its root DSE, or the batch size is one, the
+ * changes are applied as single operations by a
+ * {@link RateLimitedChangeApplier} without a rate limit.
+ * <p/>
+ * A transaction is all or nothing: when a change of a batch fails, the
+ * server rolls the whole batch back. The changes of that batch are then
+ * applied one at a time, so that the others are applied and only the
+ * failed change is reported to the
+ * {@link RateLimitedChangeApplier.FailureListener}, if any.
+ * <p/>
+ * An applier is used by one thread at a time.
+ * <p/>
+ * example usage: <blockquote>
+ * <p/>
+ * <pre>
+ * TransactionalChangeApplier applier =
+ *   new TransactionalChangeApplier(ldapConnection,100,16);
+ * applier.apply(new LDIFReader(changesFile));
+ * System.out.println(applier.getAchievedRate());
+ * </pre>
+ * </blockquote>
+ */
+@Since("Oct 16, 2026")
+@CodeVersion("1.0")
+public final class TransactionalChangeApplier {
+
+  /**
+   * The interval at which a thread waiting for the responses of a batch
+   * checks that the connection is still established, since the
+   * responses of a lost connection are never delivered.
+   */
+  private static final long CONNECTION_CHECK_MILLIS = 100L;
+
+
+
+  /**
+   * Determines whether the server advertises support for RFC 5805
+   * transactions.
+   *
+   * @param ldapConnection
+   *   a connection to the server. Not permitted to be {@code null}.
+   *
+   * @return {@code true} if the root DSE of the server lists both the
+   *         start and the end transaction extended operations.
+   *
+   * @throws LDAPException
+   *   if the root DSE cannot be read.
+   */
+  public static boolean isTransactionSupported(final LDAPConnection ldapConnection)
+    throws LDAPException {
+    ensureNotNull(ldapConnection);
+    final RootDSE rootDSE = ldapConnection.getRootDSE();
+    return (rootDSE != null) &&
+      rootDSE.supportsExtendedOperation(
+        StartTransactionExtendedRequest.START_TRANSACTION_REQUEST_OID) &&
+      rootDSE.supportsExtendedOperation(EndTransactionExtendedRequest.END_TRANSACTION_REQUEST_OID);
+  }
+
+
+
+  /**
+   * Creates an applier.
+   *
+   * @param ldapConnection
+   *   the connection on which the changes are sent. Not permitted to
+   *   be {@code null}.
+   * @param batchSize
+   *   the largest number of changes in a transaction, which must be
+   *   greater than zero.
+   * @param concurrency
+   *   the largest number of single operations outstanding when
+   *   transactions are not used, which must be greater than zero.
+   */
+  public TransactionalChangeApplier(final LDAPConnection ldapConnection, final int batchSize,
+                                    final int concurrency) {
+    ensureNotNull(ldapConnection);
+    if(batchSize <= 0) {
+      throw new IllegalArgumentException("batchSize must be greater than zero.");
+    }
+    if(concurrency <= 0) {
+      throw new IllegalArgumentException("concurrency must be greater than zero.");
+    }
+    this.ldapConnection = ldapConnection;
+    this.batchSize = batchSize;
+    this.concurrency = concurrency;
+  }
+
+
+
+  /**
+   * Reads the change records from {@code ldifReader} and applies them.
+   * This method returns when every change read has completed. The
+   * reader is not closed.
+   *
+   * @param ldifReader
+   *   the reader of the changes. Not permitted to be {@code null}.
+   *
+   * @return the number of change records read.
+   *
+   * @throws IOException
+   *   if the changes cannot be read.
+   * @throws LDIFException
+   *   if the changes cannot continue to be read; the changes read
+   *   before have completed.
+   * @throws InterruptedException
+   *   if the calling thread is interrupted.
+   */
+  public long apply(final LDIFReader ldifReader)
+    throws IOException, LDIFException, InterruptedException {
+    ensureNotNull(ldifReader);
+    usingTransactions = (batchSize > 1) && transactionsSupported();
+    final long startNanos = System.nanoTime();
+    try {
+      return usingTransactions ? applyInTransactions(ldifReader) : applySingly(ldifReader);
+    } finally {
+      elapsedNanos += System.nanoTime() - startNanos;
+    }
+  }
+
+
+
+  /**
+   * Sets the controls added to each change request.
+   *
+   * @param controls
+   *   the controls, or none.
+   */
+  public void setControls(final Control... controls) {
+    this.controls = controls == null ? new Control[0] : controls.clone();
+  }
+
+
+
+  /**
+   * Sets the listener notified of each change that is not applied.
+   *
+   * @param failureListener
+   *   the listener, or {@code null} to only count the failures.
+   */
+  public void setFailureListener(final RateLimitedChangeApplier.FailureListener failureListener) {
+    this.failureListener = failureListener;
+  }
+
+
+
+  /**
+   * Sets the reporter that counts the changes read and applied.
+   *
+   * @param progressReporter
+   *   the reporter, or {@code null}.
+   */
+  public void setProgressReporter(final LdifLoadProgressReporter progressReporter) {
+    this.progressReporter = progressReporter;
+  }
+
+
+
+  /**
+   * @return whether the last invocation of {@link #apply} used
+   *         transactions.
+   */
+  public boolean isUsingTransactions() {
+    return usingTransactions;
+  }
+
+
+
+  /**
+   * @return the number of changes applied.
+   */
+  public long getApplied() {
+    return applied;
+  }
+
+
+
+  /**
+   * @return the number of changes that were read but not applied.
+   */
+  public long getFailed() {
+    return failed;
+  }
+
+
+
+  /**
+   * @return the number of change records that could not be read.
+   */
+  public long getNotRead() {
+    return notRead;
+  }
+
+
+
+  /**
+   * @return the number of change records read.
+   */
+  public long getRead() {
+    return read;
+  }
+
+
+
+  /**
+   * @return the number of transactions committed.
+   */
+  public long getCommitted() {
+    return committed;
+  }
+
+
+
+  /**
+   * @return the number of transactions that were not committed, whose
+   *         changes were applied one at a time.
+   */
+  public long getRolledBack() {
+    return rolledBack;
+  }
+
+
+
+  /**
+   * @return the number of changes applied or failed per second of
+   *         {@link #apply}, or zero if none has completed.
+   */
+  public double getAchievedRate() {
+    final long completed = applied + failed;
+    if(completed == 0L) {
+      return 0.0;
+    }
+    return completed * (double) TimeUnit.SECONDS.toNanos(1L) / Math.max(1L,elapsedNanos);
+  }
+
+
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public String toString() {
+    return String.format("TransactionalChangeApplier [batchSize=%d, usingTransactions=%b, " +
+      "read=%d, applied=%d, failed=%d, notRead=%d, committed=%d, rolledBack=%d, " +
+      "achievedRate=%.1f/s]",batchSize,usingTransactions,read,applied,failed,notRead,committed,
+      rolledBack,getAchievedRate());
+  }
+
+
+
+  private boolean transactionsSupported() {
+    try {
+      return isTransactionSupported(ldapConnection);
+    } catch(final LDAPException ldapException) {
+      // single operations report the problem, if it persists
+      return false;
+    }
+  }
+
+
+
+  private long applySingly(final LDIFReader ldifReader)
+    throws IOException, LDIFException, InterruptedException {
+    final RateLimitedChangeApplier applier =
+      new RateLimitedChangeApplier(ldapConnection,0.0,1,concurrency);
+    applier.setControls(controls);
+    applier.setFailureListener(failureListener);
+    applier.setProgressReporter(progressReporter);
+    try {
+      return applier.apply(ldifReader);
+    } finally {
+      read += applier.getRead();
+      applied += applier.getApplied();
+      failed += applier.getFailed();
+      notRead += applier.getNotRead();
+    }
+  }
+
+
+
+  private long applyInTransactions(final LDIFReader ldifReader)
+    throws IOException, LDIFException, InterruptedException {
+    final long readBefore = read;
+    final List<LDIFChangeRecord> batch = new ArrayList<LDIFChangeRecord>(batchSize);
+    try {
+      while(true) {
+        final LDIFChangeRecord changeRecord;
+        try {
+          changeRecord = ldifReader.readChangeRecord();
+        } catch(final LDIFException ldifException) {
+          ++notRead;
+          if(failureListener != null) {
+            failureListener.changeNotRead(ldifException);
+          }
+          if(ldifException.mayContinueReading()) {
+            continue;
+          }
+          throw ldifException;
+        }
+        if(changeRecord == null) {
+          break;
+        }
+        ++read;
+        if(progressReporter != null) {
+          progressReporter.entryRead();
+        }
+        batch.add(changeRecord);
+        if(batch.size() == batchSize) {
+          applyBatch(batch);
+          batch.clear();
+        }
+      }
+    } finally {
+      if(!batch.isEmpty() && !Thread.currentThread().isInterrupted()) {
+        applyBatch(batch);
+      }
+    }
+    return read - readBefore;
+  }
+
+
+
+  /**
+   * Applies {@code batch} in a transaction, or one change at a time if
+   * the transaction cannot be committed.
+   */
+  private void applyBatch(final List<LDIFChangeRecord> batch) throws InterruptedException {
+    final ASN1OctetString transactionID = startTransaction();
+    if(transactionID == null) {
+      applyOneAtATime(batch);
+      return;
+    }
+    final Control[] transactionControls = new Control[controls.length + 1];
+    System.arraycopy(controls,0,transactionControls,0,controls.length);
+    transactionControls[controls.length] = new TransactionSpecificationRequestControl(transactionID);
+
+    boolean commit = true;
+    for(final LDAPResult ldapResult : send(batch,transactionControls)) {
+      if(ldapResult.getResultCode() != ResultCode.SUCCESS) {
+        commit = false;
+      }
+    }
+    final ResultCode endResultCode = endTransaction(transactionID,commit);
+    if(commit && (endResultCode == ResultCode.SUCCESS)) {
+      ++committed;
+      applied += batch.size();
+      if(progressReporter != null) {
+        progressReporter.entriesApplied(batch.size());
+      }
+    } else {
+      ++rolledBack;
+      applyOneAtATime(batch);
+    }
+  }
+
+
+
+  private void applyOneAtATime(final List<LDIFChangeRecord> batch) throws InterruptedException {
+    for(final LDIFChangeRecord changeRecord : batch) {
+      final LDAPResult ldapResult =
+        send(Collections.singletonList(changeRecord),controls).get(0);
+      if(ldapResult.getResultCode() == ResultCode.SUCCESS) {
+        ++applied;
+        if(progressReporter != null) {
+          progressReporter.entryApplied();
+        }
+      } else {
+        ++failed;
+        if(failureListener != null) {
+          failureListener.changeNotApplied(changeRecord,ldapResult);
+        }
+      }
+    }
+  }
+
+
+
+  /**
+   * @return the identifier of the new transaction, or {@code null} if
+   *         the server did not start one.
+   */
+  private ASN1OctetString startTransaction() {
+    try {
+      final ExtendedResult extendedResult =
+        ldapConnection.processExtendedOperation(new StartTransactionExtendedRequest());
+      if((extendedResult.getResultCode() == ResultCode.SUCCESS) &&
+        (extendedResult instanceof StartTransactionExtendedResult)) {
+        return ((StartTransactionExtendedResult) extendedResult).getTransactionID();
+      }
+    } catch(final LDAPException ldapException) {
+      // the changes are applied one at a time
+    }
+    return null;
+  }
+
+
+
+  private ResultCode endTransaction(final ASN1OctetString transactionID, final boolean commit) {
+    try {
+      return ldapConnection.processExtendedOperation(
+        new EndTransactionExtendedRequest(transactionID,commit)).getResultCode();
+    } catch(final LDAPException ldapException) {
+      return ldapException.getResultCode();
+    }
+  }
+
+
+
+  /**
+   * Sends the changes without waiting for each other's responses, then
+   * waits for all of the responses.
+   *
+   * @return the results, in the order of {@code changeRecords}.
+   */
+  private List<LDAPResult> send(final List<LDIFChangeRecord> changeRecords,
+                                final Control[] requestControls) throws InterruptedException {
+    final ResultCollector resultCollector = new ResultCollector(changeRecords.size());
+    for(int i = 0; i < changeRecords.size(); ++i) {
+      try {
+        final UpdatableLDAPRequest request =
+          RateLimitedChangeApplier.toRequest(changeRecords.get(i));
+        request.setControls(requestControls);
+        RateLimitedChangeApplier.sendAsync(ldapConnection,request,
+          resultCollector.listener(i));
+      } catch(final LDAPException ldapException) {
+        resultCollector.set(i,ldapException.toLDAPResult());
+      }
+    }
+    return resultCollector.await();
+  }
+
+
+
+  /**
+   * Collects the results of a set of requests sent at once. A request
+   * without a response when the connection is lost is given the result
+   * code {@code SERVER_DOWN}.
+   */
+  private final class ResultCollector {
+
+    private ResultCollector(final int size) {
+      this.results = new LDAPResult[size];
+      this.remaining = new CountDownLatch(size);
+    }
+
+
+
+    private AsyncResultListener listener(final int index) {
+      return new AsyncResultListener() {
+
+        @Override
+        public void ldapResultReceived(final AsyncRequestID requestID,
+                                       final LDAPResult ldapResult) {
+          set(index,ldapResult);
+        }
+      };
+    }
+
+
+
+    private synchronized void set(final int index, final LDAPResult ldapResult) {
+      if(results[index] == null) {
+        results[index] = ldapResult;
+        remaining.countDown();
+      }
+    }
+
+
+
+    private List<LDAPResult> await() throws InterruptedException {
+      while(!remaining.await(CONNECTION_CHECK_MILLIS,TimeUnit.MILLISECONDS)) {
+        if(!ldapConnection.isConnected()) {
+          final LDAPResult lost = new LDAPResult(-1,ResultCode.SERVER_DOWN,
+            "The connection was lost before the response was received.",null,(String[]) null,
+            (Control[]) null);
+          for(int i = 0; i < results.length; ++i) {
+            set(i,lost);
+          }
+        }
+      }
+      synchronized(this) {
+        final List<LDAPResult> list = new ArrayList<LDAPResult>(results.length);
+        Collections.addAll(list,results);
+        return list;
+      }
+    }
+
+
+
+    private final CountDownLatch remaining;
+
+
+    private final LDAPResult[] results;
+
+  }
+
+
+
+  private long applied;
+
+
+  private final int batchSize;
+
+
+  private long committed;
+
+
+  private final int concurrency;
+
+
+  private Control[] controls = new Control[0];
+
+
+  private long elapsedNanos;
+
+
+  private long failed;
+
+
+  private RateLimitedChangeApplier.FailureListener failureListener;
+
+
+  private final LDAPConnection ldapConnection;
+
+
+  private long notRead;
+
+
+  private LdifLoadProgressReporter progressReporter;
+
+
+  private long read;
+
+
+  private long rolledBack;
+
+
+  private boolean usingTransactions;
+
+}
@@ -27,9 +27,12 @@ import com.unboundid.ldap.listener.InMemoryDirectoryServer;
 import com.unboundid.ldap.listener.InMemoryDirectoryServerConfig;
 import com.unboundid.ldap.sdk.DN;
 import com.unboundid.ldap.sdk.Entry;
+import com.unboundid.ldap.sdk.EntrySource;
+import com.unboundid.ldap.sdk.EntrySourceException;
 import com.unboundid.ldap.sdk.Filter;
 import com.unboundid.ldap.sdk.LDAPConnectionPool;
 import com.unboundid.ldap.sdk.LDAPException;
+import com.unboundid.ldap.sdk.LDAPResult;
 import com.unboundid.ldap.sdk.ResultCode;
 import com.unboundid.ldap.sdk.SearchRequest;
 import com.unboundid.ldap.sdk.SearchResult;
@@ -48,6 +51,8 @@ import samplecode.annotation.CodeVersion;
 import samplecode.annotation.Launchable;
 import samplecode.annotation.Since;
 import samplecode.config.ConfigStrategy;
+import samplecode.ldif.LdifBulkLoader;
+import samplecode.ldif.ReadLdifFile;
 import samplecode.ldap.SupportedFeature;
 import samplecode.tools.AbstractTool;
 import samplecode.tools.BasicToolCompletedProcessing;
@@ -169,8 +174,9 @@ import static com.unboundid.util.Validator.ensureNotNull;
  *     parameter must exist and be readable.
  * -l, --ldifFile {filename}
  *     A file containing entries in LDIF format to be loaded into the directory
- *     server.This parameter is required and may be specified one time.Any
- *     pathname referenced by the --ldifFile argument must exist and must be
+ *     server.The file may be gzip-compressed, or an entry snapshot.This
+ *     parameter is required and may be specified one time.Any pathname
+ *     referenced by the --ldifFile argument must exist and must be
  *     readable.
  * -d, --controlOID {object identifier}
  *     A series of dot-separated octets that are a control OID that should be
@@ -269,6 +275,20 @@ public final class LdapListenerExample extends AbstractTool {
   private static final String DEFAULT_BIND_PASSWORD = "password";
 
 
+  /**
+   * The number of connections of the pool over which the entries of the
+   * LDIF file are added.
+   */
+  private static final int LOAD_CONNECTIONS = 4;
+
+
+  /**
+   * The largest number of add requests outstanding on each connection
+   * while the entries of the LDIF file are added.
+   */
+  private static final int MAX_OUTSTANDING_ADDS_PER_CONNECTION = 8;
+
+
   /**
    * Provides a service which displays an entry.
    */
@@ -444,6 +464,7 @@ public final class LdapListenerExample extends AbstractTool {
     builder.delete(0,builder.capacity());
     builder.append("A file containing entries in LDIF format ");
     builder.append("to be loaded into the directory server.");
+    builder.append("The file may be gzip-compressed, or an entry snapshot.");
     builder.append("This parameter is required and may be specified one time.");
     builder.append("Any pathname referenced by the --ldifFile argument must exist ");
     builder.append("and must be readable.");
@@ -532,18 +553,6 @@ public final class LdapListenerExample extends AbstractTool {
 
       };
 
-    // a listener that adds the entry
-    final InMemoryDirectoryServerListener addEntryListener =
-      new InMemoryDirectoryServerListener() {
-
-          @Override
-          public ResultCode entryAction(final LDAPConnectionPool ldapConnectionPool,
-                                        final Entry entry) throws LDAPException {
-            return ldapConnectionPool.add(entry).getResultCode();
-          }
-
-        };
-
     // get an array of distinguished names to use for the in-memory server
     final List<DN> dns = dnArgument.getValues();
     final int size = dns.size();
@@ -584,7 +593,6 @@ public final class LdapListenerExample extends AbstractTool {
       server = new InMemoryDirectoryServer(cfg);
 
       addListener(displayEntryListener);
-      addListener(addEntryListener);
 
       // start the listener
       server.startListening();
@@ -592,7 +600,8 @@ public final class LdapListenerExample extends AbstractTool {
       // get a pool of connection to the in-memory server
       ldapConnectionPool = server.getConnectionPool(5);
 
-      // Read the entries from the specified LDIF file and execute the listeners
+      // Read the entries from the specified LDIF file, execute the listeners
+      // and add the entries
       getEntriesFromFile(ldifFile);
 
       // Retrieve the list of control OIDs that the in-memory server
@@ -654,8 +663,14 @@ public final class LdapListenerExample extends AbstractTool {
 
 
   /**
-   * Retrieves all entries from the file {@code ldifFile}. The
-   * {@code entryAction} method is invoked for each entry.
+   * Retrieves all entries from the file {@code ldifFile}, which may be
+   * gzip-compressed, parsing them in parallel, or which may be an entry
+   * snapshot, whose entries are not parsed, and adds them to the
+   * in-memory server over several connections, each entry held only
+   * until its parent has been added. The {@code entryAction}
+   * method is invoked for each entry as it is read; a listener that
+   * fails is logged, and the entry is still added. An entry that is
+   * not added is logged and does not stop the load.
    *
    * @param ldifFile
    *   A file containing entries in the form of LDIF.
@@ -670,26 +685,69 @@ public final class LdapListenerExample extends AbstractTool {
    */
   private void getEntriesFromFile(final File ldifFile)
     throws IOException, LDIFException, LDAPException {
+    // plain, gzip-compressed and block-compressed LDIF and entry
+    // snapshots are all read
+    final EntrySource ldifEntrySource =
+      ReadLdifFile.newEntrySource(ldifFile,Runtime.getRuntime().availableProcessors());
+    final LdifBulkLoader loader =
+      new LdifBulkLoader(ldapConnectionPool,LOAD_CONNECTIONS,MAX_OUTSTANDING_ADDS_PER_CONNECTION);
+    loader.setFailureListener(new LdifBulkLoader.FailureListener() {
+
+      @Override
+      public void entryNotAdded(final Entry entry, final LDAPResult ldapResult) {
+        getLogger().error(String.format("%s was not added: %s",entry.getDN(),ldapResult));
+      }
+
+
+
+      @Override
+      public void entryNotRead(final EntrySourceException entrySourceException) {
+        getLogger().error(entrySourceException.getExceptionMessage());
+      }
+    });
+
     // Read each entry from the file containing entries in LDIF format and invoke the
     // listeners for each entry.
-    final LDIFReader ldifReader = new LDIFReader(ldifFile);
-    while(true) {
-      try {
-        final Entry entry = ldifReader.readEntry();
-        if(entry == null) {
-          break;
-        }
-        for(final InMemoryDirectoryServerListener l : listeners) {
-          l.entryAction(ldapConnectionPool,entry);
+    try {
+      loader.load(new EntrySource() {
+
+        @Override
+        public Entry nextEntry() throws EntrySourceException {
+          final Entry entry = ldifEntrySource.nextEntry();
+          if(entry != null) {
+            for(final InMemoryDirectoryServerListener l : listeners) {
+              try {
+                l.entryAction(ldapConnectionPool,entry);
+              } catch(final LDAPException ldapException) {
+                getLogger().error(String.format("the listener of %s failed: %s",entry.getDN(),
+                  ldapException.getExceptionMessage()));
+              }
+            }
+          }
+          return entry;
         }
-      } catch(final LDIFException e) {
-        if(!e.mayContinueReading()) {
-          getLogger().fatal(e);
-          break;
+
+
+
+        @Override
+        public void close() {
+          ldifEntrySource.close();
         }
+      });
+    } catch(final EntrySourceException e) {
+      if(e.getCause() instanceof LDIFException) {
+        throw (LDIFException) e.getCause();
       }
+      if(e.getCause() instanceof IOException) {
+        throw (IOException) e.getCause();
+      }
+      getLogger().fatal(e);
+    } catch(final InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    if(getLogger().isInfoEnabled()) {
+      getLogger().info(loader.toString());
     }
-    ldifReader.close();
   }
 
 
@@ -23,8 +23,15 @@ import samplecode.annotation.Since;
 import samplecode.cli.CommandLineOptions;
 import samplecode.tools.AbstractTool;
 
+import samplecode.util.SampleCodeCollectionUtils;
+import samplecode.util.SampleCodeExecutors;
+
 import java.io.OutputStream;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 
 /**
  * Provides a demonstration of the use of the modify-increment extension
@@ -217,9 +224,6 @@ public final class ModifyIncrementDemo extends AbstractTool
   private Filter filter;
 
 
-  private DN entryDn;
-
-
   private DNArgument dnArgument;
 
 
@@ -305,7 +309,9 @@ public final class ModifyIncrementDemo extends AbstractTool
     builder.append("Specifies the distinguished name of the entry ");
     builder.append("(which must exist) whose attributes are to be incremented. ");
     builder.append("This command line argument is required, has no default value, ");
-    builder.append("and may be specified exactly once.");
+    builder.append("and may be specified multiple times, in which case the entries ");
+    builder.append("are modified concurrently using --numThreads threads, or one ");
+    builder.append("virtual thread per modification if --virtualThreads is specified.");
     description = builder.toString();
     dnArgument =
       new DNArgument(shortIdentifier, longIdentifier, isRequired, maxOccurrences,
@@ -385,32 +391,136 @@ public final class ModifyIncrementDemo extends AbstractTool
       err("--filter is a required argument.");
       return;
     }
-    entryDn = dnArgument.getValue();
     requestedAttributes = getRequestedAttributes();
     incrementValue = integerArgument.getValue();
   }
 
 
+  /**
+   * Increments each requested attribute of each entry specified by the
+   * --entry command line arguments. Each modification is a separate
+   * task; the tasks run concurrently on connections checked out of a
+   * pool sized by --initialConnections and --maxConnections, so that
+   * with --virtualThreads the number of modifications in progress is
+   * limited only by the pool. The throughput and latency of the
+   * modifications are reported every --reportInterval milliseconds.
+   *
+   * @throws LDAPException
+   *   the first exception thrown by a modification, after every
+   *   modification has completed.
+   */
   void modifyIncrementAttributes() throws LDAPException
   {
 
     initializeDemo();
-    LDAPConnection ldapConnection = getConnection();
-    ModifyStrategy modifyEntry =
-      new IncrementModifyStrategy(ldapConnection, scope, filter);
+    final List<DN> entryDns = dnArgument.getValues();
+    final LDAPConnectionPool pool = getBoundedLdapConnectionPool();
+    final ExecutorService executorService =
+      SampleCodeExecutors.newExecutorService(Math.max(1, commandLineOptions.getNumThreads()),
+        commandLineOptions.getVirtualThreads());
+    final List<Future<Void>> futures = SampleCodeCollectionUtils.newArrayList();
+    LDAPException firstException = null;
+    startPerformanceReporter();
+    try
+    {
+      for(final DN dn : entryDns)
+      {
+        for(final String attribute : requestedAttributes)
+        {
+          futures.add(executorService.submit(new IncrementTask(pool, dn, attribute)));
+        }
+      }
+      SampleCodeExecutors.shutdownAndAwaitTermination(executorService);
+      for(final Future<Void> future : futures)
+      {
+        try
+        {
+          future.get();
+        }
+        catch(final ExecutionException executionException)
+        {
+          final Throwable cause = executionException.getCause();
+          if((firstException == null) && (cause instanceof LDAPException))
+          {
+            firstException = (LDAPException) cause;
+          }
+          getLogger().error(cause);
+        }
+        catch(final InterruptedException interruptedException)
+        {
+          Thread.currentThread().interrupt();
+          break;
+        }
+      }
+    }
+    finally
+    {
+      stopPerformanceReporter();
+      pool.close();
+    }
+    if(firstException != null)
+    {
+      throw firstException;
+    }
 
-    for(final String attribute : requestedAttributes)
+  }
+
+
+  /**
+   * Increments one attribute of one entry using a connection checked
+   * out of the pool.
+   */
+  private final class IncrementTask implements Callable<Void>
+  {
+
+    private IncrementTask(final LDAPConnectionPool pool, final DN dn, final String attribute)
     {
+      this.pool = pool;
+      this.dn = dn;
+      this.attribute = attribute;
+    }
+
+
+    @Override
+    public Void call() throws LDAPException
+    {
+      final LDAPConnection ldapConnection = pool.getConnection();
+      boolean usable = true;
       try
       {
-        modifyEntry.modify(entryDn, attribute, incrementValue);
+        final ModifyStrategy modifyEntry =
+          new IncrementModifyStrategy(ldapConnection, scope, filter);
+        final long begin = System.nanoTime();
+        modifyEntry.modify(dn, attribute, incrementValue);
+        recordOperation(System.nanoTime() - begin, 1L);
+      }
+      catch(final LDAPException ldapException)
+      {
+        usable = ResultCode.isConnectionUsable(ldapException.getResultCode());
+        throw ldapException;
       }
       finally
       {
-        ldapConnection.close();
+        if(usable)
+        {
+          pool.releaseConnection(ldapConnection);
+        }
+        else
+        {
+          pool.releaseDefunctConnection(ldapConnection);
+        }
       }
+      return null;
     }
 
+
+    private final String attribute;
+
+
+    private final DN dn;
+
+
+    private final LDAPConnectionPool pool;
   }
 
 
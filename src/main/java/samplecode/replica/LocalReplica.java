@@ -0,0 +1,640 @@
+/*
+ * Copyright 2008-2013 UnboundID Corp. All Rights Reserved.
+ */
+/*
+ * Copyright (C) 2008-2013 UnboundID Corp. This program is free
+ * software; you can redistribute it and/or modify it under the terms of
+ * the GNU General Public License (GPLv2 only) or the terms of the GNU
+ * Lesser General Public License (LGPLv2.1 only) as published by the
+ * Free Software Foundation. This program is distributed in the hope
+ * that it will be useful, but WITHOUT ANY WARRANTY; without even the
+ * implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR
+ * PURPOSE. See the GNU General Public License for more details. You
+ * should have received a copy of the GNU General Public License along
+ * with this program; if not, see <http://www.gnu.org/licenses>.
+ */
+
+package samplecode.replica;
+
+import com.unboundid.asn1.ASN1OctetString;
+import com.unboundid.ldap.matchingrules.MatchingRule;
+import com.unboundid.ldap.sdk.Attribute;
+import com.unboundid.ldap.sdk.DN;
+import com.unboundid.ldap.sdk.Entry;
+import com.unboundid.ldap.sdk.Filter;
+import com.unboundid.ldap.sdk.LDAPException;
+import com.unboundid.ldap.sdk.ReadOnlyEntry;
+import com.unboundid.ldap.sdk.SearchScope;
+import com.unboundid.util.StaticUtils;
+import samplecode.annotation.CodeVersion;
+import samplecode.annotation.Since;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static com.unboundid.util.Validator.ensureNotNull;
+
+
+/**
+ * An in-process copy of the entries of a subtree, keyed by normalized
+ * DN, with equality indexes on a fixed set of attributes.
+ * <p/>
+ * The replica is written by a single thread, normally the connection
+ * reader thread of a content synchronization search through a
+ * {@link ReplicaSyncListener}, and read by any number of threads without
+ * locking. {@link #getEntry(String)} and {@link #search(Filter)} return
+ * {@code ReadOnlyEntry} objects that are never modified; a change to an
+ * entry replaces the object.
+ * <p/>
+ * {@link #search(Filter)} uses the indexes for an equality component on
+ * an indexed attribute, for an AND filter with at least one such
+ * component, and for an OR filter all of whose components can use an
+ * index; any other filter is evaluated against every entry. The
+ * candidates found by an index are always checked with
+ * {@link Filter#matchesEntry(Entry)}, so an index only decides how many
+ * entries are examined, never the result. Note that filters are
+ * evaluated by the client library without the schema of the server, so
+ * ordering and substring matches use the default matching rules.
+ * <p/>
+ * {@link #getStalenessMillis()} is the time since the replica last heard
+ * from the server, which bounds how out of date the copy can be only
+ * while the search is known to be active, and
+ * {@link #getMemoryFootprint()} is an estimate of the heap used by the
+ * entries and the indexes.
+ * <p/>
+ * example usage: <blockquote>
+ * <p/>
+ * <pre>
+ * LocalReplica replica = new LocalReplica(Arrays.asList("uid","mail"));
+ * searchRequest.setSearchResultListener(new ReplicaSyncListener(replica,null,null));
+ * ...
+ * List&lt;ReadOnlyEntry&gt; entries = replica.search(Filter.createEqualityFilter("uid","user.1"));
+ * </pre>
+ * </blockquote>
+ */
+@Since("Oct 16, 2026")
+@CodeVersion("1.0")
+public final class LocalReplica {
+
+  // rough heap overheads of the objects that hold an entry or an index
+  // posting, used by the memory footprint estimate
+  private static final long ENTRY_OVERHEAD = 160L;
+
+
+  private static final long ATTRIBUTE_OVERHEAD = 96L;
+
+
+  private static final long VALUE_OVERHEAD = 32L;
+
+
+  private static final long INDEX_KEY_OVERHEAD = 120L;
+
+
+  private static final long INDEX_POSTING_OVERHEAD = 48L;
+
+
+
+  /**
+   * Creates an empty replica.
+   *
+   * @param indexedAttributes
+   *   the names of the attributes with an equality index. Not permitted
+   *   to be {@code null}, but may be empty.
+   */
+  public LocalReplica(final Collection<String> indexedAttributes) {
+    ensureNotNull(indexedAttributes);
+    for(final String attributeName : indexedAttributes) {
+      final String key = StaticUtils.toLowerCase(attributeName);
+      indexes.put(key,new ConcurrentHashMap<String,Set<String>>());
+      matchingRules.put(key,MatchingRule.selectEqualityMatchingRule(attributeName));
+    }
+  }
+
+
+
+  /**
+   * Adds an entry, or replaces the entry with the same DN or the same
+   * entryUUID. An entry whose entryUUID is known under another DN has
+   * been renamed, and the copy under the previous DN is removed.
+   *
+   * @param entry
+   *   the entry. Not permitted to be {@code null}.
+   * @param entryUUID
+   *   the entryUUID of the entry, or {@code null} if it is not known.
+   *
+   * @throws LDAPException
+   *   if the DN of the entry cannot be parsed.
+   */
+  public synchronized void put(final Entry entry, final UUID entryUUID) throws LDAPException {
+    ensureNotNull(entry);
+    final String normalizedDN = entry.getParsedDN().toNormalizedString();
+    if(entryUUID != null) {
+      final String previousDN = dnsByUUID.get(entryUUID);
+      if((previousDN != null) && !previousDN.equals(normalizedDN)) {
+        removeRecord(previousDN);
+      }
+    }
+    final Record record =
+      new Record(new ReadOnlyEntry(entry.getParsedDN(),entry.getAttributes()),normalizedDN,
+        entryUUID,generation);
+    // the new entry replaces the previous one at once, so that a reader
+    // never finds neither
+    final Record previous = records.put(normalizedDN,record);
+    if(entryUUID != null) {
+      dnsByUUID.put(entryUUID,normalizedDN);
+    }
+    memoryFootprint += record.size + index(record,true);
+    if(previous != null) {
+      if((previous.entryUUID != null) && !previous.entryUUID.equals(entryUUID)) {
+        dnsByUUID.remove(previous.entryUUID);
+      }
+      memoryFootprint += index(previous,false) - previous.size;
+    }
+  }
+
+
+
+  /**
+   * Removes the entry with the given DN, if any.
+   *
+   * @param dn
+   *   the DN of the entry. Not permitted to be {@code null}.
+   *
+   * @return whether an entry was removed.
+   *
+   * @throws LDAPException
+   *   if {@code dn} cannot be parsed.
+   */
+  public synchronized boolean remove(final String dn) throws LDAPException {
+    ensureNotNull(dn);
+    return removeRecord(new DN(dn).toNormalizedString());
+  }
+
+
+
+  /**
+   * Removes the entry with the given entryUUID, if any.
+   *
+   * @param entryUUID
+   *   the entryUUID of the entry. Not permitted to be {@code null}.
+   *
+   * @return whether an entry was removed.
+   */
+  public synchronized boolean remove(final UUID entryUUID) {
+    ensureNotNull(entryUUID);
+    final String normalizedDN = dnsByUUID.get(entryUUID);
+    return (normalizedDN != null) && removeRecord(normalizedDN);
+  }
+
+
+
+  /**
+   * Starts a refresh of the replica: the entries that are neither
+   * added nor reported as present before {@link #removeNotPresent()} is
+   * invoked are removed by that method.
+   */
+  public synchronized void beginRefresh() {
+    ++generation;
+    refreshComplete = false;
+  }
+
+
+
+  /**
+   * Records that the entry with the given entryUUID, which is unchanged,
+   * is still present on the server.
+   *
+   * @param entryUUID
+   *   the entryUUID of the entry. Not permitted to be {@code null}.
+   *
+   * @return whether the entry is in the replica.
+   */
+  public synchronized boolean markPresent(final UUID entryUUID) {
+    ensureNotNull(entryUUID);
+    final String normalizedDN = dnsByUUID.get(entryUUID);
+    final Record record = normalizedDN == null ? null : records.get(normalizedDN);
+    if(record == null) {
+      return false;
+    }
+    record.generation = generation;
+    return true;
+  }
+
+
+
+  /**
+   * Removes the entries that were neither added nor reported as present
+   * since {@link #beginRefresh()} was invoked; this ends the present
+   * phase of a refresh.
+   *
+   * @return the number of entries removed.
+   */
+  public synchronized int removeNotPresent() {
+    final List<String> absent = new ArrayList<String>();
+    for(final Record record : records.values()) {
+      if(record.generation != generation) {
+        absent.add(record.normalizedDN);
+      }
+    }
+    for(final String normalizedDN : absent) {
+      removeRecord(normalizedDN);
+    }
+    return absent.size();
+  }
+
+
+
+  /**
+   * Records that the refresh is complete: the replica holds the content
+   * of the subtree, and is kept current by the changes that follow.
+   */
+  public void setRefreshComplete() {
+    refreshComplete = true;
+  }
+
+
+
+  /**
+   * Records that a message was received from the server, which resets
+   * the staleness of the replica.
+   */
+  public void touch() {
+    lastMessageNanos = System.nanoTime();
+  }
+
+
+
+  /**
+   * Retrieves the entry with the given DN.
+   *
+   * @param dn
+   *   the DN of the entry. Not permitted to be {@code null}.
+   *
+   * @return the entry, or {@code null} if the replica has no entry with
+   *         that DN.
+   *
+   * @throws LDAPException
+   *   if {@code dn} cannot be parsed.
+   */
+  public ReadOnlyEntry getEntry(final String dn) throws LDAPException {
+    ensureNotNull(dn);
+    final Record record = records.get(new DN(dn).toNormalizedString());
+    return record == null ? null : record.entry;
+  }
+
+
+
+  /**
+   * Retrieves the entries that match a filter.
+   *
+   * @param filter
+   *   the filter. Not permitted to be {@code null}.
+   *
+   * @return the matching entries, in no particular order.
+   *
+   * @throws LDAPException
+   *   if the filter cannot be evaluated.
+   */
+  public List<ReadOnlyEntry> search(final Filter filter) throws LDAPException {
+    return search(null,null,filter);
+  }
+
+
+
+  /**
+   * Retrieves the entries below a base object that match a filter.
+   *
+   * @param baseDN
+   *   the base object of the search, or {@code null} for the whole
+   *   replica.
+   * @param scope
+   *   the scope of the search, which is ignored when {@code baseDN} is
+   *   {@code null}.
+   * @param filter
+   *   the filter. Not permitted to be {@code null}.
+   *
+   * @return the matching entries, in no particular order.
+   *
+   * @throws LDAPException
+   *   if the base object cannot be parsed or the filter cannot be
+   *   evaluated.
+   */
+  public List<ReadOnlyEntry> search(final String baseDN, final SearchScope scope,
+                                    final Filter filter) throws LDAPException {
+    ensureNotNull(filter);
+    final DN base = baseDN == null ? null : new DN(baseDN);
+    final Set<String> candidates = candidates(filter);
+    final Collection<Record> examined;
+    if(candidates == null) {
+      scannedSearches.incrementAndGet();
+      examined = records.values();
+    } else {
+      indexedSearches.incrementAndGet();
+      examined = new ArrayList<Record>(candidates.size());
+      for(final String normalizedDN : candidates) {
+        final Record record = records.get(normalizedDN);
+        if(record != null) {
+          examined.add(record);
+        }
+      }
+    }
+    final List<ReadOnlyEntry> entries = new ArrayList<ReadOnlyEntry>();
+    for(final Record record : examined) {
+      if(((base == null) || record.entry.matchesBaseAndScope(base,scope)) &&
+        filter.matchesEntry(record.entry)) {
+        entries.add(record.entry);
+      }
+    }
+    return entries;
+  }
+
+
+
+  /**
+   * @return the number of entries in the replica.
+   */
+  public int size() {
+    return records.size();
+  }
+
+
+
+  /**
+   * @return whether the initial refresh is complete.
+   */
+  public boolean isRefreshComplete() {
+    return refreshComplete;
+  }
+
+
+
+  /**
+   * Retrieves the time since the last message from the server. While
+   * the content synchronization search is active the replica misses no
+   * change older than this; a server that has no changes to send may
+   * also be silent for a long time.
+   *
+   * @return the number of milliseconds since the last message from the
+   *         server, or {@code -1} if no message has been received.
+   */
+  public long getStalenessMillis() {
+    final long nanos = lastMessageNanos;
+    return nanos == 0L ? -1L : (System.nanoTime() - nanos) / 1000000L;
+  }
+
+
+
+  /**
+   * @return an estimate of the number of bytes of heap used by the
+   *         entries and the indexes.
+   */
+  public long getMemoryFootprint() {
+    return memoryFootprint;
+  }
+
+
+
+  /**
+   * @return the number of searches that used an index.
+   */
+  public long getIndexedSearches() {
+    return indexedSearches.get();
+  }
+
+
+
+  /**
+   * @return the number of searches that examined every entry.
+   */
+  public long getScannedSearches() {
+    return scannedSearches.get();
+  }
+
+
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public String toString() {
+    return "LocalReplica [entries=" + records.size() + ", indexedAttributes=" +
+      indexes.keySet() + ", refreshComplete=" + refreshComplete + ", stalenessMillis=" +
+      getStalenessMillis() + ", memoryFootprint=" + memoryFootprint + ", indexedSearches=" +
+      indexedSearches + ", scannedSearches=" + scannedSearches + "]";
+  }
+
+
+
+  /**
+   * Retrieves the normalized DNs of the entries that may match a filter
+   * according to the indexes.
+   *
+   * @return the candidates, or {@code null} if the indexes cannot narrow
+   *         the search.
+   */
+  private Set<String> candidates(final Filter filter) {
+    switch(filter.getFilterType()) {
+      case Filter.FILTER_TYPE_EQUALITY:
+        final String key = StaticUtils.toLowerCase(filter.getAttributeName());
+        final Map<String,Set<String>> index = indexes.get(key);
+        if(index == null) {
+          return null;
+        }
+        final Set<String> dns = index.get(normalize(key,filter.getRawAssertionValue()));
+        return dns == null ? Collections.<String>emptySet() : dns;
+
+      case Filter.FILTER_TYPE_AND:
+        Set<String> smallest = null;
+        for(final Filter component : filter.getComponents()) {
+          final Set<String> c = candidates(component);
+          if((c != null) && ((smallest == null) || (c.size() < smallest.size()))) {
+            smallest = c;
+          }
+        }
+        return smallest;
+
+      case Filter.FILTER_TYPE_OR:
+        final Set<String> union = new HashSet<String>();
+        for(final Filter component : filter.getComponents()) {
+          final Set<String> c = candidates(component);
+          if(c == null) {
+            return null;
+          }
+          union.addAll(c);
+        }
+        return union;
+
+      default:
+        return null;
+    }
+  }
+
+
+
+  /**
+   * Adds the values of the indexed attributes of a record to the
+   * indexes, or removes them. The values that a record which replaced
+   * the removed one under the same DN also has are not removed.
+   *
+   * @return the change in the estimated footprint of the indexes.
+   */
+  private long index(final Record record, final boolean add) {
+    long footprint = 0L;
+    final Record replacement = add ? null : records.get(record.normalizedDN);
+    for(final Map.Entry<String,ConcurrentHashMap<String,Set<String>>> e : indexes.entrySet()) {
+      final Attribute attribute = record.entry.getAttribute(e.getKey());
+      if(attribute == null) {
+        continue;
+      }
+      final Set<String> kept = new HashSet<String>();
+      final Attribute replacementAttribute =
+        replacement == null ? null : replacement.entry.getAttribute(e.getKey());
+      if(replacementAttribute != null) {
+        for(final ASN1OctetString value : replacementAttribute.getRawValues()) {
+          kept.add(normalize(e.getKey(),value));
+        }
+      }
+      final ConcurrentHashMap<String,Set<String>> index = e.getValue();
+      for(final ASN1OctetString value : attribute.getRawValues()) {
+        final String normalizedValue = normalize(e.getKey(),value);
+        Set<String> dns = index.get(normalizedValue);
+        if(kept.contains(normalizedValue)) {
+          continue;
+        }
+        if(add) {
+          if(dns == null) {
+            dns = Collections.newSetFromMap(new ConcurrentHashMap<String,Boolean>());
+            index.put(normalizedValue,dns);
+            footprint += INDEX_KEY_OVERHEAD + 2L * normalizedValue.length();
+          }
+          if(dns.add(record.normalizedDN)) {
+            footprint += INDEX_POSTING_OVERHEAD;
+          }
+        } else if((dns != null) && dns.remove(record.normalizedDN)) {
+          footprint -= INDEX_POSTING_OVERHEAD;
+          if(dns.isEmpty()) {
+            index.remove(normalizedValue);
+            footprint -= INDEX_KEY_OVERHEAD + 2L * normalizedValue.length();
+          }
+        }
+      }
+    }
+    return footprint;
+  }
+
+
+
+  private String normalize(final String attributeName, final ASN1OctetString value) {
+    try {
+      return matchingRules.get(attributeName).normalize(value).stringValue();
+    } catch(final LDAPException ldapException) {
+      // a value the matching rule rejects can only match itself
+      return value.stringValue();
+    }
+  }
+
+
+
+  private boolean removeRecord(final String normalizedDN) {
+    final Record record = records.remove(normalizedDN);
+    if(record == null) {
+      return false;
+    }
+    if(record.entryUUID != null) {
+      dnsByUUID.remove(record.entryUUID);
+    }
+    memoryFootprint += index(record,false) - record.size;
+    return true;
+  }
+
+
+
+  private static long estimateFootprint(final Entry entry) {
+    long size = ENTRY_OVERHEAD + 4L * entry.getDN().length();
+    for(final Attribute attribute : entry.getAttributes()) {
+      size += ATTRIBUTE_OVERHEAD + 2L * attribute.getName().length();
+      for(final ASN1OctetString value : attribute.getRawValues()) {
+        size += VALUE_OVERHEAD + value.getValueLength();
+      }
+    }
+    return size;
+  }
+
+
+
+  /**
+   * An entry of the replica.
+   */
+  private static final class Record {
+
+    private Record(final ReadOnlyEntry entry, final String normalizedDN, final UUID entryUUID,
+                   final long generation) {
+      this.entry = entry;
+      this.normalizedDN = normalizedDN;
+      this.entryUUID = entryUUID;
+      this.generation = generation;
+      this.size = estimateFootprint(entry) + 2L * normalizedDN.length();
+    }
+
+
+
+    private final ReadOnlyEntry entry;
+
+
+    private final UUID entryUUID;
+
+
+    // the refresh in which the entry was last added or reported present
+    private long generation;
+
+
+    private final String normalizedDN;
+
+
+    private final long size;
+
+  }
+
+
+
+  private final Map<UUID,String> dnsByUUID = new ConcurrentHashMap<UUID,String>();
+
+
+  private long generation;
+
+
+  private final AtomicLong indexedSearches = new AtomicLong();
+
+
+  // written only by the constructor
+  private final Map<String,ConcurrentHashMap<String,Set<String>>> indexes =
+    new HashMap<String,ConcurrentHashMap<String,Set<String>>>();
+
+
+  private volatile long lastMessageNanos;
+
+
+  private final Map<String,MatchingRule> matchingRules = new HashMap<String,MatchingRule>();
+
+
+  private volatile long memoryFootprint;
+
+
+  private final Map<String,Record> records = new ConcurrentHashMap<String,Record>();
+
+
+  private volatile boolean refreshComplete;
+
+
+  private final AtomicLong scannedSearches = new AtomicLong();
+
+}
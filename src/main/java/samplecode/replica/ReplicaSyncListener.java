@@ -0,0 +1,203 @@
+/*
+ * Copyright 2008-2013 UnboundID Corp. All Rights Reserved.
+ */
+/*
+ * Copyright (C) 2008-2013 UnboundID Corp. This program is free
+ * software; you can redistribute it and/or modify it under the terms of
+ * the GNU General Public License (GPLv2 only) or the terms of the GNU
+ * Lesser General Public License (LGPLv2.1 only) as published by the
+ * Free Software Foundation. This program is distributed in the hope
+ * that it will be useful, but WITHOUT ANY WARRANTY; without even the
+ * implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR
+ * PURPOSE. See the GNU General Public License for more details. You
+ * should have received a copy of the GNU General Public License along
+ * with this program; if not, see <http://www.gnu.org/licenses>.
+ */
+
+package samplecode.replica;
+
+import com.unboundid.ldap.sdk.IntermediateResponse;
+import com.unboundid.ldap.sdk.IntermediateResponseListener;
+import com.unboundid.ldap.sdk.LDAPException;
+import com.unboundid.ldap.sdk.SearchResultEntry;
+import com.unboundid.ldap.sdk.SearchResultListener;
+import com.unboundid.ldap.sdk.SearchResultReference;
+import com.unboundid.ldap.sdk.controls.ContentSyncInfoIntermediateResponse;
+import com.unboundid.ldap.sdk.controls.ContentSyncStateControl;
+import samplecode.annotation.CodeVersion;
+import samplecode.annotation.Since;
+
+import java.util.UUID;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import static com.unboundid.util.Validator.ensureNotNull;
+
+
+/**
+ * Applies the entries and the sync info messages of an RFC 4533 content
+ * synchronization search to a {@link LocalReplica}, and then passes them
+ * on to the listeners of the application, if any.
+ * <p/>
+ * An entry with the {@code add} or {@code modify} state is stored, an
+ * entry with the {@code delete} state is removed, and an entry with the
+ * {@code present} state, which is unchanged, is marked as still present.
+ * A {@code syncIdSet} message removes or marks the entries it names, and
+ * the end of the present phase removes the entries that were not
+ * reported. The listener must be used with a search that begins with an
+ * empty replica, or after {@link LocalReplica#beginRefresh()}.
+ */
+@Since("Oct 16, 2026")
+@CodeVersion("1.0")
+@SuppressWarnings("serial")
+public final class ReplicaSyncListener
+  implements SearchResultListener, IntermediateResponseListener {
+
+  /**
+   * Creates a listener that applies the search to a replica.
+   *
+   * @param replica
+   *   the replica. Not permitted to be {@code null}.
+   * @param searchResultListener
+   *   the listener to which the entries are passed after they are
+   *   applied, or {@code null}.
+   * @param intermediateResponseListener
+   *   the listener to which the intermediate responses are passed after
+   *   they are applied, or {@code null}.
+   */
+  public ReplicaSyncListener(final LocalReplica replica,
+                             final SearchResultListener searchResultListener,
+                             final IntermediateResponseListener intermediateResponseListener) {
+    ensureNotNull(replica);
+    this.replica = replica;
+    this.searchResultListener = searchResultListener;
+    this.intermediateResponseListener = intermediateResponseListener;
+  }
+
+
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public void searchEntryReturned(final SearchResultEntry searchEntry) {
+    ensureNotNull(searchEntry);
+
+    replica.touch();
+    try {
+      final ContentSyncStateControl c = ContentSyncStateControl.get(searchEntry);
+      if(c == null) {
+        replica.put(searchEntry,null);
+      } else {
+        switch(c.getState()) {
+          case ADD:
+          case MODIFY:
+            replica.put(searchEntry,c.getEntryUUID());
+            break;
+          case DELETE:
+            if(!replica.remove(c.getEntryUUID())) {
+              replica.remove(searchEntry.getDN());
+            }
+            break;
+          case PRESENT:
+            // some servers return the attributes of a present entry
+            if(searchEntry.getAttributes().isEmpty()) {
+              replica.markPresent(c.getEntryUUID());
+            } else {
+              replica.put(searchEntry,c.getEntryUUID());
+            }
+            break;
+          default:
+            break;
+        }
+      }
+    } catch(final LDAPException ldapException) {
+      logger.log(Level.WARNING,"unable to apply " + searchEntry.getDN() + " to the replica",
+        ldapException);
+    }
+    if(searchResultListener != null) {
+      searchResultListener.searchEntryReturned(searchEntry);
+    }
+  }
+
+
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public void searchReferenceReturned(final SearchResultReference searchReference) {
+    if(searchResultListener != null) {
+      searchResultListener.searchReferenceReturned(searchReference);
+    }
+  }
+
+
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public void intermediateResponseReturned(final IntermediateResponse intermediateResponse) {
+    ensureNotNull(intermediateResponse);
+
+    replica.touch();
+    if(ContentSyncInfoIntermediateResponse.SYNC_INFO_OID.equals(intermediateResponse.getOID())) {
+      try {
+        apply(ContentSyncInfoIntermediateResponse.decode(intermediateResponse));
+      } catch(final LDAPException ldapException) {
+        logger.log(Level.WARNING,"unable to decode a sync info message",ldapException);
+      }
+    }
+    if(intermediateResponseListener != null) {
+      intermediateResponseListener.intermediateResponseReturned(intermediateResponse);
+    }
+  }
+
+
+
+  private void apply(final ContentSyncInfoIntermediateResponse syncInfo) {
+    switch(syncInfo.getType()) {
+      case REFRESH_PRESENT:
+        // the entries not reported during the present phase were deleted
+        final int removed = replica.removeNotPresent();
+        if(removed > 0) {
+          logger.fine(removed + " entries were not present and were removed");
+        }
+        if(syncInfo.refreshDone()) {
+          replica.setRefreshComplete();
+        }
+        break;
+      case REFRESH_DELETE:
+        if(syncInfo.refreshDone()) {
+          replica.setRefreshComplete();
+        }
+        break;
+      case SYNC_ID_SET:
+        for(final UUID entryUUID : syncInfo.getEntryUUIDs()) {
+          if(syncInfo.refreshDeletes()) {
+            replica.remove(entryUUID);
+          } else {
+            replica.markPresent(entryUUID);
+          }
+        }
+        break;
+      default:
+        break;
+    }
+  }
+
+
+
+  private final IntermediateResponseListener intermediateResponseListener;
+
+
+  private final Logger logger = Logger.getLogger(getClass().getName());
+
+
+  private final LocalReplica replica;
+
+
+  private final SearchResultListener searchResultListener;
+
+}
@@ -0,0 +1,11 @@
+/**
+ * An in-process copy of a subtree of the directory, kept current by an
+ * RFC 4533 content synchronization search.
+ * <p>
+ * The entries of the subtree are held in memory keyed by their
+ * normalized DN, with equality indexes on the attributes chosen by the
+ * application, so that lookups and the evaluation of filters are served
+ * locally instead of with a round trip to the server.
+ */
+
+package samplecode.replica;
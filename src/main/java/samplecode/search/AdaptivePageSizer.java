@@ -0,0 +1,268 @@
+/*
+ * Copyright 2008-2013 UnboundID Corp. All Rights Reserved.
+ */
+/*
+ * Copyright (C) 2008-2013 UnboundID Corp. This program is free
+ * software; you can redistribute it and/or modify it under the terms of
+ * the GNU General Public License (GPLv2 only) or the terms of the GNU
+ * Lesser General Public License (LGPLv2.1 only) as published by the
+ * Free Software Foundation. This program is distributed in the hope
+ * that it will be useful, but WITHOUT ANY WARRANTY; without even the
+ * implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR
+ * PURPOSE. See the GNU General Public License for more details. You
+ * should have received a copy of the GNU General Public License along
+ * with this program; if not, see <http://www.gnu.org/licenses>.
+ */
+
+package samplecode.search;
+
+import com.unboundid.asn1.ASN1OctetString;
+import com.unboundid.ldap.sdk.Attribute;
+import com.unboundid.ldap.sdk.Entry;
+import com.unboundid.ldap.sdk.SearchResult;
+import com.unboundid.ldap.sdk.SearchResultEntry;
+import samplecode.annotation.CodeVersion;
+import samplecode.annotation.Since;
+
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+
+/**
+ * Tunes the page size of a paged search between pages. After each page
+ * the time taken by the server to return the page and the decoded size
+ * of its entries are compared with a target latency and a memory
+ * budget:
+ * <ul>
+ * <li>when the page exceeded the memory budget, the page size is
+ * reduced to the number of entries of the average size of the page
+ * that fit in the budget</li>
+ * <li>otherwise, when the page took longer than the target latency,
+ * the page size is reduced in proportion</li>
+ * <li>otherwise, when a full page took less than half of the target
+ * latency, the page size is doubled, but not beyond the number of
+ * entries of the average size of the page that fit in the budget</li>
+ * </ul>
+ * The page size is kept between {@code minPageSize} and
+ * {@code maxPageSize}. Each adjustment is logged at level {@code INFO}.
+ * <p/>
+ * A fixed page size suits either small entries, which need large pages
+ * to amortize the round trip, or large entries, which need small pages
+ * to bound memory, but not both; an adaptive page size follows the
+ * entries as the search moves between them.
+ * <p/>
+ * example usage: <blockquote>
+ * <p/>
+ * <pre>
+ * AdaptivePageSizer pageSizer =
+ *   new AdaptivePageSizer(100,1,10000,500L,64L * 1024L * 1024L);
+ * ...
+ * searchRequest.setControls(new SimplePagedResultsControl(pageSizer.getPageSize(),cookie));
+ * long begin = System.nanoTime();
+ * SearchResult searchResult = ldapConnection.search(searchRequest);
+ * pageSizer.recordPage(searchResult,System.nanoTime() - begin);
+ * </pre>
+ * </blockquote>
+ */
+@Since("Oct 16, 2026")
+@CodeVersion("1.0")
+public final class AdaptivePageSizer {
+
+  /**
+   * Estimates the number of bytes of memory used by the decoded
+   * attribute values of {@code entry}, counting each character of the DN
+   * and of each attribute name as one byte.
+   *
+   * @param entry
+   *   the entry whose size is estimated.
+   *
+   * @return an estimate of the size of the entry in bytes.
+   */
+  public static long estimateSize(final Entry entry) {
+    long size = entry.getDN().length();
+    for(final Attribute attribute : entry.getAttributes()) {
+      size += attribute.getName().length();
+      for(final ASN1OctetString value : attribute.getRawValues()) {
+        size += value.getValueLength();
+      }
+    }
+    return size;
+  }
+
+
+
+  /**
+   * Creates a page sizer.
+   *
+   * @param initialPageSize
+   *   the size of the first page.
+   * @param minPageSize
+   *   the smallest page size, which must be greater than zero.
+   * @param maxPageSize
+   *   the largest page size, which must not be less than
+   *   {@code minPageSize}.
+   * @param targetLatencyMillis
+   *   the time in milliseconds the server should take to return a
+   *   page, which must be greater than zero.
+   * @param memoryBudgetBytes
+   *   the largest decoded size of the entries of a page, which must
+   *   be greater than zero.
+   */
+  public AdaptivePageSizer(final int initialPageSize, final int minPageSize,
+                           final int maxPageSize, final long targetLatencyMillis,
+                           final long memoryBudgetBytes) {
+    if(minPageSize <= 0) {
+      throw new IllegalArgumentException("minPageSize must be greater than zero.");
+    }
+    if(maxPageSize < minPageSize) {
+      throw new IllegalArgumentException("maxPageSize must not be less than minPageSize.");
+    }
+    if(targetLatencyMillis <= 0L) {
+      throw new IllegalArgumentException("targetLatencyMillis must be greater than zero.");
+    }
+    if(memoryBudgetBytes <= 0L) {
+      throw new IllegalArgumentException("memoryBudgetBytes must be greater than zero.");
+    }
+    this.minPageSize = minPageSize;
+    this.maxPageSize = maxPageSize;
+    this.targetLatencyNanos = TimeUnit.MILLISECONDS.toNanos(targetLatencyMillis);
+    this.memoryBudgetBytes = memoryBudgetBytes;
+    pageSize = clamp(initialPageSize);
+  }
+
+
+
+  /**
+   * @return the size of the next page.
+   */
+  public synchronized int getPageSize() {
+    return pageSize;
+  }
+
+
+
+  /**
+   * @return the number of times the page size was changed.
+   */
+  public synchronized int getAdjustments() {
+    return adjustments;
+  }
+
+
+
+  /**
+   * Records a page retrieved with the current page size and adjusts the
+   * page size of the next page.
+   *
+   * @param searchResult
+   *   the page, whose entries must have been collected in the
+   *   search result.
+   * @param elapsedNanos
+   *   the time taken to retrieve the page in nanoseconds.
+   *
+   * @return the size of the next page.
+   */
+  public int recordPage(final SearchResult searchResult, final long elapsedNanos) {
+    long pageBytes = 0L;
+    for(final SearchResultEntry entry : searchResult.getSearchEntries()) {
+      pageBytes += estimateSize(entry);
+    }
+    return recordPage(searchResult.getEntryCount(),pageBytes,elapsedNanos);
+  }
+
+
+
+  /**
+   * Records a page retrieved with the current page size and adjusts the
+   * page size of the next page.
+   *
+   * @param entries
+   *   the number of entries in the page.
+   * @param pageBytes
+   *   the decoded size of the entries of the page, see
+   *   {@link #estimateSize(Entry)}.
+   * @param elapsedNanos
+   *   the time taken to retrieve the page in nanoseconds.
+   *
+   * @return the size of the next page.
+   */
+  public synchronized int recordPage(final int entries, final long pageBytes,
+                                     final long elapsedNanos) {
+    if(entries <= 0) {
+      return pageSize;
+    }
+    final long bytesPerEntry = Math.max(1L,pageBytes / entries);
+    final long entriesInBudget = Math.max(1L,memoryBudgetBytes / bytesPerEntry);
+    final int newPageSize;
+    final String reason;
+    if(pageBytes > memoryBudgetBytes) {
+      newPageSize = clamp(entriesInBudget);
+      reason = String.format("page of %d bytes exceeded memory budget of %d bytes",pageBytes,
+        memoryBudgetBytes);
+    } else if(elapsedNanos > targetLatencyNanos) {
+      newPageSize = clamp((long) ((double) pageSize * targetLatencyNanos / elapsedNanos));
+      reason = String.format("page latency of %d ms exceeded target of %d ms",
+        TimeUnit.NANOSECONDS.toMillis(elapsedNanos),
+        TimeUnit.NANOSECONDS.toMillis(targetLatencyNanos));
+    } else if((entries >= pageSize) && (elapsedNanos < (targetLatencyNanos / 2L))) {
+      newPageSize = clamp(Math.min(2L * pageSize,entriesInBudget));
+      reason = String.format("page latency of %d ms below half of target of %d ms",
+        TimeUnit.NANOSECONDS.toMillis(elapsedNanos),
+        TimeUnit.NANOSECONDS.toMillis(targetLatencyNanos));
+    } else {
+      return pageSize;
+    }
+    if(newPageSize != pageSize) {
+      ++adjustments;
+      if(logger.isLoggable(Level.INFO)) {
+        logger.log(Level.INFO,String.format("page size changed from %d to %d: %s",pageSize,
+          newPageSize,reason));
+      }
+      pageSize = newPageSize;
+    }
+    return pageSize;
+  }
+
+
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public synchronized String toString() {
+    return "AdaptivePageSizer [pageSize=" + pageSize + ", minPageSize=" + minPageSize +
+      ", maxPageSize=" + maxPageSize + ", targetLatencyMillis=" +
+      TimeUnit.NANOSECONDS.toMillis(targetLatencyNanos) + ", memoryBudgetBytes=" +
+      memoryBudgetBytes + ", adjustments=" + adjustments + "]";
+  }
+
+
+
+  private int clamp(final long size) {
+    return (int) Math.max(minPageSize,Math.min(maxPageSize,size));
+  }
+
+
+
+  private int adjustments;
+
+
+  private final Logger logger = Logger.getLogger(getClass().getName());
+
+
+  private final int maxPageSize;
+
+
+  private final long memoryBudgetBytes;
+
+
+  private final int minPageSize;
+
+
+  private int pageSize;
+
+
+  private final long targetLatencyNanos;
+
+}
@@ -0,0 +1,514 @@
+/*
+ * Copyright 2008-2013 UnboundID Corp. All Rights Reserved.
+ */
+/*
+ * Copyright (C) 2008-2013 UnboundID Corp. This program is free
+ * software; you can redistribute it and/or modify it under the terms of
+ * the GNU General Public License (GPLv2 only) or the terms of the GNU
+ * Lesser General Public License (LGPLv2.1 only) as published by the
+ * Free Software Foundation. This program is distributed in the hope
+ * that it will be useful, but WITHOUT ANY WARRANTY; without even the
+ * implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR
+ * PURPOSE. See the GNU General Public License for more details. You
+ * should have received a copy of the GNU General Public License along
+ * with this program; if not, see <http://www.gnu.org/licenses>.
+ */
+
+package samplecode.search;
+
+import com.unboundid.asn1.ASN1OctetString;
+import com.unboundid.ldap.sdk.Control;
+import com.unboundid.ldap.sdk.Filter;
+import com.unboundid.ldap.sdk.LDAPConnection;
+import com.unboundid.ldap.sdk.LDAPConnectionPool;
+import com.unboundid.ldap.sdk.LDAPException;
+import com.unboundid.ldap.sdk.ResultCode;
+import com.unboundid.ldap.sdk.SearchRequest;
+import com.unboundid.ldap.sdk.SearchResult;
+import com.unboundid.ldap.sdk.SearchResultEntry;
+import com.unboundid.ldap.sdk.controls.ServerSideSortRequestControl;
+import com.unboundid.ldap.sdk.controls.SimplePagedResultsControl;
+import com.unboundid.ldap.sdk.controls.SortKey;
+import com.unboundid.ldif.LDIFWriter;
+import samplecode.annotation.CodeVersion;
+import samplecode.annotation.Since;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+import static com.unboundid.util.Validator.ensureNotNull;
+
+
+/**
+ * Exports the entries matching a search to a file of LDIF in the order
+ * of a unique key, so that an export that fails can be resumed from the
+ * last entry exported instead of from the beginning. The entries are
+ * requested in pages with the simple paged results control and sorted by
+ * the server with the {@code ServerSideSortRequestControl} on
+ * {@code sortAttribute}, whose values must be unique, for example
+ * {@code uid} or {@code entryUUID}.
+ * <p/>
+ * <b>An entry that has no value of {@code sortAttribute} is not
+ * exported.</b> The search adds the filter {@code (sortAttribute=*)},
+ * because an entry without a key cannot be placed in the order from
+ * which an export resumes. To export every entry, use an attribute that
+ * every entry has, such as {@code entryUUID}.
+ * <p/>
+ * Every {@code checkpointInterval} entries the LDIF is flushed and a
+ * checkpoint is saved in {@code checkpointFile}: the key of the last
+ * entry exported, the number of entries exported, and the length of the
+ * LDIF file. When the connection fails the export is resumed on a new
+ * connection from the pool with the filter
+ * {@code (&(filter)(sortAttribute>=lastKey))}, up to
+ * {@code maxRetries} times; when the tool itself fails, the next export
+ * with the same files truncates the LDIF to the length in the checkpoint
+ * and resumes from the key in the checkpoint. The checkpoint is deleted
+ * when the export is complete.
+ * <p/>
+ * The checkpoint is a properties file with the keys
+ * {@value #CHECKPOINT_LAST_KEY}, {@value #CHECKPOINT_ENTRIES_EXPORTED}
+ * and {@value #CHECKPOINT_OUTPUT_LENGTH}.
+ * <p/>
+ * example usage: <blockquote>
+ * <p/>
+ * <pre>
+ * CheckpointedExport export =
+ *   new CheckpointedExport(ldapConnectionPool,searchRequest,"uid",
+ *     new File("export.ldif"),new File("export.ldif.checkpoint"));
+ * export.setPageSize(1000);
+ * export.setCheckpointInterval(10000);
+ * export.setMaxRetries(3);
+ * export.export();
+ * System.out.println(export.getStatistics());
+ * </pre>
+ * </blockquote>
+ */
+@Since("Oct 16, 2026")
+@CodeVersion("1.0")
+public final class CheckpointedExport {
+
+  /**
+   * The name of the checkpoint property whose value is the sort key of
+   * the last entry exported.
+   */
+  public static final String CHECKPOINT_LAST_KEY = "lastKey";
+
+
+  /**
+   * The name of the checkpoint property whose value is the number of
+   * entries exported.
+   */
+  public static final String CHECKPOINT_ENTRIES_EXPORTED = "entriesExported";
+
+
+  /**
+   * The name of the checkpoint property whose value is the length in
+   * bytes of the LDIF file when the checkpoint was saved.
+   */
+  public static final String CHECKPOINT_OUTPUT_LENGTH = "outputLength";
+
+
+
+  /**
+   * Prepares an export.
+   *
+   * @param ldapConnectionPool
+   *   provides the connection used for each attempt. Not permitted to
+   *   be {@code null}.
+   * @param searchRequest
+   *   the base object, scope, filter, and attributes of the entries
+   *   to export; it is not modified. Not permitted to be {@code null}.
+   * @param sortAttribute
+   *   the attribute whose unique values order the export. Entries
+   *   without a value of the attribute are not exported. Not
+   *   permitted to be {@code null}.
+   * @param outputFile
+   *   the file to which the entries are written as LDIF. Not
+   *   permitted to be {@code null}.
+   * @param checkpointFile
+   *   the file in which checkpoints are saved. Not permitted to be
+   *   {@code null}.
+   */
+  public CheckpointedExport(final LDAPConnectionPool ldapConnectionPool,
+                            final SearchRequest searchRequest, final String sortAttribute,
+                            final File outputFile, final File checkpointFile) {
+    ensureNotNull(ldapConnectionPool,searchRequest,sortAttribute);
+    ensureNotNull(outputFile,checkpointFile);
+    this.ldapConnectionPool = ldapConnectionPool;
+    this.searchRequest = searchRequest;
+    this.sortAttribute = sortAttribute;
+    this.outputFile = outputFile;
+    this.checkpointFile = checkpointFile;
+  }
+
+
+
+  /**
+   * Sets the number of entries requested in each page.
+   *
+   * @param pageSize
+   *   the page size, which must be greater than zero.
+   */
+  public void setPageSize(final int pageSize) {
+    if(pageSize <= 0) {
+      throw new IllegalArgumentException("pageSize must be greater than zero.");
+    }
+    this.pageSize = pageSize;
+  }
+
+
+
+  /**
+   * Sets the number of entries exported between checkpoints.
+   *
+   * @param checkpointInterval
+   *   the checkpoint interval, which must be greater than zero.
+   */
+  public void setCheckpointInterval(final int checkpointInterval) {
+    if(checkpointInterval <= 0) {
+      throw new IllegalArgumentException("checkpointInterval must be greater than zero.");
+    }
+    this.checkpointInterval = checkpointInterval;
+  }
+
+
+
+  /**
+   * Sets the number of times the export is resumed after the connection
+   * fails before the export fails.
+   *
+   * @param maxRetries
+   *   the maximum number of retries, which must not be negative.
+   */
+  public void setMaxRetries(final int maxRetries) {
+    if(maxRetries < 0) {
+      throw new IllegalArgumentException("maxRetries must not be negative.");
+    }
+    this.maxRetries = maxRetries;
+  }
+
+
+
+  /**
+   * Exports the entries, resuming from the checkpoint file if it
+   * exists.
+   *
+   * @return the number of entries in the LDIF file.
+   *
+   * @throws LDAPException
+   *   if a request fails with a result code that does not indicate
+   *   a failed connection, or the connection has failed more than
+   *   {@code maxRetries} times. The checkpoint file is kept.
+   * @throws IOException
+   *   if the LDIF file or the checkpoint file cannot be read or
+   *   written.
+   */
+  public long export() throws LDAPException, IOException {
+    final long begin = System.nanoTime();
+    if(checkpointFile.exists()) {
+      readCheckpoint();
+      resumedFromCheckpoint = true;
+      restartBeginNanos = begin;
+    } else {
+      truncateOutput(0L);
+    }
+
+    final FileOutputStream fileOutputStream = new FileOutputStream(outputFile,true);
+    try {
+      final LDIFWriter ldifWriter =
+        new LDIFWriter(new BufferedOutputStream(fileOutputStream));
+      int retries = 0;
+      while(true) {
+        final LDAPConnection ldapConnection = ldapConnectionPool.getConnection();
+        boolean released = false;
+        try {
+          exportPages(ldapConnection,ldifWriter,fileOutputStream);
+          ldapConnectionPool.releaseConnection(ldapConnection);
+          released = true;
+          break;
+        } catch(final LDAPException ldapException) {
+          released = true;
+          if(ResultCode.isConnectionUsable(ldapException.getResultCode())) {
+            ldapConnectionPool.releaseConnection(ldapConnection);
+            throw ldapException;
+          }
+          ldapConnectionPool.releaseDefunctConnection(ldapConnection);
+          if(++retries > maxRetries) {
+            throw ldapException;
+          }
+          ++restarts;
+          restartBeginNanos = System.nanoTime();
+        } finally {
+          if(!released) {
+            // the LDIF could not be written, or a runtime exception was
+            // thrown, in the middle of a paged search
+            ldapConnectionPool.releaseDefunctConnection(ldapConnection);
+          }
+          ldifWriter.flush();
+          saveCheckpoint(fileOutputStream);
+        }
+      }
+      ldifWriter.close();
+    } finally {
+      fileOutputStream.close();
+      elapsedNanos = System.nanoTime() - begin;
+    }
+    if(!checkpointFile.delete() && checkpointFile.exists()) {
+      throw new IOException("Unable to delete checkpoint file " + checkpointFile);
+    }
+    return entriesExported;
+  }
+
+
+
+  /**
+   * @return the number of entries in the LDIF file.
+   */
+  public long getEntriesExported() {
+    return entriesExported;
+  }
+
+
+
+  /**
+   * @return the sort key of the last entry exported, or {@code null} if
+   *         no entry has been exported.
+   */
+  public String getLastKey() {
+    return lastKey;
+  }
+
+
+
+  /**
+   * @return the number of times the export was resumed after a
+   *         connection failed.
+   */
+  public int getRestarts() {
+    return restarts;
+  }
+
+
+
+  /**
+   * Retrieves the total time from each failure, or from the start of an
+   * export resumed from a checkpoint, until the first entry after the
+   * restart was received.
+   *
+   * @return the restart time in nanoseconds.
+   */
+  public long getRestartNanos() {
+    return restartNanos;
+  }
+
+
+
+  /**
+   * @return the duration of the last export in nanoseconds.
+   */
+  public long getElapsedNanos() {
+    return elapsedNanos;
+  }
+
+
+
+  /**
+   * @return a one line summary of the throughput and restart time of the
+   *         last export.
+   */
+  public String getStatistics() {
+    final double seconds = elapsedNanos / 1.0e9;
+    final long exportedNow = entriesExported - entriesAtStart;
+    return String.format("entriesExported=%d exportedThisRun=%d elapsed=%.3fs " +
+      "entries/s=%.1f resumedFromCheckpoint=%b restarts=%d restartTime=%dms",entriesExported,
+      exportedNow,seconds,seconds > 0.0 ? exportedNow / seconds : 0.0,resumedFromCheckpoint,
+      restarts,TimeUnit.NANOSECONDS.toMillis(restartNanos));
+  }
+
+
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public String toString() {
+    return "CheckpointedExport [sortAttribute=" + sortAttribute + ", outputFile=" + outputFile +
+      ", checkpointFile=" + checkpointFile + ", " + getStatistics() + "]";
+  }
+
+
+
+  /**
+   * Requests pages of entries sorted on the sort attribute and greater
+   * than or equal to the last key, until the last page or a failure.
+   */
+  private void exportPages(final LDAPConnection ldapConnection, final LDIFWriter ldifWriter,
+                           final FileOutputStream fileOutputStream)
+    throws LDAPException, IOException {
+    final Filter presence = Filter.createPresenceFilter(sortAttribute);
+    final Filter filter = lastKey == null ?
+      Filter.createANDFilter(searchRequest.getFilter(),presence) :
+      Filter.createANDFilter(searchRequest.getFilter(),presence,
+        Filter.createGreaterOrEqualFilter(sortAttribute,lastKey));
+    final Control sortControl =
+      new ServerSideSortRequestControl(true,new SortKey(sortAttribute));
+    final Control[] requestControls = searchRequest.getControls();
+    final Control[] controls = new Control[requestControls.length + 2];
+    System.arraycopy(requestControls,0,controls,0,requestControls.length);
+    controls[requestControls.length] = sortControl;
+
+    final String resumeKey = lastKey;
+    ASN1OctetString cookie = null;
+    do {
+      controls[requestControls.length + 1] = new SimplePagedResultsControl(pageSize,cookie);
+      final SearchRequest pageRequest = searchRequest.duplicate(controls);
+      pageRequest.setFilter(filter);
+      final SearchResult searchResult = ldapConnection.search(pageRequest);
+      for(final SearchResultEntry entry : searchResult.getSearchEntries()) {
+        final String key = entry.getAttributeValue(sortAttribute);
+        if((resumeKey != null) && resumeKey.equalsIgnoreCase(key)) {
+          // the greater-or-equal filter matches the last entry exported
+          continue;
+        }
+        if(restartBeginNanos != 0L) {
+          restartNanos += System.nanoTime() - restartBeginNanos;
+          restartBeginNanos = 0L;
+        }
+        ldifWriter.writeEntry(entry);
+        lastKey = key;
+        if((++entriesExported % checkpointInterval) == 0L) {
+          ldifWriter.flush();
+          saveCheckpoint(fileOutputStream);
+        }
+      }
+      final SimplePagedResultsControl c = SimplePagedResultsControl.get(searchResult);
+      cookie = c == null ? null : c.getCookie();
+    } while((cookie != null) && (cookie.getValueLength() > 0));
+  }
+
+
+
+  private void readCheckpoint() throws IOException {
+    final Properties checkpoint = new Properties();
+    final InputStream inputStream = new FileInputStream(checkpointFile);
+    try {
+      checkpoint.load(inputStream);
+    } finally {
+      inputStream.close();
+    }
+    try {
+      lastKey = checkpoint.getProperty(CHECKPOINT_LAST_KEY);
+      entriesExported = Long.parseLong(checkpoint.getProperty(CHECKPOINT_ENTRIES_EXPORTED,"0"));
+      entriesAtStart = entriesExported;
+      truncateOutput(Long.parseLong(checkpoint.getProperty(CHECKPOINT_OUTPUT_LENGTH,"0")));
+    } catch(final NumberFormatException numberFormatException) {
+      throw new IOException("Invalid checkpoint file " + checkpointFile + ": " +
+        numberFormatException.getMessage());
+    }
+  }
+
+
+
+  /**
+   * Discards anything written to the LDIF file after the checkpoint.
+   */
+  private void truncateOutput(final long length) throws IOException {
+    final RandomAccessFile file = new RandomAccessFile(outputFile,"rw");
+    try {
+      if(file.length() < length) {
+        throw new IOException("LDIF file " + outputFile + " is shorter than the checkpoint");
+      }
+      file.setLength(length);
+    } finally {
+      file.close();
+    }
+  }
+
+
+
+  /**
+   * Saves the checkpoint in a temporary file that replaces the
+   * checkpoint file, so that a failure while saving does not destroy the
+   * previous checkpoint.
+   */
+  private void saveCheckpoint(final FileOutputStream fileOutputStream) throws IOException {
+    if(lastKey == null) {
+      return;
+    }
+    final Properties checkpoint = new Properties();
+    checkpoint.setProperty(CHECKPOINT_LAST_KEY,lastKey);
+    checkpoint.setProperty(CHECKPOINT_ENTRIES_EXPORTED,Long.toString(entriesExported));
+    checkpoint.setProperty(CHECKPOINT_OUTPUT_LENGTH,
+      Long.toString(fileOutputStream.getChannel().position()));
+    final File temporaryFile = new File(checkpointFile.getPath() + ".tmp");
+    final OutputStream outputStream = new FileOutputStream(temporaryFile);
+    try {
+      checkpoint.store(outputStream,"CheckpointedExport of " + outputFile);
+    } finally {
+      outputStream.close();
+    }
+    if(!temporaryFile.renameTo(checkpointFile)) {
+      if(!checkpointFile.delete() || !temporaryFile.renameTo(checkpointFile)) {
+        throw new IOException("Unable to replace checkpoint file " + checkpointFile);
+      }
+    }
+  }
+
+
+
+  private final File checkpointFile;
+
+
+  private int checkpointInterval = 1000;
+
+
+  private long elapsedNanos;
+
+
+  private long entriesAtStart;
+
+
+  private long entriesExported;
+
+
+  private String lastKey;
+
+
+  private final LDAPConnectionPool ldapConnectionPool;
+
+
+  private int maxRetries = 3;
+
+
+  private final File outputFile;
+
+
+  private int pageSize = 1000;
+
+
+  private long restartBeginNanos;
+
+
+  private long restartNanos;
+
+
+  private int restarts;
+
+
+  private boolean resumedFromCheckpoint;
+
+
+  private final SearchRequest searchRequest;
+
+
+  private final String sortAttribute;
+
+}
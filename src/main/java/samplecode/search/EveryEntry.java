@@ -24,6 +24,8 @@ import com.unboundid.util.Validator;
 import com.unboundid.util.args.Argument;
 import com.unboundid.util.args.ArgumentException;
 import com.unboundid.util.args.ArgumentParser;
+import com.unboundid.util.args.BooleanArgument;
+import com.unboundid.util.args.IntegerArgument;
 import com.unboundid.util.args.StringArgument;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -32,14 +34,17 @@ import samplecode.annotation.CodeVersion;
 import samplecode.annotation.Since;
 import samplecode.cli.CommandLineOptions;
 import samplecode.listener.*;
+import samplecode.tools.PerformanceReporter;
 import samplecode.util.SampleCodeCollectionUtils;
+import samplecode.util.SampleCodeExecutors;
 import samplecode.util.StaticData;
 
 import java.io.PrintStream;
 import java.util.List;
 import java.util.Vector;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.logging.Level;
 import java.util.logging.LogRecord;
 
@@ -80,6 +85,36 @@ import java.util.logging.LogRecord;
  * </pre>
  * <p/>
  * </blockquote>
+ * <p/>
+ * When {@code --partitionAttribute} is specified, the threads do not
+ * repeat the same search; instead, each thread searches one disjoint
+ * slice of the entries (see {@link FilterRangePartitioner}). The slice
+ * boundaries are taken from {@code --partitionBoundary}, or spread
+ * evenly over {@code --numThreads} slices if no boundaries are given.
+ * {@code --sizeLimit} applies to each slice. With {@code --verbose},
+ * and no {@code --sizeLimit}, the sum of the slice counts is compared
+ * with the count of the unpartitioned search after every slice is
+ * complete; that count repeats the whole search.<blockquote>
+ * <p/>
+ * <pre>
+ * java -cp your-classpath samplecode.EveryEntry \
+ *    --baseObject "dc=example,dc=com" --filter "(objectClass=*)" \
+ *    --hostname localhost --port 1389 --scope SUB --numThreads 8 \
+ *    --searchResultListener "samplecode.PrintEntrySearchResultListener" \
+ *    --partitionAttribute uid
+ * </pre>
+ * <p/>
+ * </blockquote>
+ * <p/>
+ * Every {@code --reportInterval} milliseconds the searches per second,
+ * entries per second and search latency percentiles are displayed. When
+ * {@code --reportCount} is specified, each thread repeats its search
+ * until that number of reports has been displayed.
+ * <p/>
+ * With {@code --virtualThreads} on Java 21 or later, each of the
+ * {@code --numThreads} tasks runs on its own virtual thread and the
+ * tasks share a connection pool, so thousands of concurrent searches are
+ * limited only by {@code --maxConnections}.
  *
  * @see SearchResultListener
  * @see LDAPCommandLineTool
@@ -241,6 +276,7 @@ public final class EveryEntry extends LDAPCommandLineTool {
   public static void main(final String... args) {
     final EveryEntry everyEntry = new EveryEntry();
     final ResultCode resultCode = everyEntry.runTool(args);
+    everyEntry.closeConnectionPool();
     if(resultCode != null) {
       final String message =
         String.format("%s has completed processing. The result code was: %s",
@@ -337,22 +373,348 @@ public final class EveryEntry extends LDAPCommandLineTool {
     }
 
     /*
-     * Set up an executor service with a fixed thread pool.
+     * Set up an executor service with a fixed thread pool, or with one
+     * virtual thread per task when --virtualThreads is specified and
+     * the JVM supports virtual threads.
      */
     final int numThreads = commandLineOptions.getNumThreads();
-    final ExecutorService executorService = Executors.newFixedThreadPool(numThreads);
+    final ExecutorService executorService =
+      SampleCodeExecutors.newExecutorService(numThreads,commandLineOptions.getVirtualThreads());
 
     /*
-     * Start searches, one per thread.
+     * Start searches, one per thread. When the --partitionAttribute
+     * command line argument is present each task searches a disjoint
+     * slice of the entries instead of every task repeating the same
+     * search.
      */
     ResultCode resultCode = ResultCode.SUCCESS;
-    resultCode = startSearches(executorService,numThreads);
-    executorService.shutdown();
+    performanceReporter =
+      new PerformanceReporter(getOut(),commandLineOptions.getReportInterval(),
+        commandLineOptions.getReportCount());
+    performanceReporter.start();
+    if(commandLineOptions.isPartitioned()) {
+      resultCode = startPartitionedSearches(executorService);
+    } else {
+      final List<EveryEntryImpl> impls = SampleCodeCollectionUtils.newArrayList();
+      resultCode = startSearches(executorService,numThreads,impls);
+      executorService.shutdown();
+      if(awaitTermination(executorService) && commandLineOptions.isAsync()) {
+        reportHandOffStatistics(impls);
+      }
+    }
+    performanceReporter.stop();
+    if(ldapConnectionPool != null) {
+      final String msg = ldapConnectionPool.getConnectionPoolStatistics().toString();
+      out(formatter.format(new LogRecord(Level.INFO,msg)));
+    }
     return resultCode;
   }
 
 
 
+  /**
+   * Waits for every task submitted to the {@code executorService} to
+   * complete. The {@code executorService} must have been shut down.
+   *
+   * @return {@code false} if the waiting thread was interrupted.
+   */
+  private boolean awaitTermination(final ExecutorService executorService) {
+    try {
+      while(!executorService.awaitTermination(1L,TimeUnit.SECONDS)) {
+        // wait for all tasks to complete
+      }
+      return true;
+    } catch(final InterruptedException interruptedException) {
+      Thread.currentThread().interrupt();
+      return false;
+    }
+  }
+
+
+
+  /**
+   * Displays the queue depth and consumer saturation of the hand-off
+   * used by each task in async mode.
+   */
+  private void reportHandOffStatistics(final List<EveryEntryImpl> impls) {
+    for(int t = 0; t < impls.size(); ++t) {
+      final SearchResultHandOff handOff = impls.get(t).getSearchResultHandOff();
+      if(handOff != null) {
+        final String msg = String.format("task %d: %s",t,handOff.getStatistics());
+        out(formatter.format(new LogRecord(Level.INFO,msg)));
+      }
+    }
+  }
+
+
+
+  /**
+   * Starts one task for each slice of the search space under the base
+   * object and waits for every task to complete. With --verbose, and no
+   * --sizeLimit, which applies to each slice, it then checks that the
+   * number of entries returned by the slices adds up to the number of
+   * entries returned by the unpartitioned search.
+   *
+   * @param executorService
+   *   the service providing a thread pool in which to execute
+   *   tasks.
+   *
+   * @return a single result code.
+   */
+  private ResultCode startPartitionedSearches(final ExecutorService executorService) {
+    Validator.ensureNotNull(executorService);
+
+    final FilterRangePartitioner partitioner = commandLineOptions.newFilterRangePartitioner();
+    if(commandLineOptions.isVerbose()) {
+      out(formatter.format(new LogRecord(Level.INFO,partitioner.toString())));
+    }
+
+    final List<Filter> sliceFilters =
+      partitioner.getSliceFilters(commandLineOptions.getFilter());
+    final List<EveryEntryImpl> impls = SampleCodeCollectionUtils.newArrayList();
+    ResultCode resultCode = ResultCode.SUCCESS;
+    for(final Filter sliceFilter : sliceFilters) {
+      final EveryEntryImpl impl = newEveryEntryImpl(sliceFilter);
+      if(impl == null) {
+        // the tasks already created are never run
+        for(final EveryEntryImpl created : impls) {
+          created.close();
+        }
+        resultCode = ResultCode.PARAM_ERROR;
+        break;
+      }
+      impls.add(impl);
+    }
+    if(resultCode.equals(ResultCode.SUCCESS)) {
+      for(final EveryEntryImpl impl : impls) {
+        executorService.submit(impl);
+      }
+    }
+    executorService.shutdown();
+
+    if(!awaitTermination(executorService)) {
+      return ResultCode.USER_CANCELED;
+    }
+    performanceReporter.stop();
+    if(!resultCode.equals(ResultCode.SUCCESS)) {
+      return resultCode;
+    }
+    if(commandLineOptions.isAsync()) {
+      reportHandOffStatistics(impls);
+    }
+
+    long sliceTotal = 0L;
+    for(int slice = 0; slice < impls.size(); ++slice) {
+      final EveryEntryImpl impl = impls.get(slice);
+      if(!impl.getResultCode().equals(ResultCode.SUCCESS)) {
+        resultCode = impl.getResultCode();
+      }
+      sliceTotal += impl.getEntryCount();
+      if(commandLineOptions.isVerbose()) {
+        final String msg =
+          String.format("slice %d returned %d entries (%s)",slice,impl.getEntryCount(),
+            sliceFilters.get(slice));
+        out(formatter.format(new LogRecord(Level.INFO,msg)));
+      }
+    }
+    if(!resultCode.equals(ResultCode.SUCCESS)) {
+      return resultCode;
+    }
+    if(!commandLineOptions.isVerbose()) {
+      // the verification repeats the whole search
+      return ResultCode.SUCCESS;
+    }
+    if(commandLineOptions.getSizeLimit() > 0) {
+      final String msg =
+        String.format("The slices returned %d entries. The total is not verified because " +
+          "--sizeLimit applies to each slice.",sliceTotal);
+      out(formatter.format(new LogRecord(Level.INFO,msg)));
+      return ResultCode.SUCCESS;
+    }
+    return verifySliceTotal(sliceTotal);
+  }
+
+
+
+  /**
+   * Counts the entries matched by the unpartitioned search and compares
+   * the count with the sum of the slice counts. A difference indicates
+   * that the partition attribute is multi-valued in some entries, or
+   * that the directory changed while the slices were searched.
+   *
+   * @param sliceTotal
+   *   the sum of the number of entries returned by every slice.
+   *
+   * @return {@code SUCCESS} if the counts match,
+   *         {@code CONSTRAINT_VIOLATION} if they do not, or the result
+   *         code of a failed count search.
+   */
+  private ResultCode verifySliceTotal(final long sliceTotal) {
+    LDAPConnection ldapConnection = null;
+    try {
+      ldapConnection = getConnection();
+      ldapConnection.setConnectionOptions(commandLineOptions.newLDAPConnectionOptions());
+      final EntryCountingSearchResultListener counter = new EntryCountingSearchResultListener();
+      final SearchRequest searchRequest =
+        new SearchRequest(counter,commandLineOptions.getBaseObject(),
+          commandLineOptions.getSearchScope(),commandLineOptions.getFilter(),
+          SearchRequest.NO_ATTRIBUTES);
+      searchRequest.setSizeLimit(commandLineOptions.getSizeLimit());
+      searchRequest.setTimeLimitSeconds(commandLineOptions.getTimeLimit());
+      ldapConnection.search(searchRequest);
+
+      final long fullCount = counter.getEntryCount();
+      if(fullCount != sliceTotal) {
+        final String msg =
+          String.format("The slices returned %d entries but the unpartitioned search " +
+            "returned %d entries. Check that '%s' is single-valued.",sliceTotal,fullCount,
+            commandLineOptions.getPartitionAttribute());
+        err(formatter.format(new LogRecord(Level.SEVERE,msg)));
+        return ResultCode.CONSTRAINT_VIOLATION;
+      }
+      final String msg =
+        String.format("The slices returned %d entries, which matches the unpartitioned " +
+          "search.",sliceTotal);
+      out(formatter.format(new LogRecord(Level.INFO,msg)));
+      return ResultCode.SUCCESS;
+    } catch(final LDAPException ldapException) {
+      err(formatter.format(new LogRecord(Level.SEVERE,ldapException.getExceptionMessage())));
+      return ldapException.getResultCode();
+    } finally {
+      if(ldapConnection != null) {
+        ldapConnection.close();
+      }
+    }
+  }
+
+
+
+  /**
+   * Creates a task which searches using the specified filter, and
+   * reports any problem creating the task on the error stream.
+   *
+   * @param filter
+   *   the filter used by the task.
+   *
+   * @return a new task, or {@code null} if the task could not be
+   *         created.
+   */
+  private EveryEntryImpl newEveryEntryImpl(final Filter filter) {
+    final String searchListenerClassname = commandLineOptions.getSearchResultListenerClassname();
+    try {
+      final List<ErrorListener<ResultCode>> errorListeners =
+        SampleCodeCollectionUtils.newArrayList();
+      errorListeners.add(new ResultCodeErrorListener());
+      final EveryEntryImpl impl =
+        createEveryEntryImpl(searchListenerClassname,filter,errorListeners);
+      impl.setPerformanceReporter(performanceReporter);
+      final Log logger = LogFactory.getLog(getClass());
+      impl.addLdapExceptionListener(new DefaultLdapExceptionListener(logger));
+      return impl;
+    } catch(final LDAPException ldapException) {
+      err(formatter.format(new LogRecord(Level.SEVERE,ldapException.getExceptionMessage())));
+    } catch(final InstantiationException instantiationException) {
+      err(formatter.format(new LogRecord(Level.SEVERE,"Cannot instantiate " +
+        instantiationException.getLocalizedMessage())));
+    } catch(final IllegalAccessException illegalAccessException) {
+      err(formatter.format(new LogRecord(Level.SEVERE,"Cannot instantiate " +
+        illegalAccessException.getLocalizedMessage())));
+    } catch(final ClassNotFoundException classNotFoundException) {
+      err(formatter.format(new LogRecord(Level.SEVERE,String.format("The class '%s' " +
+        "specified as the search " + "result listener could not be found.",
+        searchListenerClassname))));
+    }
+    return null;
+  }
+
+
+
+  /**
+   * Creates a task which searches using the specified filter on its
+   * own connection, or on connections checked out of the shared pool
+   * when {@code --useConnectionPool} or {@code --virtualThreads} is
+   * specified. With virtual threads there may be thousands of tasks, so
+   * they always share the pool.
+   */
+  private EveryEntryImpl createEveryEntryImpl(final String searchListenerClassname,
+                                              final Filter filter,
+                                              final List<ErrorListener<ResultCode>> errorListeners)
+    throws LDAPException, InstantiationException, IllegalAccessException,
+    ClassNotFoundException {
+    if(commandLineOptions.getUseConnectionPool() || commandLineOptions.getVirtualThreads()) {
+      return new EveryEntryImpl(searchListenerClassname,commandLineOptions,
+        getSharedConnectionPool(),filter,getErr(),errorListeners);
+    }
+    return new EveryEntryImpl(searchListenerClassname,commandLineOptions,getConnection(),
+      filter,getErr(),errorListeners);
+  }
+
+
+
+  /**
+   * Retrieves the pool shared by the tasks, creating it if it does not
+   * exist or has been closed. The pool is kept open between invocations
+   * of {@link #doToolProcessing()} so that repeated runs reuse the
+   * established connections; {@link #closeConnectionPool()} closes it.
+   * <p/>
+   * The pool is sized by {@code --initialConnections} and
+   * {@code --maxConnections}, independently of {@code --numThreads}; a
+   * task that finds no available connection waits for one to be
+   * released. Idle connections are checked in the background every
+   * {@code --healthCheckIntervalMillis} milliseconds by retrieving the
+   * root DSE, and connections older than
+   * {@code --maxConnectionAgeMillis} are replaced when released.
+   *
+   * @return the shared connection pool.
+   *
+   * @throws LDAPException
+   *   if the pool cannot be created.
+   */
+  private synchronized LDAPConnectionPool getSharedConnectionPool() throws LDAPException {
+    if((ldapConnectionPool == null) || ldapConnectionPool.isClosed()) {
+      final LDAPConnectionPool pool =
+        getConnectionPool(commandLineOptions.getInitialConnections(),
+          commandLineOptions.getMaxConnections());
+      pool.setConnectionPoolName(getToolName());
+      final long maxResponseTimeMillis = commandLineOptions.getMaxResponseTimeMillis();
+      pool.setHealthCheck(new GetEntryLDAPConnectionPoolHealthCheck("",maxResponseTimeMillis,
+        false,false,false,true,true));
+      pool.setHealthCheckIntervalMillis(commandLineOptions.getHealthCheckIntervalMillis());
+      pool.setMaxConnectionAgeMillis(commandLineOptions.getMaxConnectionAgeMillis());
+      pool.setCreateIfNecessary(false);
+      pool.setMaxWaitTimeMillis(Long.MAX_VALUE);
+      ldapConnectionPool = pool;
+    }
+    return ldapConnectionPool;
+  }
+
+
+
+  /**
+   * Closes the connection pool shared by the tasks, if one was created.
+   */
+  public synchronized void closeConnectionPool() {
+    if(ldapConnectionPool != null) {
+      ldapConnectionPool.close();
+      ldapConnectionPool = null;
+    }
+  }
+
+
+
+  /**
+   * {@inheritDoc}
+   * <p/>
+   * The options are taken from the command line arguments, and are used
+   * by the connections of the shared pool.
+   */
+  @Override
+  public LDAPConnectionOptions getConnectionOptions() {
+    return commandLineOptions.newLDAPConnectionOptions();
+  }
+
+
+
   /**
    * Starts all threads, one thread per task.
    *
@@ -362,11 +724,14 @@ public final class EveryEntry extends LDAPCommandLineTool {
    * @param numThreads
    *   the number of threads (and tasks since there is one task
    *   per thread).
+   * @param impls
+   *   the tasks that were submitted are added to this list.
    *
    * @return a single result code.
    */
-  private ResultCode startSearches(final ExecutorService executorService, final int numThreads) {
-    Validator.ensureNotNull(executorService);
+  private ResultCode startSearches(final ExecutorService executorService, final int numThreads,
+                                   final List<EveryEntryImpl> impls) {
+    Validator.ensureNotNull(executorService,impls);
     ResultCode resultCode = ResultCode.SUCCESS;
     for(int t = 0; t < numThreads; ++t) {
       final String searchListenerClassname =
@@ -374,23 +739,24 @@ public final class EveryEntry extends LDAPCommandLineTool {
       EveryEntryImpl impl;
       try {
         /*
-         * Get a connection to the server and create an error listener
-         * for later assignment to a task. Create the task and submit to
-         * the executor service.
+         * Create an error listener for later assignment to a task.
+         * Create the task, which uses its own connection or the shared
+         * pool, and submit to the executor service.
          */
-        final LDAPConnection ldapConnection = getConnection();
         final List<ErrorListener<ResultCode>> errorListeners =
           SampleCodeCollectionUtils.newArrayList();
         final ErrorListener<ResultCode> l = new ResultCodeErrorListener();
         errorListeners.add(l);
         impl =
-          new EveryEntryImpl(searchListenerClassname,commandLineOptions,
-            ldapConnection,getErr(),errorListeners);
+          createEveryEntryImpl(searchListenerClassname,commandLineOptions.getFilter(),
+            errorListeners);
+        impl.setPerformanceReporter(performanceReporter);
         final Log logger = LogFactory.getLog(getClass());
         final LdapExceptionListener ldapExceptionListener =
           new DefaultLdapExceptionListener(logger);
         impl.addLdapExceptionListener(ldapExceptionListener);
         executorService.submit(impl);
+        impls.add(impl);
       } catch(final LDAPException ldapException) {
         resultCode = ldapException.getResultCode();
       } catch(final InstantiationException instantiationException) {
@@ -417,6 +783,20 @@ public final class EveryEntry extends LDAPCommandLineTool {
   private EveryEntryCommandLineOptions commandLineOptions;
 
 
+  /**
+   * The pool shared by the tasks when {@code --useConnectionPool} is
+   * specified.
+   */
+  private LDAPConnectionPool ldapConnectionPool;
+
+
+  /**
+   * Displays the throughput and latency of the searches every
+   * {@code --reportInterval} milliseconds.
+   */
+  private PerformanceReporter performanceReporter;
+
+
   /**
    * Provides services for clients that require messages to be formatted
    * in a standardized way.
@@ -504,12 +884,308 @@ final class EveryEntryCommandLineOptions extends CommandLineOptions {
 
 
 
+  /**
+   * The description of the command line argument whose parameter is the
+   * attribute used to partition the search space.
+   */
+  private static final String DESCRIPTION_PARTITION_ATTRIBUTE =
+    "The name of a single-valued attribute used to split the entries under the base " +
+      "object into disjoint slices, one slice per thread. Each thread searches only its " +
+      "own slice. With --verbose, and no --sizeLimit, the sum of the slice counts is " +
+      "checked against the count of the unpartitioned search when all threads are finished.";
+
+
+  /**
+   * The description of the command line argument whose parameters are
+   * the values at which the search space is split.
+   */
+  private static final String DESCRIPTION_PARTITION_BOUNDARY =
+    "A value of the partition attribute at which the search space is split. This " +
+      "command line argument may be specified multiple times, in ascending order, and " +
+      "the number of slices is one more than the number of boundaries. If not specified, " +
+      "--numThreads slices with evenly spaced alphanumeric boundaries are used.";
+
+
+  /**
+   * The description of the command line argument whose parameter is the
+   * number of threads that process search results in async mode.
+   */
+  private static final String DESCRIPTION_ASYNC_CONSUMERS =
+    "Transmit each search with asyncSearch and hand the search result entries from the " +
+      "connection reader to this number of consumer threads through a bounded queue. The " +
+      "consumer threads invoke the search result listener, which must be thread-safe if " +
+      "more than one consumer is used. The queue depth and consumer saturation are " +
+      "displayed when the searches are complete.";
+
+
+  /**
+   * The description of the command line argument whose parameter is the
+   * capacity of the hand-off queue in async mode.
+   */
+  private static final String DESCRIPTION_QUEUE_CAPACITY =
+    "The maximum number of search results read from the connection but not yet " +
+      "processed by a consumer thread when --asyncConsumers is specified. When the queue " +
+      "is full the connection reader waits for a consumer.";
+
+
+  /**
+   * The description of the command line argument whose parameter is the
+   * interval between background health checks of pooled connections.
+   */
+  private static final String DESCRIPTION_HEALTH_CHECK_INTERVAL_MILLIS =
+    "The interval in milliseconds between background health checks of the idle " +
+      "connections in the pool used when --useConnectionPool is specified. The health " +
+      "check retrieves the root DSE.";
+
+
+  /**
+   * The description of the command line argument whose parameter is the
+   * maximum age of a pooled connection.
+   */
+  private static final String DESCRIPTION_MAX_CONNECTION_AGE_MILLIS =
+    "The maximum length of time in milliseconds that a connection in the pool used when " +
+      "--useConnectionPool is specified may be established before it is replaced. Zero " +
+      "means that connections are not replaced because of their age.";
+
+
+  /**
+   * The description of the command line argument which indicates that
+   * the threads share a connection pool.
+   */
+  private static final String DESCRIPTION_USE_CONNECTION_POOL =
+    "Run the searches on connections checked out of a pool shared by every thread " +
+      "instead of one connection per thread. The pool size is set by " +
+      "--initialConnections and --maxConnections independently of --numThreads; a " +
+      "thread waits when every connection is in use.";
+
+
+  /**
+   * The default interval between background health checks of pooled
+   * connections.
+   */
+  private static final int DEFAULT_HEALTH_CHECK_INTERVAL_MILLIS = 60000;
+
+
+  /**
+   * The default capacity of the hand-off queue in async mode.
+   */
+  private static final int DEFAULT_QUEUE_CAPACITY = 1000;
+
+
+  /**
+   * The long identifier of the command line argument whose parameter is
+   * the number of threads that process search results in async mode.
+   */
+  private static final String LONG_ID_ASYNC_CONSUMERS = "asyncConsumers";
+
+
+  /**
+   * The long identifier of the command line argument whose parameter is
+   * the capacity of the hand-off queue in async mode.
+   */
+  private static final String LONG_ID_QUEUE_CAPACITY = "queueCapacity";
+
+
+  /**
+   * The long identifier of the command line argument whose parameter is
+   * the interval between background health checks of pooled
+   * connections.
+   */
+  private static final String LONG_ID_HEALTH_CHECK_INTERVAL_MILLIS =
+    "healthCheckIntervalMillis";
+
+
+  /**
+   * The long identifier of the command line argument whose parameter is
+   * the maximum age of a pooled connection.
+   */
+  private static final String LONG_ID_MAX_CONNECTION_AGE_MILLIS = "maxConnectionAgeMillis";
+
+
+  /**
+   * The long identifier of the command line argument which indicates
+   * that the threads share a connection pool.
+   */
+  private static final String LONG_ID_USE_CONNECTION_POOL = "useConnectionPool";
+
+
+  /**
+   * The long identifier of the command line argument whose parameter is
+   * the attribute used to partition the search space.
+   */
+  private static final String LONG_ID_PARTITION_ATTRIBUTE = "partitionAttribute";
+
+
+  /**
+   * The long identifier of the command line argument whose parameters
+   * are the values at which the search space is split.
+   */
+  private static final String LONG_ID_PARTITION_BOUNDARY = "partitionBoundary";
+
+
+
   private EveryEntryCommandLineOptions(final ArgumentParser argumentParser)
     throws ArgumentException {
     super(CommandLineOptions.createDefaultArguments(StaticData.getResourceBundle()),
       argumentParser);
     final Argument searchResultListenerArgument = newSearchResultListenerArgument();
     addArguments(searchResultListenerArgument);
+    final Argument partitionAttributeArgument =
+      new StringArgument(null,EveryEntryCommandLineOptions.LONG_ID_PARTITION_ATTRIBUTE,false,
+        1,"{attribute}",EveryEntryCommandLineOptions.DESCRIPTION_PARTITION_ATTRIBUTE);
+    final Argument partitionBoundaryArgument =
+      new StringArgument(null,EveryEntryCommandLineOptions.LONG_ID_PARTITION_BOUNDARY,false,
+        0,"{value}",EveryEntryCommandLineOptions.DESCRIPTION_PARTITION_BOUNDARY);
+    addArguments(partitionAttributeArgument,partitionBoundaryArgument);
+    argumentParser.addDependentArgumentSet(partitionBoundaryArgument,
+      partitionAttributeArgument);
+    final Argument asyncConsumersArgument =
+      new IntegerArgument(null,EveryEntryCommandLineOptions.LONG_ID_ASYNC_CONSUMERS,false,1,
+        "{positiveInteger}",EveryEntryCommandLineOptions.DESCRIPTION_ASYNC_CONSUMERS,1,
+        1024);
+    final Argument queueCapacityArgument =
+      new IntegerArgument(null,EveryEntryCommandLineOptions.LONG_ID_QUEUE_CAPACITY,false,1,
+        "{positiveInteger}",EveryEntryCommandLineOptions.DESCRIPTION_QUEUE_CAPACITY,1,
+        Integer.MAX_VALUE,EveryEntryCommandLineOptions.DEFAULT_QUEUE_CAPACITY);
+    addArguments(asyncConsumersArgument,queueCapacityArgument);
+    final Argument useConnectionPoolArgument =
+      new BooleanArgument(null,EveryEntryCommandLineOptions.LONG_ID_USE_CONNECTION_POOL,
+        EveryEntryCommandLineOptions.DESCRIPTION_USE_CONNECTION_POOL);
+    final Argument healthCheckIntervalArgument =
+      new IntegerArgument(null,
+        EveryEntryCommandLineOptions.LONG_ID_HEALTH_CHECK_INTERVAL_MILLIS,false,1,
+        "{positiveInteger}",
+        EveryEntryCommandLineOptions.DESCRIPTION_HEALTH_CHECK_INTERVAL_MILLIS,1,
+        Integer.MAX_VALUE,EveryEntryCommandLineOptions.DEFAULT_HEALTH_CHECK_INTERVAL_MILLIS);
+    final Argument maxConnectionAgeArgument =
+      new IntegerArgument(null,EveryEntryCommandLineOptions.LONG_ID_MAX_CONNECTION_AGE_MILLIS,
+        false,1,"{nonNegativeInteger}",
+        EveryEntryCommandLineOptions.DESCRIPTION_MAX_CONNECTION_AGE_MILLIS,0,
+        Integer.MAX_VALUE,0);
+    addArguments(useConnectionPoolArgument,healthCheckIntervalArgument,
+      maxConnectionAgeArgument);
+  }
+
+
+
+  /**
+   * @return whether the {@code --useConnectionPool} command line
+   *         argument is present.
+   */
+  public boolean getUseConnectionPool() {
+    return getNamedArgument(EveryEntryCommandLineOptions.LONG_ID_USE_CONNECTION_POOL)
+      .isPresent();
+  }
+
+
+
+  /**
+   * @return the parameter of the {@code --healthCheckIntervalMillis}
+   *         command line argument.
+   */
+  public long getHealthCheckIntervalMillis() {
+    final IntegerArgument arg =
+      getNamedArgument(EveryEntryCommandLineOptions.LONG_ID_HEALTH_CHECK_INTERVAL_MILLIS);
+    return arg.getValue();
+  }
+
+
+
+  /**
+   * @return the parameter of the {@code --maxConnectionAgeMillis}
+   *         command line argument.
+   */
+  public long getMaxConnectionAgeMillis() {
+    final IntegerArgument arg =
+      getNamedArgument(EveryEntryCommandLineOptions.LONG_ID_MAX_CONNECTION_AGE_MILLIS);
+    return arg.getValue();
+  }
+
+
+
+  /**
+   * Whether search results should be handed off from the connection
+   * reader to consumer threads.
+   *
+   * @return {@code true} if the {@code --asyncConsumers} command line
+   *         argument is present.
+   */
+  public boolean isAsync() {
+    return getNamedArgument(EveryEntryCommandLineOptions.LONG_ID_ASYNC_CONSUMERS).isPresent();
+  }
+
+
+
+  /**
+   * @return the parameter of the {@code --asyncConsumers} command line
+   *         argument, or {@code null} if not present.
+   */
+  public Integer getAsyncConsumers() {
+    final IntegerArgument arg =
+      getNamedArgument(EveryEntryCommandLineOptions.LONG_ID_ASYNC_CONSUMERS);
+    return arg.getValue();
+  }
+
+
+
+  /**
+   * @return the parameter of the {@code --queueCapacity} command line
+   *         argument.
+   */
+  public int getQueueCapacity() {
+    final IntegerArgument arg =
+      getNamedArgument(EveryEntryCommandLineOptions.LONG_ID_QUEUE_CAPACITY);
+    return arg.getValue();
+  }
+
+
+
+  /**
+   * Whether the search space should be partitioned into disjoint
+   * slices.
+   *
+   * @return {@code true} if the {@code --partitionAttribute} command
+   *         line argument is present.
+   */
+  public boolean isPartitioned() {
+    return getNamedArgument(EveryEntryCommandLineOptions.LONG_ID_PARTITION_ATTRIBUTE)
+      .isPresent();
+  }
+
+
+
+  /**
+   * Retrieves the parameter of the {@code --partitionAttribute} command
+   * line argument.
+   *
+   * @return the name of the attribute used to partition the search
+   *         space, or {@code null} if not present.
+   */
+  public String getPartitionAttribute() {
+    final StringArgument arg =
+      getNamedArgument(EveryEntryCommandLineOptions.LONG_ID_PARTITION_ATTRIBUTE);
+    return arg.getValue();
+  }
+
+
+
+  /**
+   * Creates a partitioner from the {@code --partitionAttribute} and
+   * {@code --partitionBoundary} command line arguments. When no
+   * boundaries are specified, the search space is split into
+   * {@code --numThreads} slices.
+   *
+   * @return a new {@code FilterRangePartitioner}.
+   */
+  public FilterRangePartitioner newFilterRangePartitioner() {
+    final StringArgument boundaryArg =
+      getNamedArgument(EveryEntryCommandLineOptions.LONG_ID_PARTITION_BOUNDARY);
+    if(boundaryArg.isPresent()) {
+      return FilterRangePartitioner.newFilterRangePartitioner(getPartitionAttribute(),
+        boundaryArg.getValues());
+    }
+    return FilterRangePartitioner.newFilterRangePartitioner(getPartitionAttribute(),
+      Math.max(1,getNumThreads()));
   }
 
 
@@ -599,15 +1275,160 @@ final class EveryEntryImpl implements Runnable, ObservedByLdapExceptionListener
     InstantiationException,
     IllegalAccessException,
     ClassNotFoundException {
+    this(searchListenerClassname,commandLineOptions,ldapConnection,
+      commandLineOptions.getFilter(),errStream,errorListeners);
+  }
+
+
+
+  /**
+   * Get a new instance of {@code EveryEntryImpl} that searches using
+   * the specified {@code filter} instead of the filter from the command
+   * line arguments. None of the parameters are permitted to be
+   * {@code null}.
+   *
+   * @param searchListenerClassname
+   *   the name of the class to be used as the search result
+   *   listener.
+   * @param commandLineOptions
+   *   user-provided command line options.
+   * @param ldapConnection
+   *   a connection to an LDAP server.
+   * @param filter
+   *   the filter used in the search request, for example, the
+   *   filter of one slice of a partitioned search.
+   * @param errStream
+   *   a stream to which error output is transmitted.
+   * @param errorListeners
+   *   they are notified when an error or exception transpires.
+   *
+   * @throws LDAPException
+   *   if a {@code SearchRequest} cannot be created using
+   *   parameters from the command line arguments.
+   * @throws InstantiationException
+   *   if the class named by {@code searchListenerClassname}
+   *   cannot be instantiated.
+   * @throws IllegalAccessException
+   *   if the class named by {@code searchListenerClassname}
+   *   cannot be instantiated.
+   * @throws ClassNotFoundException
+   *   if the class named by {@code searchListenerClassname}
+   *   cannot be found.
+   */
+  public EveryEntryImpl(final String searchListenerClassname,
+                        final EveryEntryCommandLineOptions commandLineOptions,
+                        final LDAPConnection ldapConnection, final Filter filter,
+                        final PrintStream errStream,
+                        final List<ErrorListener<ResultCode>> errorListeners) throws
+    LDAPException,
+    InstantiationException,
+    IllegalAccessException,
+    ClassNotFoundException {
     Validator.ensureNotNull(searchListenerClassname,commandLineOptions,ldapConnection,
       errStream,errorListeners);
+    Validator.ensureNotNull(filter);
     this.errStream = errStream;
     this.errorListeners = errorListeners;
     this.searchListenerClassname = searchListenerClassname;
     this.commandLineOptions = commandLineOptions;
     this.ldapConnection = ldapConnection;
+    ldapConnectionPool = null;
     setConnectionOptions();
-    searchRequest = createSearchRequest(newSearchResultListener());
+    searchResultListener = newSearchResultListener();
+    searchRequest = createSearchRequest(searchResultListener,filter);
+  }
+
+
+
+  /**
+   * Get a new instance of {@code EveryEntryImpl} that checks a
+   * connection out of {@code ldapConnectionPool} for each search and
+   * releases the connection when the search is complete. The options of
+   * the pooled connections are those of the pool. None of the
+   * parameters are permitted to be {@code null}.
+   *
+   * @param searchListenerClassname
+   *   the name of the class to be used as the search result
+   *   listener.
+   * @param commandLineOptions
+   *   user-provided command line options.
+   * @param ldapConnectionPool
+   *   the pool shared by every task.
+   * @param filter
+   *   the filter used in the search request.
+   * @param errStream
+   *   a stream to which error output is transmitted.
+   * @param errorListeners
+   *   they are notified when an error or exception transpires.
+   *
+   * @throws LDAPException
+   *   if a {@code SearchRequest} cannot be created using
+   *   parameters from the command line arguments.
+   * @throws InstantiationException
+   *   if the class named by {@code searchListenerClassname}
+   *   cannot be instantiated.
+   * @throws IllegalAccessException
+   *   if the class named by {@code searchListenerClassname}
+   *   cannot be instantiated.
+   * @throws ClassNotFoundException
+   *   if the class named by {@code searchListenerClassname}
+   *   cannot be found.
+   */
+  public EveryEntryImpl(final String searchListenerClassname,
+                        final EveryEntryCommandLineOptions commandLineOptions,
+                        final LDAPConnectionPool ldapConnectionPool, final Filter filter,
+                        final PrintStream errStream,
+                        final List<ErrorListener<ResultCode>> errorListeners) throws
+    LDAPException,
+    InstantiationException,
+    IllegalAccessException,
+    ClassNotFoundException {
+    Validator.ensureNotNull(searchListenerClassname,commandLineOptions,ldapConnectionPool,
+      errStream,errorListeners);
+    Validator.ensureNotNull(filter);
+    this.errStream = errStream;
+    this.errorListeners = errorListeners;
+    this.searchListenerClassname = searchListenerClassname;
+    this.commandLineOptions = commandLineOptions;
+    this.ldapConnectionPool = ldapConnectionPool;
+    searchResultListener = newSearchResultListener();
+    searchRequest = createSearchRequest(searchResultListener,filter);
+  }
+
+
+
+  /**
+   * Retrieves the hand-off used by the most recent search in async
+   * mode.
+   *
+   * @return the hand-off, or {@code null} if not in async mode or no
+   *         search has run.
+   */
+  public SearchResultHandOff getSearchResultHandOff() {
+    return searchResultHandOff;
+  }
+
+
+
+  /**
+   * Retrieves the number of entries returned by the most recent search.
+   *
+   * @return the number of search result entries.
+   */
+  public int getEntryCount() {
+    return entryCount;
+  }
+
+
+
+  /**
+   * Retrieves the result code of the most recent search, or
+   * {@code SUCCESS} if the search has not yet run.
+   *
+   * @return the result code.
+   */
+  public ResultCode getResultCode() {
+    return resultCode;
   }
 
 
@@ -668,24 +1489,111 @@ final class EveryEntryImpl implements Runnable, ObservedByLdapExceptionListener
    */
   @Override
   public void run() {
-    ResultCode resultCode;
+    /*
+     * When --reportCount is specified the search is repeated until
+     * that number of reports has been displayed, otherwise the search
+     * is transmitted once.
+     */
+    final boolean repeat =
+      (performanceReporter != null) &&
+        (commandLineOptions.getReportCount() != Integer.MAX_VALUE);
     try {
-      final long begin = System.currentTimeMillis();
-      resultCode = search();
-      @SuppressWarnings("unused")
-      final long elapsed = System.currentTimeMillis() - begin;
-      if(!resultCode.equals(ResultCode.SUCCESS)) {
-        notifyErrorListeners(resultCode);
+      do {
+        if(ldapConnectionPool != null) {
+          try {
+            checkOutConnection();
+          } catch(final LDAPException ldapException) {
+            resultCode = ldapException.getResultCode();
+            notifyErrorListeners(resultCode);
+            break;
+          }
+        }
+        final long begin = System.nanoTime();
+        try {
+          resultCode = search();
+          if(!resultCode.equals(ResultCode.SUCCESS)) {
+            notifyErrorListeners(resultCode);
+          }
+        } catch(final LDAPSearchException ldapException) {
+          fireLdapExceptionListener(ldapConnection,ldapException);
+          entryCount = ldapException.getEntryCount();
+          resultCode = ldapException.getResultCode();
+          notifyErrorListeners(resultCode);
+        } finally {
+          if(ldapConnectionPool != null) {
+            releaseConnection();
+          }
+        }
+        final long elapsed = System.nanoTime() - begin;
+        if(performanceReporter != null) {
+          performanceReporter.recordOperation(elapsed,entryCount);
+        }
+      } while(repeat && resultCode.equals(ResultCode.SUCCESS) &&
+        !performanceReporter.isComplete());
+    } finally {
+      if(ldapConnectionPool == null) {
+        ldapConnection.close();
       }
-    } catch(final LDAPSearchException ldapException) {
-      fireLdapExceptionListener(ldapConnection,ldapException);
-      resultCode = ldapException.getResultCode();
-      notifyErrorListeners(resultCode);
     }
   }
 
 
 
+  /**
+   * Closes the connection of a task that will not be run. A task that
+   * checks connections out of the pool holds none between searches.
+   */
+  void close() {
+    if(ldapConnectionPool == null) {
+      ldapConnection.close();
+    }
+  }
+
+
+
+  /**
+   * Checks a connection out of the pool and associates it with the
+   * search result listener.
+   *
+   * @throws LDAPException
+   *   if no connection is available.
+   */
+  private void checkOutConnection() throws LDAPException {
+    ldapConnection = ldapConnectionPool.getConnection();
+    searchResultListener.setLDAPConnection(ldapConnection);
+  }
+
+
+
+  /**
+   * Returns the connection used by the most recent search to the pool,
+   * or discards the connection if the result code of the search
+   * indicates that the connection is no longer usable.
+   */
+  private void releaseConnection() {
+    if(ResultCode.isConnectionUsable(resultCode)) {
+      ldapConnectionPool.releaseConnection(ldapConnection);
+    } else {
+      ldapConnectionPool.releaseDefunctConnection(ldapConnection);
+    }
+  }
+
+
+
+  /**
+   * Sets the reporter to which the time taken by each search and the
+   * number of entries returned are reported.
+   *
+   * @param performanceReporter
+   *   the reporter, or {@code null} if the searches are not
+   *   reported.
+   */
+  public void setPerformanceReporter(final PerformanceReporter performanceReporter) {
+    this.performanceReporter = performanceReporter;
+  }
+
+
+
   @Override
   public String toString() {
     final int maxLen = 10;
@@ -714,12 +1622,12 @@ final class EveryEntryImpl implements Runnable, ObservedByLdapExceptionListener
    * @see CommandLineOptions
    */
   private SearchRequest createSearchRequest(
-    final AbstractSearchResultListener searchResultListener) throws LDAPException {
-    Validator.ensureNotNull(searchResultListener);
+    final AbstractSearchResultListener searchResultListener, final Filter filter)
+    throws LDAPException {
+    Validator.ensureNotNull(searchResultListener,filter);
     SearchRequest sr;
     final String baseObject = commandLineOptions.getBaseObject();
     final SearchScope scope = commandLineOptions.getSearchScope();
-    final Filter filter = commandLineOptions.getFilter();
     final String[] requestedAttributes =
       commandLineOptions.getRequestedAttributes().toArray(new String[0]);
     sr =
@@ -746,7 +1654,9 @@ final class EveryEntryImpl implements Runnable, ObservedByLdapExceptionListener
         (searchListenerClassname);
     final AbstractSearchResultListener searchResultListener = cl.newInstance();
     searchResultListener.setCommandLineOptions(commandLineOptions);
-    searchResultListener.setLDAPConnection(ldapConnection);
+    if(ldapConnection != null) {
+      searchResultListener.setLDAPConnection(ldapConnection);
+    }
     return searchResultListener;
   }
 
@@ -781,7 +1691,58 @@ final class EveryEntryImpl implements Runnable, ObservedByLdapExceptionListener
    *   response.
    */
   private ResultCode search() throws LDAPSearchException {
+    if(commandLineOptions.isAsync()) {
+      return asyncSearch();
+    }
     final SearchResult searchResult = ldapConnection.search(searchRequest);
+    entryCount = searchResult.getEntryCount();
+    return searchResult.getResultCode();
+  }
+
+
+
+  /**
+   * Transmits the search request with {@code asyncSearch}. The
+   * connection reader hands each result to a
+   * {@code SearchResultHandOff} whose consumer threads invoke the
+   * search result listener; this method returns when every result has
+   * been processed.
+   *
+   * @return The result code from the response result.
+   *
+   * @throws LDAPSearchException
+   *   If the request cannot be sent, or the search result
+   *   indicates an error.
+   */
+  private ResultCode asyncSearch() throws LDAPSearchException {
+    final SearchResultHandOff handOff =
+      new SearchResultHandOff(searchResultListener,commandLineOptions.getQueueCapacity(),
+        commandLineOptions.getAsyncConsumers());
+    searchResultHandOff = handOff;
+    final SearchRequest asyncRequest =
+      new SearchRequest(handOff,searchRequest.getControls(),searchRequest.getBaseDN(),
+        searchRequest.getScope(),searchRequest.getDereferencePolicy(),
+        searchRequest.getSizeLimit(),searchRequest.getTimeLimitSeconds(),
+        searchRequest.typesOnly(),searchRequest.getFilter(),searchRequest.getAttributes());
+    try {
+      ldapConnection.asyncSearch(asyncRequest);
+    } catch(final LDAPException ldapException) {
+      handOff.searchResultReceived(null,null);
+      throw new LDAPSearchException(ldapException);
+    }
+
+    final SearchResult searchResult;
+    try {
+      searchResult = handOff.awaitSearchResult();
+    } catch(final InterruptedException interruptedException) {
+      Thread.currentThread().interrupt();
+      throw new LDAPSearchException(ResultCode.USER_CANCELED,
+        "interrupted while waiting for the search result");
+    }
+    entryCount = searchResult.getEntryCount();
+    if(!searchResult.getResultCode().equals(ResultCode.SUCCESS)) {
+      throw new LDAPSearchException(searchResult);
+    }
     return searchResult.getResultCode();
   }
 
@@ -804,13 +1765,30 @@ final class EveryEntryImpl implements Runnable, ObservedByLdapExceptionListener
   private final EveryEntryCommandLineOptions commandLineOptions;
 
 
+  /**
+   * The number of entries returned by the most recent search.
+   */
+  private volatile int entryCount;
+
+
   private final PrintStream errStream;
 
 
   private final List<ErrorListener<ResultCode>> errorListeners;
 
 
-  private final LDAPConnection ldapConnection;
+  /**
+   * The connection used for searches; when the searches use a pool this
+   * is the connection checked out for the current search.
+   */
+  private volatile LDAPConnection ldapConnection;
+
+
+  /**
+   * The pool from which connections are checked out, or {@code null}
+   * if the task uses a single connection.
+   */
+  private final LDAPConnectionPool ldapConnectionPool;
 
 
   /**
@@ -820,12 +1798,29 @@ final class EveryEntryImpl implements Runnable, ObservedByLdapExceptionListener
     new Vector<LdapExceptionListener>();
 
 
+  private volatile PerformanceReporter performanceReporter;
+
+
+  /**
+   * The result code of the most recent search.
+   */
+  private volatile ResultCode resultCode = ResultCode.SUCCESS;
+
+
   private final String searchListenerClassname;
 
 
   private final SearchRequest searchRequest;
 
 
+  private final AbstractSearchResultListener searchResultListener;
+
+
+  /**
+   * The hand-off used by the most recent search in async mode.
+   */
+  private volatile SearchResultHandOff searchResultHandOff;
+
 }
 
 
@@ -851,3 +1846,46 @@ final class ResultCodeErrorListener implements ErrorListener<ResultCode> {
   }
 
 }
+
+
+
+/**
+ * A search result listener that counts the search result entries and
+ * discards them. Used to count the entries that match a search without
+ * accumulating the entries in memory.
+ */
+@SuppressWarnings("serial")
+final class EntryCountingSearchResultListener implements SearchResultListener {
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public void searchEntryReturned(final SearchResultEntry searchEntry) {
+    entryCount.incrementAndGet();
+  }
+
+
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public void searchReferenceReturned(final SearchResultReference searchReference) {
+    // references are not counted
+  }
+
+
+
+  /**
+   * @return the number of entries returned so far.
+   */
+  long getEntryCount() {
+    return entryCount.get();
+  }
+
+
+
+  private final AtomicLong entryCount = new AtomicLong();
+
+}
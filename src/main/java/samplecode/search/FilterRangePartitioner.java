@@ -0,0 +1,265 @@
+/*
+ * Copyright 2008-2013 UnboundID Corp. All Rights Reserved.
+ */
+/*
+ * Copyright (C) 2008-2013 UnboundID Corp. This program is free
+ * software; you can redistribute it and/or modify it under the terms of
+ * the GNU General Public License (GPLv2 only) or the terms of the GNU
+ * Lesser General Public License (LGPLv2.1 only) as published by the
+ * Free Software Foundation. This program is distributed in the hope
+ * that it will be useful, but WITHOUT ANY WARRANTY; without even the
+ * implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR
+ * PURPOSE. See the GNU General Public License for more details. You
+ * should have received a copy of the GNU General Public License along
+ * with this program; if not, see <http://www.gnu.org/licenses>.
+ */
+
+package samplecode.search;
+
+import com.unboundid.ldap.sdk.Filter;
+import samplecode.annotation.CodeVersion;
+import samplecode.annotation.Since;
+import samplecode.util.SampleCodeCollectionUtils;
+
+import java.util.Collections;
+import java.util.List;
+
+import static com.unboundid.util.Validator.ensureNotNull;
+
+
+/**
+ * Splits the entries that match a search filter into disjoint slices
+ * by adding ordering ranges on a single attribute to the filter. Given
+ * the boundaries {@code b1 < b2 < ... < bn} the slices are:
+ * <p/>
+ * <pre>
+ * slice 0:      (&amp;(filter)(!(attr&gt;=b1)))
+ * slice i:      (&amp;(filter)(attr&gt;=bi)(!(attr&gt;=bi+1)))
+ * slice n:      (&amp;(filter)(attr&gt;=bn))
+ * </pre>
+ * <p/>
+ * An entry that does not have the attribute never matches a
+ * greater-or-equal filter, and therefore always falls into slice 0.
+ * The slices are disjoint only if the attribute is single-valued in
+ * every matching entry, for example, {@code uid}, {@code entryUUID} or
+ * {@code employeeNumber}; a client should compare the sum of the slice
+ * counts with the count of the unpartitioned search to detect a
+ * multi-valued attribute.
+ * <p/>
+ * The boundaries are compared by the server using the ordering
+ * matching rule of the attribute, therefore the boundaries should be
+ * chosen with that rule in mind. The default boundaries generated by
+ * {@link #newFilterRangePartitioner(String, int)} are evenly spaced
+ * prefixes over the digits and lower case letters, which suits
+ * attributes using {@code caseIgnoreOrderingMatch}.
+ */
+@Since("Oct 16, 2026")
+@CodeVersion("1.0")
+public final class FilterRangePartitioner {
+
+  /**
+   * The characters over which the default boundaries are spread, in
+   * ascending order.
+   */
+  private static final String DEFAULT_ALPHABET = "0123456789abcdefghijklmnopqrstuvwxyz";
+
+
+
+  /**
+   * Creates a partitioner that splits the search space into
+   * {@code numSlices} slices using evenly spaced default boundaries.
+   *
+   * @param attributeName
+   *   the single-valued attribute whose values are used to
+   *   partition the entries. Not permitted to be {@code null}.
+   * @param numSlices
+   *   the number of slices, which must be greater than zero.
+   *
+   * @return a new {@code FilterRangePartitioner}.
+   */
+  public static FilterRangePartitioner newFilterRangePartitioner(final String attributeName,
+                                                                 final int numSlices) {
+    return new FilterRangePartitioner(attributeName,defaultBoundaries(numSlices));
+  }
+
+
+
+  /**
+   * Creates a partitioner that splits the search space at the
+   * specified boundaries. The number of slices is one more than the
+   * number of boundaries.
+   *
+   * @param attributeName
+   *   the single-valued attribute whose values are used to
+   *   partition the entries. Not permitted to be {@code null}.
+   * @param boundaries
+   *   the values at which the search space is split, in strictly
+   *   ascending order. Not permitted to be {@code null}, but may
+   *   be empty.
+   *
+   * @return a new {@code FilterRangePartitioner}.
+   */
+  public static FilterRangePartitioner newFilterRangePartitioner(final String attributeName,
+                                                                 final List<String> boundaries) {
+    return new FilterRangePartitioner(attributeName,boundaries);
+  }
+
+
+
+  /**
+   * Computes {@code numSlices - 1} boundaries spread evenly over
+   * prefixes made from the digits and the lower case letters. The
+   * prefix length grows with the number of slices so that every
+   * boundary is distinct.
+   *
+   * @param numSlices
+   *   the number of slices, which must be greater than zero.
+   *
+   * @return the boundaries in ascending order.
+   */
+  public static List<String> defaultBoundaries(final int numSlices) {
+    if(numSlices <= 0) {
+      throw new IllegalArgumentException("numSlices must be greater than zero.");
+    }
+    final int radix = DEFAULT_ALPHABET.length();
+    int prefixLength = 1;
+    long space = radix;
+    while(space < numSlices) {
+      space *= radix;
+      ++prefixLength;
+    }
+    final List<String> boundaries = SampleCodeCollectionUtils.newArrayList(numSlices);
+    for(int i = 1; i < numSlices; ++i) {
+      long position = (i * space) / numSlices;
+      final char[] prefix = new char[prefixLength];
+      for(int p = prefixLength - 1; p >= 0; --p) {
+        prefix[p] = DEFAULT_ALPHABET.charAt((int) (position % radix));
+        position /= radix;
+      }
+      boundaries.add(new String(prefix));
+    }
+    return boundaries;
+  }
+
+
+
+  private FilterRangePartitioner(final String attributeName, final List<String> boundaries) {
+    ensureNotNull(attributeName,boundaries);
+    for(int i = 1; i < boundaries.size(); ++i) {
+      if(boundaries.get(i - 1).compareToIgnoreCase(boundaries.get(i)) >= 0) {
+        final String msg =
+          String.format("partition boundaries must be in strictly ascending order, " +
+            "but '%s' does not precede '%s'.",boundaries.get(i - 1),boundaries.get(i));
+        throw new IllegalArgumentException(msg);
+      }
+    }
+    this.attributeName = attributeName;
+    this.boundaries =
+      Collections.unmodifiableList(SampleCodeCollectionUtils.newArrayList(boundaries));
+  }
+
+
+
+  /**
+   * @return the name of the attribute used to partition the entries.
+   */
+  public String getAttributeName() {
+    return attributeName;
+  }
+
+
+
+  /**
+   * @return an unmodifiable list of the boundaries in ascending order.
+   */
+  public List<String> getBoundaries() {
+    return boundaries;
+  }
+
+
+
+  /**
+   * @return the number of slices, which is one more than the number of
+   *         boundaries.
+   */
+  public int getNumSlices() {
+    return boundaries.size() + 1;
+  }
+
+
+
+  /**
+   * Retrieves the filter that matches the entries in the specified
+   * slice.
+   *
+   * @param filter
+   *   the filter of the unpartitioned search. Not permitted to be
+   *   {@code null}.
+   * @param slice
+   *   the zero-based slice number.
+   *
+   * @return a filter that matches only the entries of {@code filter}
+   *         that belong to {@code slice}.
+   */
+  public Filter getSliceFilter(final Filter filter, final int slice) {
+    ensureNotNull(filter);
+    if((slice < 0) || (slice >= getNumSlices())) {
+      final String msg =
+        String.format("slice %d is out of range; there are %d slices.",slice,getNumSlices());
+      throw new IllegalArgumentException(msg);
+    }
+    if(boundaries.isEmpty()) {
+      return filter;
+    }
+
+    final List<Filter> components = SampleCodeCollectionUtils.newArrayList(3);
+    components.add(filter);
+    if(slice > 0) {
+      components.add(Filter.createGreaterOrEqualFilter(attributeName,boundaries.get(slice - 1)));
+    }
+    if(slice < boundaries.size()) {
+      final Filter upper =
+        Filter.createGreaterOrEqualFilter(attributeName,boundaries.get(slice));
+      components.add(Filter.createNOTFilter(upper));
+    }
+    return Filter.createANDFilter(components);
+  }
+
+
+
+  /**
+   * Retrieves the filters for every slice, in slice order.
+   *
+   * @param filter
+   *   the filter of the unpartitioned search. Not permitted to be
+   *   {@code null}.
+   *
+   * @return a list of {@link #getNumSlices()} filters.
+   */
+  public List<Filter> getSliceFilters(final Filter filter) {
+    final List<Filter> filters = SampleCodeCollectionUtils.newArrayList(getNumSlices());
+    for(int slice = 0; slice < getNumSlices(); ++slice) {
+      filters.add(getSliceFilter(filter,slice));
+    }
+    return filters;
+  }
+
+
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public String toString() {
+    return "FilterRangePartitioner [attributeName=" + attributeName + ", boundaries=" +
+      boundaries + "]";
+  }
+
+
+
+  private final String attributeName;
+
+
+  private final List<String> boundaries;
+
+}
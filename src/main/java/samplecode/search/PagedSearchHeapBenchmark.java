@@ -0,0 +1,296 @@
+/*
+ * Copyright 2008-2013 UnboundID Corp. All Rights Reserved.
+ */
+/*
+ * Copyright (C) 2008-2013 UnboundID Corp. This program is free
+ * software; you can redistribute it and/or modify it under the terms of
+ * the GNU General Public License (GPLv2 only) or the terms of the GNU
+ * Lesser General Public License (LGPLv2.1 only) as published by the
+ * Free Software Foundation. This program is distributed in the hope
+ * that it will be useful, but WITHOUT ANY WARRANTY; without even the
+ * implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR
+ * PURPOSE. See the GNU General Public License for more details. You
+ * should have received a copy of the GNU General Public License along
+ * with this program; if not, see <http://www.gnu.org/licenses>.
+ */
+
+package samplecode.search;
+
+import com.unboundid.asn1.ASN1OctetString;
+import com.unboundid.ldap.listener.InMemoryDirectoryServer;
+import com.unboundid.ldap.listener.InMemoryDirectoryServerConfig;
+import com.unboundid.ldap.sdk.Attribute;
+import com.unboundid.ldap.sdk.Control;
+import com.unboundid.ldap.sdk.Entry;
+import com.unboundid.ldap.sdk.LDAPConnection;
+import com.unboundid.ldap.sdk.LDAPConnectionOptions;
+import com.unboundid.ldap.sdk.LDAPException;
+import com.unboundid.ldap.sdk.SearchRequest;
+import com.unboundid.ldap.sdk.SearchResult;
+import com.unboundid.ldap.sdk.SearchResultEntry;
+import com.unboundid.ldap.sdk.SearchResultListener;
+import com.unboundid.ldap.sdk.SearchResultReference;
+import com.unboundid.ldap.sdk.SearchScope;
+import com.unboundid.ldap.sdk.controls.SimplePagedResultsControl;
+import samplecode.annotation.CodeVersion;
+import samplecode.annotation.Launchable;
+import samplecode.annotation.Since;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.util.Arrays;
+
+
+/**
+ * Compares the peak heap used by a paged search that collects the
+ * entries of each page in a {@code SearchResult} with the peak heap used
+ * by a {@link StreamingPagedSearch}. An in-memory directory server is
+ * populated with entries of a given size, then each approach retrieves
+ * every entry with a given page size. Two numbers are displayed for
+ * each approach, both less the heap used before the search:
+ * <ul>
+ * <li>the live heap while the entries of the first page are processed,
+ * measured after a garbage collection: the accumulating search holds a
+ * full page of entries, the streaming search one entry</li>
+ * <li>the peak usage of the heap memory pools during the search, which
+ * also counts garbage and the memory used by the in-memory server,
+ * which runs in the same JVM</li>
+ * </ul>
+ * The peak numbers are most meaningful with a fixed heap size, for
+ * example {@code -Xms512m -Xmx512m}.
+ * <p/>
+ * example usage: <blockquote>
+ * <p/>
+ * <pre>
+ * java -Xms512m -Xmx512m samplecode.search.PagedSearchHeapBenchmark \
+ *   20000 4096 20000
+ * </pre>
+ * </blockquote>
+ * The arguments are the number of entries, the size in bytes of the
+ * {@code description} value of each entry, and the page size.
+ */
+@Since("Oct 16, 2026")
+@CodeVersion("1.0")
+@Launchable
+public final class PagedSearchHeapBenchmark {
+
+  private static final String BASE_DN = "dc=example,dc=com";
+
+
+  private static final int DEFAULT_NUM_ENTRIES = 20000;
+
+
+  private static final int DEFAULT_ENTRY_SIZE = 4096;
+
+
+  private static final int DEFAULT_PAGE_SIZE = 20000;
+
+
+  private static final int NUM_RUNS = 3;
+
+
+
+  /**
+   * Runs the benchmark.
+   *
+   * @param args
+   *   optionally the number of entries, the size in bytes of the
+   *   description of each entry, and the page size.
+   *
+   * @throws LDAPException
+   *   if the server cannot be populated or a search fails.
+   */
+  public static void main(final String... args) throws LDAPException {
+    final int numEntries = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_NUM_ENTRIES;
+    final int entrySize = args.length > 1 ? Integer.parseInt(args[1]) : DEFAULT_ENTRY_SIZE;
+    final int pageSize = args.length > 2 ? Integer.parseInt(args[2]) : DEFAULT_PAGE_SIZE;
+
+    final InMemoryDirectoryServer directoryServer = newDirectoryServer(numEntries,entrySize);
+    final LDAPConnectionOptions connectionOptions = new LDAPConnectionOptions();
+    connectionOptions.setUseSynchronousMode(true);
+    final LDAPConnection ldapConnection = new LDAPConnection(connectionOptions,"localhost",
+      directoryServer.getListenPort());
+    try {
+      final SearchRequest searchRequest =
+        new SearchRequest(BASE_DN,SearchScope.ONE,"(objectClass=*)");
+      System.out.println(String.format("entries: %d, entry size: %d bytes, page size: %d",
+        numEntries,entrySize,pageSize));
+      for(int run = 1; run <= NUM_RUNS; ++run) {
+        final PagedSearchHeapBenchmark accumulating = new PagedSearchHeapBenchmark();
+        final long accumulated = accumulating.accumulate(ldapConnection,searchRequest,pageSize);
+        final PagedSearchHeapBenchmark streaming = new PagedSearchHeapBenchmark();
+        final long streamed = streaming.stream(ldapConnection,searchRequest,pageSize);
+        System.out.println(String.format("run %d: accumulating (%d entries) live heap: %d KB, " +
+          "peak heap: %d KB; streaming (%d entries) live heap: %d KB, peak heap: %d KB",run,
+          accumulated,accumulating.liveHeap / 1024L,accumulating.peakHeap / 1024L,streamed,
+          streaming.liveHeap / 1024L,streaming.peakHeap / 1024L));
+      }
+    } finally {
+      ldapConnection.close();
+      directoryServer.shutDown(true);
+    }
+  }
+
+
+
+  private static InMemoryDirectoryServer newDirectoryServer(final int numEntries,
+                                                            final int entrySize)
+    throws LDAPException {
+    final InMemoryDirectoryServer directoryServer =
+      new InMemoryDirectoryServer(new InMemoryDirectoryServerConfig(BASE_DN));
+    directoryServer.add(new Entry(BASE_DN,new Attribute("objectClass",
+      "top","domain"),new Attribute("dc","example")));
+    final char[] description = new char[entrySize];
+    Arrays.fill(description,'x');
+    final String descriptionValue = new String(description);
+    for(int i = 0; i < numEntries; ++i) {
+      directoryServer.add(new Entry("cn=user." + i + "," + BASE_DN,
+        new Attribute("objectClass","top","person"),
+        new Attribute("cn","user." + i),
+        new Attribute("sn",Integer.toString(i)),
+        new Attribute("description",descriptionValue)));
+    }
+    directoryServer.startListening();
+    return directoryServer;
+  }
+
+
+
+  /**
+   * Requests each page without a listener, so that the entries of the
+   * page are collected in the search result.
+   */
+  private long accumulate(final LDAPConnection ldapConnection,
+                          final SearchRequest searchRequest, final int pageSize)
+    throws LDAPException {
+    start();
+    long entries = 0L;
+    ASN1OctetString cookie = null;
+    do {
+      final SearchRequest pageRequest =
+        searchRequest.duplicate(new Control[]{new SimplePagedResultsControl(pageSize,cookie)});
+      final SearchResult searchResult = ldapConnection.search(pageRequest);
+      if(entries == 0L) {
+        measureLiveHeap();
+      }
+      entries += searchResult.getEntryCount();
+      final SimplePagedResultsControl c = SimplePagedResultsControl.get(searchResult);
+      cookie = c == null ? null : c.getCookie();
+    } while((cookie != null) && (cookie.getValueLength() > 0));
+    measurePeakHeap();
+    return entries;
+  }
+
+
+
+  /**
+   * Streams the entries to a listener that discards them, measuring the
+   * live heap in the middle of the first page.
+   */
+  private long stream(final LDAPConnection ldapConnection,
+                      final SearchRequest searchRequest, final int pageSize)
+    throws LDAPException {
+    start();
+    final StreamingPagedSearch pagedSearch =
+      new StreamingPagedSearch(ldapConnection,searchRequest,pageSize);
+    pagedSearch.search(new SearchResultListener() {
+
+      private static final long serialVersionUID = 1L;
+
+
+
+      @Override
+      public void searchEntryReturned(final SearchResultEntry searchEntry) {
+        if(++entries == Math.max(1,pageSize / 2)) {
+          measureLiveHeap();
+        }
+      }
+
+
+
+      @Override
+      public void searchReferenceReturned(final SearchResultReference searchReference) {
+        // the reference is discarded
+      }
+
+
+
+      private long entries;
+    });
+    measurePeakHeap();
+    return pagedSearch.getEntriesReturned();
+  }
+
+
+
+  private void start() {
+    resetPeakUsage();
+    baseline = getHeapUsed();
+  }
+
+
+
+  private void measureLiveHeap() {
+    System.gc();
+    liveHeap = Math.max(0L,getHeapUsed() - baseline);
+  }
+
+
+
+  private void measurePeakHeap() {
+    peakHeap = getHeapPeak() - baseline;
+  }
+
+
+
+  private static void resetPeakUsage() {
+    System.gc();
+    for(final MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+      if(pool.getType() == MemoryType.HEAP) {
+        pool.resetPeakUsage();
+      }
+    }
+  }
+
+
+
+  private static long getHeapUsed() {
+    long used = 0L;
+    for(final MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+      if(pool.getType() == MemoryType.HEAP) {
+        used += pool.getUsage().getUsed();
+      }
+    }
+    return used;
+  }
+
+
+
+  private static long getHeapPeak() {
+    long peak = 0L;
+    for(final MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+      if(pool.getType() == MemoryType.HEAP) {
+        peak += pool.getPeakUsage().getUsed();
+      }
+    }
+    return peak;
+  }
+
+
+
+  private PagedSearchHeapBenchmark() {
+    // instances are created by main
+  }
+
+
+
+  private long baseline;
+
+
+  private long liveHeap;
+
+
+  private long peakHeap;
+
+}
@@ -19,21 +19,50 @@ package samplecode.search;
 import com.unboundid.ldap.sdk.*;
 import com.unboundid.ldap.sdk.controls.PersistentSearchChangeType;
 import com.unboundid.ldap.sdk.controls.PersistentSearchRequestControl;
+import com.unboundid.util.args.ArgumentException;
+import com.unboundid.util.args.ArgumentParser;
+import com.unboundid.util.args.IntegerArgument;
+import com.unboundid.util.args.StringArgument;
 import samplecode.annotation.Author;
 import samplecode.annotation.CodeVersion;
 import samplecode.annotation.Launchable;
 import samplecode.annotation.Since;
+import samplecode.changes.ChangeDispatcher;
+import samplecode.changes.CoalescingSubscriber;
+import samplecode.changes.PersistentSearchManager;
+import samplecode.changes.ChangeEvent;
+import samplecode.changes.ChangeSubscriber;
 import samplecode.ldap.DefaultUnsolicitedNotificationHandler;
 import samplecode.ldap.SupportedFeature;
 import samplecode.tools.AbstractTool;
 
 import java.io.OutputStream;
 import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 
 
 /**
  * Provides services useful for demonstrating a persistent search. This
  * class can be launched from the command line.
+ * <p/>
+ * The connection reader thread publishes each change returned by the
+ * persistent search to a {@link ChangeDispatcher} and returns to reading
+ * the connection; the changes are displayed in batches by a subscriber
+ * on another thread. --ringCapacity is the number of changes kept for
+ * the display when it falls behind, and --maxBatchSize the largest
+ * number of changes displayed at once.
+ * <p/>
+ * When --coalesceWindowMillis is greater than zero the changes are held
+ * by a {@link CoalescingSubscriber} for that many milliseconds, and the
+ * changes to the same entry within the window are displayed once, with
+ * the latest state of the entry.
+ * <p/>
+ * When --watchBaseObject is specified, a persistent search is sent for
+ * each of its values instead of --baseObject, all of them over the
+ * --watchConnections connections of a {@link PersistentSearchManager},
+ * which sends the searches again when a connection is lost. The searches
+ * run until the tool is interrupted, or for --timeLimit seconds.
  */
 @Author("terry.gardner@unboundid.com")
 @Since("Oct 13,2011")
@@ -41,6 +70,49 @@ import java.util.List;
 @Launchable
 public final class PersistentSearchExample extends AbstractTool {
 
+  /**
+   * The long identifier of the command line argument whose parameter is
+   * the number of changes kept for a subscriber that falls behind.
+   */
+  public static final String ARG_NAME_RING_CAPACITY = "ringCapacity";
+
+
+  /**
+   * The long identifier of the command line argument whose parameter is
+   * the largest number of changes delivered to a subscriber at once.
+   */
+  public static final String ARG_NAME_MAX_BATCH_SIZE = "maxBatchSize";
+
+
+  /**
+   * The long identifier of the command line argument whose parameter is
+   * the time in milliseconds for which changes are held to be merged.
+   */
+  public static final String ARG_NAME_COALESCE_WINDOW_MILLIS = "coalesceWindowMillis";
+
+
+  /**
+   * The long identifier of the command line argument whose parameter is
+   * the base object of one of several persistent searches.
+   */
+  public static final String ARG_NAME_WATCH_BASE_OBJECT = "watchBaseObject";
+
+
+  /**
+   * The long identifier of the command line argument whose parameter is
+   * the number of connections shared by the persistent searches.
+   */
+  public static final String ARG_NAME_WATCH_CONNECTIONS = "watchConnections";
+
+
+  /**
+   * The longest time in seconds for which the shutdown hook waits for
+   * the changes already received to be displayed.
+   */
+  private static final long SHUTDOWN_WAIT_SECONDS = 30L;
+
+
+
   /**
    * @param args
    *   Command line arguments as supported by
@@ -92,13 +164,11 @@ public final class PersistentSearchExample extends AbstractTool {
   protected ResultCode executeToolTasks() {
 
     try {
-      demonstratePersistentSearch();
+      return demonstratePersistentSearch();
     } catch(final LDAPException ldapException) {
       getLogger().fatal(ldapException.getMessage());
       return ldapException.getResultCode();
     }
-
-    return ResultCode.SUCCESS;
   }
 
 
@@ -165,25 +235,166 @@ public final class PersistentSearchExample extends AbstractTool {
         isCritical);
     searchRequest.addControl(control);
 
-    final SearchResult searchResult = ldapConnection.search(searchRequest);
-    ldapConnection.close();
+    // The changes are displayed by a subscriber of the dispatcher, on a
+    // thread of its own.
+    final int ringCapacity = ringCapacityArgument.getValue().intValue();
+    if(Integer.bitCount(ringCapacity) != 1) {
+      getLogger().fatal("--" + ARG_NAME_RING_CAPACITY + " must be a power of two.");
+      ldapConnection.close();
+      return ResultCode.PARAM_ERROR;
+    }
+    final int coalesceWindowMillis = coalesceWindowMillisArgument.getValue().intValue();
+    final CoalescingSubscriber coalescingSubscriber = coalesceWindowMillis == 0 ? null :
+      new CoalescingSubscriber(printingSubscriber,coalesceWindowMillis);
+    if(watchBaseObjectArgument.getNumOccurrences() > 0) {
+      ldapConnection.close();
+      return demonstrateManagedPersistentSearches(ringCapacity,coalescingSubscriber);
+    }
+    changeDispatcher =
+      new ChangeDispatcher(ringCapacity,maxBatchSizeArgument.getValue().intValue());
+    changeDispatcher.subscribe("display",
+      coalescingSubscriber == null ? printingSubscriber : coalescingSubscriber);
+    try {
+      final SearchResult searchResult = ldapConnection.search(searchRequest);
+      return searchResult.getResultCode();
+    } finally {
+      ldapConnection.close();
+      try {
+        changeDispatcher.close();
+        if(coalescingSubscriber != null) {
+          coalescingSubscriber.close();
+          getLogger().info(coalescingSubscriber);
+        }
+      } catch(final InterruptedException interruptedException) {
+        Thread.currentThread().interrupt();
+      }
+    }
+  }
+
+
 
-    return searchResult.getResultCode();
+  /**
+   * Sends a persistent search for each --watchBaseObject over the
+   * connections of a manager, and displays the changes until the tool is
+   * interrupted or the time limit expires. When the tool is interrupted,
+   * the shutdown hook waits until the changes already received are
+   * displayed, but no longer than {@code SHUTDOWN_WAIT_SECONDS}, so that
+   * a tool still registering its searches does not keep the JVM from
+   * exiting.
+   */
+  private ResultCode demonstrateManagedPersistentSearches(
+    final int ringCapacity, final CoalescingSubscriber coalescingSubscriber)
+    throws LDAPException {
+    final ChangeSubscriber subscriber =
+      coalescingSubscriber == null ? printingSubscriber : coalescingSubscriber;
+    final PersistentSearchManager manager =
+      new PersistentSearchManager(createServerSet(),createBindRequest(),
+        watchConnectionsArgument.getValue().intValue(),ringCapacity,
+        maxBatchSizeArgument.getValue().intValue());
+    final CountDownLatch stopped = new CountDownLatch(1);
+    final CountDownLatch closed = new CountDownLatch(1);
+    Runtime.getRuntime().addShutdownHook(new Thread("PersistentSearchManager close") {
+
+      @Override
+      public void run() {
+        stopped.countDown();
+        // the JVM exits when the hook returns
+        try {
+          closed.await(SHUTDOWN_WAIT_SECONDS,TimeUnit.SECONDS);
+        } catch(final InterruptedException interruptedException) {
+          Thread.currentThread().interrupt();
+        }
+      }
+    });
+    try {
+      final List<String> attributeList = commandLineOptions.getRequestedAttributes();
+      final String[] attributes = new String[attributeList.size()];
+      attributeList.toArray(attributes);
+      for(final String baseObject : watchBaseObjectArgument.getValues()) {
+        manager.register(baseObject,new SearchRequest(baseObject,
+          commandLineOptions.getSearchScope(),commandLineOptions.getFilter(),attributes),
+          subscriber);
+      }
+      getLogger().info(manager);
+      final int timeLimit = commandLineOptions.getTimeLimit();
+      if(timeLimit > 0) {
+        stopped.await(timeLimit,TimeUnit.SECONDS);
+      } else {
+        stopped.await();
+      }
+      return ResultCode.SUCCESS;
+    } catch(final InterruptedException interruptedException) {
+      Thread.currentThread().interrupt();
+      return ResultCode.LOCAL_ERROR;
+    } finally {
+      try {
+        manager.close();
+        if(coalescingSubscriber != null) {
+          coalescingSubscriber.close();
+          getLogger().info(coalescingSubscriber);
+        }
+      } catch(final InterruptedException interruptedException) {
+        Thread.currentThread().interrupt();
+      } finally {
+        closed.countDown();
+      }
+    }
   }
 
 
 
+  @Override
+  protected void addArguments(final ArgumentParser argumentParser) throws ArgumentException {
+    ringCapacityArgument =
+      new IntegerArgument(null,ARG_NAME_RING_CAPACITY,false,1,"{powerOfTwo}","The number " +
+        "of changes kept for a subscriber that falls behind. The value must be a power " +
+        "of two.",1,1 << 30,Integer.valueOf(8192));
+    argumentParser.addArgument(ringCapacityArgument);
+
+    maxBatchSizeArgument =
+      new IntegerArgument(null,ARG_NAME_MAX_BATCH_SIZE,false,1,"{positiveInteger}",
+        "The largest number of changes delivered to a subscriber at once.",1,
+        Integer.MAX_VALUE,Integer.valueOf(256));
+    argumentParser.addArgument(maxBatchSizeArgument);
+
+    coalesceWindowMillisArgument =
+      new IntegerArgument(null,ARG_NAME_COALESCE_WINDOW_MILLIS,false,1,
+        "{nonNegativeInteger}","The time in milliseconds for which changes are held so " +
+        "that the changes to the same entry are displayed once, with the latest state " +
+        "of the entry. Zero displays every change.",0,Integer.MAX_VALUE,Integer.valueOf(0));
+    argumentParser.addArgument(coalesceWindowMillisArgument);
+
+    watchBaseObjectArgument =
+      new StringArgument(null,ARG_NAME_WATCH_BASE_OBJECT,false,0,"{distinguishedName}",
+        "The base object of one of several persistent searches, which are sent instead " +
+        "of the search of --baseObject. This argument may be specified multiple times.");
+    argumentParser.addArgument(watchBaseObjectArgument);
+
+    watchConnectionsArgument =
+      new IntegerArgument(null,ARG_NAME_WATCH_CONNECTIONS,false,1,"{positiveInteger}",
+        "The number of connections shared by the persistent searches of " +
+        "--watchBaseObject.",1,Integer.MAX_VALUE,Integer.valueOf(2));
+    argumentParser.addArgument(watchConnectionsArgument);
+  }
+
+
+
+  /**
+   * Publishes each entry returned by the persistent search to the
+   * dispatcher; invoked on the connection reader thread, which must not
+   * be delayed by the processing of the changes.
+   */
   @SuppressWarnings("serial")
   private final AsyncSearchResultListener asyncSearchListener =
     new AsyncSearchResultListener() {
 
       @Override
       public void searchEntryReturned(final SearchResultEntry searchResultEntry) {
-        final StringBuilder builder = new StringBuilder(">>>>\nsearch entry returned\n");
-        builder.append(String.format("%-12s %s\n","DN:",searchResultEntry.getDN()));
-        builder.append(String.format("%-12s %s\n","searchResult:",
-          searchResultEntry.toLDIFString()));
-        System.out.println(builder.toString());
+        try {
+          changeDispatcher.publish(ChangeEvent.fromSearchResultEntry(searchResultEntry));
+        } catch(final LDAPException ldapException) {
+          getLogger().error(ldapException.getExceptionMessage());
+        }
       }
 
 
@@ -207,4 +418,54 @@ public final class PersistentSearchExample extends AbstractTool {
 
     };
 
+
+
+  /**
+   * Displays each batch of changes with a single write.
+   */
+  private final ChangeSubscriber printingSubscriber = new ChangeSubscriber() {
+
+    @Override
+    public void changesReceived(final List<ChangeEvent> changes) {
+      final StringBuilder builder = new StringBuilder();
+      for(final ChangeEvent change : changes) {
+        builder.append(">>>>\nsearch entry returned\nDN:          ").append(change.getDN());
+        if(change.getSearchName() != null) {
+          builder.append("\nsearch:      ").append(change.getSearchName());
+        }
+        if(change.getChangeType() != null) {
+          builder.append("\nchangeType:  ").append(change.getChangeType().getName());
+        }
+        builder.append("\nsearchResult: ").append(change.getEntry().toLDIFString()).append('\n');
+      }
+      System.out.println(builder);
+    }
+
+
+
+    @Override
+    public void changesMissed(final long count) {
+      getLogger().warn(count + " changes were not displayed because the display fell behind.");
+    }
+  };
+
+
+
+  private ChangeDispatcher changeDispatcher;
+
+
+  private IntegerArgument coalesceWindowMillisArgument;
+
+
+  private IntegerArgument maxBatchSizeArgument;
+
+
+  private IntegerArgument ringCapacityArgument;
+
+
+  private StringArgument watchBaseObjectArgument;
+
+
+  private IntegerArgument watchConnectionsArgument;
+
 }
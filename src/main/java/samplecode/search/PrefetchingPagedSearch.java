@@ -0,0 +1,398 @@
+/*
+ * Copyright 2008-2013 UnboundID Corp. All Rights Reserved.
+ */
+/*
+ * Copyright (C) 2008-2013 UnboundID Corp. This program is free
+ * software; you can redistribute it and/or modify it under the terms of
+ * the GNU General Public License (GPLv2 only) or the terms of the GNU
+ * Lesser General Public License (LGPLv2.1 only) as published by the
+ * Free Software Foundation. This program is distributed in the hope
+ * that it will be useful, but WITHOUT ANY WARRANTY; without even the
+ * implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR
+ * PURPOSE. See the GNU General Public License for more details. You
+ * should have received a copy of the GNU General Public License along
+ * with this program; if not, see <http://www.gnu.org/licenses>.
+ */
+
+package samplecode.search;
+
+import com.unboundid.asn1.ASN1OctetString;
+import com.unboundid.ldap.sdk.Control;
+import com.unboundid.ldap.sdk.LDAPConnection;
+import com.unboundid.ldap.sdk.LDAPException;
+import com.unboundid.ldap.sdk.SearchRequest;
+import com.unboundid.ldap.sdk.SearchResult;
+import com.unboundid.ldap.sdk.controls.SimplePagedResultsControl;
+import samplecode.annotation.CodeVersion;
+import samplecode.annotation.Since;
+import samplecode.util.SampleCodeExecutors;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static com.unboundid.util.Validator.ensureNotNull;
+
+
+/**
+ * Retrieves the pages of a search that uses the simple paged results
+ * control, requesting the next page while the caller is still
+ * processing the current one. A fetching thread transmits the request
+ * for the next page as soon as the response carrying its cookie has
+ * been received, and queues each page for the caller; when the caller
+ * processes a page for about as long as the server takes to return one,
+ * the round trip for the next page is hidden and the wall-clock time of
+ * a large export is roughly halved.
+ * <p/>
+ * A paged results cookie is only valid on the connection on which it
+ * was returned, therefore every page is requested on the
+ * {@code ldapConnection} provided to the constructor. A connection
+ * checked out of a pool must not be released until the search is
+ * closed.
+ * <p/>
+ * At most {@code maxPagesInFlight} pages are requested or queued but
+ * not yet taken by the caller, which bounds the memory used by pages
+ * the caller has not reached. A value of one gives double buffering:
+ * one page is processed by the caller while the next is retrieved.
+ * <p/>
+ * The page size is either fixed, or tuned between pages by an
+ * {@link AdaptivePageSizer} from the time taken by the server to return
+ * each page and the size of its entries.
+ * <p/>
+ * example usage: <blockquote>
+ * <p/>
+ * <pre>
+ * PrefetchingPagedSearch pagedSearch =
+ *   new PrefetchingPagedSearch(ldapConnection,searchRequest,500,1);
+ * try {
+ *   SearchResult page;
+ *   while((page = pagedSearch.nextPage()) != null) {
+ *     for(SearchResultEntry entry : page.getSearchEntries()) {
+ *       ...
+ *     }
+ *   }
+ * } finally {
+ *   pagedSearch.close();
+ * }
+ * </pre>
+ * </blockquote>
+ */
+@Since("Oct 16, 2026")
+@CodeVersion("1.0")
+public final class PrefetchingPagedSearch {
+
+  /**
+   * Marks the end of the pages.
+   */
+  private static final Object END_OF_PAGES = new Object();
+
+
+
+  /**
+   * Creates a paged search and starts requesting pages.
+   *
+   * @param ldapConnection
+   *   the connection on which every page is requested. Not
+   *   permitted to be {@code null}.
+   * @param searchRequest
+   *   the search request; it is not modified, each page is
+   *   requested with a duplicate to which the simple paged results
+   *   control is added. Not permitted to be {@code null}.
+   * @param pageSize
+   *   the number of entries requested in each page, which must be
+   *   greater than zero.
+   * @param maxPagesInFlight
+   *   the maximum number of pages requested or waiting to be taken
+   *   by the caller, which must be greater than zero.
+   */
+  public PrefetchingPagedSearch(final LDAPConnection ldapConnection,
+                                final SearchRequest searchRequest, final int pageSize,
+                                final int maxPagesInFlight) {
+    this(ldapConnection,searchRequest,pageSize,null,maxPagesInFlight);
+  }
+
+
+
+  /**
+   * Creates a paged search whose page size is tuned by
+   * {@code pageSizer}, and starts requesting pages.
+   *
+   * @param ldapConnection
+   *   the connection on which every page is requested. Not
+   *   permitted to be {@code null}.
+   * @param searchRequest
+   *   the search request; it is not modified, each page is
+   *   requested with a duplicate to which the simple paged results
+   *   control is added. Not permitted to be {@code null}.
+   * @param pageSizer
+   *   provides the size of each page and is told the latency and
+   *   size of each page retrieved. Not permitted to be {@code null}.
+   * @param maxPagesInFlight
+   *   the maximum number of pages requested or waiting to be taken
+   *   by the caller, which must be greater than zero.
+   */
+  public PrefetchingPagedSearch(final LDAPConnection ldapConnection,
+                                final SearchRequest searchRequest,
+                                final AdaptivePageSizer pageSizer, final int maxPagesInFlight) {
+    this(ldapConnection,searchRequest,1,pageSizer,maxPagesInFlight);
+    ensureNotNull(pageSizer);
+  }
+
+
+
+  private PrefetchingPagedSearch(final LDAPConnection ldapConnection,
+                                 final SearchRequest searchRequest, final int pageSize,
+                                 final AdaptivePageSizer pageSizer,
+                                 final int maxPagesInFlight) {
+    ensureNotNull(ldapConnection,searchRequest);
+    if(pageSize <= 0) {
+      throw new IllegalArgumentException("pageSize must be greater than zero.");
+    }
+    if(maxPagesInFlight <= 0) {
+      throw new IllegalArgumentException("maxPagesInFlight must be greater than zero.");
+    }
+    this.ldapConnection = ldapConnection;
+    this.searchRequest = searchRequest.duplicate();
+    this.pageSize = pageSize;
+    this.pageSizer = pageSizer;
+    this.maxPagesInFlight = maxPagesInFlight;
+    pagePermits = new Semaphore(maxPagesInFlight);
+    fetcherService = Executors.newSingleThreadExecutor(new ThreadFactory() {
+
+      @Override
+      public Thread newThread(final Runnable runnable) {
+        final Thread thread = new Thread(runnable,"PrefetchingPagedSearch");
+        thread.setDaemon(true);
+        return thread;
+      }
+    });
+    fetcherService.execute(new Fetcher());
+  }
+
+
+
+  /**
+   * Retrieves the next page, waiting for it to be returned by the
+   * server if necessary. Taking a page allows the fetching thread to
+   * request another.
+   *
+   * @return the next page, or {@code null} if every page has been
+   *         retrieved or the search has been closed.
+   *
+   * @throws LDAPException
+   *   if the request for the page failed; no further pages are
+   *   retrieved.
+   * @throws InterruptedException
+   *   if the waiting thread is interrupted.
+   */
+  public SearchResult nextPage() throws LDAPException, InterruptedException {
+    if(finished || closed) {
+      return null;
+    }
+    final long begin = System.nanoTime();
+    final Object page = pages.take();
+    callerWaitNanos.addAndGet(System.nanoTime() - begin);
+    if(page == END_OF_PAGES) {
+      finished = true;
+      return null;
+    }
+    if(page instanceof LDAPException) {
+      finished = true;
+      throw (LDAPException) page;
+    }
+    pagePermits.release();
+    return (SearchResult) page;
+  }
+
+
+
+  /**
+   * Stops requesting pages. If the server has returned a cookie for a
+   * page that was not requested, a request with a page size of zero is
+   * sent with that cookie, as described in RFC 2696, so that the server
+   * can release the resources of the search. The connection is not
+   * closed.
+   */
+  public void close() {
+    if(closed) {
+      return;
+    }
+    closed = true;
+    fetcherService.shutdownNow();
+    SampleCodeExecutors.shutdownAndAwaitTermination(fetcherService);
+    final ASN1OctetString c = cookie;
+    if((c != null) && (c.getValueLength() > 0)) {
+      try {
+        ldapConnection.search(newPageRequest(0,c));
+      } catch(final LDAPException ldapException) {
+        // the server discards the search when the connection is closed
+      }
+    }
+    cookie = null;
+  }
+
+
+
+  /**
+   * @return the number of pages returned by the server.
+   */
+  public long getPagesFetched() {
+    return pagesFetched.get();
+  }
+
+
+
+  /**
+   * @return the number of entries returned by the server.
+   */
+  public long getEntriesFetched() {
+    return entriesFetched.get();
+  }
+
+
+
+  /**
+   * Retrieves the time the caller spent in {@link #nextPage()} waiting
+   * for a page. A value that is small compared with the time taken by
+   * the server to return the pages means that the requests were
+   * overlapped with the processing of the caller.
+   *
+   * @return the time the caller waited for pages in nanoseconds.
+   */
+  public long getCallerWaitNanos() {
+    return callerWaitNanos.get();
+  }
+
+
+
+  /**
+   * @return the time the fetching thread spent waiting for the server
+   *         to return pages, in nanoseconds.
+   */
+  public long getFetchNanos() {
+    return fetchNanos.get();
+  }
+
+
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public String toString() {
+    return "PrefetchingPagedSearch [pageSize=" +
+      (pageSizer == null ? Integer.valueOf(pageSize) : pageSizer) + ", maxPagesInFlight=" +
+      maxPagesInFlight + ", pagesFetched=" + getPagesFetched() + ", entriesFetched=" +
+      getEntriesFetched() + "]";
+  }
+
+
+
+  private SearchRequest newPageRequest(final int size, final ASN1OctetString pageCookie) {
+    final Control[] requestControls = searchRequest.getControls();
+    final Control[] controls = new Control[requestControls.length + 1];
+    System.arraycopy(requestControls,0,controls,0,requestControls.length);
+    controls[requestControls.length] = new SimplePagedResultsControl(size,pageCookie);
+    return searchRequest.duplicate(controls);
+  }
+
+
+
+  /**
+   * Requests pages until the server returns an empty cookie, the
+   * search is closed, or a request fails.
+   */
+  private final class Fetcher implements Runnable {
+
+    @Override
+    public void run() {
+      try {
+        do {
+          pagePermits.acquire();
+          if(closed) {
+            break;
+          }
+          final int size = pageSizer == null ? pageSize : pageSizer.getPageSize();
+          final long begin = System.nanoTime();
+          final SearchResult page = ldapConnection.search(newPageRequest(size,cookie));
+          final long elapsedNanos = System.nanoTime() - begin;
+          fetchNanos.addAndGet(elapsedNanos);
+          if(pageSizer != null) {
+            pageSizer.recordPage(page,elapsedNanos);
+          }
+          pagesFetched.incrementAndGet();
+          entriesFetched.addAndGet(page.getEntryCount());
+          final SimplePagedResultsControl c = SimplePagedResultsControl.get(page);
+          cookie = c == null ? null : c.getCookie();
+          pages.add(page);
+        } while((cookie != null) && (cookie.getValueLength() > 0));
+      } catch(final LDAPException ldapException) {
+        cookie = null;
+        pages.add(ldapException);
+      } catch(final InterruptedException interruptedException) {
+        Thread.currentThread().interrupt();
+      } finally {
+        pages.add(END_OF_PAGES);
+      }
+    }
+
+  }
+
+
+
+  private final AtomicLong callerWaitNanos = new AtomicLong();
+
+
+  private volatile boolean closed;
+
+
+  /**
+   * The cookie returned with the last page, which is used to request
+   * the next page.
+   */
+  private volatile ASN1OctetString cookie;
+
+
+  private final AtomicLong entriesFetched = new AtomicLong();
+
+
+  private final AtomicLong fetchNanos = new AtomicLong();
+
+
+  private final ExecutorService fetcherService;
+
+
+  private boolean finished;
+
+
+  private final LDAPConnection ldapConnection;
+
+
+  private final int maxPagesInFlight;
+
+
+  private final Semaphore pagePermits;
+
+
+  private final BlockingQueue<Object> pages = new LinkedBlockingQueue<Object>();
+
+
+  private final int pageSize;
+
+
+  /**
+   * Tunes the page size, or {@code null} if the page size is fixed.
+   */
+  private final AdaptivePageSizer pageSizer;
+
+
+  private final AtomicLong pagesFetched = new AtomicLong();
+
+
+  private final SearchRequest searchRequest;
+
+}
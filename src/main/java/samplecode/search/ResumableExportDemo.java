@@ -0,0 +1,275 @@
+/*
+ * Copyright 2008-2013 UnboundID Corp. All Rights Reserved.
+ */
+/*
+ * Copyright (C) 2008-2013 UnboundID Corp. This program is free
+ * software; you can redistribute it and/or modify it under the terms of
+ * the GNU General Public License (GPLv2 only) or the terms of the GNU
+ * Lesser General Public License (LGPLv2.1 only) as published by the
+ * Free Software Foundation. This program is distributed in the hope
+ * that it will be useful, but WITHOUT ANY WARRANTY; without even the
+ * implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR
+ * PURPOSE. See the GNU General Public License for more details. You
+ * should have received a copy of the GNU General Public License along
+ * with this program; if not, see <http://www.gnu.org/licenses>.
+ */
+
+package samplecode.search;
+
+import com.unboundid.ldap.sdk.Filter;
+import com.unboundid.ldap.sdk.LDAPConnectionPool;
+import com.unboundid.ldap.sdk.LDAPException;
+import com.unboundid.ldap.sdk.ResultCode;
+import com.unboundid.ldap.sdk.SearchRequest;
+import com.unboundid.ldap.sdk.SearchScope;
+import com.unboundid.ldap.sdk.controls.ServerSideSortRequestControl;
+import com.unboundid.util.args.ArgumentException;
+import com.unboundid.util.args.ArgumentParser;
+import com.unboundid.util.args.IntegerArgument;
+import com.unboundid.util.args.StringArgument;
+import samplecode.annotation.CodeVersion;
+import samplecode.annotation.Launchable;
+import samplecode.annotation.Since;
+import samplecode.ldap.SupportedFeature;
+import samplecode.tools.AbstractTool;
+import samplecode.tools.BasicToolCompletedProcessing;
+import samplecode.tools.ToolCompletedProcessing;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+
+/**
+ * Exports the entries matching the search parameters to a file of LDIF
+ * with a {@link CheckpointedExport}, sorted by the attribute named by
+ * --sortAttribute, whose values must be unique. Entries that have no
+ * value of --sortAttribute are not exported. When the connection to
+ * the server fails the export is resumed from the last entry exported;
+ * when the tool is run again after it failed, the export is resumed from
+ * the checkpoint file. The throughput and the time taken to restart are
+ * displayed when the export is complete.
+ * <p/>
+ * example usage: <blockquote>
+ * <p/>
+ * <pre>
+ * java samplecode.search.ResumableExportDemo \
+ *   --hostname localhost --port 1389 \
+ *   --baseObject ou=people,dc=example,dc=com --scope SUB \
+ *   --filter '(objectClass=*)' --pageSize 1000 \
+ *   --sortAttribute uid --outputFile people.ldif \
+ *   --checkpointInterval 10000 --maxRetries 3
+ * </pre>
+ * </blockquote>
+ */
+@Since("Oct 16, 2026")
+@CodeVersion("1.0")
+@Launchable
+public final class ResumableExportDemo extends AbstractTool {
+
+  /**
+   * The long identifier of the command line argument whose parameter is
+   * the attribute whose unique values order the export.
+   */
+  public static final String ARG_NAME_SORT_ATTRIBUTE = "sortAttribute";
+
+
+  /**
+   * The long identifier of the command line argument whose parameter is
+   * the file to which the entries are written.
+   */
+  public static final String ARG_NAME_OUTPUT_FILE = "outputFile";
+
+
+  /**
+   * The long identifier of the command line argument whose parameter is
+   * the file in which checkpoints are saved.
+   */
+  public static final String ARG_NAME_CHECKPOINT_FILE = "checkpointFile";
+
+
+  /**
+   * The long identifier of the command line argument whose parameter is
+   * the number of entries exported between checkpoints.
+   */
+  public static final String ARG_NAME_CHECKPOINT_INTERVAL = "checkpointInterval";
+
+
+  /**
+   * The long identifier of the command line argument whose parameter is
+   * the number of times the export is resumed after a connection fails.
+   */
+  public static final String ARG_NAME_MAX_RETRIES = "maxRetries";
+
+
+
+  public static void main(final String... args) {
+    final ResumableExportDemo demo = new ResumableExportDemo(System.out,System.err);
+    final ResultCode resultCode = demo.runTool(args);
+    if(resultCode != null) {
+      final ToolCompletedProcessing c = new BasicToolCompletedProcessing(demo,resultCode);
+      c.displayMessage(System.out,System.err);
+    }
+  }
+
+
+
+  public ResumableExportDemo(final OutputStream outStream, final OutputStream errStream) {
+    super(outStream,errStream);
+  }
+
+
+
+  @Override
+  protected void addArguments(final ArgumentParser argumentParser) throws ArgumentException {
+    sortAttributeArgument =
+      new StringArgument(null,ARG_NAME_SORT_ATTRIBUTE,true,1,"{attribute}","The attribute " +
+        "whose values order the export. The value of the attribute must be unique, " +
+        "for example uid or entryUUID. Entries without the attribute are not exported.");
+    argumentParser.addArgument(sortAttributeArgument);
+
+    outputFileArgument =
+      new StringArgument(null,ARG_NAME_OUTPUT_FILE,true,1,"{path}",
+        "The file to which the entries are written as LDIF.");
+    argumentParser.addArgument(outputFileArgument);
+
+    checkpointFileArgument =
+      new StringArgument(null,ARG_NAME_CHECKPOINT_FILE,false,1,"{path}","The file in " +
+        "which checkpoints are saved. If this command line argument is not specified, " +
+        "the name of the output file followed by .checkpoint is used.");
+    argumentParser.addArgument(checkpointFileArgument);
+
+    checkpointIntervalArgument =
+      new IntegerArgument(null,ARG_NAME_CHECKPOINT_INTERVAL,false,1,"{positiveInteger}",
+        "The number of entries exported between checkpoints.",1,Integer.MAX_VALUE,
+        Integer.valueOf(1000));
+    argumentParser.addArgument(checkpointIntervalArgument);
+
+    maxRetriesArgument =
+      new IntegerArgument(null,ARG_NAME_MAX_RETRIES,false,1,"{nonNegativeInteger}",
+        "The number of times the export is resumed after the connection to the " +
+          "server fails.",0,Integer.MAX_VALUE,Integer.valueOf(3));
+    argumentParser.addArgument(maxRetriesArgument);
+  }
+
+
+
+  @Override
+  protected ResultCode executeToolTasks() {
+    introduction();
+    if(isVerbose()) {
+      displayArguments();
+    }
+
+    final String sortAttribute = sortAttributeArgument.getValue();
+    final File outputFile = new File(outputFileArgument.getValue());
+    final File checkpointFile = checkpointFileArgument.getNumOccurrences() > 0 ?
+      new File(checkpointFileArgument.getValue()) :
+      new File(outputFile.getPath() + ".checkpoint");
+
+    final LDAPConnectionPool pool;
+    try {
+      ldapConnection = connectToServer();
+      final String controlOID = ServerSideSortRequestControl.SERVER_SIDE_SORT_REQUEST_OID;
+      if(!SupportedFeature.isControlSupported(ldapConnection,controlOID)) {
+        ldapConnection.close();
+        return ResultCode.UNWILLING_TO_PERFORM;
+      }
+      pool = getLdapConnectionPool(ldapConnection);
+    } catch(final LDAPException ldapException) {
+      getLogger().fatal(ldapException.getExceptionMessage());
+      return ldapException.getResultCode();
+    }
+
+    try {
+      final CheckpointedExport export =
+        new CheckpointedExport(pool,newSearchRequest(sortAttribute),sortAttribute,outputFile,
+          checkpointFile);
+      export.setPageSize(commandLineOptions.getPageSize());
+      export.setCheckpointInterval(checkpointIntervalArgument.getValue().intValue());
+      export.setMaxRetries(maxRetriesArgument.getValue().intValue());
+      if(checkpointFile.exists()) {
+        getLogger().info("resuming the export from " + checkpointFile);
+      }
+      try {
+        export.export();
+      } finally {
+        getLogger().info(export.getStatistics());
+      }
+      return ResultCode.SUCCESS;
+    } catch(final LDAPException ldapException) {
+      getLogger().fatal(String.format("%s; the export can be resumed from %s",
+        ldapException.getExceptionMessage(),checkpointFile));
+      return ldapException.getResultCode();
+    } catch(final IOException ioException) {
+      getLogger().fatal(ioException.getMessage());
+      return ResultCode.LOCAL_ERROR;
+    } finally {
+      pool.close();
+    }
+  }
+
+
+
+  @Override
+  protected String classSpecificPropertiesResourceName() {
+    return "ResumableExportDemo.properties";
+  }
+
+
+
+  /**
+   * Constructs the search request from the search parameters, adding the
+   * sort attribute to the requested attributes when it would not be
+   * returned.
+   */
+  private SearchRequest newSearchRequest(final String sortAttribute) {
+    final List<String> requestedAttributes =
+      new ArrayList<String>(commandLineOptions.getRequestedAttributes());
+    if(requestedAttributes.isEmpty()) {
+      requestedAttributes.add("*");
+    }
+    if(!requestedAttributes.contains("*") && !containsIgnoreCase(requestedAttributes,
+      sortAttribute)) {
+      requestedAttributes.add(sortAttribute);
+    }
+    final String baseObject = commandLineOptions.getBaseObject();
+    final SearchScope scope = commandLineOptions.getSearchScope();
+    final Filter filter = commandLineOptions.getFilter();
+    final SearchRequest searchRequest = new SearchRequest(baseObject,scope,filter,
+      requestedAttributes.toArray(new String[requestedAttributes.size()]));
+    searchRequest.setSizeLimit(commandLineOptions.getSizeLimit());
+    searchRequest.setTimeLimitSeconds(commandLineOptions.getTimeLimit());
+    return searchRequest;
+  }
+
+
+
+  private static boolean containsIgnoreCase(final List<String> values, final String value) {
+    for(final String v : values) {
+      if(v.equalsIgnoreCase(value)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+
+
+  private StringArgument checkpointFileArgument;
+
+
+  private IntegerArgument checkpointIntervalArgument;
+
+
+  private IntegerArgument maxRetriesArgument;
+
+
+  private StringArgument outputFileArgument;
+
+
+  private StringArgument sortAttributeArgument;
+
+}
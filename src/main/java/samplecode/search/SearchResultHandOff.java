@@ -0,0 +1,408 @@
+/*
+ * Copyright 2008-2013 UnboundID Corp. All Rights Reserved.
+ */
+/*
+ * Copyright (C) 2008-2013 UnboundID Corp. This program is free
+ * software; you can redistribute it and/or modify it under the terms of
+ * the GNU General Public License (GPLv2 only) or the terms of the GNU
+ * Lesser General Public License (LGPLv2.1 only) as published by the
+ * Free Software Foundation. This program is distributed in the hope
+ * that it will be useful, but WITHOUT ANY WARRANTY; without even the
+ * implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR
+ * PURPOSE. See the GNU General Public License for more details. You
+ * should have received a copy of the GNU General Public License along
+ * with this program; if not, see <http://www.gnu.org/licenses>.
+ */
+
+package samplecode.search;
+
+import com.unboundid.ldap.sdk.AsyncRequestID;
+import com.unboundid.ldap.sdk.AsyncSearchResultListener;
+import com.unboundid.ldap.sdk.SearchResult;
+import com.unboundid.ldap.sdk.SearchResultEntry;
+import com.unboundid.ldap.sdk.SearchResultListener;
+import com.unboundid.ldap.sdk.SearchResultReference;
+import samplecode.annotation.CodeVersion;
+import samplecode.annotation.Since;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static com.unboundid.util.Validator.ensureNotNull;
+
+
+/**
+ * Decouples the thread that reads search results from the connection
+ * from the processing of the results by a {@code SearchResultListener}.
+ * A {@code SearchResultHandOff} is used as the listener of a search
+ * request that is transmitted with {@code LDAPConnection.asyncSearch}.
+ * The connection reader thread places each search result entry and
+ * search result reference in a bounded queue and returns immediately;
+ * a pool of consumer threads take the results from the queue and invoke
+ * the methods of the {@code delegate} listener.
+ * <p/>
+ * When the queue is full the connection reader blocks until a consumer
+ * makes room, which bounds the memory used by results that have been
+ * read but not processed. The number of times this happens is reported
+ * by {@link #getProducerStalls()}; a large number of stalls together
+ * with a consumer saturation close to {@code 1.0} indicates that the
+ * listener is the bottleneck and more consumers are needed.
+ * <p/>
+ * When more than one consumer is used the methods of the
+ * {@code delegate} are invoked concurrently and in no particular order,
+ * therefore the delegate must be thread-safe.
+ * <p/>
+ * example usage: <blockquote>
+ * <p/>
+ * <pre>
+ * SearchResultHandOff handOff =
+ *   new SearchResultHandOff(searchResultListener,1000,4);
+ * SearchRequest searchRequest =
+ *   new SearchRequest(handOff,baseObject,scope,filter,attributes);
+ * ldapConnection.asyncSearch(searchRequest);
+ * SearchResult searchResult = handOff.awaitSearchResult();
+ * System.out.println(handOff.getStatistics());
+ * </pre>
+ * </blockquote>
+ */
+@SuppressWarnings("serial")
+@Since("Oct 16, 2026")
+@CodeVersion("1.0")
+public final class SearchResultHandOff implements AsyncSearchResultListener {
+
+  /**
+   * Marks the end of the results; one is queued for each consumer when
+   * the search result is received.
+   */
+  private static final Object END_OF_RESULTS = new Object();
+
+
+
+  /**
+   * Creates a hand-off that invokes the methods of {@code delegate}
+   * from {@code numConsumers} consumer threads. The consumer threads
+   * are started immediately.
+   *
+   * @param delegate
+   *   the listener whose methods are invoked for each search
+   *   result entry and search result reference. Not permitted to
+   *   be {@code null}.
+   * @param queueCapacity
+   *   the maximum number of results that have been read from the
+   *   connection but not yet processed.
+   * @param numConsumers
+   *   the number of threads that invoke the methods of
+   *   {@code delegate}.
+   */
+  public SearchResultHandOff(final SearchResultListener delegate, final int queueCapacity,
+                             final int numConsumers) {
+    ensureNotNull(delegate);
+    if(queueCapacity <= 0) {
+      throw new IllegalArgumentException("queueCapacity must be greater than zero.");
+    }
+    if(numConsumers <= 0) {
+      throw new IllegalArgumentException("numConsumers must be greater than zero.");
+    }
+    this.delegate = delegate;
+    this.queueCapacity = queueCapacity;
+    this.numConsumers = numConsumers;
+    queue = new ArrayBlockingQueue<Object>(queueCapacity);
+    consumersFinished = new CountDownLatch(numConsumers);
+    consumerService = Executors.newFixedThreadPool(numConsumers);
+    startNanos = System.nanoTime();
+    for(int c = 0; c < numConsumers; ++c) {
+      consumerService.execute(new Consumer());
+    }
+  }
+
+
+
+  /**
+   * {@inheritDoc}
+   * <p/>
+   * Invoked by the connection reader; places the entry in the queue,
+   * blocking if the queue is full.
+   */
+  @Override
+  public void searchEntryReturned(final SearchResultEntry searchEntry) {
+    handOff(searchEntry);
+  }
+
+
+
+  /**
+   * {@inheritDoc}
+   * <p/>
+   * Invoked by the connection reader; places the reference in the
+   * queue, blocking if the queue is full.
+   */
+  @Override
+  public void searchReferenceReturned(final SearchResultReference searchReference) {
+    handOff(searchReference);
+  }
+
+
+
+  /**
+   * {@inheritDoc}
+   * <p/>
+   * Records the search result and tells the consumers to finish when
+   * the queue has been drained.
+   */
+  @Override
+  public void searchResultReceived(final AsyncRequestID requestID,
+                                   final SearchResult searchResult) {
+    this.searchResult = searchResult;
+    for(int c = 0; c < numConsumers; ++c) {
+      putUninterruptibly(END_OF_RESULTS);
+    }
+    consumerService.shutdown();
+  }
+
+
+
+  /**
+   * Waits until the search result has been received and every result
+   * has been processed by the delegate.
+   *
+   * @return the search result.
+   *
+   * @throws InterruptedException
+   *   if the waiting thread is interrupted.
+   */
+  public SearchResult awaitSearchResult() throws InterruptedException {
+    consumersFinished.await();
+    return searchResult;
+  }
+
+
+
+  /**
+   * @return the capacity of the queue.
+   */
+  public int getQueueCapacity() {
+    return queueCapacity;
+  }
+
+
+
+  /**
+   * @return the number of results in the queue.
+   */
+  public int getQueueDepth() {
+    return queue.size();
+  }
+
+
+
+  /**
+   * @return the largest number of results observed in the queue.
+   */
+  public long getMaxQueueDepth() {
+    return maxQueueDepth.get();
+  }
+
+
+
+  /**
+   * @return the average number of results in the queue observed by
+   *         the connection reader when handing off a result.
+   */
+  public double getMeanQueueDepth() {
+    final long n = resultsHandedOff.get();
+    return n == 0L ? 0.0 : (double) queueDepthSum.get() / n;
+  }
+
+
+
+  /**
+   * @return the number of results handed off to the consumers.
+   */
+  public long getResultsHandedOff() {
+    return resultsHandedOff.get();
+  }
+
+
+
+  /**
+   * @return the number of times the connection reader found the queue
+   *         full and had to wait for a consumer.
+   */
+  public long getProducerStalls() {
+    return producerStalls.get();
+  }
+
+
+
+  /**
+   * @return the number of exceptions thrown by the delegate.
+   */
+  public long getListenerFailures() {
+    return listenerFailures.get();
+  }
+
+
+
+  /**
+   * Retrieves the fraction of the available consumer time spent in the
+   * methods of the delegate since the hand-off was created. A value
+   * close to {@code 1.0} means every consumer was busy all of the time.
+   *
+   * @return the consumer saturation, between {@code 0.0} and
+   *         {@code 1.0}.
+   */
+  public double getConsumerSaturation() {
+    final long elapsed = System.nanoTime() - startNanos;
+    if(elapsed <= 0L) {
+      return 0.0;
+    }
+    return Math.min(1.0,(double) consumerBusyNanos.get() / ((double) elapsed * numConsumers));
+  }
+
+
+
+  /**
+   * @return a one line summary of the queue depth and consumer
+   *         saturation.
+   */
+  public String getStatistics() {
+    return String.format("results=%d queueCapacity=%d queueDepth=%d maxQueueDepth=%d " +
+      "meanQueueDepth=%.1f producerStalls=%d consumers=%d consumerSaturation=%.1f%% " +
+      "listenerFailures=%d",getResultsHandedOff(),queueCapacity,getQueueDepth(),
+      getMaxQueueDepth(),getMeanQueueDepth(),getProducerStalls(),numConsumers,
+      getConsumerSaturation() * 100.0,getListenerFailures());
+  }
+
+
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public String toString() {
+    return "SearchResultHandOff [delegate=" + delegate + ", " + getStatistics() + "]";
+  }
+
+
+
+  private void handOff(final Object result) {
+    if(!queue.offer(result)) {
+      producerStalls.incrementAndGet();
+      putUninterruptibly(result);
+    }
+    final long depth = queue.size();
+    queueDepthSum.addAndGet(depth);
+    resultsHandedOff.incrementAndGet();
+    long max = maxQueueDepth.get();
+    while((depth > max) && !maxQueueDepth.compareAndSet(max,depth)) {
+      max = maxQueueDepth.get();
+    }
+  }
+
+
+
+  /**
+   * The connection reader must not lose a result or the end marker, so
+   * an interrupt is deferred until the result is in the queue.
+   */
+  private void putUninterruptibly(final Object result) {
+    boolean interrupted = false;
+    while(true) {
+      try {
+        queue.put(result);
+        break;
+      } catch(final InterruptedException interruptedException) {
+        interrupted = true;
+      }
+    }
+    if(interrupted) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+
+
+  /**
+   * Takes results from the queue and passes them to the delegate until
+   * the end marker is taken.
+   */
+  private final class Consumer implements Runnable {
+
+    @Override
+    public void run() {
+      try {
+        while(true) {
+          final Object result = queue.take();
+          if(result == END_OF_RESULTS) {
+            break;
+          }
+          final long begin = System.nanoTime();
+          try {
+            if(result instanceof SearchResultEntry) {
+              delegate.searchEntryReturned((SearchResultEntry) result);
+            } else {
+              delegate.searchReferenceReturned((SearchResultReference) result);
+            }
+          } catch(final RuntimeException runtimeException) {
+            listenerFailures.incrementAndGet();
+          } finally {
+            consumerBusyNanos.addAndGet(System.nanoTime() - begin);
+          }
+        }
+      } catch(final InterruptedException interruptedException) {
+        Thread.currentThread().interrupt();
+      } finally {
+        consumersFinished.countDown();
+      }
+    }
+
+  }
+
+
+
+  private final AtomicLong consumerBusyNanos = new AtomicLong();
+
+
+  private final CountDownLatch consumersFinished;
+
+
+  private final ExecutorService consumerService;
+
+
+  private final SearchResultListener delegate;
+
+
+  private final AtomicLong listenerFailures = new AtomicLong();
+
+
+  private final AtomicLong maxQueueDepth = new AtomicLong();
+
+
+  private final int numConsumers;
+
+
+  private final AtomicLong producerStalls = new AtomicLong();
+
+
+  private final BlockingQueue<Object> queue;
+
+
+  private final int queueCapacity;
+
+
+  private final AtomicLong queueDepthSum = new AtomicLong();
+
+
+  private final AtomicLong resultsHandedOff = new AtomicLong();
+
+
+  private volatile SearchResult searchResult;
+
+
+  private final long startNanos;
+
+}
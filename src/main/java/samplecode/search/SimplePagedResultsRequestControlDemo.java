@@ -14,10 +14,17 @@ import com.unboundid.ldap.sdk.LDAPException;
 import com.unboundid.ldap.sdk.ResultCode;
 import com.unboundid.ldap.sdk.SearchRequest;
 import com.unboundid.ldap.sdk.SearchResult;
+import com.unboundid.ldap.sdk.SearchResultEntry;
+import com.unboundid.ldap.sdk.SearchResultListener;
+import com.unboundid.ldap.sdk.SearchResultReference;
 import com.unboundid.ldap.sdk.SearchScope;
 import com.unboundid.ldap.sdk.UnsolicitedNotificationHandler;
 import com.unboundid.ldap.sdk.controls.SimplePagedResultsControl;
 import com.unboundid.util.LDAPCommandLineTool;
+import com.unboundid.util.args.ArgumentException;
+import com.unboundid.util.args.ArgumentParser;
+import com.unboundid.util.args.BooleanArgument;
+import com.unboundid.util.args.IntegerArgument;
 import samplecode.annotation.Author;
 import samplecode.annotation.CodeVersion;
 import samplecode.annotation.Launchable;
@@ -75,6 +82,18 @@ import static com.unboundid.util.Validator.ensureNotNull;
  * </pre>
  * <p/>
  * </blockquote>
+ * When --maxPagesInFlight is specified, the request for each page is
+ * transmitted as soon as the cookie for it has been received, while the
+ * previous page is still being processed; see
+ * {@link PrefetchingPagedSearch}. When --targetPageLatencyMillis is
+ * specified, the page size starts at --pageSize and is tuned between
+ * pages to keep the time taken to return each page near the target and
+ * the size of each page within --pageMemoryBudget bytes; each change of
+ * the page size is logged. See {@link AdaptivePageSizer}. When
+ * --streamEntries is specified, the entries are delivered to a listener
+ * as they are received instead of being collected in a
+ * {@code SearchResult} for each page, so the memory used does not grow
+ * with the page size; see {@link StreamingPagedSearch}.
  *
  * @see <a href="http://su.pr/1wlWcQ">Simple Paged Results</a>
  * @see SimplePagedResultsControl
@@ -215,6 +234,23 @@ public final class SimplePagedResultsRequestControlDemo extends AbstractTool {
    *     result code in the search response.
    * --pageSize {positiveInteger}
    *     The search page size
+   * --maxPagesInFlight {positiveInteger}
+   *     The maximum number of pages requested ahead of the page being
+   *     processed. If this command line argument is not specified, each page
+   *     is requested after the previous page has been processed.
+   * --targetPageLatencyMillis {positiveInteger}
+   *     The time in milliseconds the server should take to return a page.
+   *     When this command line argument is specified the page size is tuned
+   *     between pages, starting with the value of --pageSize.
+   * --pageMemoryBudget {positiveInteger}
+   *     The largest size in bytes of the entries of a page when the page size
+   *     is tuned. The default value is 67108864.
+   * --maxPageSize {positiveInteger}
+   *     The largest page size when the page size is tuned. The default value
+   *     is 100000.
+   * --streamEntries
+   *     Deliver each entry to a listener as it is read instead of collecting
+   *     the entries of each page.
    * -H, -?, --help
    *     Display usage information for this program.
    *
@@ -250,16 +286,59 @@ public final class SimplePagedResultsRequestControlDemo extends AbstractTool {
   }
 
 
+  /**
+   * The long identifier of the command line argument whose parameter is
+   * the maximum number of pages requested ahead of the page being
+   * processed.
+   */
+  public static final String ARG_NAME_MAX_PAGES_IN_FLIGHT = "maxPagesInFlight";
+
+
+  /**
+   * The long identifier of the command line argument whose parameter is
+   * the time in milliseconds the server should take to return a page.
+   */
+  public static final String ARG_NAME_TARGET_PAGE_LATENCY_MILLIS = "targetPageLatencyMillis";
+
+
+  /**
+   * The long identifier of the command line argument whose parameter is
+   * the largest size in bytes of the entries of a page.
+   */
+  public static final String ARG_NAME_PAGE_MEMORY_BUDGET = "pageMemoryBudget";
+
+
+  /**
+   * The long identifier of the command line argument whose parameter is
+   * the largest page size when the page size is tuned.
+   */
+  public static final String ARG_NAME_MAX_PAGE_SIZE = "maxPageSize";
+
+
+  /**
+   * The long identifier of the command line argument that specifies
+   * that entries are delivered to a listener as they are read.
+   */
+  public static final String ARG_NAME_STREAM_ENTRIES = "streamEntries";
+
+
+
   /**
    * Demonstrates the use of the simple paged control extension.
    */
   private static class SimplePagedResultsDemo {
 
     private SimplePagedResultsDemo(LDAPCommandLineTool ldapCommandLineTool,
-                                   CommandLineOptions commandLineOptions) {
+                                   CommandLineOptions commandLineOptions,
+                                   int maxPagesInFlight,
+                                   AdaptivePageSizer pageSizer,
+                                   boolean streamEntries) {
       ensureNotNull(ldapCommandLineTool,commandLineOptions);
       this.ldapCommandLineTool = ldapCommandLineTool;
       this.commandLineOptions = commandLineOptions;
+      this.maxPagesInFlight = maxPagesInFlight;
+      this.pageSizer = pageSizer;
+      this.streamEntries = streamEntries;
     }
 
 
@@ -305,28 +384,63 @@ public final class SimplePagedResultsRequestControlDemo extends AbstractTool {
        * Add the simple paged results request control
        */
       final int pageSize = commandLineOptions.getPageSize();
+      final long begin = System.nanoTime();
+      final int total;
+      if(streamEntries) {
+        total = streamPages(ldapConnection,searchRequest,pageSize);
+      } else if(maxPagesInFlight > 0) {
+        total = prefetchPages(ldapConnection,searchRequest,pageSize);
+      } else {
+        total = requestPages(ldapConnection,searchRequest,pageSize);
+      }
+
+      ldapConnection.close();
+
+      String msg =
+        String.format("total entries returned: %d, elapsed time: %d ms",
+          Integer.valueOf(total),
+          Long.valueOf((System.nanoTime() - begin) / 1000000L));
+      logger.log(Level.INFO,msg);
+
+      return ResultCode.SUCCESS;
+    }
+
+
+    /**
+     * Requests each page after the previous page has been processed.
+     */
+    private int requestPages(LDAPConnection ldapConnection,
+                             SearchRequest searchRequest,
+                             int pageSize)
+      throws LDAPException {
       ASN1OctetString cookie = null;
       int total = 0;
 
+      int size = pageSizer == null ? pageSize : pageSizer.getPageSize();
       do {
         /*
          * Set the simple paged results control (if the cookie is null
          * this indicates the first time through the loop).
          */
         final SimplePagedResultsControl simplePagedResultsRequestControl =
-          new SimplePagedResultsControl(pageSize,cookie);
+          new SimplePagedResultsControl(size,cookie);
         searchRequest.setControls(simplePagedResultsRequestControl);
 
         /*
          * Issue the search request:
          */
         SearchResult searchResult;
+        final long begin = System.nanoTime();
         searchResult = ldapConnection.search(searchRequest);
+        final long elapsedNanos = System.nanoTime() - begin;
         String msg =
           String.format("searchRequest transmitted, pageSize: %d, " +
-            "entries returned: %d",Integer.valueOf(pageSize),
+            "entries returned: %d",Integer.valueOf(size),
             Integer.valueOf(searchResult.getEntryCount()));
         logger.log(Level.INFO,msg);
+        if(pageSizer != null) {
+          size = pageSizer.recordPage(searchResult,elapsedNanos);
+        }
 
         total += searchResult.getEntryCount();
 
@@ -338,13 +452,84 @@ public final class SimplePagedResultsRequestControlDemo extends AbstractTool {
         }
       } while((cookie != null) && (cookie.getValueLength() > 0));
 
-      ldapConnection.close();
+      return total;
+    }
+
+
+    /**
+     * Delivers each entry to a listener as it is read, so that no page
+     * is collected in memory.
+     */
+    private int streamPages(LDAPConnection ldapConnection,
+                            SearchRequest searchRequest,
+                            int pageSize)
+      throws LDAPException {
+      final StreamingPagedSearch pagedSearch;
+      if(pageSizer == null) {
+        pagedSearch = new StreamingPagedSearch(ldapConnection,searchRequest,pageSize);
+      } else {
+        pagedSearch = new StreamingPagedSearch(ldapConnection,searchRequest,pageSizer);
+      }
+      pagedSearch.search(new SearchResultListener() {
+
+        private static final long serialVersionUID = 1L;
+
+
+        @Override
+        public void searchEntryReturned(final SearchResultEntry searchEntry) {
+          // the entry is only counted
+        }
+
 
+        @Override
+        public void searchReferenceReturned(final SearchResultReference searchReference) {
+          // the reference is only counted
+        }
+      });
       String msg =
-        String.format("total entries returned: %d",Integer.valueOf(total));
+        String.format("pages: %d",Integer.valueOf(pagedSearch.getPagesReturned()));
       logger.log(Level.INFO,msg);
+      return (int)pagedSearch.getEntriesReturned();
+    }
 
-      return ResultCode.SUCCESS;
+
+    /**
+     * Requests each page while the previous page is being processed.
+     */
+    private int prefetchPages(LDAPConnection ldapConnection,
+                              SearchRequest searchRequest,
+                              int pageSize)
+      throws LDAPException {
+      final PrefetchingPagedSearch pagedSearch;
+      if(pageSizer == null) {
+        pagedSearch = new PrefetchingPagedSearch(ldapConnection,searchRequest,pageSize,
+          maxPagesInFlight);
+      } else {
+        pagedSearch = new PrefetchingPagedSearch(ldapConnection,searchRequest,pageSizer,
+          maxPagesInFlight);
+      }
+      int total = 0;
+      try {
+        SearchResult searchResult;
+        while((searchResult = pagedSearch.nextPage()) != null) {
+          String msg =
+            String.format("page received, entries returned: %d",
+              Integer.valueOf(searchResult.getEntryCount()));
+          logger.log(Level.INFO,msg);
+          total += searchResult.getEntryCount();
+        }
+      } catch(final InterruptedException interruptedException) {
+        Thread.currentThread().interrupt();
+      } finally {
+        pagedSearch.close();
+      }
+      String msg =
+        String.format("pages: %d, time waiting for pages: %d ms, " +
+          "time spent by server: %d ms",Long.valueOf(pagedSearch.getPagesFetched()),
+          Long.valueOf(pagedSearch.getCallerWaitNanos() / 1000000L),
+          Long.valueOf(pagedSearch.getFetchNanos() / 1000000L));
+      logger.log(Level.INFO,msg);
+      return total;
     }
 
 
@@ -362,6 +547,26 @@ public final class SimplePagedResultsRequestControlDemo extends AbstractTool {
 
     private final Logger logger = Logger.getLogger(getClass().getName());
 
+
+    /**
+     * The maximum number of pages requested ahead of the page being
+     * processed, or zero to request each page after the previous page
+     * has been processed.
+     */
+    private final int maxPagesInFlight;
+
+
+    /**
+     * Tunes the page size, or {@code null} if the page size is fixed.
+     */
+    private final AdaptivePageSizer pageSizer;
+
+
+    /**
+     * Whether entries are delivered to a listener as they are read.
+     */
+    private final boolean streamEntries;
+
   }
 
 
@@ -397,6 +602,65 @@ public final class SimplePagedResultsRequestControlDemo extends AbstractTool {
   }
 
 
+  @Override
+  protected void addArguments(final ArgumentParser argumentParser)
+    throws ArgumentException {
+    maxPagesInFlightArgument =
+      new IntegerArgument(null,ARG_NAME_MAX_PAGES_IN_FLIGHT,false,1,
+        "{positiveInteger}","The maximum number of pages requested ahead of " +
+        "the page being processed. If this command line argument is not " +
+        "specified, each page is requested after the previous page has been " +
+        "processed.",1,Integer.MAX_VALUE);
+    argumentParser.addArgument(maxPagesInFlightArgument);
+
+    targetPageLatencyMillisArgument =
+      new IntegerArgument(null,ARG_NAME_TARGET_PAGE_LATENCY_MILLIS,false,1,
+        "{positiveInteger}","The time in milliseconds the server should take " +
+        "to return a page. When this command line argument is specified the " +
+        "page size is tuned between pages, starting with the value of " +
+        "--pageSize.",1,Integer.MAX_VALUE);
+    argumentParser.addArgument(targetPageLatencyMillisArgument);
+
+    pageMemoryBudgetArgument =
+      new IntegerArgument(null,ARG_NAME_PAGE_MEMORY_BUDGET,false,1,
+        "{positiveInteger}","The largest size in bytes of the entries of a " +
+        "page when the page size is tuned.",1,Integer.MAX_VALUE,
+        Integer.valueOf(64 * 1024 * 1024));
+    argumentParser.addArgument(pageMemoryBudgetArgument);
+
+    maxPageSizeArgument =
+      new IntegerArgument(null,ARG_NAME_MAX_PAGE_SIZE,false,1,
+        "{positiveInteger}","The largest page size when the page size is tuned.",
+        1,Integer.MAX_VALUE,Integer.valueOf(100000));
+    argumentParser.addArgument(maxPageSizeArgument);
+
+    streamEntriesArgument =
+      new BooleanArgument(null,ARG_NAME_STREAM_ENTRIES,"Deliver each entry to " +
+        "a listener as it is read instead of collecting the entries of each page.");
+    argumentParser.addArgument(streamEntriesArgument);
+  }
+
+
+  /**
+   * {@inheritDoc}
+   * <p/>
+   * When --streamEntries is specified the connection is established in
+   * synchronous mode, so that the thread that invokes the listener reads
+   * each entry from the socket itself instead of taking it from the
+   * bounded queue filled by a connection reader thread. The memory
+   * saving of --streamEntries comes from not collecting the page in a
+   * {@code SearchResult}, with or without synchronous mode.
+   */
+  @Override
+  public LDAPConnectionOptions getConnectionOptions() {
+    final LDAPConnectionOptions connectionOptions = super.getConnectionOptions();
+    if(isStreamEntries()) {
+      connectionOptions.setUseSynchronousMode(true);
+    }
+    return connectionOptions;
+  }
+
+
   @Override
   protected UnsolicitedNotificationHandler getUnsolicitedNotificationHandler() {
     return new DefaultUnsolicitedNotificationHandler(this);
@@ -414,7 +678,8 @@ public final class SimplePagedResultsRequestControlDemo extends AbstractTool {
     ResultCode resultCode;
 
     final SimplePagedResultsDemo simplePagedResultsDemo =
-      new SimplePagedResultsDemo(this,commandLineOptions);
+      new SimplePagedResultsDemo(this,commandLineOptions,getMaxPagesInFlight(),
+        newAdaptivePageSizer(),isStreamEntries());
     try {
       resultCode = simplePagedResultsDemo.demo();
     } catch(final LDAPException ldapException) {
@@ -433,4 +698,51 @@ public final class SimplePagedResultsRequestControlDemo extends AbstractTool {
     return "SimplePagedResultsRequestControlDemo.properties";
   }
 
+
+  private int getMaxPagesInFlight() {
+    if((maxPagesInFlightArgument == null) ||
+      (maxPagesInFlightArgument.getNumOccurrences() == 0)) {
+      return 0;
+    }
+    return maxPagesInFlightArgument.getValue().intValue();
+  }
+
+
+  /**
+   * Creates the page sizer used when --targetPageLatencyMillis is
+   * specified.
+   *
+   * @return a new page sizer, or {@code null} if the page size is fixed.
+   */
+  private AdaptivePageSizer newAdaptivePageSizer() {
+    if((targetPageLatencyMillisArgument == null) ||
+      (targetPageLatencyMillisArgument.getNumOccurrences() == 0)) {
+      return null;
+    }
+    final int maxPageSize = maxPageSizeArgument.getValue().intValue();
+    return new AdaptivePageSizer(commandLineOptions.getPageSize(),1,maxPageSize,
+      targetPageLatencyMillisArgument.getValue().longValue(),
+      pageMemoryBudgetArgument.getValue().longValue());
+  }
+
+
+  private boolean isStreamEntries() {
+    return (streamEntriesArgument != null) && streamEntriesArgument.isPresent();
+  }
+
+
+  private IntegerArgument maxPageSizeArgument;
+
+
+  private IntegerArgument maxPagesInFlightArgument;
+
+
+  private IntegerArgument pageMemoryBudgetArgument;
+
+
+  private BooleanArgument streamEntriesArgument;
+
+
+  private IntegerArgument targetPageLatencyMillisArgument;
+
 }
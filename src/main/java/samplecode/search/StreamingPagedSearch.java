@@ -0,0 +1,297 @@
+/*
+ * Copyright 2008-2013 UnboundID Corp. All Rights Reserved.
+ */
+/*
+ * Copyright (C) 2008-2013 UnboundID Corp. This program is free
+ * software; you can redistribute it and/or modify it under the terms of
+ * the GNU General Public License (GPLv2 only) or the terms of the GNU
+ * Lesser General Public License (LGPLv2.1 only) as published by the
+ * Free Software Foundation. This program is distributed in the hope
+ * that it will be useful, but WITHOUT ANY WARRANTY; without even the
+ * implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR
+ * PURPOSE. See the GNU General Public License for more details. You
+ * should have received a copy of the GNU General Public License along
+ * with this program; if not, see <http://www.gnu.org/licenses>.
+ */
+
+package samplecode.search;
+
+import com.unboundid.asn1.ASN1OctetString;
+import com.unboundid.ldap.sdk.Control;
+import com.unboundid.ldap.sdk.LDAPConnection;
+import com.unboundid.ldap.sdk.LDAPException;
+import com.unboundid.ldap.sdk.SearchRequest;
+import com.unboundid.ldap.sdk.SearchResult;
+import com.unboundid.ldap.sdk.SearchResultEntry;
+import com.unboundid.ldap.sdk.SearchResultListener;
+import com.unboundid.ldap.sdk.SearchResultReference;
+import com.unboundid.ldap.sdk.controls.SimplePagedResultsControl;
+import samplecode.annotation.CodeVersion;
+import samplecode.annotation.Since;
+
+import static com.unboundid.util.Validator.ensureNotNull;
+
+
+/**
+ * Carries out a search that uses the simple paged results control,
+ * delivering each entry to a {@code SearchResultListener} as it is read
+ * from the connection. Because every page is requested with a listener,
+ * the LDAP SDK does not collect the entries of a page in the
+ * {@code SearchResult}, and an entry can be garbage collected as soon as
+ * the listener returns; memory use no longer grows with the page size,
+ * so large pages can be used to reduce the number of round trips.
+ * <p/>
+ * The listener is invoked by the thread that requests the page. Without
+ * synchronous mode the connection reader thread hands the responses to
+ * that thread through the bounded queue of the search, and stops reading
+ * while the queue is full, so a listener slower than the server slows
+ * the reads down; the entries held at any time are those in the queue,
+ * not the whole page. With
+ * {@code LDAPConnectionOptions.setUseSynchronousMode(true)} the
+ * requesting thread reads each entry from the socket itself, without a
+ * reader thread or a queue.
+ * <p/>
+ * example usage: <blockquote>
+ * <p/>
+ * <pre>
+ * LDAPConnectionOptions connectionOptions = new LDAPConnectionOptions();
+ * connectionOptions.setUseSynchronousMode(true);
+ * LDAPConnection ldapConnection = new LDAPConnection(connectionOptions,host,port);
+ * StreamingPagedSearch pagedSearch =
+ *   new StreamingPagedSearch(ldapConnection,searchRequest,10000);
+ * SearchResult searchResult = pagedSearch.search(searchResultListener);
+ * </pre>
+ * </blockquote>
+ */
+@Since("Oct 16, 2026")
+@CodeVersion("1.0")
+public final class StreamingPagedSearch {
+
+  /**
+   * Creates a streaming paged search with a fixed page size.
+   *
+   * @param ldapConnection
+   *   the connection on which every page is requested. Not
+   *   permitted to be {@code null}.
+   * @param searchRequest
+   *   the search request; it is not modified. Not permitted to be
+   *   {@code null}.
+   * @param pageSize
+   *   the number of entries requested in each page, which must be
+   *   greater than zero.
+   */
+  public StreamingPagedSearch(final LDAPConnection ldapConnection,
+                              final SearchRequest searchRequest, final int pageSize) {
+    this(ldapConnection,searchRequest,pageSize,null);
+  }
+
+
+
+  /**
+   * Creates a streaming paged search whose page size is tuned by
+   * {@code pageSizer}.
+   *
+   * @param ldapConnection
+   *   the connection on which every page is requested. Not
+   *   permitted to be {@code null}.
+   * @param searchRequest
+   *   the search request; it is not modified. Not permitted to be
+   *   {@code null}.
+   * @param pageSizer
+   *   provides the size of each page and is told the latency and
+   *   size of each page retrieved. Not permitted to be {@code null}.
+   */
+  public StreamingPagedSearch(final LDAPConnection ldapConnection,
+                              final SearchRequest searchRequest,
+                              final AdaptivePageSizer pageSizer) {
+    this(ldapConnection,searchRequest,1,pageSizer);
+    ensureNotNull(pageSizer);
+  }
+
+
+
+  private StreamingPagedSearch(final LDAPConnection ldapConnection,
+                               final SearchRequest searchRequest, final int pageSize,
+                               final AdaptivePageSizer pageSizer) {
+    ensureNotNull(ldapConnection,searchRequest);
+    if(pageSize <= 0) {
+      throw new IllegalArgumentException("pageSize must be greater than zero.");
+    }
+    this.ldapConnection = ldapConnection;
+    this.searchRequest = searchRequest;
+    this.pageSize = pageSize;
+    this.pageSizer = pageSizer;
+  }
+
+
+
+  /**
+   * Requests every page of the search, invoking the methods of
+   * {@code searchResultListener} for each entry and reference as it is
+   * read from the connection.
+   *
+   * @param searchResultListener
+   *   the listener whose methods are invoked for each entry and
+   *   reference. Not permitted to be {@code null}.
+   *
+   * @return the result of the request for the last page. The entry
+   *         count and reference count of the result are those of the
+   *         last page; the totals are available from
+   *         {@link #getEntriesReturned()} and
+   *         {@link #getReferencesReturned()}.
+   *
+   * @throws LDAPException
+   *   if the request for a page failed.
+   */
+  public SearchResult search(final SearchResultListener searchResultListener)
+    throws LDAPException {
+    ensureNotNull(searchResultListener);
+    final PageListener pageListener = new PageListener(searchResultListener);
+    final Control[] requestControls = searchRequest.getControls();
+    final Control[] controls = new Control[requestControls.length + 1];
+    System.arraycopy(requestControls,0,controls,0,requestControls.length);
+
+    ASN1OctetString cookie = null;
+    SearchResult searchResult;
+    do {
+      final int size = pageSizer == null ? pageSize : pageSizer.getPageSize();
+      controls[requestControls.length] = new SimplePagedResultsControl(size,cookie);
+      final SearchRequest pageRequest =
+        new SearchRequest(pageListener,controls,searchRequest.getBaseDN(),
+          searchRequest.getScope(),searchRequest.getDereferencePolicy(),
+          searchRequest.getSizeLimit(),searchRequest.getTimeLimitSeconds(),
+          searchRequest.typesOnly(),searchRequest.getFilter(),
+          searchRequest.getAttributes());
+      pageRequest.setResponseTimeoutMillis(searchRequest.getResponseTimeoutMillis(null));
+
+      pageListener.pageEntries = 0;
+      pageListener.pageBytes = 0L;
+      final long begin = System.nanoTime();
+      searchResult = ldapConnection.search(pageRequest);
+      final long elapsedNanos = System.nanoTime() - begin;
+      ++pagesReturned;
+      if(pageSizer != null) {
+        pageSizer.recordPage(pageListener.pageEntries,pageListener.pageBytes,elapsedNanos);
+      }
+
+      final SimplePagedResultsControl c = SimplePagedResultsControl.get(searchResult);
+      cookie = c == null ? null : c.getCookie();
+    } while((cookie != null) && (cookie.getValueLength() > 0));
+    return searchResult;
+  }
+
+
+
+  /**
+   * @return the number of entries delivered to the listener.
+   */
+  public long getEntriesReturned() {
+    return entriesReturned;
+  }
+
+
+
+  /**
+   * @return the number of references delivered to the listener.
+   */
+  public long getReferencesReturned() {
+    return referencesReturned;
+  }
+
+
+
+  /**
+   * @return the number of pages returned by the server.
+   */
+  public int getPagesReturned() {
+    return pagesReturned;
+  }
+
+
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public String toString() {
+    return "StreamingPagedSearch [pageSize=" +
+      (pageSizer == null ? Integer.valueOf(pageSize) : pageSizer) + ", pagesReturned=" +
+      pagesReturned + ", entriesReturned=" + entriesReturned + "]";
+  }
+
+
+
+  /**
+   * Counts the entries of a page and passes them on to the listener
+   * supplied by the caller. The page size is only estimated when a
+   * page sizer needs it.
+   */
+  @SuppressWarnings("serial")
+  private final class PageListener implements SearchResultListener {
+
+    private PageListener(final SearchResultListener delegate) {
+      this.delegate = delegate;
+    }
+
+
+
+    @Override
+    public void searchEntryReturned(final SearchResultEntry searchEntry) {
+      ++entriesReturned;
+      ++pageEntries;
+      if(pageSizer != null) {
+        pageBytes += AdaptivePageSizer.estimateSize(searchEntry);
+      }
+      delegate.searchEntryReturned(searchEntry);
+    }
+
+
+
+    @Override
+    public void searchReferenceReturned(final SearchResultReference searchReference) {
+      ++referencesReturned;
+      delegate.searchReferenceReturned(searchReference);
+    }
+
+
+
+    private final SearchResultListener delegate;
+
+
+    private volatile long pageBytes;
+
+
+    private volatile int pageEntries;
+
+  }
+
+
+
+  /**
+   * Updated by the thread that invokes the listener, which is the thread
+   * that requests the page, and read after the page has been returned.
+   */
+  private volatile long entriesReturned;
+
+
+  private final LDAPConnection ldapConnection;
+
+
+  private final int pageSize;
+
+
+  /**
+   * Tunes the page size, or {@code null} if the page size is fixed.
+   */
+  private final AdaptivePageSizer pageSizer;
+
+
+  private int pagesReturned;
+
+
+  private volatile long referencesReturned;
+
+
+  private final SearchRequest searchRequest;
+
+}
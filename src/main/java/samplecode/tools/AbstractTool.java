@@ -141,6 +141,10 @@ public abstract class AbstractTool extends LDAPCommandLineTool
    private Log logger;
 
 
+   // throughput and latency reports, null until started
+   private volatile PerformanceReporter performanceReporter;
+
+
    /**
     * Initializes the {@code AbstractTool} with the
     * System out and err objects.
@@ -584,6 +588,47 @@ public abstract class AbstractTool extends LDAPCommandLineTool
    }
 
 
+   /**
+    * Retrieves a pool like {@link #getLdapConnectionPool()} that never
+    * holds more than {@code --maxConnections} connections: a thread that
+    * finds every connection checked out waits for one to be released
+    * instead of creating a new connection. Tools that submit a task per
+    * operation, for example with {@code --virtualThreads}, use it so
+    * that the number of operations in progress is limited by the pool.
+    *
+    * @return A pool of connections to the LDAP Directory Server
+    */
+   protected LDAPConnectionPool getBoundedLdapConnectionPool() throws LDAPException
+   {
+      return bound(getLdapConnectionPool());
+   }
+
+
+   /**
+    * Retrieves a pool like {@link #getLdapConnectionPool(LDAPConnection)}
+    * that never holds more than {@code --maxConnections} connections. See
+    * {@link #getBoundedLdapConnectionPool()}.
+    *
+    * @param c
+    *    A connection to an LDAP Directory Server
+    *
+    * @return A pool of connections to the LDAP Directory Server
+    */
+   protected LDAPConnectionPool getBoundedLdapConnectionPool(final LDAPConnection c)
+      throws LDAPException
+   {
+      return bound(getLdapConnectionPool(c));
+   }
+
+
+   private static LDAPConnectionPool bound(final LDAPConnectionPool ldapConnectionPool)
+   {
+      ldapConnectionPool.setCreateIfNecessary(false);
+      ldapConnectionPool.setMaxWaitTimeMillis(Long.MAX_VALUE);
+      return ldapConnectionPool;
+   }
+
+
    /**
     * Connect to the LDAP server specified in the LDAP connection command
     * line arguments. The command line arguments which affect the
@@ -867,6 +912,61 @@ public abstract class AbstractTool extends LDAPCommandLineTool
    }
 
 
+   /**
+    * Starts displaying throughput and latency reports every
+    * {@code --reportInterval} milliseconds. The reports stop after
+    * {@code --reportCount} intervals, or when
+    * {@link #stopPerformanceReporter()} is invoked.
+    *
+    * @return the reporter, which the tool can use to find out whether
+    *    {@code --reportCount} intervals have passed.
+    */
+   protected synchronized PerformanceReporter startPerformanceReporter()
+   {
+      if(performanceReporter == null)
+      {
+         performanceReporter =
+            new PerformanceReporter(getOut(),commandLineOptions.getReportInterval(),
+               commandLineOptions.getReportCount());
+         performanceReporter.start();
+      }
+      return performanceReporter;
+   }
+
+
+   /**
+    * Records the completion of one operation for the throughput and
+    * latency reports. Does nothing if the reports have not been started.
+    *
+    * @param elapsedNanos
+    *    the time taken by the operation in nanoseconds
+    * @param entries
+    *    the number of entries processed by the operation
+    */
+   protected void recordOperation(final long elapsedNanos,final long entries)
+   {
+      final PerformanceReporter reporter = performanceReporter;
+      if(reporter != null)
+      {
+         reporter.recordOperation(elapsedNanos,entries);
+      }
+   }
+
+
+   /**
+    * Stops the throughput and latency reports and displays a summary of
+    * every operation recorded.
+    */
+   protected synchronized void stopPerformanceReporter()
+   {
+      if(performanceReporter != null)
+      {
+         performanceReporter.stop();
+         performanceReporter = null;
+      }
+   }
+
+
    /**
     * Retrieves the argument parser associated with the
     * {@link LDAPCommandLineTool}.
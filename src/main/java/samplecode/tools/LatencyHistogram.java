@@ -0,0 +1,224 @@
+/*
+ * Copyright 2008-2013 UnboundID Corp. All Rights Reserved.
+ */
+/*
+ * Copyright (C) 2008-2013 UnboundID Corp. This program is free
+ * software; you can redistribute it and/or modify it under the terms of
+ * the GNU General Public License (GPLv2 only) or the terms of the GNU
+ * Lesser General Public License (LGPLv2.1 only) as published by the
+ * Free Software Foundation. This program is distributed in the hope
+ * that it will be useful, but WITHOUT ANY WARRANTY; without even the
+ * implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR
+ * PURPOSE. See the GNU General Public License for more details. You
+ * should have received a copy of the GNU General Public License along
+ * with this program; if not, see <http://www.gnu.org/licenses>.
+ */
+
+package samplecode.tools;
+
+import samplecode.annotation.CodeVersion;
+import samplecode.annotation.Since;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+
+/**
+ * A fixed-size, thread-safe histogram of non-negative {@code long}
+ * values such as operation latencies. Values below 32 are counted
+ * exactly; larger values are counted in buckets whose width is
+ * 1/32 of the power of two below the value, therefore a percentile is
+ * reported with a relative error of no more than about 3%.
+ * <p/>
+ * Recording a value is a few shifts and a single atomic increment, no
+ * lock is taken and no memory is allocated, so the histogram can be fed
+ * from every worker thread of a load-generating tool. The unit of the
+ * values is chosen by the caller; the values returned by
+ * {@link #getValueAtPercentile(double)} and {@link #getMax()} are in the
+ * same unit.
+ */
+@Since("Oct 16, 2026")
+@CodeVersion("1.0")
+public final class LatencyHistogram {
+
+  /**
+   * The number of bits of each value that are significant.
+   */
+  private static final int SUB_BUCKET_BITS = 5;
+
+
+  /**
+   * The number of counts per power of two.
+   */
+  private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+
+
+  /**
+   * Enough counts to cover every non-negative {@code long}.
+   */
+  private static final int NUM_COUNTS = (64 - SUB_BUCKET_BITS) * SUB_BUCKET_COUNT;
+
+
+
+  /**
+   * Computes the index of the count incremented for {@code value}.
+   */
+  static int indexOf(final long value) {
+    if(value < SUB_BUCKET_COUNT) {
+      return (int) value;
+    }
+    final int exponent = 63 - Long.numberOfLeadingZeros(value);
+    final int shift = exponent - SUB_BUCKET_BITS;
+    final int bucket = shift + 1;
+    final int subBucket = (int) (value >>> shift) - SUB_BUCKET_COUNT;
+    return (bucket * SUB_BUCKET_COUNT) + subBucket;
+  }
+
+
+
+  /**
+   * Computes the largest value counted at {@code index}.
+   */
+  static long highestValueAt(final int index) {
+    if(index < SUB_BUCKET_COUNT) {
+      return index;
+    }
+    final int bucket = index / SUB_BUCKET_COUNT;
+    final int subBucket = index % SUB_BUCKET_COUNT;
+    final int shift = bucket - 1;
+    final long lowest = ((long) (subBucket + SUB_BUCKET_COUNT)) << shift;
+    return lowest + ((1L << shift) - 1L);
+  }
+
+
+
+  /**
+   * Records one occurrence of {@code value}. Negative values are
+   * recorded as zero.
+   *
+   * @param value
+   *   the value to record.
+   */
+  public void recordValue(final long value) {
+    final long v = Math.max(0L,value);
+    counts.incrementAndGet(indexOf(v));
+    totalCount.incrementAndGet();
+    sum.addAndGet(v);
+    long currentMax = max.get();
+    while((v > currentMax) && !max.compareAndSet(currentMax,v)) {
+      currentMax = max.get();
+    }
+  }
+
+
+
+  /**
+   * Adds the counts of {@code other} to this histogram.
+   *
+   * @param other
+   *   the histogram whose counts are added. Not permitted to be
+   *   {@code null}.
+   */
+  public void add(final LatencyHistogram other) {
+    for(int i = 0; i < NUM_COUNTS; ++i) {
+      final long c = other.counts.get(i);
+      if(c != 0L) {
+        counts.addAndGet(i,c);
+      }
+    }
+    totalCount.addAndGet(other.totalCount.get());
+    sum.addAndGet(other.sum.get());
+    final long otherMax = other.max.get();
+    long currentMax = max.get();
+    while((otherMax > currentMax) && !max.compareAndSet(currentMax,otherMax)) {
+      currentMax = max.get();
+    }
+  }
+
+
+
+  /**
+   * @return the number of values recorded.
+   */
+  public long getCount() {
+    return totalCount.get();
+  }
+
+
+
+  /**
+   * @return the largest value recorded, or zero if no value has been
+   *         recorded.
+   */
+  public long getMax() {
+    return max.get();
+  }
+
+
+
+  /**
+   * @return the arithmetic mean of the values recorded, or zero if no
+   *         value has been recorded.
+   */
+  public double getMean() {
+    final long n = totalCount.get();
+    return n == 0L ? 0.0 : (double) sum.get() / n;
+  }
+
+
+
+  /**
+   * Retrieves the value below which {@code percentile} percent of the
+   * recorded values fall. The value returned is the largest value that
+   * shares a bucket with the exact percentile, but is never larger than
+   * {@link #getMax()}.
+   *
+   * @param percentile
+   *   the percentile, from {@code 0.0} to {@code 100.0}.
+   *
+   * @return the value at the percentile, or zero if no value has been
+   *         recorded.
+   */
+  public long getValueAtPercentile(final double percentile) {
+    final long n = totalCount.get();
+    if(n == 0L) {
+      return 0L;
+    }
+    final double p = Math.min(100.0,Math.max(0.0,percentile));
+    final long target = Math.max(1L,(long) Math.ceil((p / 100.0) * n));
+    long seen = 0L;
+    for(int i = 0; i < NUM_COUNTS; ++i) {
+      seen += counts.get(i);
+      if(seen >= target) {
+        return Math.min(highestValueAt(i),max.get());
+      }
+    }
+    return max.get();
+  }
+
+
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public String toString() {
+    return String.format("LatencyHistogram [count=%d, p50=%d, p95=%d, p99=%d, max=%d]",
+      getCount(),getValueAtPercentile(50.0),getValueAtPercentile(95.0),
+      getValueAtPercentile(99.0),getMax());
+  }
+
+
+
+  private final AtomicLongArray counts = new AtomicLongArray(NUM_COUNTS);
+
+
+  private final AtomicLong max = new AtomicLong();
+
+
+  private final AtomicLong sum = new AtomicLong();
+
+
+  private final AtomicLong totalCount = new AtomicLong();
+
+}
@@ -0,0 +1,364 @@
+/*
+ * Copyright 2008-2013 UnboundID Corp. All Rights Reserved.
+ */
+/*
+ * Copyright (C) 2008-2013 UnboundID Corp. This program is free
+ * software; you can redistribute it and/or modify it under the terms of
+ * the GNU General Public License (GPLv2 only) or the terms of the GNU
+ * Lesser General Public License (LGPLv2.1 only) as published by the
+ * Free Software Foundation. This program is distributed in the hope
+ * that it will be useful, but WITHOUT ANY WARRANTY; without even the
+ * implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR
+ * PURPOSE. See the GNU General Public License for more details. You
+ * should have received a copy of the GNU General Public License along
+ * with this program; if not, see <http://www.gnu.org/licenses>.
+ */
+
+package samplecode.tools;
+
+import com.unboundid.util.MinimalLogFormatter;
+import samplecode.annotation.CodeVersion;
+import samplecode.annotation.Since;
+
+import java.io.PrintStream;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.logging.Level;
+import java.util.logging.LogRecord;
+
+import static com.unboundid.util.Validator.ensureNotNull;
+
+
+/**
+ * Reports the throughput and latency of the operations carried out by a
+ * tool. Worker threads call {@link #recordOperation(long, long)} after
+ * each operation; every {@code reportInterval} milliseconds the
+ * reporter displays the operations per second, the entries per second,
+ * and the 50th, 95th and 99th percentile and maximum latency of the
+ * operations completed during the interval. After {@code reportCount}
+ * reports the reporter stops and {@link #isComplete()} returns
+ * {@code true}, which a tool can use to end a timed run.
+ * <p/>
+ * The intervals are reported from a single daemon thread. Recording an
+ * operation does not take a lock; the latencies are kept in a
+ * {@link LatencyHistogram} that is swapped for an empty histogram at
+ * the end of each interval. The reporting thread waits for the
+ * operations being recorded into the histogram it swapped out, so that
+ * every operation is counted in one interval and in the total.
+ * <p/>
+ * example usage: <blockquote>
+ * <p/>
+ * <pre>
+ * PerformanceReporter reporter =
+ *   new PerformanceReporter(getOut(),commandLineOptions.getReportInterval(),
+ *     commandLineOptions.getReportCount());
+ * reporter.start();
+ * ...
+ * long begin = System.nanoTime();
+ * SearchResult searchResult = ldapConnection.search(searchRequest);
+ * reporter.recordOperation(System.nanoTime() - begin,searchResult.getEntryCount());
+ * ...
+ * reporter.stop();
+ * </pre>
+ * </blockquote>
+ */
+@Since("Oct 16, 2026")
+@CodeVersion("1.0")
+public final class PerformanceReporter {
+
+  /**
+   * Creates a reporter that displays a report on {@code out} every
+   * {@code reportIntervalMillis} milliseconds, and stops after
+   * {@code reportCount} reports.
+   *
+   * @param out
+   *   the stream on which reports are displayed. Not permitted
+   *   to be {@code null}.
+   * @param reportIntervalMillis
+   *   the reporting interval in milliseconds, which must be
+   *   greater than zero.
+   * @param reportCount
+   *   the maximum number of interval reports, which must be
+   *   greater than zero. {@code Integer.MAX_VALUE} means no limit.
+   */
+  public PerformanceReporter(final PrintStream out, final long reportIntervalMillis,
+                             final int reportCount) {
+    ensureNotNull(out);
+    if(reportIntervalMillis <= 0L) {
+      throw new IllegalArgumentException("reportIntervalMillis must be greater than zero.");
+    }
+    if(reportCount <= 0) {
+      throw new IllegalArgumentException("reportCount must be greater than zero.");
+    }
+    this.out = out;
+    this.reportIntervalMillis = reportIntervalMillis;
+    this.reportCount = reportCount;
+  }
+
+
+
+  /**
+   * Starts the reporting thread. The first report is displayed one
+   * reporting interval after this method is invoked.
+   */
+  public synchronized void start() {
+    if(scheduler != null) {
+      return;
+    }
+    startNanos = System.nanoTime();
+    intervalStartNanos = startNanos;
+    scheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+
+      @Override
+      public Thread newThread(final Runnable runnable) {
+        final Thread thread = new Thread(runnable,"PerformanceReporter");
+        thread.setDaemon(true);
+        return thread;
+      }
+    });
+    scheduler.scheduleAtFixedRate(new Runnable() {
+
+      @Override
+      public void run() {
+        reportInterval();
+      }
+    },reportIntervalMillis,reportIntervalMillis,TimeUnit.MILLISECONDS);
+  }
+
+
+
+  /**
+   * Records the completion of one operation.
+   *
+   * @param elapsedNanos
+   *   the time taken by the operation in nanoseconds.
+   * @param entries
+   *   the number of entries processed by the operation, for
+   *   example, the number of entries returned by a search.
+   */
+  public void recordOperation(final long elapsedNanos, final long entries) {
+    while(true) {
+      final Interval interval = currentInterval.get();
+      interval.writers.incrementAndGet();
+      try {
+        if(interval == currentInterval.get()) {
+          // the reporting thread waits for this writer before it reads
+          // the interval
+          interval.histogram.recordValue(TimeUnit.NANOSECONDS.toMicros(elapsedNanos));
+          interval.operations.incrementAndGet();
+          if(entries != 0L) {
+            interval.entries.addAndGet(entries);
+          }
+          return;
+        }
+      } finally {
+        interval.writers.decrementAndGet();
+      }
+    }
+  }
+
+
+
+  /**
+   * Whether {@code reportCount} reports have been displayed.
+   *
+   * @return {@code true} if the reporter has stopped because the report
+   *         count was reached.
+   */
+  public boolean isComplete() {
+    return complete.getCount() == 0L;
+  }
+
+
+
+  /**
+   * Waits until {@code reportCount} reports have been displayed.
+   *
+   * @throws InterruptedException
+   *   if the waiting thread is interrupted.
+   */
+  public void awaitComplete() throws InterruptedException {
+    complete.await();
+  }
+
+
+
+  /**
+   * Stops the reporting thread, if it is running, and displays a
+   * summary of every operation recorded since {@link #start()}.
+   */
+  public void stop() {
+    final ScheduledExecutorService s;
+    synchronized(this) {
+      s = scheduler;
+      scheduler = null;
+    }
+    if(s == null) {
+      return;
+    }
+    s.shutdown();
+    try {
+      s.awaitTermination(reportIntervalMillis,TimeUnit.MILLISECONDS);
+    } catch(final InterruptedException interruptedException) {
+      Thread.currentThread().interrupt();
+    }
+    if(!isComplete()) {
+      reportInterval();
+    }
+    final double seconds = (System.nanoTime() - startNanos) / 1.0e9;
+    display(format("total",totalOperations.get(),totalEntries.get(),seconds,totalHistogram));
+  }
+
+
+
+  /**
+   * @return the total number of operations reported so far.
+   */
+  public long getTotalOperations() {
+    return totalOperations.get();
+  }
+
+
+
+  /**
+   * @return a histogram of the latencies, in microseconds, of every
+   *         operation reported so far.
+   */
+  public LatencyHistogram getTotalHistogram() {
+    return totalHistogram;
+  }
+
+
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public String toString() {
+    return "PerformanceReporter [reportIntervalMillis=" + reportIntervalMillis +
+      ", reportCount=" + reportCount + ", reportsDisplayed=" + reportsDisplayed + "]";
+  }
+
+
+
+  /**
+   * Ends the current interval and displays its statistics. Invoked by
+   * the reporting thread, and by {@code stop()} after the reporting
+   * thread has ended.
+   */
+  private synchronized void reportInterval() {
+    if(isComplete()) {
+      return;
+    }
+    final long now = System.nanoTime();
+    final Interval interval = currentInterval.getAndSet(new Interval());
+    while(interval.writers.get() != 0) {
+      Thread.yield();
+    }
+    final LatencyHistogram histogram = interval.histogram;
+    final long operations = interval.operations.get();
+    final long entries = interval.entries.get();
+    final double seconds = (now - intervalStartNanos) / 1.0e9;
+    intervalStartNanos = now;
+
+    totalHistogram.add(histogram);
+    totalOperations.addAndGet(operations);
+    totalEntries.addAndGet(entries);
+
+    ++reportsDisplayed;
+    display(format("interval " + reportsDisplayed,operations,entries,seconds,histogram));
+    if(reportsDisplayed >= reportCount) {
+      complete.countDown();
+      if(scheduler != null) {
+        scheduler.shutdown();
+      }
+    }
+  }
+
+
+
+  private String format(final String label, final long operations, final long entries,
+                        final double seconds, final LatencyHistogram histogram) {
+    final double perSecond = seconds > 0.0 ? 1.0 / seconds : 0.0;
+    return String.format("%s: ops=%d ops/s=%.1f entries/s=%.1f latency(ms) p50=%.3f " +
+      "p95=%.3f p99=%.3f max=%.3f",label,operations,operations * perSecond,
+      entries * perSecond,histogram.getValueAtPercentile(50.0) / 1000.0,
+      histogram.getValueAtPercentile(95.0) / 1000.0,
+      histogram.getValueAtPercentile(99.0) / 1000.0,histogram.getMax() / 1000.0);
+  }
+
+
+
+  private void display(final String msg) {
+    out.println(formatter.format(new LogRecord(Level.INFO,msg)));
+  }
+
+
+
+  /**
+   * The operations recorded during one interval, and the number of
+   * threads recording an operation into it.
+   */
+  private static final class Interval {
+
+    private final AtomicLong entries = new AtomicLong();
+
+
+    private final LatencyHistogram histogram = new LatencyHistogram();
+
+
+    private final AtomicLong operations = new AtomicLong();
+
+
+    private final AtomicInteger writers = new AtomicInteger();
+
+  }
+
+
+
+  private final CountDownLatch complete = new CountDownLatch(1);
+
+
+  private final AtomicReference<Interval> currentInterval =
+    new AtomicReference<Interval>(new Interval());
+
+
+  private final MinimalLogFormatter formatter = new MinimalLogFormatter();
+
+
+  private long intervalStartNanos;
+
+
+  private final PrintStream out;
+
+
+  private final int reportCount;
+
+
+  private final long reportIntervalMillis;
+
+
+  private int reportsDisplayed;
+
+
+  private ScheduledExecutorService scheduler;
+
+
+  private long startNanos;
+
+
+  private final AtomicLong totalEntries = new AtomicLong();
+
+
+  private final LatencyHistogram totalHistogram = new LatencyHistogram();
+
+
+  private final AtomicLong totalOperations = new AtomicLong();
+
+}
@@ -0,0 +1,130 @@
+/*
+ * Copyright 2008-2013 UnboundID Corp. All Rights Reserved.
+ */
+/*
+ * Copyright (C) 2008-2013 UnboundID Corp. This program is free
+ * software; you can redistribute it and/or modify it under the terms of
+ * the GNU General Public License (GPLv2 only) or the terms of the GNU
+ * Lesser General Public License (LGPLv2.1 only) as published by the
+ * Free Software Foundation. This program is distributed in the hope
+ * that it will be useful, but WITHOUT ANY WARRANTY; without even the
+ * implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR
+ * PURPOSE. See the GNU General Public License for more details. You
+ * should have received a copy of the GNU General Public License along
+ * with this program; if not, see <http://www.gnu.org/licenses>.
+ */
+
+package samplecode.util;
+
+
+import samplecode.annotation.CodeVersion;
+import samplecode.annotation.Since;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * Utility methods for creating the executor services used by the tools
+ * to run concurrent LDAP operations. This class cannot be instantiated.
+ * <p/>
+ * The code is compiled for Java 6, therefore virtual threads are reached
+ * by reflection: when the JVM provides
+ * {@code Executors.newVirtualThreadPerTaskExecutor()} (Java 21 and
+ * later) a tool can run thousands of blocking LDAP operations at once,
+ * each on its own virtual thread, with the connection pool as the only
+ * limit on concurrency. On an older JVM the executor falls back to a
+ * fixed pool of platform threads.
+ */
+@Since("Oct 16, 2026")
+@CodeVersion("1.0")
+public abstract class SampleCodeExecutors {
+
+  /**
+   * The method of {@code Executors} that creates an executor which
+   * starts a new virtual thread for each task, or {@code null} if the
+   * JVM does not support virtual threads.
+   */
+  private static final Method NEW_VIRTUAL_THREAD_PER_TASK_EXECUTOR =
+    findVirtualThreadPerTaskExecutorMethod();
+
+
+
+  private static Method findVirtualThreadPerTaskExecutorMethod() {
+    try {
+      return Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+    } catch(final NoSuchMethodException noSuchMethodException) {
+      return null;
+    }
+  }
+
+
+
+  /**
+   * Whether the JVM supports virtual threads.
+   *
+   * @return {@code true} if virtual threads are available.
+   */
+  public static boolean isVirtualThreadSupported() {
+    return NEW_VIRTUAL_THREAD_PER_TASK_EXECUTOR != null;
+  }
+
+
+
+  /**
+   * Creates an executor service for running {@code numThreads}
+   * concurrent tasks. When {@code useVirtualThreads} is {@code true}
+   * and the JVM supports virtual threads, each task runs on a new
+   * virtual thread and {@code numThreads} is not used; otherwise a
+   * fixed pool of {@code numThreads} platform threads is used.
+   *
+   * @param numThreads
+   *   the number of platform threads, which must be greater than
+   *   zero.
+   * @param useVirtualThreads
+   *   whether to use virtual threads, if available.
+   *
+   * @return a new executor service.
+   */
+  public static ExecutorService newExecutorService(final int numThreads,
+                                                   final boolean useVirtualThreads) {
+    if(useVirtualThreads && isVirtualThreadSupported()) {
+      try {
+        return (ExecutorService) NEW_VIRTUAL_THREAD_PER_TASK_EXECUTOR.invoke(null);
+      } catch(final IllegalAccessException illegalAccessException) {
+        // fall back to platform threads
+      } catch(final InvocationTargetException invocationTargetException) {
+        // fall back to platform threads
+      }
+    }
+    return Executors.newFixedThreadPool(numThreads);
+  }
+
+
+
+  /**
+   * Shuts down the {@code executorService} and waits for every task
+   * that was submitted to complete.
+   *
+   * @param executorService
+   *   the executor service to shut down.
+   *
+   * @return {@code false} if the waiting thread was interrupted.
+   */
+  public static boolean shutdownAndAwaitTermination(final ExecutorService executorService) {
+    executorService.shutdown();
+    try {
+      while(!executorService.awaitTermination(1L,TimeUnit.SECONDS)) {
+        // wait for all tasks to complete
+      }
+      return true;
+    } catch(final InterruptedException interruptedException) {
+      Thread.currentThread().interrupt();
+      return false;
+    }
+  }
+
+}
@@ -0,0 +1,165 @@
+/*
+ * Copyright 2008-2013 UnboundID Corp. All Rights Reserved.
+ */
+/*
+ * Copyright (C) 2008-2013 UnboundID Corp. This program is free
+ * software; you can redistribute it and/or modify it under the terms of
+ * the GNU General Public License (GPLv2 only) or the terms of the GNU
+ * Lesser General Public License (LGPLv2.1 only) as published by the
+ * Free Software Foundation. This program is distributed in the hope
+ * that it will be useful, but WITHOUT ANY WARRANTY; without even the
+ * implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR
+ * PURPOSE. See the GNU General Public License for more details. You
+ * should have received a copy of the GNU General Public License along
+ * with this program; if not, see <http://www.gnu.org/licenses>.
+ */
+
+package samplecode.util;
+
+import samplecode.annotation.CodeVersion;
+import samplecode.annotation.Since;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+
+/**
+ * A counter that many threads update without contending with each
+ * other: the count is split into stripes, each thread adds to its own
+ * stripe, and the stripes are summed when the count is read. Each
+ * stripe occupies its own cache line, so that threads updating
+ * neighbouring stripes do not invalidate each other's caches.
+ * <p/>
+ * Updates are cheap and reads are comparatively expensive, which suits
+ * counters that are updated for every entry and read by a progress
+ * report every few seconds. A read that runs concurrently with updates
+ * may miss some of them; {@link #reset} must not run concurrently with
+ * updates that should be counted.
+ * <p/>
+ * example usage: <blockquote>
+ * <p/>
+ * <pre>
+ * StripedCounter entriesAdded = new StripedCounter();
+ * // in each loader thread
+ * entriesAdded.increment();
+ * // in the reporting thread
+ * System.out.println(entriesAdded.sum());
+ * </pre>
+ * </blockquote>
+ */
+@Since("Oct 16, 2026")
+@CodeVersion("1.0")
+public final class StripedCounter {
+
+  /**
+   * The number of longs in a cache line of 64 bytes: only the first long
+   * of each line is used.
+   */
+  private static final int LONGS_PER_CACHE_LINE = 8;
+
+
+  // the stripes are assigned to threads in turn
+  private static final AtomicInteger nextThreadIndex = new AtomicInteger();
+
+
+  private static final ThreadLocal<Integer> threadIndex = new ThreadLocal<Integer>() {
+
+    @Override
+    protected Integer initialValue() {
+      return nextThreadIndex.getAndIncrement();
+    }
+  };
+
+
+
+  /**
+   * Creates a counter with a stripe for each processor.
+   */
+  public StripedCounter() {
+    this(Runtime.getRuntime().availableProcessors());
+  }
+
+
+
+  /**
+   * Creates a counter.
+   *
+   * @param stripes
+   *   the number of stripes, which must be greater than zero. It is
+   *   rounded up to a power of two.
+   */
+  public StripedCounter(final int stripes) {
+    if(stripes <= 0) {
+      throw new IllegalArgumentException("stripes must be greater than zero.");
+    }
+    int powerOfTwo = 1;
+    while(powerOfTwo < stripes) {
+      powerOfTwo <<= 1;
+    }
+    this.mask = powerOfTwo - 1;
+    this.cells = new AtomicLongArray(powerOfTwo * LONGS_PER_CACHE_LINE);
+  }
+
+
+
+  /**
+   * Adds one to the count.
+   */
+  public void increment() {
+    add(1L);
+  }
+
+
+
+  /**
+   * Adds {@code delta} to the count.
+   *
+   * @param delta
+   *   the amount added, which may be negative.
+   */
+  public void add(final long delta) {
+    cells.getAndAdd((threadIndex.get() & mask) * LONGS_PER_CACHE_LINE,delta);
+  }
+
+
+
+  /**
+   * @return the count.
+   */
+  public long sum() {
+    long sum = 0L;
+    for(int i = 0; i < cells.length(); i += LONGS_PER_CACHE_LINE) {
+      sum += cells.get(i);
+    }
+    return sum;
+  }
+
+
+
+  /**
+   * Sets the count to zero.
+   */
+  public void reset() {
+    for(int i = 0; i < cells.length(); i += LONGS_PER_CACHE_LINE) {
+      cells.set(i,0L);
+    }
+  }
+
+
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public String toString() {
+    return Long.toString(sum());
+  }
+
+
+
+  private final AtomicLongArray cells;
+
+
+  private final int mask;
+
+}
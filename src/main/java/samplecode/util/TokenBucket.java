@@ -0,0 +1,178 @@
+/*
+ * Copyright 2008-2013 UnboundID Corp. All Rights Reserved.
+ */
+/*
+ * Copyright (C) 2008-2013 UnboundID Corp. This program is free
+ * software; you can redistribute it and/or modify it under the terms of
+ * the GNU General Public License (GPLv2 only) or the terms of the GNU
+ * Lesser General Public License (LGPLv2.1 only) as published by the
+ * Free Software Foundation. This program is distributed in the hope
+ * that it will be useful, but WITHOUT ANY WARRANTY; without even the
+ * implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR
+ * PURPOSE. See the GNU General Public License for more details. You
+ * should have received a copy of the GNU General Public License along
+ * with this program; if not, see <http://www.gnu.org/licenses>.
+ */
+
+package samplecode.util;
+
+import samplecode.annotation.CodeVersion;
+import samplecode.annotation.Since;
+
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * Limits the rate at which operations start: tokens are added to the
+ * bucket continuously at the target rate, up to the burst size, and
+ * each operation takes one token, waiting for it if the bucket is
+ * empty. The bucket starts full, so that a burst of operations may
+ * start at once after a quiet period while the average rate over any
+ * longer period does not exceed the target.
+ * <p/>
+ * A token that is not yet available is reserved by the thread that
+ * asks for it, so that the waiting threads are served in order and the
+ * time spent between two operations by the caller (parsing, sending)
+ * is not added to the interval between them.
+ * <p/>
+ * example usage: <blockquote>
+ * <p/>
+ * <pre>
+ * TokenBucket tokenBucket = new TokenBucket(500.0,50);
+ * while(...) {
+ *   tokenBucket.acquire();
+ *   ldapConnection.asyncModify(modifyRequest,listener);
+ * }
+ * </pre>
+ * </blockquote>
+ */
+@Since("Oct 16, 2026")
+@CodeVersion("1.0")
+public final class TokenBucket {
+
+  /**
+   * Creates a full bucket.
+   *
+   * @param ratePerSecond
+   *   the number of tokens added per second, which must be greater
+   *   than zero.
+   * @param burst
+   *   the largest number of tokens held, which must be greater than
+   *   zero.
+   */
+  public TokenBucket(final double ratePerSecond, final int burst) {
+    if(!(ratePerSecond > 0.0)) {
+      throw new IllegalArgumentException("ratePerSecond must be greater than zero.");
+    }
+    if(burst <= 0) {
+      throw new IllegalArgumentException("burst must be greater than zero.");
+    }
+    this.nanosPerToken = TimeUnit.SECONDS.toNanos(1L) / ratePerSecond;
+    this.burst = burst;
+    this.tokens = burst;
+    this.lastRefillNanos = System.nanoTime();
+  }
+
+
+
+  /**
+   * Takes a token, waiting until one is available.
+   *
+   * @return the time in nanoseconds that the calling thread waited.
+   *
+   * @throws InterruptedException
+   *   if the calling thread is interrupted while waiting; the token
+   *   stays reserved.
+   */
+  public long acquire() throws InterruptedException {
+    final long waitNanos = reserve();
+    if(waitNanos > 0L) {
+      final long deadline = System.nanoTime() + waitNanos;
+      long remaining = waitNanos;
+      while(remaining > 0L) {
+        TimeUnit.NANOSECONDS.sleep(remaining);
+        remaining = deadline - System.nanoTime();
+      }
+    }
+    synchronized(this) {
+      waitedNanos += waitNanos;
+    }
+    return waitNanos;
+  }
+
+
+
+  /**
+   * Takes a token if one is available now.
+   *
+   * @return {@code true} if a token was taken.
+   */
+  public synchronized boolean tryAcquire() {
+    refill();
+    if(tokens < 1.0) {
+      return false;
+    }
+    tokens -= 1.0;
+    return true;
+  }
+
+
+
+  /**
+   * @return the total time in nanoseconds that threads waited for
+   *         tokens.
+   */
+  public synchronized long getWaitedNanos() {
+    return waitedNanos;
+  }
+
+
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public synchronized String toString() {
+    return "TokenBucket [ratePerSecond=" + (TimeUnit.SECONDS.toNanos(1L) / nanosPerToken) +
+      ", burst=" + burst + ", waitedNanos=" + waitedNanos + "]";
+  }
+
+
+
+  /**
+   * Takes a token, which may leave the bucket in debt.
+   *
+   * @return the time in nanoseconds until the token is available.
+   */
+  private synchronized long reserve() {
+    refill();
+    tokens -= 1.0;
+    return tokens >= 0.0 ? 0L : (long) Math.ceil(-tokens * nanosPerToken);
+  }
+
+
+
+  private void refill() {
+    final long now = System.nanoTime();
+    tokens = Math.min(burst,tokens + (now - lastRefillNanos) / nanosPerToken);
+    lastRefillNanos = now;
+  }
+
+
+
+  private final int burst;
+
+
+  private long lastRefillNanos;
+
+
+  private final double nanosPerToken;
+
+
+  // negative when tokens are reserved ahead of their arrival
+  private double tokens;
+
+
+  private long waitedNanos;
+
+}
@@ -0,0 +1,240 @@
+/*
+ * Copyright 2008-2013 UnboundID Corp. All Rights Reserved.
+ */
+/*
+ * Copyright (C) 2008-2013 UnboundID Corp. This program is free
+ * software; you can redistribute it and/or modify it under the terms of
+ * the GNU General Public License (GPLv2 only) or the terms of the GNU
+ * Lesser General Public License (LGPLv2.1 only) as published by the
+ * Free Software Foundation. This program is distributed in the hope
+ * that it will be useful, but WITHOUT ANY WARRANTY; without even the
+ * implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR
+ * PURPOSE. See the GNU General Public License for more details. You
+ * should have received a copy of the GNU General Public License along
+ * with this program; if not, see <http://www.gnu.org/licenses>.
+ */
+
+package samplecode.vlv;
+
+import com.unboundid.ldap.sdk.Control;
+import com.unboundid.ldap.sdk.LDAPException;
+import com.unboundid.ldap.sdk.LDAPInterface;
+import com.unboundid.ldap.sdk.ResultCode;
+import com.unboundid.ldap.sdk.SearchRequest;
+import com.unboundid.ldap.sdk.SearchResult;
+import com.unboundid.ldap.sdk.SearchResultEntry;
+import com.unboundid.ldap.sdk.controls.ServerSideSortRequestControl;
+import com.unboundid.ldap.sdk.controls.SortKey;
+import com.unboundid.ldap.sdk.controls.VirtualListViewRequestControl;
+import samplecode.annotation.CodeVersion;
+import samplecode.annotation.Since;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import static com.unboundid.util.Validator.ensureNotNull;
+
+
+/**
+ * Retrieves a sorted list of entries by dividing positions 1 to
+ * {@code contentCount} of the list into ranges of {@code rangeSize}
+ * entries and requesting the ranges at the same time, each with its own
+ * virtual list view request control. The ranges are requested by the
+ * tasks of an {@code ExecutorService} on an {@code LDAPInterface} that
+ * may be used by several threads, normally an
+ * {@code LDAPConnectionPool} with a connection for each thread, and the
+ * entries are returned in the order of the list.
+ * <p/>
+ * The content count is normally taken from the
+ * {@code VirtualListViewResponseControl} of a first request, for example
+ * {@link VirtualListViewModel#getContentCount()}. The requests carry no
+ * context ID, because a context ID is only meaningful on the connection
+ * on which it was returned.
+ * <p/>
+ * example usage: <blockquote>
+ * <p/>
+ * <pre>
+ * ParallelVirtualListViewFetch fetch =
+ *   new ParallelVirtualListViewFetch(ldapConnectionPool,searchRequest,
+ *     new SortKey[]{new SortKey("cn")},1000,true);
+ * List&lt;SearchResultEntry&gt; entries =
+ *   fetch.fetch(model.getContentCount(),executorService);
+ * </pre>
+ * </blockquote>
+ */
+@Since("Oct 16, 2026")
+@CodeVersion("1.0")
+public final class ParallelVirtualListViewFetch {
+
+  /**
+   * Prepares a parallel fetch.
+   *
+   * @param ldapInterface
+   *   the connection pool on which the ranges are requested. Not
+   *   permitted to be {@code null}.
+   * @param searchRequest
+   *   the search whose result is retrieved; it is not modified. Not
+   *   permitted to be {@code null}.
+   * @param sortKeys
+   *   the keys by which the server sorts the result. Not permitted to
+   *   be {@code null} or empty.
+   * @param rangeSize
+   *   the number of entries requested with each request control, which
+   *   must be greater than zero.
+   * @param isCritical
+   *   whether the virtual list view request controls are marked as
+   *   critical.
+   */
+  public ParallelVirtualListViewFetch(final LDAPInterface ldapInterface,
+                                      final SearchRequest searchRequest,
+                                      final SortKey[] sortKeys, final int rangeSize,
+                                      final boolean isCritical) {
+    ensureNotNull(ldapInterface,searchRequest,sortKeys);
+    if(sortKeys.length == 0) {
+      throw new IllegalArgumentException("sortKeys must not be empty.");
+    }
+    if(rangeSize <= 0) {
+      throw new IllegalArgumentException("rangeSize must be greater than zero.");
+    }
+    this.ldapInterface = ldapInterface;
+    this.searchRequest = searchRequest;
+    this.sortRequestControl = new ServerSideSortRequestControl(sortKeys);
+    this.rangeSize = rangeSize;
+    this.isCritical = isCritical;
+  }
+
+
+
+  /**
+   * Requests the ranges of positions 1 to {@code contentCount} with the
+   * tasks of {@code executorService} and waits for all of them.
+   *
+   * @param contentCount
+   *   the number of entries in the list, which must not be negative.
+   * @param executorService
+   *   runs a task for each range. Not permitted to be {@code null}.
+   *
+   * @return the entries of every range, in the order of the list.
+   *
+   * @throws LDAPException
+   *   if the request for a range failed; the requests that have not
+   *   completed are cancelled.
+   * @throws InterruptedException
+   *   if the calling thread was interrupted while waiting for a range.
+   */
+  public List<SearchResultEntry> fetch(final int contentCount,
+                                       final ExecutorService executorService)
+    throws LDAPException, InterruptedException {
+    ensureNotNull(executorService);
+    if(contentCount < 0) {
+      throw new IllegalArgumentException("contentCount must not be negative.");
+    }
+    final List<Future<List<SearchResultEntry>>> ranges =
+      new ArrayList<Future<List<SearchResultEntry>>>();
+    for(int offset = 1; offset <= contentCount; offset += rangeSize) {
+      final int length = Math.min(rangeSize,contentCount - offset + 1);
+      ranges.add(executorService.submit(new RangeTask(offset,length)));
+    }
+    rangesRequested = ranges.size();
+
+    final List<SearchResultEntry> entries = new ArrayList<SearchResultEntry>(contentCount);
+    try {
+      for(final Future<List<SearchResultEntry>> range : ranges) {
+        entries.addAll(range.get());
+      }
+    } catch(final ExecutionException executionException) {
+      final Throwable cause = executionException.getCause();
+      if(cause instanceof LDAPException) {
+        throw (LDAPException)cause;
+      }
+      throw new LDAPException(ResultCode.LOCAL_ERROR,String.valueOf(cause),cause);
+    } finally {
+      for(final Future<List<SearchResultEntry>> range : ranges) {
+        range.cancel(true);
+      }
+    }
+    return entries;
+  }
+
+
+
+  /**
+   * @return the number of ranges requested by the last fetch.
+   */
+  public int getRangesRequested() {
+    return rangesRequested;
+  }
+
+
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public String toString() {
+    return "ParallelVirtualListViewFetch [rangeSize=" + rangeSize + ", rangesRequested=" +
+      rangesRequested + "]";
+  }
+
+
+
+  /**
+   * Requests the entries at positions {@code offset} to
+   * {@code offset + length - 1}.
+   */
+  private final class RangeTask implements Callable<List<SearchResultEntry>> {
+
+    private RangeTask(final int offset, final int length) {
+      this.offset = offset;
+      this.length = length;
+    }
+
+
+
+    @Override
+    public List<SearchResultEntry> call() throws LDAPException {
+      final Control vlvRequestControl =
+        new VirtualListViewRequestControl(offset,0,length - 1,0,null,isCritical);
+      final Control[] requestControls = searchRequest.getControls();
+      final Control[] controls = new Control[requestControls.length + 2];
+      System.arraycopy(requestControls,0,controls,0,requestControls.length);
+      controls[requestControls.length] = sortRequestControl;
+      controls[requestControls.length + 1] = vlvRequestControl;
+      final SearchResult searchResult = ldapInterface.search(searchRequest.duplicate(controls));
+      final List<SearchResultEntry> entries = searchResult.getSearchEntries();
+      return entries.size() > length ? entries.subList(0,length) : entries;
+    }
+
+
+
+    private final int length;
+
+
+    private final int offset;
+
+  }
+
+
+
+  private final boolean isCritical;
+
+
+  private final LDAPInterface ldapInterface;
+
+
+  private final int rangeSize;
+
+
+  private volatile int rangesRequested;
+
+
+  private final SearchRequest searchRequest;
+
+
+  private final ServerSideSortRequestControl sortRequestControl;
+
+}
@@ -16,16 +16,15 @@
 
 package samplecode.vlv;
 
-import com.unboundid.asn1.ASN1OctetString;
 import com.unboundid.ldap.sdk.*;
 import com.unboundid.ldap.sdk.controls.ServerSideSortRequestControl;
 import com.unboundid.ldap.sdk.controls.SortKey;
 import com.unboundid.ldap.sdk.controls.VirtualListViewRequestControl;
-import com.unboundid.ldap.sdk.controls.VirtualListViewResponseControl;
 import com.unboundid.util.args.Argument;
 import com.unboundid.util.args.ArgumentException;
 import com.unboundid.util.args.ArgumentParser;
 import com.unboundid.util.args.BooleanArgument;
+import com.unboundid.util.args.IntegerArgument;
 import org.apache.commons.logging.Log;
 import samplecode.annotation.Author;
 import samplecode.annotation.CodeVersion;
@@ -42,12 +41,15 @@ import samplecode.listener.ObservedByLdapExceptionListener;
 import samplecode.tools.AbstractTool;
 import samplecode.tools.BasicToolCompletedProcessing;
 import samplecode.tools.ToolCompletedProcessing;
+import samplecode.util.SampleCodeExecutors;
 
 import java.io.OutputStream;
 import java.io.PrintStream;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
 
 
 /**
@@ -148,6 +150,17 @@ import java.util.List;
  * --pageSize {positiveInteger}
  *     The search page size
  * --criticality
+ *     Whether the VLV request control should be marked as critical.
+ * --windowSize {positiveInteger}
+ *     The number of entries requested with each VLV request control. The
+ *     default value is 10.
+ * --maxCachedWindows {positiveInteger}
+ *     The maximum number of windows of entries kept by the client. The
+ *     default value is 16.
+ * --parallelFetch
+ *     Request the list in ranges of --windowSize entries at the same time,
+ *     using --numThreads threads and the connections of the connection
+ *     pool, instead of one window at a time.
  * -H, -?, --help
  *     Display usage information for this program.
  * </pre>
@@ -161,6 +174,28 @@ import java.util.List;
 public final class VirtualListViewDemo extends AbstractTool
   implements LdapExceptionListener, ObservedByLdapExceptionListener {
 
+  /**
+   * The long identifier of the command line argument whose parameter is
+   * the number of entries requested with each VLV request control.
+   */
+  public static final String ARG_NAME_WINDOW_SIZE = "windowSize";
+
+
+  /**
+   * The long identifier of the command line argument whose parameter is
+   * the maximum number of windows of entries kept by the client.
+   */
+  public static final String ARG_NAME_MAX_CACHED_WINDOWS = "maxCachedWindows";
+
+
+  /**
+   * The long identifier of the command line argument that specifies
+   * that the ranges of the list are requested at the same time.
+   */
+  public static final String ARG_NAME_PARALLEL_FETCH = "parallelFetch";
+
+
+
   private static void main(final PrintStream outStream,
                            final PrintStream errStream,
                            final String... args) {
@@ -198,7 +233,24 @@ public final class VirtualListViewDemo extends AbstractTool
         "Whether the VLV request control should " +
           "be marked as critical.");
 
-    final List<? extends Argument> arguments = Arrays.asList(critArgument);
+    final Argument windowSizeArgument =
+      new IntegerArgument(null,ARG_NAME_WINDOW_SIZE,false,1,"{positiveInteger}",
+        "The number of entries requested with each VLV request control.",1,
+        Integer.MAX_VALUE,Integer.valueOf(10));
+
+    final Argument maxCachedWindowsArgument =
+      new IntegerArgument(null,ARG_NAME_MAX_CACHED_WINDOWS,false,1,"{positiveInteger}",
+        "The maximum number of windows of entries kept by the client.",1,
+        Integer.MAX_VALUE,Integer.valueOf(16));
+
+    final Argument parallelFetchArgument =
+      new BooleanArgument(null,ARG_NAME_PARALLEL_FETCH,"Request the list in ranges of " +
+        "--windowSize entries at the same time, using --numThreads threads and the " +
+        "connections of the connection pool, instead of one window at a time.");
+
+    final List<? extends Argument> arguments =
+      Arrays.asList(critArgument,windowSizeArgument,maxCachedWindowsArgument,
+        parallelFetchArgument);
 
     for(final Argument argument : arguments) {
       argumentParser.addArgument(argument);
@@ -246,11 +298,11 @@ public final class VirtualListViewDemo extends AbstractTool
        */
       String controlOID =
         ServerSideSortRequestControl.SERVER_SIDE_SORT_REQUEST_OID;
-      if(SupportedFeature.isControlSupported(ldapConnection,controlOID)) {
+      if(!SupportedFeature.isControlSupported(ldapConnection,controlOID)) {
         return ResultCode.UNWILLING_TO_PERFORM;
       }
       controlOID = VirtualListViewRequestControl.VIRTUAL_LIST_VIEW_REQUEST_OID;
-      if(SupportedFeature.isControlSupported(ldapConnection,controlOID)) {
+      if(!SupportedFeature.isControlSupported(ldapConnection,controlOID)) {
         return ResultCode.UNWILLING_TO_PERFORM;
       }
 
@@ -273,9 +325,6 @@ public final class VirtualListViewDemo extends AbstractTool
         ++i;
       }
 
-      final ServerSideSortRequestControl sortRequest =
-        new ServerSideSortRequestControl(sortKeys);
-
       /*
        * Construct a search request from the parameter to the
        * --baseObject, --scope, --filter, --sizeLimit, --timeLimit, and
@@ -293,55 +342,36 @@ public final class VirtualListViewDemo extends AbstractTool
       final int timeLimit = commandLineOptions.getTimeLimit();
       searchRequest.setTimeLimitSeconds(timeLimit);
 
-      int targetOffset = 1;
-      int contentCount = 0;
-      ASN1OctetString contextID = null;
-      final int beforeCount = 0;
-      final int afterCount = 9;
-
-      // Determine whether the control should be marked 'critical'
-      final String name = this.getCriticalityArgName();
-      final BooleanArgument arg =
-        (BooleanArgument) argumentParser.getNamedArgument(name);
-      final boolean criticality = arg != null && arg.isPresent();
-      if(this.getLogger().isTraceEnabled()) {
-        this.getLogger().trace("criticality: " + criticality);
-      }
-
-      do {
-        final VirtualListViewRequestControl vlvRequest =
-          new VirtualListViewRequestControl(targetOffset,
-            beforeCount,
-            afterCount,
-            contentCount,
-            contextID,
-            criticality);
-        searchRequest.setControls(new Control[]{sortRequest,vlvRequest});
-        final SearchResult searchResult = ldapConnection.search(searchRequest);
-
-        /*
-         * Display the results of the search.
-         */
-        if(searchResult.getResultCode().equals(ResultCode.SUCCESS) && (searchResult
-          .getEntryCount() > 0)) {
-          for(final SearchResultEntry entry : searchResult.getSearchEntries()) {
-            final LdapEntryDisplay ldapEntryDisplay = new
-              BasicLdapEntryDisplay(entry);
+      /*
+       * Walk the list one window at a time. The windows are retrieved by
+       * a list model, which caches them so that a window displayed again
+       * is not requested again.
+       */
+      final int windowSize = getIntegerArgumentValue(ARG_NAME_WINDOW_SIZE);
+      final VirtualListViewModel model =
+        new VirtualListViewModel(ldapConnection,searchRequest,sortKeys,windowSize,
+          getIntegerArgumentValue(ARG_NAME_MAX_CACHED_WINDOWS),isCritical());
+      final int contentCount = model.getContentCount();
+      if(isParallelFetch()) {
+        for(final SearchResultEntry entry : fetchInParallel(searchRequest,sortKeys,windowSize,
+          contentCount)) {
+          final LdapEntryDisplay ldapEntryDisplay = new BasicLdapEntryDisplay(entry);
+          ldapEntryDisplay.display();
+        }
+      } else {
+        for(int offset = 1; offset <= contentCount; offset += windowSize) {
+          for(final SearchResultEntry entry : model.getRange(offset,windowSize)) {
+            final LdapEntryDisplay ldapEntryDisplay = new BasicLdapEntryDisplay(entry);
             ldapEntryDisplay.display();
           }
         }
+      }
+      if(getLogger().isTraceEnabled()) {
+        getLogger().trace(model.toString());
+      }
 
-        contentCount = -1;
-        final VirtualListViewResponseControl c =
-          VirtualListViewResponseControl.get(searchResult);
-        if(c != null) {
-          contentCount = c.getContentCount();
-          contextID = c.getContextID();
-        }
-        targetOffset += 10;
-      } while(targetOffset <= contentCount);
-
-      ldapConnection.close();
+      // closes ldapConnection, which is one of the connections of the pool
+      ldapConnectionPool.close();
     } catch(final LDAPException ldapException) {
       fireLdapExceptionListener(ldapConnection,ldapException);
       resultCode = ldapException.getResultCode();
@@ -359,6 +389,40 @@ public final class VirtualListViewDemo extends AbstractTool
 
 
 
+  /**
+   * Requests the ranges of the list at the same time on the connections
+   * of the pool, one task for each range, and returns the entries in
+   * the order of the list.
+   */
+  private List<SearchResultEntry> fetchInParallel(final SearchRequest searchRequest,
+                                                  final SortKey[] sortKeys,
+                                                  final int rangeSize,
+                                                  final int contentCount)
+    throws LDAPException {
+    final ParallelVirtualListViewFetch fetch =
+      new ParallelVirtualListViewFetch(ldapConnectionPool,searchRequest,sortKeys,rangeSize,
+        isCritical());
+    final ExecutorService executorService =
+      SampleCodeExecutors.newExecutorService(commandLineOptions.getNumThreads(),
+        commandLineOptions.getVirtualThreads());
+    final long begin = System.nanoTime();
+    try {
+      final List<SearchResultEntry> entries = fetch.fetch(contentCount,executorService);
+      getLogger().info(String.format("%d entries in %d ranges retrieved in %d ms",
+        entries.size(),fetch.getRangesRequested(),
+        TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - begin)));
+      return entries;
+    } catch(final InterruptedException interruptedException) {
+      Thread.currentThread().interrupt();
+      throw new LDAPException(ResultCode.USER_CANCELED,"interrupted while waiting for a range",
+        interruptedException);
+    } finally {
+      SampleCodeExecutors.shutdownAndAwaitTermination(executorService);
+    }
+  }
+
+
+
   @Override
   protected String classSpecificPropertiesResourceName() {
     return "VirtualListViewDemo.properties";
@@ -372,6 +436,31 @@ public final class VirtualListViewDemo extends AbstractTool
 
 
 
+  private boolean isCritical() {
+    final Argument arg = argumentParser.getNamedArgument(getCriticalityArgName());
+    final boolean criticality = (arg != null) && (arg.getNumOccurrences() > 0);
+    if(getLogger().isTraceEnabled()) {
+      getLogger().trace("criticality: " + criticality);
+    }
+    return criticality;
+  }
+
+
+
+  private boolean isParallelFetch() {
+    final Argument arg = argumentParser.getNamedArgument(ARG_NAME_PARALLEL_FETCH);
+    return (arg != null) && (arg.getNumOccurrences() > 0);
+  }
+
+
+
+  private int getIntegerArgumentValue(final String name) {
+    final IntegerArgument arg = (IntegerArgument) argumentParser.getNamedArgument(name);
+    return arg.getValue().intValue();
+  }
+
+
+
   private ArgumentParser argumentParser;
 
 }
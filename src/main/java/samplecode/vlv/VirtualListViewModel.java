@@ -0,0 +1,370 @@
+/*
+ * Copyright 2008-2013 UnboundID Corp. All Rights Reserved.
+ */
+/*
+ * Copyright (C) 2008-2013 UnboundID Corp. This program is free
+ * software; you can redistribute it and/or modify it under the terms of
+ * the GNU General Public License (GPLv2 only) or the terms of the GNU
+ * Lesser General Public License (LGPLv2.1 only) as published by the
+ * Free Software Foundation. This program is distributed in the hope
+ * that it will be useful, but WITHOUT ANY WARRANTY; without even the
+ * implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR
+ * PURPOSE. See the GNU General Public License for more details. You
+ * should have received a copy of the GNU General Public License along
+ * with this program; if not, see <http://www.gnu.org/licenses>.
+ */
+
+package samplecode.vlv;
+
+import com.unboundid.asn1.ASN1OctetString;
+import com.unboundid.ldap.sdk.Control;
+import com.unboundid.ldap.sdk.LDAPConnection;
+import com.unboundid.ldap.sdk.LDAPException;
+import com.unboundid.ldap.sdk.SearchRequest;
+import com.unboundid.ldap.sdk.SearchResult;
+import com.unboundid.ldap.sdk.SearchResultEntry;
+import com.unboundid.ldap.sdk.controls.ServerSideSortRequestControl;
+import com.unboundid.ldap.sdk.controls.SortKey;
+import com.unboundid.ldap.sdk.controls.VirtualListViewRequestControl;
+import com.unboundid.ldap.sdk.controls.VirtualListViewResponseControl;
+import com.unboundid.util.StaticUtils;
+import samplecode.annotation.CodeVersion;
+import samplecode.annotation.Since;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static com.unboundid.util.Validator.ensureNotNull;
+
+
+/**
+ * Presents the sorted result of a search as a list whose elements are
+ * retrieved on demand with the virtual list view request control. The
+ * list is divided into windows of {@code windowSize} entries; a window is
+ * retrieved with a single request the first time an entry in it is
+ * needed and kept in a least recently used cache of at most
+ * {@code maxCachedWindows} windows, so that scrolling back and forth over
+ * the list does not send a request each time.
+ * <p/>
+ * Windows are cached under the context ID returned by the server with
+ * the window. When the server returns a different context ID, the list
+ * may have changed, so the windows cached under the previous context ID
+ * are discarded. Because a context ID applies only to the connection on
+ * which it was returned, the windows are requested on a single
+ * connection rather than a connection pool.
+ * <p/>
+ * example usage: <blockquote>
+ * <p/>
+ * <pre>
+ * VirtualListViewModel model =
+ *   new VirtualListViewModel(ldapConnection,searchRequest,
+ *     new SortKey[]{new SortKey("cn")},50,20,true);
+ * List&lt;SearchResultEntry&gt; entries = model.getRange(101,25);
+ * int contentCount = model.getContentCount();
+ * </pre>
+ * </blockquote>
+ */
+@Since("Oct 16, 2026")
+@CodeVersion("1.0")
+public final class VirtualListViewModel {
+
+  /**
+   * Creates a list model.
+   *
+   * @param ldapConnection
+   *   the connection on which windows are requested. Not permitted to
+   *   be {@code null}.
+   * @param searchRequest
+   *   the search whose result is presented; it is not modified. Not
+   *   permitted to be {@code null}.
+   * @param sortKeys
+   *   the keys by which the server sorts the result. Not permitted to
+   *   be {@code null} or empty.
+   * @param windowSize
+   *   the number of entries requested at a time, which must be greater
+   *   than zero.
+   * @param maxCachedWindows
+   *   the maximum number of windows cached, which must be greater than
+   *   zero.
+   * @param isCritical
+   *   whether the virtual list view request control is marked as
+   *   critical, so that a server that does not support it rejects the
+   *   search instead of returning the whole list.
+   */
+  public VirtualListViewModel(final LDAPConnection ldapConnection,
+                              final SearchRequest searchRequest, final SortKey[] sortKeys,
+                              final int windowSize, final int maxCachedWindows,
+                              final boolean isCritical) {
+    ensureNotNull(ldapConnection,searchRequest,sortKeys);
+    if(sortKeys.length == 0) {
+      throw new IllegalArgumentException("sortKeys must not be empty.");
+    }
+    if(windowSize <= 0) {
+      throw new IllegalArgumentException("windowSize must be greater than zero.");
+    }
+    if(maxCachedWindows <= 0) {
+      throw new IllegalArgumentException("maxCachedWindows must be greater than zero.");
+    }
+    this.ldapConnection = ldapConnection;
+    this.searchRequest = searchRequest;
+    this.sortRequestControl = new ServerSideSortRequestControl(sortKeys);
+    this.windowSize = windowSize;
+    this.maxCachedWindows = maxCachedWindows;
+    this.isCritical = isCritical;
+    this.windows = new LinkedHashMap<WindowKey,List<SearchResultEntry>>(16,0.75f,true) {
+
+      private static final long serialVersionUID = 1L;
+
+
+
+      @Override
+      protected boolean removeEldestEntry(final Map.Entry<WindowKey,List<SearchResultEntry>> e) {
+        return size() > VirtualListViewModel.this.maxCachedWindows;
+      }
+    };
+  }
+
+
+
+  /**
+   * Retrieves the entries at positions {@code offset} to
+   * {@code offset + length - 1} of the list, requesting the windows that
+   * contain them that are not cached.
+   *
+   * @param offset
+   *   the position of the first entry; the first entry of the list is
+   *   at position 1.
+   * @param length
+   *   the maximum number of entries retrieved, which must not be
+   *   negative.
+   *
+   * @return the entries, fewer than {@code length} if the list ends
+   *         before the last position requested.
+   *
+   * @throws LDAPException
+   *   if the request for a window fails.
+   */
+  public synchronized List<SearchResultEntry> getRange(final int offset, final int length)
+    throws LDAPException {
+    if(offset < 1) {
+      throw new IllegalArgumentException("offset must be greater than zero.");
+    }
+    if(length < 0) {
+      throw new IllegalArgumentException("length must not be negative.");
+    }
+    final List<SearchResultEntry> range = new ArrayList<SearchResultEntry>(length);
+    int position = offset;
+    final int end = offset + length;
+    while(position < end) {
+      final int windowIndex = (position - 1) / windowSize;
+      final List<SearchResultEntry> window = getWindow(windowIndex);
+      final int windowStart = windowIndex * windowSize + 1;
+      final int from = position - windowStart;
+      if(from >= window.size()) {
+        break;
+      }
+      final int to = Math.min(window.size(),end - windowStart);
+      range.addAll(window.subList(from,to));
+      position = windowStart + to;
+      if(window.size() < windowSize) {
+        break;
+      }
+    }
+    return range;
+  }
+
+
+
+  /**
+   * Retrieves the number of entries in the list as estimated by the
+   * server, requesting the first window if no window has been requested.
+   *
+   * @return the number of entries in the list.
+   *
+   * @throws LDAPException
+   *   if the request for the first window fails.
+   */
+  public synchronized int getContentCount() throws LDAPException {
+    if(contentCount < 0) {
+      getWindow(0);
+    }
+    return contentCount;
+  }
+
+
+
+  /**
+   * Discards the cached windows and the context ID, so that every window
+   * is requested again.
+   */
+  public synchronized void invalidate() {
+    windows.clear();
+    contextID = null;
+    contentCount = -1;
+  }
+
+
+
+  /**
+   * @return the number of windows found in the cache.
+   */
+  public synchronized long getCacheHits() {
+    return cacheHits;
+  }
+
+
+
+  /**
+   * @return the number of windows requested from the server.
+   */
+  public synchronized long getCacheMisses() {
+    return cacheMisses;
+  }
+
+
+
+  /**
+   * @return the number of entries requested at a time.
+   */
+  public int getWindowSize() {
+    return windowSize;
+  }
+
+
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public synchronized String toString() {
+    return "VirtualListViewModel [windowSize=" + windowSize + ", maxCachedWindows=" +
+      maxCachedWindows + ", isCritical=" + isCritical + ", cachedWindows=" + windows.size() + ", contentCount=" +
+      contentCount + ", cacheHits=" + cacheHits + ", cacheMisses=" + cacheMisses + "]";
+  }
+
+
+
+  private List<SearchResultEntry> getWindow(final int windowIndex) throws LDAPException {
+    final List<SearchResultEntry> cached = windows.get(new WindowKey(contextID,windowIndex));
+    if(cached != null) {
+      ++cacheHits;
+      return cached;
+    }
+    ++cacheMisses;
+
+    // a content count of zero asks the server to use the offset as is
+    // instead of scaling it to the size of the list
+    final VirtualListViewRequestControl vlvRequestControl =
+      new VirtualListViewRequestControl(windowIndex * windowSize + 1,0,windowSize - 1,0,
+        contextID,isCritical);
+    final Control[] requestControls = searchRequest.getControls();
+    final Control[] controls = new Control[requestControls.length + 2];
+    System.arraycopy(requestControls,0,controls,0,requestControls.length);
+    controls[requestControls.length] = sortRequestControl;
+    controls[requestControls.length + 1] = vlvRequestControl;
+    final SearchResult searchResult = ldapConnection.search(searchRequest.duplicate(controls));
+
+    final VirtualListViewResponseControl c = VirtualListViewResponseControl.get(searchResult);
+    if(c != null) {
+      contentCount = c.getContentCount();
+      final ASN1OctetString newContextID = c.getContextID();
+      if(!sameContextID(contextID,newContextID)) {
+        // the list may have changed since the cached windows were retrieved
+        windows.clear();
+        contextID = newContextID;
+      }
+    }
+    final List<SearchResultEntry> window =
+      Collections.unmodifiableList(new ArrayList<SearchResultEntry>(
+        searchResult.getSearchEntries()));
+    windows.put(new WindowKey(contextID,windowIndex),window);
+    return window;
+  }
+
+
+
+  private static boolean sameContextID(final ASN1OctetString a, final ASN1OctetString b) {
+    if(a == null || b == null) {
+      return a == b;
+    }
+    return a.equalsIgnoreType(b);
+  }
+
+
+
+  /**
+   * Identifies a window by the context ID under which it was retrieved
+   * and its position in the list.
+   */
+  private static final class WindowKey {
+
+    private WindowKey(final ASN1OctetString contextID, final int windowIndex) {
+      this.contextID = contextID == null ? "" : StaticUtils.toHex(contextID.getValue());
+      this.windowIndex = windowIndex;
+    }
+
+
+
+    @Override
+    public boolean equals(final Object o) {
+      if(!(o instanceof WindowKey)) {
+        return false;
+      }
+      final WindowKey that = (WindowKey)o;
+      return (windowIndex == that.windowIndex) && contextID.equals(that.contextID);
+    }
+
+
+
+    @Override
+    public int hashCode() {
+      return 31 * contextID.hashCode() + windowIndex;
+    }
+
+
+
+    private final String contextID;
+
+
+    private final int windowIndex;
+
+  }
+
+
+
+  private long cacheHits;
+
+
+  private long cacheMisses;
+
+
+  private int contentCount = -1;
+
+
+  private ASN1OctetString contextID;
+
+
+  private final boolean isCritical;
+
+
+  private final LDAPConnection ldapConnection;
+
+
+  private final int maxCachedWindows;
+
+
+  private final SearchRequest searchRequest;
+
+
+  private final ServerSideSortRequestControl sortRequestControl;
+
+
+  private final int windowSize;
+
+
+  private final Map<WindowKey,List<SearchResultEntry>> windows;
+
+}
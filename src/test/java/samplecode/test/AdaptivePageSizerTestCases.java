@@ -0,0 +1,72 @@
+package samplecode.test;
+
+import java.util.concurrent.TimeUnit;
+import org.junit.Test;
+import samplecode.search.AdaptivePageSizer;
+
+import static org.junit.Assert.assertEquals;
+
+public final class AdaptivePageSizerTestCases
+{
+
+  private static final long MB = 1024L * 1024L;
+
+
+
+
+
+
+  @Test
+  public void growsWhileBelowTargetLatencyTestCase()
+  {
+    AdaptivePageSizer pageSizer = new AdaptivePageSizer(100,1,1000,100L,64L * MB);
+    assertEquals(200,pageSizer.recordPage(100,100L * 1024L,TimeUnit.MILLISECONDS.toNanos(10L)));
+    assertEquals(400,pageSizer.recordPage(200,200L * 1024L,TimeUnit.MILLISECONDS.toNanos(10L)));
+    assertEquals(800,pageSizer.recordPage(400,400L * 1024L,TimeUnit.MILLISECONDS.toNanos(10L)));
+    assertEquals(1000,pageSizer.recordPage(800,800L * 1024L,TimeUnit.MILLISECONDS.toNanos(10L)));
+    assertEquals(4,pageSizer.getAdjustments());
+  }
+
+
+
+
+
+
+  @Test
+  public void partialPageDoesNotGrowTestCase()
+  {
+    AdaptivePageSizer pageSizer = new AdaptivePageSizer(100,1,1000,100L,64L * MB);
+    assertEquals(100,pageSizer.recordPage(40,40L * 1024L,TimeUnit.MILLISECONDS.toNanos(1L)));
+    assertEquals(100,pageSizer.recordPage(0,0L,0L));
+    assertEquals(0,pageSizer.getAdjustments());
+  }
+
+
+
+
+
+
+  @Test
+  public void shrinksWhenAboveTargetLatencyTestCase()
+  {
+    AdaptivePageSizer pageSizer = new AdaptivePageSizer(1000,1,10000,100L,64L * MB);
+    assertEquals(250,pageSizer.recordPage(1000,1000L * 1024L,TimeUnit.MILLISECONDS.toNanos(400L)));
+    assertEquals(250,pageSizer.recordPage(250,250L * 1024L,TimeUnit.MILLISECONDS.toNanos(80L)));
+  }
+
+
+
+
+
+
+  @Test
+  public void shrinksWhenAboveMemoryBudgetTestCase()
+  {
+    AdaptivePageSizer pageSizer = new AdaptivePageSizer(100,1,10000,1000L,64L * MB);
+    // 100 groups of 5 MB
+    assertEquals(12,pageSizer.recordPage(100,500L * MB,TimeUnit.MILLISECONDS.toNanos(10L)));
+    // growth is limited by the budget
+    assertEquals(12,pageSizer.recordPage(12,60L * MB,TimeUnit.MILLISECONDS.toNanos(10L)));
+    assertEquals(1,pageSizer.getAdjustments());
+  }
+}
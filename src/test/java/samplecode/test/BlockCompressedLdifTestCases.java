@@ -0,0 +1,196 @@
+package samplecode.test;
+
+import com.unboundid.ldap.sdk.Attribute;
+import com.unboundid.ldap.sdk.Entry;
+import com.unboundid.ldap.sdk.EntrySource;
+import com.unboundid.ldif.LDIFReader;
+import com.unboundid.ldif.LDIFRecord;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import org.junit.*;
+import samplecode.ldif.BlockCompressedLdifReader;
+import samplecode.ldif.BlockCompressedLdifWriter;
+import samplecode.ldif.ReadLdifFile;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public final class BlockCompressedLdifTestCases
+{
+
+  private static final String BASE_DN = "dc=example,dc=com";
+
+
+  private static final int ENTRIES = 500;
+
+
+  private File file;
+
+
+
+
+
+
+  @Test
+  public void recordsAreReadInOrderFromSeveralBlocksTestCase() throws Exception
+  {
+    BlockCompressedLdifReader reader = new BlockCompressedLdifReader(file,4);
+    try
+    {
+      assertTrue(reader.getBlocks().size() > 10);
+      assertEquals(ENTRIES,reader.getRecordCount());
+      for(int i = 0; i < ENTRIES; ++i)
+      {
+        assertEquals(newEntry(i),reader.readEntry());
+      }
+      assertNull(reader.readLDIFRecord());
+      assertEquals(ENTRIES,reader.getRecordsRead());
+      assertEquals(reader.getBlocks().get(reader.getBlocks().size() - 1).getCompressedOffset() +
+        reader.getBlocks().get(reader.getBlocks().size() - 1).getCompressedLength(),
+        reader.getBytesConsumed());
+    }
+    finally
+    {
+      reader.close();
+    }
+  }
+
+
+
+
+
+
+  @Test
+  public void recordsAndBlocksAreReadDirectlyTestCase() throws Exception
+  {
+    BlockCompressedLdifReader reader = new BlockCompressedLdifReader(file,1);
+    try
+    {
+      assertEquals(newEntry(0),reader.readRecord(0L));
+      assertEquals(newEntry(321),reader.readRecord(321L));
+      assertEquals(newEntry(ENTRIES - 1),reader.readRecord(ENTRIES - 1));
+      assertNull(reader.readRecord(ENTRIES));
+
+      BlockCompressedLdifReader.Block block = reader.getBlocks().get(3);
+      List<LDIFRecord> records = reader.readBlock(3);
+      assertEquals(block.getRecordCount(),records.size());
+      assertEquals(block.getFirstDN(),records.get(0).getDN());
+      assertEquals(newEntry((int) block.getFirstRecord()),records.get(0));
+    }
+    finally
+    {
+      reader.close();
+    }
+  }
+
+
+
+
+
+
+  @Test
+  public void fileIsReadableAsGzippedLdifTestCase() throws Exception
+  {
+    LDIFReader reader = new LDIFReader(new GZIPInputStream(new FileInputStream(file)));
+    try
+    {
+      for(int i = 0; i < ENTRIES; ++i)
+      {
+        assertEquals(newEntry(i),reader.readEntry());
+      }
+      assertNull(reader.readEntry());
+    }
+    finally
+    {
+      reader.close();
+    }
+  }
+
+
+
+
+
+
+  @Test
+  public void entrySourceSuitsTheFileTestCase() throws Exception
+  {
+    File gzipped = File.createTempFile("entries",".ldif.gz");
+    gzipped.deleteOnExit();
+    GZIPOutputStream outputStream = new GZIPOutputStream(new FileOutputStream(gzipped));
+    try
+    {
+      for(int i = 0; i < ENTRIES; ++i)
+      {
+        outputStream.write((newEntry(i).toLDIFString() + "\n").getBytes("UTF-8"));
+      }
+    }
+    finally
+    {
+      outputStream.close();
+    }
+    assertTrue(BlockCompressedLdifReader.isBlockCompressed(file));
+    assertFalse(BlockCompressedLdifReader.isBlockCompressed(gzipped));
+
+    for(File ldifFile : new File[] {file,gzipped})
+    {
+      EntrySource entrySource = ReadLdifFile.newEntrySource(ldifFile,2);
+      try
+      {
+        for(int i = 0; i < ENTRIES; ++i)
+        {
+          assertEquals(newEntry(i),entrySource.nextEntry());
+        }
+        assertNull(entrySource.nextEntry());
+      }
+      finally
+      {
+        entrySource.close();
+      }
+    }
+  }
+
+
+
+
+
+
+  private static Entry newEntry(int i)
+  {
+    return new Entry("cn=user." + i + "," + BASE_DN,
+      new Attribute("objectClass","person"),
+      new Attribute("cn","user." + i),
+      new Attribute("sn",String.valueOf(i)));
+  }
+
+
+
+
+
+
+  @Before
+  public void setUp() throws IOException
+  {
+    file = File.createTempFile("entries",".ldif.gz");
+    file.deleteOnExit();
+    BlockCompressedLdifWriter writer = new BlockCompressedLdifWriter(file,2048);
+    try
+    {
+      for(int i = 0; i < ENTRIES; ++i)
+      {
+        writer.writeEntry(newEntry(i));
+      }
+    }
+    finally
+    {
+      writer.close();
+    }
+    assertEquals(ENTRIES,writer.getRecordsWritten());
+  }
+}
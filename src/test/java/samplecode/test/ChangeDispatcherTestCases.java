@@ -0,0 +1,220 @@
+package samplecode.test;
+
+import com.unboundid.ldap.sdk.Attribute;
+import com.unboundid.ldap.sdk.Control;
+import com.unboundid.ldap.sdk.SearchResultEntry;
+import com.unboundid.ldap.sdk.controls.PersistentSearchChangeType;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import org.junit.Test;
+import samplecode.changes.ChangeDispatcher;
+import samplecode.changes.ChangeEvent;
+import samplecode.changes.ChangeSubscriber;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public final class ChangeDispatcherTestCases
+{
+
+  @Test
+  public void everySubscriberReceivesEveryChangeInOrderTestCase() throws InterruptedException
+  {
+    ChangeDispatcher dispatcher = new ChangeDispatcher(1024,16);
+    RecordingSubscriber first = new RecordingSubscriber();
+    RecordingSubscriber second = new RecordingSubscriber();
+    ChangeDispatcher.Subscription firstSubscription = dispatcher.subscribe("first",first);
+    dispatcher.subscribe("second",second);
+    for(int i = 0; i < 1000; ++i)
+    {
+      dispatcher.publish(newChangeEvent(i));
+    }
+    dispatcher.close();
+
+    assertEquals(1000L,dispatcher.getPublished());
+    for(RecordingSubscriber subscriber : new RecordingSubscriber[]{first,second})
+    {
+      assertEquals(1000,subscriber.dns.size());
+      for(int i = 0; i < 1000; ++i)
+      {
+        assertEquals("cn=user." + i + ",dc=example,dc=com",subscriber.dns.get(i));
+      }
+      assertEquals(0L,subscriber.missed.get());
+      assertTrue(subscriber.largestBatch <= 16);
+    }
+    assertEquals(1000L,firstSubscription.getDelivered());
+    assertEquals(0L,firstSubscription.getLag());
+  }
+
+
+
+
+
+
+  @Test
+  public void slowSubscriberDoesNotStallPublisherTestCase() throws InterruptedException
+  {
+    ChangeDispatcher dispatcher = new ChangeDispatcher(64,8);
+    RecordingSubscriber fast = new RecordingSubscriber();
+    final CountDownLatch blocked = new CountDownLatch(1);
+    RecordingSubscriber slow = new RecordingSubscriber()
+    {
+      @Override
+      public void changesReceived(List<ChangeEvent> changes)
+      {
+        super.changesReceived(changes);
+        try
+        {
+          blocked.await();
+        }
+        catch(InterruptedException interruptedException)
+        {
+          Thread.currentThread().interrupt();
+        }
+      }
+    };
+    dispatcher.subscribe("fast",fast);
+    ChangeDispatcher.Subscription slowSubscription = dispatcher.subscribe("slow",slow);
+
+    // the slow subscriber is blocked, and the publisher still completes
+    for(int i = 0; i < 10000; ++i)
+    {
+      dispatcher.publish(newChangeEvent(i));
+    }
+    assertTrue(slowSubscription.getLag() > 64);
+    blocked.countDown();
+    dispatcher.close();
+
+    // every change is either delivered or reported as missed, and both
+    // subscribers end with the last change
+    assertTrue(slow.missed.get() > 0L);
+    assertEquals(slow.missed.get(),slowSubscription.getMissed());
+    for(RecordingSubscriber subscriber : new RecordingSubscriber[]{fast,slow})
+    {
+      assertEquals(10000L,subscriber.dns.size() + subscriber.missed.get());
+      assertEquals("cn=user.9999,dc=example,dc=com",
+        subscriber.dns.get(subscriber.dns.size() - 1));
+    }
+  }
+
+
+
+
+
+
+  @Test
+  public void concurrentPublishersLoseNoChangeTestCase() throws InterruptedException
+  {
+    final int changesPerPublisher = 100000;
+    final ChangeDispatcher dispatcher = new ChangeDispatcher(1 << 20,256);
+    RecordingSubscriber subscriber = new RecordingSubscriber();
+    dispatcher.subscribe("subscriber",subscriber);
+    List<Thread> publishers = new ArrayList<Thread>();
+    for(int p = 0; p < 4; ++p)
+    {
+      final int first = p * changesPerPublisher;
+      Thread publisher = new Thread(new Runnable()
+      {
+        @Override
+        public void run()
+        {
+          for(int i = first; i < first + changesPerPublisher; ++i)
+          {
+            dispatcher.publish(newChangeEvent(i));
+          }
+        }
+      });
+      publishers.add(publisher);
+      publisher.start();
+    }
+    for(Thread publisher : publishers)
+    {
+      publisher.join();
+    }
+    dispatcher.close();
+
+    // every change is delivered once, and the changes of each publisher
+    // in the order in which it published them
+    assertEquals(4L * changesPerPublisher,dispatcher.getPublished());
+    assertEquals(0L,subscriber.missed.get());
+    assertEquals(4 * changesPerPublisher,subscriber.dns.size());
+    int[] next = new int[4];
+    for(String dn : subscriber.dns)
+    {
+      int i = Integer.parseInt(dn.substring("cn=user.".length(),dn.indexOf(',')));
+      int p = i / changesPerPublisher;
+      assertEquals(p * changesPerPublisher + next[p],i);
+      ++next[p];
+    }
+  }
+
+
+
+
+
+
+  @Test
+  public void cancelledSubscriberStopsReceivingTestCase() throws InterruptedException
+  {
+    ChangeDispatcher dispatcher = new ChangeDispatcher(16,4);
+    RecordingSubscriber subscriber = new RecordingSubscriber();
+    ChangeDispatcher.Subscription subscription = dispatcher.subscribe("cancelled",subscriber);
+    subscription.cancel();
+    assertEquals(0,dispatcher.getSubscriptions().size());
+    dispatcher.publish(newChangeEvent(0));
+    dispatcher.close();
+    TimeUnit.MILLISECONDS.sleep(20L);
+    assertEquals(0,subscriber.dns.size());
+  }
+
+
+
+
+
+
+  private static ChangeEvent newChangeEvent(int i)
+  {
+    SearchResultEntry entry = new SearchResultEntry("cn=user." + i + ",dc=example,dc=com",
+      new Attribute[]{new Attribute("cn","user." + i)},new Control[0]);
+    return new ChangeEvent(entry,PersistentSearchChangeType.MODIFY,null,i);
+  }
+
+
+
+
+
+
+  private static class RecordingSubscriber implements ChangeSubscriber
+  {
+
+    private final List<String> dns = Collections.synchronizedList(new ArrayList<String>());
+
+    private final AtomicLong missed = new AtomicLong();
+
+    private volatile int largestBatch;
+
+    private RecordingSubscriber()
+    {
+    }
+
+    @Override
+    public void changesReceived(List<ChangeEvent> changes)
+    {
+      largestBatch = Math.max(largestBatch,changes.size());
+      for(ChangeEvent change : changes)
+      {
+        dns.add(change.getDN());
+      }
+    }
+
+    @Override
+    public void changesMissed(long count)
+    {
+      missed.addAndGet(count);
+    }
+  }
+}
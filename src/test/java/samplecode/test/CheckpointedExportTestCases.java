@@ -0,0 +1,205 @@
+package samplecode.test;
+
+import com.unboundid.ldap.listener.InMemoryDirectoryServer;
+import com.unboundid.ldap.listener.InMemoryDirectoryServerConfig;
+import com.unboundid.ldap.sdk.*;
+import com.unboundid.ldif.LDIFException;
+import com.unboundid.ldif.LDIFReader;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+import org.junit.*;
+import samplecode.search.CheckpointedExport;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public final class CheckpointedExportTestCases
+{
+
+  private static final String BASE_DN = "dc=example,dc=com";
+
+  private InMemoryDirectoryServer directoryServer;
+
+  private LDAPConnectionPool ldapConnectionPool;
+
+  private File outputFile;
+
+  private File checkpointFile;
+
+
+
+
+
+
+  @Test
+  public void completeExportTestCase() throws LDAPException, LDIFException, IOException
+  {
+    CheckpointedExport export = newExport(outputFile,checkpointFile);
+    assertEquals(200L,export.export());
+    assertFalse(checkpointFile.exists());
+    assertEquals(0,export.getRestarts());
+
+    List<String> keys = readKeys(outputFile);
+    assertEquals(200,keys.size());
+    List<String> sorted = new ArrayList<String>(keys);
+    Collections.sort(sorted,String.CASE_INSENSITIVE_ORDER);
+    assertEquals(sorted,keys);
+  }
+
+
+
+
+
+
+  @Test
+  public void resumeFromCheckpointTestCase() throws LDAPException, LDIFException, IOException
+  {
+    File completeFile = File.createTempFile("complete",".ldif");
+    completeFile.deleteOnExit();
+    newExport(completeFile,checkpointFile).export();
+    byte[] complete = readBytes(completeFile);
+    List<String> keys = readKeys(completeFile);
+
+    // simulate a failure after the checkpoint of the fiftieth entry, with
+    // part of the fifty-first entry written after the checkpoint
+    int offset = indexOfEntry(complete,50);
+    OutputStream outputStream = new FileOutputStream(outputFile);
+    outputStream.write(complete,0,offset);
+    outputStream.write("dn: cn=partial".getBytes("UTF-8"));
+    outputStream.close();
+    Properties checkpoint = new Properties();
+    checkpoint.setProperty(CheckpointedExport.CHECKPOINT_LAST_KEY,keys.get(49));
+    checkpoint.setProperty(CheckpointedExport.CHECKPOINT_ENTRIES_EXPORTED,"50");
+    checkpoint.setProperty(CheckpointedExport.CHECKPOINT_OUTPUT_LENGTH,Integer.toString(offset));
+    outputStream = new FileOutputStream(checkpointFile);
+    checkpoint.store(outputStream,null);
+    outputStream.close();
+
+    CheckpointedExport export = newExport(outputFile,checkpointFile);
+    assertEquals(200L,export.export());
+    assertFalse(checkpointFile.exists());
+    assertTrue(export.getStatistics().contains("exportedThisRun=150"));
+    assertArrayEquals(complete,readBytes(outputFile));
+  }
+
+
+
+
+
+
+  private CheckpointedExport newExport(File output, File checkpoint) throws LDAPException
+  {
+    SearchRequest searchRequest =
+      new SearchRequest(BASE_DN,SearchScope.SUB,"(objectClass=person)");
+    CheckpointedExport export =
+      new CheckpointedExport(ldapConnectionPool,searchRequest,"cn",output,checkpoint);
+    export.setPageSize(30);
+    export.setCheckpointInterval(10);
+    return export;
+  }
+
+
+
+
+
+
+  private static List<String> readKeys(File file) throws IOException, LDIFException
+  {
+    List<String> keys = new ArrayList<String>();
+    LDIFReader ldifReader = new LDIFReader(file);
+    Entry entry;
+    while((entry = ldifReader.readEntry()) != null)
+    {
+      keys.add(entry.getAttributeValue("cn"));
+    }
+    ldifReader.close();
+    return keys;
+  }
+
+
+
+
+
+
+  private static byte[] readBytes(File file) throws IOException
+  {
+    RandomAccessFile randomAccessFile = new RandomAccessFile(file,"r");
+    byte[] bytes = new byte[(int)randomAccessFile.length()];
+    randomAccessFile.readFully(bytes);
+    randomAccessFile.close();
+    return bytes;
+  }
+
+
+
+
+
+
+  /**
+   * Returns the offset of the "dn:" line of the entry with the specified
+   * zero-based index.
+   */
+  private static int indexOfEntry(byte[] ldif, int index) throws IOException
+  {
+    String text = new String(ldif,"UTF-8");
+    int offset = -1;
+    for(int i = 0; i <= index; ++i)
+    {
+      offset = text.indexOf(i == 0 ? "dn: " : "\ndn: ",offset + 1);
+      if(i > 0)
+      {
+        ++offset;
+      }
+    }
+    return text.substring(0,offset).getBytes("UTF-8").length;
+  }
+
+
+
+
+
+
+  @Before
+  public void setUp() throws LDAPException, LDIFException, IOException
+  {
+    InMemoryDirectoryServerConfig config = new InMemoryDirectoryServerConfig(BASE_DN);
+    directoryServer = new InMemoryDirectoryServer(config);
+    directoryServer.startListening();
+    directoryServer.add("dn: " + BASE_DN,"objectClass: top","objectClass: domain","dc: example");
+    for(int i = 0; i < 200; ++i)
+    {
+      directoryServer.add("dn: cn=user." + i + "," + BASE_DN,"objectClass: top",
+        "objectClass: person","cn: user." + i,"sn: " + i);
+    }
+    LDAPConnection ldapConnection =
+      new LDAPConnection("localhost",directoryServer.getListenPort());
+    ldapConnectionPool = new LDAPConnectionPool(ldapConnection,1,2);
+    outputFile = File.createTempFile("export",".ldif");
+    outputFile.deleteOnExit();
+    checkpointFile = new File(outputFile.getPath() + ".checkpoint");
+    checkpointFile.deleteOnExit();
+  }
+
+
+
+
+
+
+  @After
+  public void tearDown()
+  {
+    ldapConnectionPool.close();
+    directoryServer.shutDown(true);
+    outputFile.delete();
+    checkpointFile.delete();
+  }
+}
@@ -0,0 +1,145 @@
+package samplecode.test;
+
+import com.unboundid.ldap.sdk.Attribute;
+import com.unboundid.ldap.sdk.Control;
+import com.unboundid.ldap.sdk.SearchResultEntry;
+import com.unboundid.ldap.sdk.controls.PersistentSearchChangeType;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.junit.Test;
+import samplecode.changes.ChangeEvent;
+import samplecode.changes.ChangeSubscriber;
+import samplecode.changes.CoalescingSubscriber;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public final class CoalescingSubscriberTestCases
+{
+
+  @Test
+  public void burstOfModifiesIsMergedTestCase() throws InterruptedException
+  {
+    RecordingSubscriber recorder = new RecordingSubscriber();
+    CoalescingSubscriber coalescingSubscriber = new CoalescingSubscriber(recorder,60000L);
+    for(int i = 0; i < 100; ++i)
+    {
+      coalescingSubscriber.changesReceived(Arrays.asList(
+        newChangeEvent("cn=user.1,dc=example,dc=com",PersistentSearchChangeType.MODIFY,i),
+        newChangeEvent("CN=User.2, dc=example,dc=com",PersistentSearchChangeType.MODIFY,i)));
+    }
+    coalescingSubscriber.close();
+
+    assertEquals(Arrays.asList("modify cn=user.1,dc=example,dc=com 99",
+      "modify CN=User.2, dc=example,dc=com 99"),recorder.changes);
+    assertEquals(200L,coalescingSubscriber.getReceived());
+    assertEquals(2L,coalescingSubscriber.getDelivered());
+  }
+
+
+
+
+
+
+  @Test
+  public void deleteThenAddOrderIsKeptTestCase() throws InterruptedException
+  {
+    String parent = "ou=parent,dc=example,dc=com";
+    String child = "cn=child,ou=parent,dc=example,dc=com";
+    RecordingSubscriber recorder = new RecordingSubscriber();
+    CoalescingSubscriber coalescingSubscriber = new CoalescingSubscriber(recorder,60000L);
+    coalescingSubscriber.changesReceived(Arrays.asList(
+      newChangeEvent(parent,PersistentSearchChangeType.MODIFY,0),
+      newChangeEvent(child,PersistentSearchChangeType.DELETE,1),
+      newChangeEvent(parent,PersistentSearchChangeType.DELETE,2),
+      newChangeEvent(parent,PersistentSearchChangeType.ADD,3),
+      newChangeEvent(parent,PersistentSearchChangeType.MODIFY,4),
+      newChangeEvent(child,PersistentSearchChangeType.ADD,5),
+      newChangeEvent("cn=temporary,dc=example,dc=com",PersistentSearchChangeType.ADD,6),
+      newChangeEvent("cn=temporary,dc=example,dc=com",PersistentSearchChangeType.MODIFY,7),
+      newChangeEvent("cn=temporary,dc=example,dc=com",PersistentSearchChangeType.DELETE,8)));
+    coalescingSubscriber.close();
+
+    assertEquals(Arrays.asList("delete " + child + " 1","delete " + parent + " 2",
+      "add " + parent + " 4","add " + child + " 5"),recorder.changes);
+  }
+
+
+
+
+
+
+  @Test
+  public void changesAreDeliveredAfterTheWindowTestCase() throws InterruptedException
+  {
+    final CountDownLatch delivered = new CountDownLatch(1);
+    RecordingSubscriber recorder = new RecordingSubscriber()
+    {
+      @Override
+      public void changesReceived(List<ChangeEvent> changes)
+      {
+        super.changesReceived(changes);
+        delivered.countDown();
+      }
+    };
+    CoalescingSubscriber coalescingSubscriber = new CoalescingSubscriber(recorder,50L);
+    long start = System.nanoTime();
+    coalescingSubscriber.changesMissed(3L);
+    coalescingSubscriber.changesReceived(Collections.singletonList(
+      newChangeEvent("cn=user.1,dc=example,dc=com",PersistentSearchChangeType.ADD,0)));
+    assertTrue(delivered.await(10L,TimeUnit.SECONDS));
+    assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(50L));
+    assertEquals(Arrays.asList("missed 3","add cn=user.1,dc=example,dc=com 0"),recorder.changes);
+    coalescingSubscriber.close();
+    assertEquals(2,recorder.changes.size());
+  }
+
+
+
+
+
+
+  private static ChangeEvent newChangeEvent(String dn,PersistentSearchChangeType changeType,
+                                            int changeNumber)
+  {
+    SearchResultEntry entry = new SearchResultEntry(dn,
+      new Attribute[]{new Attribute("description",String.valueOf(changeNumber))},
+      new Control[0]);
+    return new ChangeEvent(entry,changeType,null,changeNumber);
+  }
+
+
+
+
+
+
+  private static class RecordingSubscriber implements ChangeSubscriber
+  {
+
+    private final List<String> changes = Collections.synchronizedList(new ArrayList<String>());
+
+    private RecordingSubscriber()
+    {
+    }
+
+    @Override
+    public void changesReceived(List<ChangeEvent> changes)
+    {
+      for(ChangeEvent change : changes)
+      {
+        this.changes.add(change.getChangeType().getName() + " " + change.getDN() + " " +
+          change.getEntry().getAttributeValue("description"));
+      }
+    }
+
+    @Override
+    public void changesMissed(long count)
+    {
+      changes.add("missed " + count);
+    }
+  }
+}
@@ -0,0 +1,261 @@
+package samplecode.test;
+
+import com.unboundid.ldap.listener.InMemoryDirectoryServer;
+import com.unboundid.ldap.listener.InMemoryDirectoryServerConfig;
+import com.unboundid.ldap.sdk.Attribute;
+import com.unboundid.ldap.sdk.Entry;
+import com.unboundid.ldap.sdk.EntrySource;
+import com.unboundid.ldif.LDIFReader;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+import org.junit.*;
+import samplecode.ldif.EntrySnapshotReader;
+import samplecode.ldif.EntrySnapshotWriter;
+import samplecode.ldif.ReadLdifFile;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public final class EntrySnapshotTestCases
+{
+
+  private static final String BASE_DN = "dc=example,dc=com";
+
+
+  private static final int ENTRIES = 200;
+
+
+
+
+
+
+  @Test
+  public void entriesAreReadBackFromLdifSnapshotTestCase() throws Exception
+  {
+    StringBuilder ldif = new StringBuilder();
+    for(int i = 0; i < ENTRIES; ++i)
+    {
+      ldif.append(newEntry(i).toLDIFString()).append('\n');
+    }
+    ByteArrayOutputStream snapshot = new ByteArrayOutputStream();
+    EntrySnapshotWriter writer = new EntrySnapshotWriter(snapshot);
+    LDIFReader ldifReader =
+      new LDIFReader(new ByteArrayInputStream(ldif.toString().getBytes("UTF-8")));
+    try
+    {
+      assertEquals(ENTRIES,writer.copy(ldifReader));
+    }
+    finally
+    {
+      ldifReader.close();
+      writer.close();
+    }
+
+    EntrySnapshotReader reader =
+      new EntrySnapshotReader(new ByteArrayInputStream(snapshot.toByteArray()));
+    try
+    {
+      for(int i = 0; i < ENTRIES; ++i)
+      {
+        assertEquals(newEntry(i),reader.readEntry());
+      }
+      assertNull(reader.readEntry());
+      assertNull(reader.nextEntry());
+      assertEquals(ENTRIES,reader.getEntriesRead());
+    }
+    finally
+    {
+      reader.close();
+    }
+  }
+
+
+
+
+
+
+  @Test
+  public void serverSnapshotIsReloadedTestCase() throws Exception
+  {
+    InMemoryDirectoryServer directoryServer =
+      new InMemoryDirectoryServer(new InMemoryDirectoryServerConfig(BASE_DN));
+    directoryServer.add("dn: " + BASE_DN,"objectClass: top","objectClass: domain","dc: example");
+    for(int i = 0; i < ENTRIES; ++i)
+    {
+      directoryServer.add(newEntry(i));
+    }
+    File file = File.createTempFile("server",".snapshot");
+    file.deleteOnExit();
+    EntrySnapshotWriter writer = new EntrySnapshotWriter(file);
+    try
+    {
+      assertEquals(ENTRIES + 1,writer.copy(directoryServer,BASE_DN));
+    }
+    finally
+    {
+      writer.close();
+      directoryServer.shutDown(true);
+    }
+    assertTrue(EntrySnapshotReader.isSnapshot(file));
+
+    InMemoryDirectoryServer reloaded =
+      new InMemoryDirectoryServer(new InMemoryDirectoryServerConfig(BASE_DN));
+    EntrySource entrySource = ReadLdifFile.newEntrySource(file,2);
+    try
+    {
+      assertTrue(entrySource instanceof EntrySnapshotReader);
+      Entry entry;
+      while((entry = entrySource.nextEntry()) != null)
+      {
+        reloaded.add(entry);
+      }
+    }
+    finally
+    {
+      entrySource.close();
+    }
+    assertEquals(ENTRIES + 1,reloaded.countEntries());
+    assertEquals(newEntry(42),reloaded.getEntry("cn=user.42," + BASE_DN));
+  }
+
+
+
+
+
+
+  @Test
+  public void damagedSnapshotIsReportedTestCase() throws Exception
+  {
+    File file = File.createTempFile("damaged",".snapshot");
+    file.deleteOnExit();
+    EntrySnapshotWriter writer = new EntrySnapshotWriter(file);
+    try
+    {
+      for(int i = 0; i < ENTRIES; ++i)
+      {
+        writer.writeEntry(newEntry(i));
+      }
+    }
+    finally
+    {
+      writer.close();
+    }
+
+    // a changed character of a value is only found by the checksum
+    RandomAccessFile randomAccessFile = new RandomAccessFile(file,"rw");
+    byte[] bytes = new byte[(int) randomAccessFile.length()];
+    randomAccessFile.readFully(bytes);
+    int offset = indexOf(bytes,"user.100".getBytes("UTF-8"));
+    randomAccessFile.seek(offset + 5);
+    randomAccessFile.write('9');
+    assertReadFails(file,"checksum");
+
+    randomAccessFile.seek(offset + 5);
+    randomAccessFile.write('1');
+    randomAccessFile.setLength(bytes.length - 10);
+    randomAccessFile.close();
+    assertReadFails(file,"ends");
+
+    File ldifFile = File.createTempFile("entries",".ldif");
+    ldifFile.deleteOnExit();
+    assertFalse(EntrySnapshotReader.isSnapshot(ldifFile));
+  }
+
+
+
+
+
+
+  @Test
+  public void oversizedEntryLengthIsReportedTestCase() throws Exception
+  {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    DataOutputStream dataOutputStream = new DataOutputStream(bytes);
+    dataOutputStream.write(EntrySnapshotWriter.MAGIC.getBytes("US-ASCII"));
+    dataOutputStream.writeInt(EntrySnapshotWriter.VERSION);
+    dataOutputStream.writeInt(Integer.MAX_VALUE);
+    dataOutputStream.close();
+
+    // the length is reported instead of allocated
+    EntrySnapshotReader reader =
+      new EntrySnapshotReader(new ByteArrayInputStream(bytes.toByteArray()));
+    try
+    {
+      reader.readEntry();
+      fail("the length is not reported");
+    }
+    catch(IOException ioException)
+    {
+      assertTrue(ioException.getMessage(),ioException.getMessage().contains("invalid length"));
+    }
+    finally
+    {
+      reader.close();
+    }
+  }
+
+
+
+
+
+
+  private static void assertReadFails(File file,String message) throws IOException
+  {
+    EntrySnapshotReader reader = new EntrySnapshotReader(file);
+    try
+    {
+      while(reader.readEntry() != null)
+      {
+        // the entries before the damage are read
+      }
+      fail("the damage is not reported");
+    }
+    catch(IOException ioException)
+    {
+      assertTrue(ioException.getMessage(),ioException.getMessage().contains(message));
+    }
+    finally
+    {
+      reader.close();
+    }
+  }
+
+
+
+
+
+
+  private static int indexOf(byte[] bytes,byte[] pattern)
+  {
+    for(int i = 0; i + pattern.length <= bytes.length; ++i)
+    {
+      if(Arrays.equals(pattern,Arrays.copyOfRange(bytes,i,i + pattern.length)))
+      {
+        return i;
+      }
+    }
+    throw new AssertionError("not found");
+  }
+
+
+
+
+
+
+  private static Entry newEntry(int i)
+  {
+    return new Entry("cn=user." + i + "," + BASE_DN,
+      new Attribute("objectClass","top","person"),
+      new Attribute("cn","user." + i),
+      new Attribute("sn","S\u00f8rensen " + i),
+      new Attribute("userPassword",new byte[] {0,(byte) i,(byte) 0xFF,'\n'}));
+  }
+}
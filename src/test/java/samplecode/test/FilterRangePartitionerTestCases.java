@@ -0,0 +1,109 @@
+package samplecode.test;
+
+import com.unboundid.ldap.listener.InMemoryDirectoryServer;
+import com.unboundid.ldap.listener.InMemoryDirectoryServerConfig;
+import com.unboundid.ldap.sdk.*;
+import com.unboundid.ldif.LDIFException;
+import java.util.*;
+import org.junit.*;
+import samplecode.search.FilterRangePartitioner;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public final class FilterRangePartitionerTestCases
+{
+
+  private static final String BASE_DN = "dc=example,dc=com";
+
+  private InMemoryDirectoryServer directoryServer;
+
+
+
+
+
+
+  @Test
+  public void defaultBoundariesAscendingTestCase()
+  {
+    for(int numSlices = 1; numSlices <= 100; ++numSlices)
+    {
+      List<String> boundaries = FilterRangePartitioner.defaultBoundaries(numSlices);
+      assertEquals(numSlices - 1,boundaries.size());
+      for(int i = 1; i < boundaries.size(); ++i)
+      {
+        assertTrue(boundaries.get(i - 1).compareTo(boundaries.get(i)) < 0);
+      }
+    }
+  }
+
+
+
+
+
+
+  @Test(expected = IllegalArgumentException.class)
+  public void unorderedBoundariesTestCase()
+  {
+    FilterRangePartitioner.newFilterRangePartitioner("uid",Arrays.asList("m","c"));
+  }
+
+
+
+
+
+
+  @Test
+  public void sliceCountsSumToFullCountTestCase() throws LDAPException
+  {
+    Filter filter = Filter.createEqualityFilter("objectClass","person");
+    int fullCount = directoryServer.search(BASE_DN,SearchScope.SUB,filter).getEntryCount();
+    assertEquals(500,fullCount);
+
+    for(int numSlices = 1; numSlices <= 8; ++numSlices)
+    {
+      FilterRangePartitioner partitioner =
+        FilterRangePartitioner.newFilterRangePartitioner("uid",numSlices);
+      int sliceTotal = 0;
+      for(Filter sliceFilter : partitioner.getSliceFilters(filter))
+      {
+        sliceTotal += directoryServer.search(BASE_DN,SearchScope.SUB,sliceFilter).getEntryCount();
+      }
+      assertEquals(fullCount,sliceTotal);
+    }
+  }
+
+
+
+
+
+
+  @Before
+  public void setUp() throws LDAPException, LDIFException
+  {
+    InMemoryDirectoryServerConfig config = new InMemoryDirectoryServerConfig(BASE_DN);
+    directoryServer = new InMemoryDirectoryServer(config);
+    directoryServer.add("dn: " + BASE_DN,"objectClass: top","objectClass: domain","dc: example");
+    directoryServer.add("dn: ou=people," + BASE_DN,"objectClass: top",
+      "objectClass: organizationalUnit","ou: people");
+    Random random = new Random(1L);
+    for(int i = 0; i < 500; ++i)
+    {
+      String uid = Long.toString(Math.abs(random.nextLong()),36) + i;
+      directoryServer.add("dn: uid=" + uid + ",ou=people," + BASE_DN,"objectClass: top",
+        "objectClass: person","objectClass: organizationalPerson",
+        "objectClass: inetOrgPerson","uid: " + uid,"cn: " + uid,"sn: " + uid);
+    }
+  }
+
+
+
+
+
+
+  @After
+  public void tearDown()
+  {
+    directoryServer.shutDown(true);
+  }
+}
@@ -0,0 +1,140 @@
+package samplecode.test;
+
+import com.unboundid.ldap.listener.InMemoryDirectoryServerConfig;
+import com.unboundid.ldap.listener.InMemoryRequestHandler;
+import com.unboundid.ldap.listener.LDAPListener;
+import com.unboundid.ldap.listener.LDAPListenerConfig;
+import com.unboundid.ldap.sdk.Entry;
+import com.unboundid.ldap.sdk.EntrySourceException;
+import com.unboundid.ldap.sdk.LDAPConnection;
+import com.unboundid.ldap.sdk.LDAPConnectionPool;
+import com.unboundid.ldap.sdk.LDAPResult;
+import com.unboundid.ldap.sdk.ResultCode;
+import com.unboundid.ldif.LDIFEntrySource;
+import com.unboundid.ldif.LDIFReader;
+import java.io.ByteArrayInputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import org.junit.*;
+import samplecode.ldif.HierarchicalAddScheduler;
+import samplecode.ldif.LdifBulkLoader;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public final class HierarchicalAddSchedulerTestCases
+{
+
+  private static final String BASE_DN = "dc=example,dc=com";
+
+
+
+
+
+
+  @Test
+  public void childIsHeldUntilParentCompletesTestCase() throws InterruptedException
+  {
+    HierarchicalAddScheduler scheduler = new HierarchicalAddScheduler();
+    HierarchicalAddScheduler.Add parent = scheduler.offer(new Entry("ou=people," + BASE_DN));
+    HierarchicalAddScheduler.Add sibling = scheduler.offer(new Entry("ou=groups," + BASE_DN));
+    assertNull(scheduler.offer(new Entry("uid=user.0,OU=People," + BASE_DN)));
+    assertNull(scheduler.offer(new Entry("cn=user.0,uid=user.0,ou=people," + BASE_DN)));
+    assertEquals(2,scheduler.getHeld());
+    assertEquals(2,scheduler.getInFlight());
+
+    assertTrue(scheduler.completed(sibling,new LDAPResult(1,ResultCode.SUCCESS)));
+    assertNull(scheduler.poll());
+    assertTrue(scheduler.completed(parent,new LDAPResult(2,ResultCode.SUCCESS)));
+    HierarchicalAddScheduler.Add child = scheduler.take();
+    assertEquals("uid=user.0,OU=People," + BASE_DN,child.getEntry().getDN());
+    assertNull(scheduler.poll());
+
+    // the grandchild is released by the child, even though it failed
+    assertTrue(scheduler.completed(child,new LDAPResult(3,ResultCode.UNWILLING_TO_PERFORM)));
+    HierarchicalAddScheduler.Add grandchild = scheduler.take();
+    assertEquals("cn=user.0,uid=user.0,ou=people," + BASE_DN,grandchild.getEntry().getDN());
+
+    // an entry sent before its parent was read is sent again once the
+    // parent is added
+    assertTrue(scheduler.completed(grandchild,new LDAPResult(4,ResultCode.SUCCESS)));
+    HierarchicalAddScheduler.Add early = scheduler.offer(new Entry("cn=early,ou=late," + BASE_DN));
+    assertFalse(scheduler.completed(early,new LDAPResult(5,ResultCode.NO_SUCH_OBJECT)));
+    HierarchicalAddScheduler.Add late = scheduler.offer(new Entry("ou=late," + BASE_DN));
+    assertTrue(scheduler.completed(late,new LDAPResult(6,ResultCode.SUCCESS)));
+    assertEquals("cn=early,ou=late," + BASE_DN,scheduler.take().getEntry().getDN());
+    assertEquals(1L,scheduler.getRetried());
+    assertEquals(0,scheduler.getHeld());
+  }
+
+
+
+
+
+
+  @Test
+  public void unsortedTreeIsLoadedTestCase() throws Exception
+  {
+    // the adds are sent on several connections at once
+    InMemoryRequestHandler directoryServer =
+      new InMemoryRequestHandler(new InMemoryDirectoryServerConfig(BASE_DN));
+    directoryServer.addEntry(new Entry("dn: " + BASE_DN,"objectClass: top","objectClass: domain",
+      "dc: example"),false);
+    LDAPListener ldapListener =
+      new LDAPListener(new LDAPListenerConfig(0,new SerializedRequestHandler(directoryServer)));
+    ldapListener.startListening();
+    LDAPConnectionPool ldapConnectionPool = new LDAPConnectionPool(
+      new LDAPConnection("localhost",ldapListener.getListenPort()),1,4);
+    try
+    {
+      // every user is listed before its organizational unit, and one unit
+      // has no entry at all
+      StringBuilder ldif = new StringBuilder();
+      for(int ou = 0; ou < 10; ++ou)
+      {
+        for(int user = 0; user < 50; ++user)
+        {
+          ldif.append("dn: cn=user.").append(user).append(",ou=").append(ou).append(',')
+            .append(BASE_DN).append("\nobjectClass: person\ncn: user.").append(user)
+            .append("\nsn: ").append(user).append("\n\n");
+        }
+        if(ou < 9)
+        {
+          ldif.append("dn: ou=").append(ou).append(',').append(BASE_DN)
+            .append("\nobjectClass: organizationalUnit\nou: ").append(ou).append("\n\n");
+        }
+      }
+      final List<String> notAdded = Collections.synchronizedList(new ArrayList<String>());
+      LdifBulkLoader loader = new LdifBulkLoader(ldapConnectionPool,4,16);
+      loader.setFailureListener(new LdifBulkLoader.FailureListener()
+      {
+        @Override
+        public void entryNotAdded(Entry entry,LDAPResult ldapResult)
+        {
+          notAdded.add(ldapResult.getResultCode() + " " + entry.getDN());
+        }
+
+        @Override
+        public void entryNotRead(EntrySourceException entrySourceException)
+        {
+        }
+      });
+      loader.load(new LDIFEntrySource(new LDIFReader(
+        new ByteArrayInputStream(ldif.toString().getBytes("UTF-8")))));
+
+      assertEquals(459L,loader.getAdded());
+      assertEquals(50,notAdded.size());
+      assertEquals(460,directoryServer.countEntriesBelow(BASE_DN));
+      assertEquals(51,directoryServer.countEntriesBelow("ou=3," + BASE_DN));
+      assertTrue(notAdded.contains(ResultCode.NO_SUCH_OBJECT + " cn=user.0,ou=9," + BASE_DN));
+    }
+    finally
+    {
+      ldapConnectionPool.close();
+      ldapListener.shutDown(true);
+    }
+  }
+}
@@ -0,0 +1,84 @@
+package samplecode.test;
+
+import java.util.Random;
+import org.junit.*;
+import samplecode.tools.LatencyHistogram;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public final class LatencyHistogramTestCases
+{
+
+  @Test
+  public void emptyHistogramTestCase()
+  {
+    LatencyHistogram histogram = new LatencyHistogram();
+    assertEquals(0L,histogram.getCount());
+    assertEquals(0L,histogram.getValueAtPercentile(99.0));
+    assertEquals(0L,histogram.getMax());
+  }
+
+
+
+
+
+
+  @Test
+  public void smallValuesExactTestCase()
+  {
+    LatencyHistogram histogram = new LatencyHistogram();
+    for(int v = 1; v <= 20; ++v)
+    {
+      histogram.recordValue(v);
+    }
+    assertEquals(10L,histogram.getValueAtPercentile(50.0));
+    assertEquals(19L,histogram.getValueAtPercentile(95.0));
+    assertEquals(20L,histogram.getMax());
+  }
+
+
+
+
+
+
+  @Test
+  public void percentileRelativeErrorTestCase()
+  {
+    LatencyHistogram histogram = new LatencyHistogram();
+    long[] values = new long[100000];
+    Random random = new Random(7L);
+    for(int i = 0; i < values.length; ++i)
+    {
+      values[i] = (long) Math.abs(random.nextGaussian() * 50000.0) + 1L;
+      histogram.recordValue(values[i]);
+    }
+    java.util.Arrays.sort(values);
+    for(double p : new double[] {50.0,95.0,99.0})
+    {
+      long exact = values[(int) Math.ceil(p / 100.0 * values.length) - 1];
+      long reported = histogram.getValueAtPercentile(p);
+      assertTrue(reported >= exact);
+      assertTrue((reported - exact) <= (exact / 32L) + 1L);
+    }
+    assertEquals(values[values.length - 1],histogram.getMax());
+  }
+
+
+
+
+
+
+  @Test
+  public void addTestCase()
+  {
+    LatencyHistogram a = new LatencyHistogram();
+    LatencyHistogram b = new LatencyHistogram();
+    a.recordValue(100L);
+    b.recordValue(Long.MAX_VALUE / 2L);
+    a.add(b);
+    assertEquals(2L,a.getCount());
+    assertEquals(Long.MAX_VALUE / 2L,a.getMax());
+    assertEquals(Long.MAX_VALUE / 2L,a.getValueAtPercentile(100.0));
+  }
+}
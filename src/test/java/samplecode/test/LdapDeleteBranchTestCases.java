@@ -0,0 +1,89 @@
+package samplecode.test;
+
+import com.unboundid.ldap.listener.InMemoryDirectoryServer;
+import com.unboundid.ldap.listener.InMemoryDirectoryServerConfig;
+import com.unboundid.ldap.sdk.*;
+import com.unboundid.ldif.LDIFException;
+import java.util.concurrent.ExecutorService;
+import org.junit.*;
+import samplecode.delete.LdapDeleteBranch;
+import samplecode.util.SampleCodeExecutors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+public final class LdapDeleteBranchTestCases
+{
+
+  private static final String BASE_DN = "dc=example,dc=com";
+
+  private static final String BRANCH_DN = "ou=branch," + BASE_DN;
+
+  private InMemoryDirectoryServer directoryServer;
+
+
+
+
+
+
+  @Test
+  public void deleteTreeConcurrentlyTestCase() throws LDAPException
+  {
+    // the in-memory server does not tolerate concurrent deletes on separate connections
+    LDAPConnectionPool pool = new LDAPConnectionPool(directoryServer.getConnection(),1,1);
+    ExecutorService executorService = SampleCodeExecutors.newExecutorService(4,true);
+    try
+    {
+      int numDeleted = LdapDeleteBranch.getInstance().deleteTreeConcurrently(pool,
+        new DN(BRANCH_DN),0,executorService);
+      assertEquals(1 + 10 + 100,numDeleted);
+      assertNull(directoryServer.getEntry(BRANCH_DN));
+      assertNotNull(directoryServer.getEntry(BASE_DN));
+      assertEquals(1,directoryServer.countEntries());
+    }
+    finally
+    {
+      SampleCodeExecutors.shutdownAndAwaitTermination(executorService);
+      pool.close();
+    }
+  }
+
+
+
+
+
+
+  @Before
+  public void setUp() throws LDAPException, LDIFException
+  {
+    InMemoryDirectoryServerConfig config = new InMemoryDirectoryServerConfig(BASE_DN);
+    directoryServer = new InMemoryDirectoryServer(config);
+    directoryServer.startListening();
+    directoryServer.add("dn: " + BASE_DN,"objectClass: top","objectClass: domain","dc: example");
+    directoryServer.add("dn: " + BRANCH_DN,"objectClass: top","objectClass: organizationalUnit",
+      "ou: branch");
+    for(int i = 0; i < 10; ++i)
+    {
+      String ouDN = "ou=unit." + i + "," + BRANCH_DN;
+      directoryServer.add("dn: " + ouDN,"objectClass: top","objectClass: organizationalUnit",
+        "ou: unit." + i);
+      for(int j = 0; j < 10; ++j)
+      {
+        directoryServer.add("dn: cn=user." + j + "," + ouDN,"objectClass: top",
+          "objectClass: person","cn: user." + j,"sn: " + j);
+      }
+    }
+  }
+
+
+
+
+
+
+  @After
+  public void tearDown()
+  {
+    directoryServer.shutDown(true);
+  }
+}
@@ -0,0 +1,276 @@
+package samplecode.test;
+
+import com.unboundid.ldap.listener.InMemoryDirectoryServerConfig;
+import com.unboundid.ldap.listener.InMemoryRequestHandler;
+import com.unboundid.ldap.listener.LDAPListener;
+import com.unboundid.ldap.listener.LDAPListenerClientConnection;
+import com.unboundid.ldap.listener.LDAPListenerConfig;
+import com.unboundid.ldap.listener.LDAPListenerRequestHandler;
+import com.unboundid.ldap.protocol.AddRequestProtocolOp;
+import com.unboundid.ldap.protocol.AddResponseProtocolOp;
+import com.unboundid.ldap.protocol.BindRequestProtocolOp;
+import com.unboundid.ldap.protocol.CompareRequestProtocolOp;
+import com.unboundid.ldap.protocol.DeleteRequestProtocolOp;
+import com.unboundid.ldap.protocol.ExtendedRequestProtocolOp;
+import com.unboundid.ldap.protocol.LDAPMessage;
+import com.unboundid.ldap.protocol.ModifyDNRequestProtocolOp;
+import com.unboundid.ldap.protocol.ModifyRequestProtocolOp;
+import com.unboundid.ldap.protocol.SearchRequestProtocolOp;
+import com.unboundid.ldap.sdk.Control;
+import com.unboundid.ldap.sdk.Entry;
+import com.unboundid.ldap.sdk.EntrySourceException;
+import com.unboundid.ldap.sdk.LDAPConnection;
+import com.unboundid.ldap.sdk.LDAPConnectionPool;
+import com.unboundid.ldap.sdk.LDAPException;
+import com.unboundid.ldap.sdk.LDAPResult;
+import com.unboundid.ldap.sdk.ResultCode;
+import com.unboundid.ldif.LDIFEntrySource;
+import com.unboundid.ldif.LDIFReader;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.*;
+import samplecode.ldif.LdifBulkLoader;
+import samplecode.ldif.ReadLdifFile;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public final class LdifBulkLoaderTestCases
+{
+
+  private static final String BASE_DN = "dc=example,dc=com";
+
+  private final RecordingFailureListener failures = new RecordingFailureListener();
+
+
+
+
+
+
+  @Test
+  public void failedEntriesDoNotStopTheLoadTestCase() throws Exception
+  {
+    // the adds are sent on several connections at once
+    InMemoryRequestHandler directoryServer =
+      new InMemoryRequestHandler(new InMemoryDirectoryServerConfig(BASE_DN));
+    directoryServer.addEntry(new Entry("dn: " + BASE_DN,"objectClass: top","objectClass: domain",
+      "dc: example"),false);
+    directoryServer.addEntry(new Entry(newLdif(7).split("\n")),false);
+    LDAPListener listener =
+      new LDAPListener(new LDAPListenerConfig(0,new SerializedRequestHandler(directoryServer)));
+    listener.startListening();
+    LDAPConnectionPool ldapConnectionPool = new LDAPConnectionPool(
+      new LDAPConnection("localhost",listener.getListenPort()),1,4);
+    try
+    {
+      StringBuilder ldif = new StringBuilder();
+      for(int i = 0; i < 500; ++i)
+      {
+        ldif.append(newLdif(i)).append('\n');
+      }
+      ldif.append("dn: cn=orphan,ou=missing,").append(BASE_DN).append('\n')
+        .append("objectClass: person\ncn: orphan\nsn: orphan\n\n");
+      ldif.append("dn: cn=invalid,").append(BASE_DN).append("\nno separator\n\n");
+
+      int read = ReadLdifFile.getInstance().addEntriesFromInputStream(ldapConnectionPool,
+        new ByteArrayInputStream(ldif.toString().getBytes("UTF-8")),null,4,8,failures);
+
+      assertEquals(501,read);
+      assertEquals(501,directoryServer.countEntriesBelow(BASE_DN));
+      assertEquals(2,failures.notAdded.size());
+      assertTrue(failures.notAdded.contains(ResultCode.ENTRY_ALREADY_EXISTS + " cn=user.7," +
+        BASE_DN));
+      assertTrue(failures.notAdded.contains(ResultCode.NO_SUCH_OBJECT + " cn=orphan,ou=missing," +
+        BASE_DN));
+      assertEquals(1,failures.notRead.get());
+      assertEquals(4,ldapConnectionPool.getCurrentAvailableConnections());
+    }
+    finally
+    {
+      ldapConnectionPool.close();
+      listener.shutDown(true);
+    }
+  }
+
+
+
+
+
+
+  @Test
+  public void lostConnectionIsReplacedTestCase() throws Exception
+  {
+    LDAPListener listener = new LDAPListener(new LDAPListenerConfig(0,new AddHandler(null)));
+    listener.startListening();
+    LDAPConnectionPool ldapConnectionPool = new LDAPConnectionPool(
+      new LDAPConnection("localhost",listener.getListenPort()),1,2);
+    try
+    {
+      StringBuilder ldif = new StringBuilder();
+      for(int i = 0; i < 300; ++i)
+      {
+        ldif.append(newLdif(i)).append('\n');
+        if(i == 100)
+        {
+          ldif.append("dn: cn=drop,").append(BASE_DN).append("\ncn: drop\n\n");
+        }
+      }
+      LdifBulkLoader loader = new LdifBulkLoader(ldapConnectionPool,2,16);
+      loader.setFailureListener(failures);
+      loader.load(new LDIFEntrySource(new LDIFReader(
+        new ByteArrayInputStream(ldif.toString().getBytes("UTF-8")))));
+
+      // the add that closed the connection, and any outstanding with it,
+      // are reported, and the entries that follow are added
+      assertEquals(301L,loader.getRead());
+      assertEquals(301L,loader.getAdded() + loader.getFailed());
+      assertEquals(loader.getFailed(),failures.notAdded.size());
+      assertTrue(failures.notAdded.contains(ResultCode.SERVER_DOWN + " cn=drop," + BASE_DN));
+      assertTrue(loader.getAdded() >= 300L - 16L);
+    }
+    finally
+    {
+      ldapConnectionPool.close();
+      listener.shutDown(true);
+    }
+  }
+
+
+
+
+
+
+  private static String newLdif(int i)
+  {
+    return "dn: cn=user." + i + "," + BASE_DN + "\nobjectClass: top\nobjectClass: person\n" +
+      "cn: user." + i + "\nsn: " + i + "\n";
+  }
+
+
+
+
+
+
+  private static final class RecordingFailureListener implements LdifBulkLoader.FailureListener
+  {
+
+    private final List<String> notAdded = Collections.synchronizedList(new ArrayList<String>());
+
+    private final AtomicInteger notRead = new AtomicInteger();
+
+    private RecordingFailureListener()
+    {
+    }
+
+    @Override
+    public void entryNotAdded(Entry entry,LDAPResult ldapResult)
+    {
+      notAdded.add(ldapResult.getResultCode() + " " + entry.getDN());
+    }
+
+    @Override
+    public void entryNotRead(EntrySourceException entrySourceException)
+    {
+      notRead.incrementAndGet();
+    }
+  }
+
+
+
+
+
+
+  /**
+   * Accepts every add, and closes the connection on which the entry
+   * {@code cn=drop} is added.
+   */
+  private static final class AddHandler extends LDAPListenerRequestHandler
+  {
+
+    private final LDAPListenerClientConnection connection;
+
+    private AddHandler(LDAPListenerClientConnection connection)
+    {
+      this.connection = connection;
+    }
+
+    @Override
+    public LDAPListenerRequestHandler newInstance(LDAPListenerClientConnection connection)
+    {
+      return new AddHandler(connection);
+    }
+
+    @Override
+    public LDAPMessage processAddRequest(int messageID,AddRequestProtocolOp request,
+                                         List<Control> controls)
+    {
+      if(request.getDN().startsWith("cn=drop,"))
+      {
+        try
+        {
+          connection.close();
+        }
+        catch(IOException ioException)
+        {
+          // the client sees the connection closed either way
+        }
+        return null;
+      }
+      return new LDAPMessage(messageID,
+        new AddResponseProtocolOp(ResultCode.SUCCESS_INT_VALUE,null,null,null));
+    }
+
+    @Override
+    public LDAPMessage processBindRequest(int messageID,BindRequestProtocolOp request,
+                                          List<Control> controls)
+    {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public LDAPMessage processCompareRequest(int messageID,CompareRequestProtocolOp request,
+                                             List<Control> controls)
+    {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public LDAPMessage processDeleteRequest(int messageID,DeleteRequestProtocolOp request,
+                                            List<Control> controls)
+    {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public LDAPMessage processExtendedRequest(int messageID,ExtendedRequestProtocolOp request,
+                                              List<Control> controls)
+    {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public LDAPMessage processModifyRequest(int messageID,ModifyRequestProtocolOp request,
+                                            List<Control> controls)
+    {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public LDAPMessage processModifyDNRequest(int messageID,ModifyDNRequestProtocolOp request,
+                                              List<Control> controls)
+    {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public LDAPMessage processSearchRequest(int messageID,SearchRequestProtocolOp request,
+                                            List<Control> controls)
+    {
+      throw new UnsupportedOperationException();
+    }
+  }
+}
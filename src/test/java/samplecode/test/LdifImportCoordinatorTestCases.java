@@ -0,0 +1,137 @@
+package samplecode.test;
+
+import com.unboundid.ldap.listener.InMemoryDirectoryServerConfig;
+import com.unboundid.ldap.listener.InMemoryRequestHandler;
+import com.unboundid.ldap.listener.LDAPListener;
+import com.unboundid.ldap.listener.LDAPListenerConfig;
+import com.unboundid.ldap.sdk.Entry;
+import com.unboundid.ldap.sdk.LDAPConnection;
+import com.unboundid.ldap.sdk.LDAPConnectionPool;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.List;
+import org.junit.*;
+import samplecode.ldif.LdifImportCoordinator;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public final class LdifImportCoordinatorTestCases
+{
+
+  private static final String BASE_DN = "dc=example,dc=com";
+
+
+  private InMemoryRequestHandler directoryServer;
+
+
+  private LDAPConnectionPool ldapConnectionPool;
+
+
+  private LDAPListener ldapListener;
+
+
+
+
+
+
+  @Test
+  public void filesAreImportedWithTheirOwnStatisticsTestCase() throws Exception
+  {
+    LdifImportCoordinator coordinator = new LdifImportCoordinator(ldapConnectionPool,2,8);
+    assertEquals(2,coordinator.getMaxConcurrentImports());
+    int[] sizes = {400,50,250};
+    for(int ou = 0; ou < sizes.length; ++ou)
+    {
+      coordinator.addFile(newLdifFile(ou,sizes[ou]));
+    }
+    // the entry of the duplicate file already exists when it is imported
+    coordinator.addFile(newLdifFile(1,0));
+    coordinator.addFile(new File("no-such-file.ldif"));
+
+    List<LdifImportCoordinator.Import> imports = coordinator.importAll();
+    assertEquals(5,imports.size());
+    for(int ou = 0; ou < sizes.length; ++ou)
+    {
+      LdifImportCoordinator.Import i = imports.get(ou);
+      assertTrue(i.toString(),i.isSuccessful());
+      assertEquals(sizes[ou] + 1L,i.getEntriesRead());
+      assertEquals(sizes[ou] + 1L,i.getEntriesAdded());
+      assertEquals(sizes[ou],directoryServer.countEntriesBelow("ou=" + ou + "," + BASE_DN) - 1);
+    }
+    assertTrue(imports.get(3).isSuccessful());
+    assertEquals(1L,imports.get(3).getEntriesFailed());
+    assertEquals(0L,imports.get(3).getEntriesAdded());
+    assertFalse(imports.get(4).isSuccessful());
+    assertTrue(imports.get(4).getException() instanceof FileNotFoundException);
+    assertTrue(ldapConnectionPool.getCurrentAvailableConnections() <= 4);
+  }
+
+
+
+
+
+
+  /**
+   * An organizational unit and {@code count} users below it.
+   */
+  private static File newLdifFile(int ou,int count) throws IOException
+  {
+    StringBuilder ldif = new StringBuilder();
+    ldif.append("dn: ou=").append(ou).append(',').append(BASE_DN)
+      .append("\nobjectClass: organizationalUnit\nou: ").append(ou).append("\n\n");
+    for(int user = 0; user < count; ++user)
+    {
+      ldif.append("dn: cn=user.").append(user).append(",ou=").append(ou).append(',')
+        .append(BASE_DN).append("\nobjectClass: person\ncn: user.").append(user)
+        .append("\nsn: ").append(user).append("\n\n");
+    }
+    File ldifFile = File.createTempFile("import",".ldif");
+    ldifFile.deleteOnExit();
+    OutputStream outputStream = new FileOutputStream(ldifFile);
+    try
+    {
+      outputStream.write(ldif.toString().getBytes("UTF-8"));
+    }
+    finally
+    {
+      outputStream.close();
+    }
+    return ldifFile;
+  }
+
+
+
+
+
+
+  @Before
+  public void setUp() throws Exception
+  {
+    // the files are imported on several connections at once
+    directoryServer = new InMemoryRequestHandler(new InMemoryDirectoryServerConfig(BASE_DN));
+    directoryServer.addEntry(new Entry("dn: " + BASE_DN,"objectClass: top","objectClass: domain",
+      "dc: example"),false);
+    ldapListener =
+      new LDAPListener(new LDAPListenerConfig(0,new SerializedRequestHandler(directoryServer)));
+    ldapListener.startListening();
+    ldapConnectionPool = new LDAPConnectionPool(
+      new LDAPConnection("localhost",ldapListener.getListenPort()),1,4);
+  }
+
+
+
+
+
+
+  @After
+  public void tearDown()
+  {
+    ldapConnectionPool.close();
+    ldapListener.shutDown(true);
+  }
+}
@@ -0,0 +1,165 @@
+package samplecode.test;
+
+import com.unboundid.ldap.listener.InMemoryDirectoryServerConfig;
+import com.unboundid.ldap.listener.InMemoryRequestHandler;
+import com.unboundid.ldap.listener.LDAPListener;
+import com.unboundid.ldap.listener.LDAPListenerConfig;
+import com.unboundid.ldap.sdk.Entry;
+import com.unboundid.ldap.sdk.LDAPConnection;
+import com.unboundid.ldap.sdk.LDAPConnectionPool;
+import java.io.ByteArrayInputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import org.junit.*;
+import samplecode.ldif.LdifLoadProgressEvent;
+import samplecode.ldif.LdifLoadProgressReporter;
+import samplecode.ldif.ReadLdifFile;
+import samplecode.listener.ProgressListener;
+import samplecode.util.StripedCounter;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public final class LdifLoadProgressReporterTestCases
+{
+
+  private static final String BASE_DN = "dc=example,dc=com";
+
+
+
+
+
+
+  @Test
+  public void stripedCounterCountsEveryThreadTestCase() throws InterruptedException
+  {
+    final StripedCounter counter = new StripedCounter(3);
+    final CountDownLatch done = new CountDownLatch(8);
+    for(int t = 0; t < 8; ++t)
+    {
+      new Thread(new Runnable()
+      {
+        @Override
+        public void run()
+        {
+          for(int i = 0; i < 100000; ++i)
+          {
+            counter.increment();
+          }
+          done.countDown();
+        }
+      }).start();
+    }
+    done.await();
+    assertEquals(800000L,counter.sum());
+    counter.reset();
+    counter.add(-5L);
+    assertEquals(-5L,counter.sum());
+  }
+
+
+
+
+
+
+  @Test
+  public void eventsAreDeliveredAtTheIntervalTestCase() throws InterruptedException
+  {
+    final List<LdifLoadProgressEvent> events =
+      Collections.synchronizedList(new ArrayList<LdifLoadProgressEvent>());
+    LdifLoadProgressReporter reporter = new LdifLoadProgressReporter(
+      Collections.<ProgressListener<LdifLoadProgressEvent>>singletonList(newListener(events)),
+      20L);
+    reporter.setTotalBytes(1000L);
+    reporter.start();
+    reporter.bytesConsumed(250L);
+    reporter.entryRead();
+    reporter.entryApplied();
+    Thread.sleep(150L);
+    LdifLoadProgressEvent last = reporter.stop();
+
+    assertTrue(events.size() >= 3);
+    assertEquals(last,events.get(events.size() - 1));
+    assertEquals(1L,last.getEntriesRead());
+    assertEquals(1L,last.getEntriesApplied());
+    assertEquals(250L,last.getBytesConsumed());
+    assertEquals(1000L,last.getTotalBytes());
+
+    // three quarters of the bytes remain, so the load is a quarter done
+    long expectedEta = 3L * last.getElapsedMillis();
+    assertTrue(last.toString(),Math.abs(last.getEtaMillis() - expectedEta) <= 3L);
+    assertTrue(last.getProgressMessage().startsWith("read 1, applied 1 entries, consumed 250 of " +
+      "1000 bytes"));
+  }
+
+
+
+
+
+
+  @Test
+  public void loadReportsItsProgressTestCase() throws Exception
+  {
+    // the adds are sent on several connections at once
+    InMemoryRequestHandler directoryServer =
+      new InMemoryRequestHandler(new InMemoryDirectoryServerConfig(BASE_DN));
+    directoryServer.addEntry(new Entry("dn: " + BASE_DN,"objectClass: top","objectClass: domain",
+      "dc: example"),false);
+    LDAPListener ldapListener =
+      new LDAPListener(new LDAPListenerConfig(0,new SerializedRequestHandler(directoryServer)));
+    ldapListener.startListening();
+    LDAPConnectionPool ldapConnectionPool = new LDAPConnectionPool(
+      new LDAPConnection("localhost",ldapListener.getListenPort()),1,4);
+    List<LdifLoadProgressEvent> events =
+      Collections.synchronizedList(new ArrayList<LdifLoadProgressEvent>());
+    ProgressListener<LdifLoadProgressEvent> listener = newListener(events);
+    // not the shared instance, whose count other test methods reset
+    ReadLdifFile readLdifFile = new ReadLdifFile();
+    readLdifFile.addProgressListener(listener);
+    readLdifFile.setProgressIntervalMillis(10L);
+    try
+    {
+      StringBuilder ldif = new StringBuilder();
+      for(int i = 0; i < 300; ++i)
+      {
+        ldif.append("dn: cn=user.").append(i).append(',').append(BASE_DN)
+          .append("\nobjectClass: person\ncn: user.").append(i).append("\nsn: ").append(i)
+          .append("\n\n");
+      }
+      byte[] bytes = ldif.toString().getBytes("UTF-8");
+      assertEquals(300,readLdifFile.addEntriesFromInputStream(ldapConnectionPool,
+        new ByteArrayInputStream(bytes),null,4,8,null));
+
+      LdifLoadProgressEvent last = events.get(events.size() - 1);
+      assertEquals(300L,last.getEntriesRead());
+      assertEquals(300L,last.getEntriesApplied());
+      assertEquals((long) bytes.length,last.getBytesConsumed());
+      assertEquals(300,readLdifFile.getNumberOfEntriesRead());
+    }
+    finally
+    {
+      ldapConnectionPool.close();
+      ldapListener.shutDown(true);
+    }
+  }
+
+
+
+
+
+
+  private static ProgressListener<LdifLoadProgressEvent> newListener(
+    final List<LdifLoadProgressEvent> events)
+  {
+    return new ProgressListener<LdifLoadProgressEvent>()
+    {
+      @Override
+      public void progress(LdifLoadProgressEvent progressEvent)
+      {
+        events.add(progressEvent);
+      }
+    };
+  }
+}
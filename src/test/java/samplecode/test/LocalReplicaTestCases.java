@@ -0,0 +1,191 @@
+package samplecode.test;
+
+import com.unboundid.ldap.sdk.Attribute;
+import com.unboundid.ldap.sdk.Control;
+import com.unboundid.ldap.sdk.Entry;
+import com.unboundid.ldap.sdk.Filter;
+import com.unboundid.ldap.sdk.LDAPException;
+import com.unboundid.ldap.sdk.ReadOnlyEntry;
+import com.unboundid.ldap.sdk.SearchResultEntry;
+import com.unboundid.ldap.sdk.SearchScope;
+import com.unboundid.ldap.sdk.controls.ContentSyncInfoIntermediateResponse;
+import com.unboundid.ldap.sdk.controls.ContentSyncState;
+import com.unboundid.ldap.sdk.controls.ContentSyncStateControl;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+import org.junit.*;
+import samplecode.replica.LocalReplica;
+import samplecode.replica.ReplicaSyncListener;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public final class LocalReplicaTestCases
+{
+
+  private LocalReplica replica;
+
+  private ReplicaSyncListener listener;
+
+  private List<UUID> uuids;
+
+
+
+
+
+
+  @Test
+  public void indexedAndScannedSearchesTestCase() throws LDAPException
+  {
+    assertEquals(200,replica.size());
+    assertEquals("user.7",replica.getEntry("CN=User.7, DC=Example,DC=Com")
+      .getAttributeValue("cn"));
+
+    List<ReadOnlyEntry> entries = replica.search(Filter.create("(uid=USER.42)"));
+    assertEquals(1,entries.size());
+    assertEquals("cn=user.42,dc=example,dc=com",entries.get(0).getDN());
+    assertEquals(1L,replica.getIndexedSearches());
+
+    entries = replica.search(Filter.create("(&(objectClass=person)(mail=user.43@example.com))"));
+    assertEquals(1,entries.size());
+    entries = replica.search(Filter.create("(|(uid=user.1)(uid=user.2)(uid=nobody))"));
+    assertEquals(2,entries.size());
+    entries = replica.search(Filter.create("(&(uid=user.1)(sn=wrong))"));
+    assertEquals(0,entries.size());
+    assertEquals(4L,replica.getIndexedSearches());
+    assertEquals(0L,replica.getScannedSearches());
+
+    entries = replica.search(Filter.create("(|(uid=user.1)(sn=Last.19*))"));
+    assertEquals(12,entries.size());
+    entries = replica.search("dc=example,dc=com",SearchScope.BASE,Filter.create("(uid=user.1)"));
+    assertEquals(0,entries.size());
+    assertEquals(1L,replica.getScannedSearches());
+  }
+
+
+
+
+
+
+  @Test
+  public void changesAreAppliedTestCase() throws LDAPException
+  {
+    long footprint = replica.getMemoryFootprint();
+    assertTrue(footprint > 0L);
+
+    // a modify replaces the indexed value
+    Entry modified = newEntry(5);
+    modified.setAttribute("uid","renamed.5");
+    listener.searchEntryReturned(newSearchResultEntry(modified,ContentSyncState.MODIFY,
+      uuids.get(5)));
+    assertEquals(0,replica.search(Filter.create("(uid=user.5)")).size());
+    assertEquals(1,replica.search(Filter.create("(uid=renamed.5)")).size());
+    assertEquals(200,replica.size());
+
+    // a rename is recognized by the entryUUID
+    Entry renamed = newEntry(6);
+    renamed.setDN("cn=user.6,ou=moved,dc=example,dc=com");
+    listener.searchEntryReturned(newSearchResultEntry(renamed,ContentSyncState.MODIFY,
+      uuids.get(6)));
+    assertNull(replica.getEntry("cn=user.6,dc=example,dc=com"));
+    assertEquals("cn=user.6,ou=moved,dc=example,dc=com",
+      replica.search(Filter.create("(uid=user.6)")).get(0).getDN());
+    assertEquals(200,replica.size());
+
+    // a delete carries only the DN and the entryUUID
+    listener.searchEntryReturned(newSearchResultEntry(new Entry(newEntry(7).getDN()),
+      ContentSyncState.DELETE,uuids.get(7)));
+    assertNull(replica.getEntry("cn=user.7,dc=example,dc=com"));
+    assertEquals(0,replica.search(Filter.create("(uid=user.7)")).size());
+
+    listener.intermediateResponseReturned(ContentSyncInfoIntermediateResponse
+      .createSyncIDSetResponse(null,Arrays.asList(uuids.get(8),uuids.get(9)),true));
+    assertEquals(197,replica.size());
+    assertTrue(replica.getStalenessMillis() >= 0L);
+  }
+
+
+
+
+
+
+  @Test
+  public void presentPhaseRemovesAbsentEntriesTestCase() throws LDAPException
+  {
+    replica.beginRefresh();
+    assertFalse(replica.isRefreshComplete());
+
+    // 100 entries are reported present one at a time, 50 in a sync id
+    // set, and the other 50 were deleted while the client was away
+    for(int i = 0; i < 100; ++i)
+    {
+      listener.searchEntryReturned(newSearchResultEntry(new Entry(newEntry(i).getDN()),
+        ContentSyncState.PRESENT,uuids.get(i)));
+    }
+    listener.intermediateResponseReturned(ContentSyncInfoIntermediateResponse
+      .createSyncIDSetResponse(null,uuids.subList(100,150),false));
+    listener.intermediateResponseReturned(ContentSyncInfoIntermediateResponse
+      .createRefreshPresentResponse(null,true));
+
+    assertTrue(replica.isRefreshComplete());
+    assertEquals(150,replica.size());
+    assertEquals(1,replica.search(Filter.create("(uid=user.149)")).size());
+    assertEquals(0,replica.search(Filter.create("(uid=user.150)")).size());
+
+    for(UUID uuid : uuids)
+    {
+      replica.remove(uuid);
+    }
+    assertEquals(0,replica.size());
+    assertEquals(0L,replica.getMemoryFootprint());
+  }
+
+
+
+
+
+
+  private static Entry newEntry(int i)
+  {
+    return new Entry("cn=user." + i + ",dc=example,dc=com",
+      new Attribute("objectClass","top","person"),new Attribute("cn","user." + i),
+      new Attribute("sn","Last." + i),new Attribute("uid","user." + i),
+      new Attribute("mail","user." + i + "@example.com"));
+  }
+
+
+
+
+
+
+  private static SearchResultEntry newSearchResultEntry(Entry entry,ContentSyncState state,
+                                                        UUID uuid)
+  {
+    Control control = new ContentSyncStateControl(state,uuid,null);
+    return new SearchResultEntry(entry,control);
+  }
+
+
+
+
+
+
+  @Before
+  public void setUp()
+  {
+    replica = new LocalReplica(Arrays.asList("uid","mail"));
+    listener = new ReplicaSyncListener(replica,null,null);
+    assertEquals(-1L,replica.getStalenessMillis());
+    uuids = new ArrayList<UUID>();
+    for(int i = 0; i < 200; ++i)
+    {
+      UUID uuid = UUID.randomUUID();
+      uuids.add(uuid);
+      listener.searchEntryReturned(newSearchResultEntry(newEntry(i),ContentSyncState.ADD,uuid));
+    }
+  }
+}
@@ -0,0 +1,183 @@
+package samplecode.test;
+
+import com.unboundid.ldap.sdk.ChangeType;
+import com.unboundid.ldap.sdk.Entry;
+import com.unboundid.ldif.LDIFAddChangeRecord;
+import com.unboundid.ldif.LDIFChangeRecord;
+import com.unboundid.ldif.LDIFException;
+import com.unboundid.ldif.LDIFReader;
+import com.unboundid.ldif.LDIFRecord;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import org.junit.*;
+import samplecode.ldif.ParallelLdifReader;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public final class ParallelLdifReaderTestCases
+{
+
+  private File ldifFile;
+
+
+
+
+
+
+  @Test
+  public void recordsAreReadInFileOrderTestCase() throws IOException, LDIFException
+  {
+    List<Entry> expected = LDIFReader.readEntries(ldifFile);
+    ParallelLdifReader reader = new ParallelLdifReader(ldifFile,4,true,512);
+    try
+    {
+      List<Entry> entries = new ArrayList<Entry>();
+      Entry entry;
+      while((entry = reader.readEntry()) != null)
+      {
+        entries.add(entry);
+      }
+      assertEquals(expected,entries);
+      assertTrue(reader.getChunks() > 10);
+    }
+    finally
+    {
+      reader.close();
+    }
+  }
+
+
+
+
+
+
+  @Test
+  public void chunksMayCompleteInAnyOrderTestCase() throws IOException, LDIFException
+  {
+    Set<String> expected = new HashSet<String>();
+    for(Entry entry : LDIFReader.readEntries(ldifFile))
+    {
+      expected.add(entry.toLDIFString());
+    }
+    ParallelLdifReader reader = new ParallelLdifReader(ldifFile,4,false,300);
+    try
+    {
+      Set<String> entries = new HashSet<String>();
+      LDIFChangeRecord changeRecord;
+      while((changeRecord = reader.readChangeRecord()) != null)
+      {
+        assertEquals(ChangeType.ADD,changeRecord.getChangeType());
+        entries.add(((LDIFAddChangeRecord) changeRecord).getEntryToAdd().toLDIFString());
+      }
+      assertEquals(expected,entries);
+    }
+    finally
+    {
+      reader.close();
+    }
+  }
+
+
+
+
+
+
+  @Test
+  public void invalidRecordIsReportedTestCase() throws IOException, LDIFException
+  {
+    write("version: 1\n\n" +
+      "dn: cn=first,dc=example,dc=com\ncn: first\n\n" +
+      "dn: cn=invalid,dc=example,dc=com\nthis line has no separator\n\n" +
+      "dn: cn=change,dc=example,dc=com\r\nchangetype: delete\r\n\r\n" +
+      "dn: cn=last,dc=example,dc=com\ncn: last\n");
+    ParallelLdifReader reader = new ParallelLdifReader(ldifFile,2,true,8);
+    try
+    {
+      List<String> results = new ArrayList<String>();
+      while(true)
+      {
+        try
+        {
+          LDIFRecord record = reader.readLDIFRecord();
+          if(record == null)
+          {
+            break;
+          }
+          results.add(record.getDN());
+        }
+        catch(LDIFException ldifException)
+        {
+          assertTrue(ldifException.mayContinueReading());
+          assertTrue(ldifException.getMessage().startsWith("In the chunk that starts at byte"));
+          results.add("invalid");
+        }
+      }
+      assertEquals(5,reader.getChunks());
+      assertEquals(3L,reader.getRecordsRead());
+      assertEquals(Arrays.asList("cn=first,dc=example,dc=com","invalid",
+        "cn=change,dc=example,dc=com","cn=last,dc=example,dc=com"),results);
+    }
+    finally
+    {
+      reader.close();
+    }
+  }
+
+
+
+
+
+
+  private void write(String ldif) throws IOException
+  {
+    OutputStream outputStream = new FileOutputStream(ldifFile);
+    try
+    {
+      outputStream.write(ldif.getBytes("UTF-8"));
+    }
+    finally
+    {
+      outputStream.close();
+    }
+  }
+
+
+
+
+
+
+  @Before
+  public void setUp() throws IOException
+  {
+    ldifFile = File.createTempFile("parallel",".ldif");
+    ldifFile.deleteOnExit();
+
+    // folded values and comments around the chunk boundaries
+    StringBuilder ldif = new StringBuilder("version: 1\n\n");
+    for(int i = 0; i < 200; ++i)
+    {
+      if(i % 7 == 0)
+      {
+        ldif.append("# entry ").append(i).append("\n");
+      }
+      ldif.append("dn: cn=user.").append(i).append(",dc=example,dc=com\n")
+        .append("objectClass: person\ncn: user.").append(i).append("\nsn: ").append(i)
+        .append("\ndescription: a long description of user ").append(i)
+        .append(" that is fol\n ded over two lines\n");
+      if(i % 3 == 0)
+      {
+        ldif.append("\n");
+      }
+      ldif.append("\n");
+    }
+    write(ldif.toString());
+  }
+}
@@ -0,0 +1,109 @@
+package samplecode.test;
+
+import com.unboundid.ldap.listener.InMemoryDirectoryServer;
+import com.unboundid.ldap.listener.InMemoryDirectoryServerConfig;
+import com.unboundid.ldap.sdk.*;
+import com.unboundid.ldap.sdk.controls.SortKey;
+import com.unboundid.ldif.LDIFException;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import org.junit.*;
+import samplecode.vlv.ParallelVirtualListViewFetch;
+
+import static org.junit.Assert.assertEquals;
+
+public final class ParallelVirtualListViewFetchTestCases
+{
+
+  private static final String BASE_DN = "dc=example,dc=com";
+
+  private InMemoryDirectoryServer directoryServer;
+
+  private LDAPConnectionPool ldapConnectionPool;
+
+  private ExecutorService executorService;
+
+
+
+
+
+
+  @Test
+  public void rangesReassembledInOrderTestCase() throws LDAPException, InterruptedException
+  {
+    ParallelVirtualListViewFetch fetch = newFetch(17);
+    List<SearchResultEntry> entries = fetch.fetch(200,executorService);
+    assertEquals(12,fetch.getRangesRequested());
+    assertEquals(200,entries.size());
+    for(int i = 0; i < 200; ++i)
+    {
+      assertEquals(String.format("%04d",i),entries.get(i).getAttributeValue("sn"));
+    }
+  }
+
+
+
+
+
+
+  @Test
+  public void partialListTestCase() throws LDAPException, InterruptedException
+  {
+    ParallelVirtualListViewFetch fetch = newFetch(50);
+    List<SearchResultEntry> entries = fetch.fetch(120,executorService);
+    assertEquals(3,fetch.getRangesRequested());
+    assertEquals(120,entries.size());
+    assertEquals("0119",entries.get(119).getAttributeValue("sn"));
+    assertEquals(0,fetch.fetch(0,executorService).size());
+  }
+
+
+
+
+
+
+  private ParallelVirtualListViewFetch newFetch(int rangeSize) throws LDAPException
+  {
+    SearchRequest searchRequest =
+      new SearchRequest(BASE_DN,SearchScope.ONE,"(objectClass=person)","sn");
+    return new ParallelVirtualListViewFetch(ldapConnectionPool,searchRequest,
+      new SortKey[]{new SortKey("sn")},rangeSize,true);
+  }
+
+
+
+
+
+
+  @Before
+  public void setUp() throws LDAPException, LDIFException
+  {
+    InMemoryDirectoryServerConfig config = new InMemoryDirectoryServerConfig(BASE_DN);
+    directoryServer = new InMemoryDirectoryServer(config);
+    directoryServer.startListening();
+    directoryServer.add("dn: " + BASE_DN,"objectClass: top","objectClass: domain","dc: example");
+    for(int i = 199; i >= 0; --i)
+    {
+      directoryServer.add("dn: cn=user." + i + "," + BASE_DN,"objectClass: top",
+        "objectClass: person","cn: user." + i,"sn: " + String.format("%04d",i));
+    }
+    LDAPConnection ldapConnection =
+      new LDAPConnection("localhost",directoryServer.getListenPort());
+    ldapConnectionPool = new LDAPConnectionPool(ldapConnection,4,4);
+    executorService = Executors.newFixedThreadPool(4);
+  }
+
+
+
+
+
+
+  @After
+  public void tearDown()
+  {
+    executorService.shutdownNow();
+    ldapConnectionPool.close();
+    directoryServer.shutDown(true);
+  }
+}
@@ -0,0 +1,140 @@
+package samplecode.test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.junit.*;
+import samplecode.tools.PerformanceReporter;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public final class PerformanceReporterTestCases
+{
+
+  @Test
+  public void reportsStopAfterReportCountTestCase() throws Exception
+  {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    PerformanceReporter reporter = new PerformanceReporter(new PrintStream(bytes,true),50L,3);
+    reporter.start();
+    for(int i = 0; i < 10; ++i)
+    {
+      reporter.recordOperation(TimeUnit.MILLISECONDS.toNanos(2L),5L);
+    }
+    reporter.awaitComplete();
+    assertTrue(reporter.isComplete());
+
+    // no interval is reported after the report count is reached
+    TimeUnit.MILLISECONDS.sleep(150L);
+    reporter.stop();
+    String output = bytes.toString("UTF-8");
+    assertTrue(output,output.contains("interval 1: "));
+    assertTrue(output,output.contains("interval 2: "));
+    assertTrue(output,output.contains("interval 3: "));
+    assertFalse(output,output.contains("interval 4: "));
+    assertTrue(output,output.contains("total: ops=10 "));
+    assertEquals(10L,reporter.getTotalOperations());
+    assertEquals(10L,reporter.getTotalHistogram().getCount());
+  }
+
+
+
+
+
+
+  @Test
+  public void stopReportsLastIntervalAndSummaryTestCase() throws Exception
+  {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    PerformanceReporter reporter =
+      new PerformanceReporter(new PrintStream(bytes,true),TimeUnit.HOURS.toMillis(1L),
+        Integer.MAX_VALUE);
+    reporter.start();
+    for(long millis = 1L; millis <= 4L; ++millis)
+    {
+      reporter.recordOperation(TimeUnit.MILLISECONDS.toNanos(millis),1L);
+    }
+    reporter.stop();
+
+    // the interval in progress is reported, then the summary
+    String output = bytes.toString("UTF-8");
+    int interval = output.indexOf("interval 1: ops=4 ");
+    int total = output.indexOf("total: ops=4 ");
+    assertTrue(output,interval >= 0);
+    assertTrue(output,total > interval);
+    assertTrue(output,output.substring(total).contains("max=4.000"));
+    assertFalse(reporter.isComplete());
+    assertEquals(4L,reporter.getTotalOperations());
+  }
+
+
+
+
+
+
+  @Test
+  public void concurrentRecordsAreAllCountedTestCase() throws Exception
+  {
+    final PerformanceReporter reporter =
+      new PerformanceReporter(new PrintStream(new ByteArrayOutputStream()),1L,Integer.MAX_VALUE);
+    final int threads = 4;
+    final int operationsPerThread = 200000;
+    final CountDownLatch ready = new CountDownLatch(threads);
+    final CountDownLatch go = new CountDownLatch(1);
+    List<Thread> recorders = new ArrayList<Thread>();
+    for(int i = 0; i < threads; ++i)
+    {
+      Thread recorder = new Thread()
+      {
+        @Override
+        public void run()
+        {
+          ready.countDown();
+          try
+          {
+            go.await();
+          }
+          catch(InterruptedException interruptedException)
+          {
+            return;
+          }
+          for(int operation = 0; operation < operationsPerThread; ++operation)
+          {
+            reporter.recordOperation(1000L,1L);
+          }
+        }
+      };
+      recorders.add(recorder);
+      recorder.start();
+    }
+    ready.await();
+    reporter.start();
+    go.countDown();
+    for(Thread recorder : recorders)
+    {
+      recorder.join();
+    }
+    reporter.stop();
+
+    // no operation recorded while an interval was swapped is lost
+    long expected = (long) threads * operationsPerThread;
+    assertEquals(expected,reporter.getTotalOperations());
+    assertEquals(expected,reporter.getTotalHistogram().getCount());
+  }
+
+
+
+
+
+
+  @Test(expected = IllegalArgumentException.class)
+  public void reportCountMustBePositiveTestCase()
+  {
+    new PerformanceReporter(new PrintStream(new ByteArrayOutputStream()),1000L,0);
+  }
+}
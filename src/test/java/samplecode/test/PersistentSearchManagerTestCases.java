@@ -0,0 +1,431 @@
+package samplecode.test;
+
+import com.unboundid.ldap.listener.LDAPListener;
+import com.unboundid.ldap.listener.LDAPListenerClientConnection;
+import com.unboundid.ldap.listener.LDAPListenerConfig;
+import com.unboundid.ldap.listener.LDAPListenerRequestHandler;
+import com.unboundid.ldap.protocol.AddRequestProtocolOp;
+import com.unboundid.ldap.protocol.BindRequestProtocolOp;
+import com.unboundid.ldap.protocol.CompareRequestProtocolOp;
+import com.unboundid.ldap.protocol.DeleteRequestProtocolOp;
+import com.unboundid.ldap.protocol.ExtendedRequestProtocolOp;
+import com.unboundid.ldap.protocol.LDAPMessage;
+import com.unboundid.ldap.protocol.ModifyDNRequestProtocolOp;
+import com.unboundid.ldap.protocol.ModifyRequestProtocolOp;
+import com.unboundid.ldap.protocol.SearchRequestProtocolOp;
+import com.unboundid.ldap.sdk.Attribute;
+import com.unboundid.ldap.sdk.Control;
+import com.unboundid.ldap.sdk.Entry;
+import com.unboundid.ldap.sdk.LDAPException;
+import com.unboundid.ldap.sdk.SearchRequest;
+import com.unboundid.ldap.sdk.SearchScope;
+import com.unboundid.ldap.sdk.SingleServerSet;
+import com.unboundid.ldap.sdk.controls.EntryChangeNotificationControl;
+import com.unboundid.ldap.sdk.controls.PersistentSearchChangeType;
+import com.unboundid.ldap.sdk.controls.PersistentSearchRequestControl;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import org.junit.*;
+import samplecode.changes.ChangeEvent;
+import samplecode.changes.ChangeSubscriber;
+import samplecode.changes.PersistentSearchManager;
+
+import static org.junit.Assert.assertEquals;
+
+public final class PersistentSearchManagerTestCases
+{
+
+  private LDAPListener listener;
+
+  private PersistentSearchManager manager;
+
+  private final List<ReceivedSearch> searches =
+    Collections.synchronizedList(new ArrayList<ReceivedSearch>());
+
+
+
+
+
+
+  @Test
+  public void searchesShareConnectionsTestCase() throws Exception
+  {
+    List<RecordingSubscriber> subscribers = register(20);
+    assertEquals(2,manager.getOpenConnections());
+    awaitSearches(20);
+
+    // the server returns one change to every search
+    for(ReceivedSearch search : snapshot())
+    {
+      search.sendChange("cn=changed," + search.baseDN);
+    }
+    for(int i = 0; i < subscribers.size(); ++i)
+    {
+      RecordingSubscriber subscriber = subscribers.get(i);
+      subscriber.await(1);
+      assertEquals(Collections.singletonList("cn=changed,ou=" + i + ",dc=example,dc=com"),
+        subscriber.dns);
+    }
+    for(PersistentSearchManager.Watch watch : manager.getWatches())
+    {
+      assertEquals(1L,watch.getStarts());
+      assertEquals(1L,watch.getDelivered());
+    }
+  }
+
+
+
+
+
+
+  @Test
+  public void searchesAreReestablishedAfterDisconnectTestCase() throws Exception
+  {
+    List<RecordingSubscriber> subscribers = register(10);
+    awaitSearches(10);
+    LDAPListenerClientConnection lost = searches.get(0).connection;
+    int searchesOnLostConnection = 0;
+    for(ReceivedSearch search : snapshot())
+    {
+      if(search.connection == lost)
+      {
+        ++searchesOnLostConnection;
+      }
+    }
+    assertEquals(5,searchesOnLostConnection);
+    lost.close();
+
+    // the five searches are sent again on a new connection
+    awaitSearches(15);
+    long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10L);
+    while((manager.getReconnects() == 0L) && (System.nanoTime() < deadline))
+    {
+      TimeUnit.MILLISECONDS.sleep(10L);
+    }
+    assertEquals(1L,manager.getReconnects());
+    assertEquals(2,manager.getOpenConnections());
+    int restarted = 0;
+    for(RecordingSubscriber subscriber : subscribers)
+    {
+      restarted += subscriber.missedNotices.get();
+    }
+    assertEquals(5,restarted);
+
+    // the new searches deliver changes
+    for(ReceivedSearch search : snapshot().subList(10,15))
+    {
+      search.sendChange("cn=after," + search.baseDN);
+    }
+    for(RecordingSubscriber subscriber : subscribers)
+    {
+      if(subscriber.missedNotices.get() > 0)
+      {
+        subscriber.await(1);
+      }
+    }
+  }
+
+
+
+
+
+
+  @Test
+  public void changesSentConcurrentlyAreNotLostTestCase() throws Exception
+  {
+    final int changesPerSearch = 50000;
+    PersistentSearchManager busyManager = new PersistentSearchManager(
+      new SingleServerSet("localhost",listener.getListenPort()),null,2,1 << 20,256);
+    RecordingSubscriber subscriber = new RecordingSubscriber();
+    try
+    {
+      for(int i = 0; i < 2; ++i)
+      {
+        String base = "ou=" + i + ",dc=example,dc=com";
+        busyManager.register(base,new SearchRequest(base,SearchScope.SUB,"(objectClass=*)"),
+          subscriber);
+      }
+      awaitSearches(2);
+
+      // the reader threads of both connections publish at the same time
+      List<Thread> senders = new ArrayList<Thread>();
+      final List<Exception> failures = Collections.synchronizedList(new ArrayList<Exception>());
+      for(final ReceivedSearch search : snapshot())
+      {
+        Thread sender = new Thread(new Runnable()
+        {
+          @Override
+          public void run()
+          {
+            try
+            {
+              for(int i = 0; i < changesPerSearch; ++i)
+              {
+                search.sendChange("cn=" + i + "," + search.baseDN);
+              }
+            }
+            catch(LDAPException ldapException)
+            {
+              failures.add(ldapException);
+            }
+          }
+        });
+        senders.add(sender);
+        sender.start();
+      }
+      for(Thread sender : senders)
+      {
+        sender.join();
+      }
+      assertEquals(Collections.emptyList(),failures);
+      subscriber.await(2 * changesPerSearch);
+    }
+    finally
+    {
+      busyManager.close();
+    }
+    assertEquals(0L,subscriber.missedNotices.get());
+    for(PersistentSearchManager.Watch watch : busyManager.getWatches())
+    {
+      assertEquals(changesPerSearch,watch.getDelivered());
+    }
+  }
+
+
+
+
+
+
+  private List<RecordingSubscriber> register(int count) throws LDAPException
+  {
+    List<RecordingSubscriber> subscribers = new ArrayList<RecordingSubscriber>();
+    for(int i = 0; i < count; ++i)
+    {
+      String base = "ou=" + i + ",dc=example,dc=com";
+      RecordingSubscriber subscriber = new RecordingSubscriber();
+      subscribers.add(subscriber);
+      manager.register(base,new SearchRequest(base,SearchScope.SUB,"(objectClass=*)"),
+        subscriber);
+    }
+    return subscribers;
+  }
+
+
+
+
+
+
+  private void awaitSearches(int count) throws InterruptedException
+  {
+    long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10L);
+    while((searches.size() < count) && (System.nanoTime() < deadline))
+    {
+      TimeUnit.MILLISECONDS.sleep(10L);
+    }
+    assertEquals(count,searches.size());
+  }
+
+
+
+
+
+
+  private List<ReceivedSearch> snapshot()
+  {
+    synchronized(searches)
+    {
+      return new ArrayList<ReceivedSearch>(searches);
+    }
+  }
+
+
+
+
+
+
+  @Before
+  public void setUp() throws IOException
+  {
+    listener = new LDAPListener(new LDAPListenerConfig(0,new PersistentSearchHandler(null)));
+    listener.startListening();
+    manager = new PersistentSearchManager(
+      new SingleServerSet("localhost",listener.getListenPort()),null,2,1024,64);
+    manager.setRetryIntervalMillis(50L);
+  }
+
+
+
+
+
+
+  @After
+  public void tearDown() throws InterruptedException
+  {
+    manager.close();
+    listener.shutDown(true);
+  }
+
+
+
+
+
+
+  private static final class ReceivedSearch
+  {
+
+    private final LDAPListenerClientConnection connection;
+
+    private final int messageID;
+
+    private final String baseDN;
+
+    private ReceivedSearch(LDAPListenerClientConnection connection,int messageID,
+                           String baseDN)
+    {
+      this.connection = connection;
+      this.messageID = messageID;
+      this.baseDN = baseDN;
+    }
+
+    private void sendChange(String dn) throws LDAPException
+    {
+      connection.sendSearchResultEntry(messageID,new Entry(dn,new Attribute("cn","changed")),
+        new EntryChangeNotificationControl(PersistentSearchChangeType.MODIFY,null,-1L));
+    }
+  }
+
+
+
+
+
+
+  /**
+   * Keeps every persistent search open, as a directory server does.
+   */
+  private final class PersistentSearchHandler extends LDAPListenerRequestHandler
+  {
+
+    private final LDAPListenerClientConnection connection;
+
+    private PersistentSearchHandler(LDAPListenerClientConnection connection)
+    {
+      this.connection = connection;
+    }
+
+    @Override
+    public LDAPListenerRequestHandler newInstance(LDAPListenerClientConnection connection)
+    {
+      return new PersistentSearchHandler(connection);
+    }
+
+    @Override
+    public LDAPMessage processSearchRequest(int messageID,SearchRequestProtocolOp request,
+                                            List<Control> controls)
+    {
+      for(Control control : controls)
+      {
+        if(control.getOID().equals(
+          PersistentSearchRequestControl.PERSISTENT_SEARCH_REQUEST_OID))
+        {
+          searches.add(new ReceivedSearch(connection,messageID,request.getBaseDN()));
+        }
+      }
+      return null;
+    }
+
+    @Override
+    public LDAPMessage processAddRequest(int messageID,AddRequestProtocolOp request,
+                                         List<Control> controls)
+    {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public LDAPMessage processBindRequest(int messageID,BindRequestProtocolOp request,
+                                          List<Control> controls)
+    {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public LDAPMessage processCompareRequest(int messageID,CompareRequestProtocolOp request,
+                                             List<Control> controls)
+    {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public LDAPMessage processDeleteRequest(int messageID,DeleteRequestProtocolOp request,
+                                            List<Control> controls)
+    {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public LDAPMessage processExtendedRequest(int messageID,ExtendedRequestProtocolOp request,
+                                              List<Control> controls)
+    {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public LDAPMessage processModifyRequest(int messageID,ModifyRequestProtocolOp request,
+                                            List<Control> controls)
+    {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public LDAPMessage processModifyDNRequest(int messageID,ModifyDNRequestProtocolOp request,
+                                              List<Control> controls)
+    {
+      throw new UnsupportedOperationException();
+    }
+  }
+
+
+
+
+
+
+  private static class RecordingSubscriber implements ChangeSubscriber
+  {
+
+    private final List<String> dns = Collections.synchronizedList(new ArrayList<String>());
+
+    private final AtomicLong missedNotices = new AtomicLong();
+
+    private RecordingSubscriber()
+    {
+    }
+
+    @Override
+    public void changesReceived(List<ChangeEvent> changes)
+    {
+      for(ChangeEvent change : changes)
+      {
+        dns.add(change.getDN());
+      }
+    }
+
+    @Override
+    public void changesMissed(long count)
+    {
+      missedNotices.incrementAndGet();
+    }
+
+    private void await(int count) throws InterruptedException
+    {
+      long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10L);
+      while((dns.size() < count) && (System.nanoTime() < deadline))
+      {
+        TimeUnit.MILLISECONDS.sleep(10L);
+      }
+      assertEquals(count,dns.size());
+    }
+  }
+}
@@ -0,0 +1,117 @@
+package samplecode.test;
+
+import com.unboundid.ldap.listener.InMemoryDirectoryServer;
+import com.unboundid.ldap.listener.InMemoryDirectoryServerConfig;
+import com.unboundid.ldap.sdk.*;
+import com.unboundid.ldif.LDIFException;
+import org.junit.*;
+import samplecode.search.PrefetchingPagedSearch;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public final class PrefetchingPagedSearchTestCases
+{
+
+  private static final String BASE_DN = "dc=example,dc=com";
+
+  private InMemoryDirectoryServer directoryServer;
+
+  private LDAPConnection ldapConnection;
+
+
+
+
+
+
+  @Test
+  public void everyPageRetrievedTestCase() throws LDAPException, InterruptedException
+  {
+    SearchRequest searchRequest =
+      new SearchRequest(BASE_DN,SearchScope.SUB,"(objectClass=person)");
+    PrefetchingPagedSearch pagedSearch =
+      new PrefetchingPagedSearch(ldapConnection,searchRequest,30,1);
+    int pages = 0;
+    int entries = 0;
+    try
+    {
+      SearchResult page;
+      while((page = pagedSearch.nextPage()) != null)
+      {
+        assertTrue(page.getEntryCount() <= 30);
+        ++pages;
+        entries += page.getEntryCount();
+      }
+    }
+    finally
+    {
+      pagedSearch.close();
+    }
+    assertEquals(7,pages);
+    assertEquals(200,entries);
+    assertEquals(7L,pagedSearch.getPagesFetched());
+    assertEquals(200L,pagedSearch.getEntriesFetched());
+    assertNull(pagedSearch.nextPage());
+    assertEquals(0,searchRequest.getControls().length);
+  }
+
+
+
+
+
+
+  @Test
+  public void pagesInFlightCappedTestCase() throws LDAPException, InterruptedException
+  {
+    SearchRequest searchRequest =
+      new SearchRequest(BASE_DN,SearchScope.SUB,"(objectClass=person)");
+    PrefetchingPagedSearch pagedSearch =
+      new PrefetchingPagedSearch(ldapConnection,searchRequest,10,2);
+    try
+    {
+      Thread.sleep(200L);
+      assertEquals(2L,pagedSearch.getPagesFetched());
+      assertEquals(10,pagedSearch.nextPage().getEntryCount());
+      Thread.sleep(200L);
+      assertEquals(3L,pagedSearch.getPagesFetched());
+    }
+    finally
+    {
+      pagedSearch.close();
+    }
+    assertNull(pagedSearch.nextPage());
+  }
+
+
+
+
+
+
+  @Before
+  public void setUp() throws LDAPException, LDIFException
+  {
+    InMemoryDirectoryServerConfig config = new InMemoryDirectoryServerConfig(BASE_DN);
+    directoryServer = new InMemoryDirectoryServer(config);
+    directoryServer.startListening();
+    directoryServer.add("dn: " + BASE_DN,"objectClass: top","objectClass: domain","dc: example");
+    for(int i = 0; i < 200; ++i)
+    {
+      directoryServer.add("dn: cn=user." + i + "," + BASE_DN,"objectClass: top",
+        "objectClass: person","cn: user." + i,"sn: " + i);
+    }
+    ldapConnection = directoryServer.getConnection();
+  }
+
+
+
+
+
+
+  @After
+  public void tearDown()
+  {
+    ldapConnection.close();
+    directoryServer.shutDown(true);
+  }
+}
@@ -0,0 +1,259 @@
+package samplecode.test;
+
+import com.unboundid.ldap.listener.InMemoryDirectoryServer;
+import com.unboundid.ldap.listener.InMemoryDirectoryServerConfig;
+import com.unboundid.ldap.sdk.DisconnectHandler;
+import com.unboundid.ldap.sdk.DisconnectType;
+import com.unboundid.ldap.sdk.LDAPConnection;
+import com.unboundid.ldap.sdk.LDAPConnectionOptions;
+import com.unboundid.ldap.sdk.LDAPResult;
+import com.unboundid.ldap.sdk.ResultCode;
+import com.unboundid.ldif.LDIFChangeRecord;
+import com.unboundid.ldif.LDIFException;
+import com.unboundid.ldif.LDIFReader;
+import java.io.ByteArrayInputStream;
+import java.io.UnsupportedEncodingException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import org.junit.*;
+import samplecode.ldif.RateLimitedChangeApplier;
+import samplecode.util.TokenBucket;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public final class RateLimitedChangeApplierTestCases
+{
+
+  private static final String BASE_DN = "dc=example,dc=com";
+
+
+  private InMemoryDirectoryServer directoryServer;
+
+
+  private LDAPConnection ldapConnection;
+
+
+
+
+
+
+  @Test
+  public void burstStartsAtOnceTestCase() throws InterruptedException
+  {
+    TokenBucket tokenBucket = new TokenBucket(10.0,5);
+    for(int i = 0; i < 5; ++i)
+    {
+      assertTrue(tokenBucket.tryAcquire());
+    }
+    assertFalse(tokenBucket.tryAcquire());
+    long waited = tokenBucket.acquire();
+    assertTrue(waited > 0L);
+    assertTrue(waited <= 100000000L);
+  }
+
+
+
+
+
+
+  @Test
+  public void achievedRateIsCloseToTargetTestCase() throws Exception
+  {
+    StringBuilder ldif = new StringBuilder();
+    for(int i = 0; i < 100; ++i)
+    {
+      ldif.append(modify("ou=people," + BASE_DN,"value " + i));
+    }
+    RateLimitedChangeApplier applier = new RateLimitedChangeApplier(ldapConnection,200.0,1,8);
+    long start = System.nanoTime();
+    assertEquals(100L,applier.apply(reader(ldif.toString())));
+    long elapsedMillis = (System.nanoTime() - start) / 1000000L;
+
+    // 99 intervals of 5 milliseconds
+    assertTrue(elapsedMillis >= 450L);
+    assertEquals(100L,applier.getApplied());
+    assertTrue(applier.toString(),applier.getAchievedRate() > 150.0);
+    assertTrue(applier.toString(),applier.getAchievedRate() < 250.0);
+    assertTrue(applier.getThrottledMillis() > 0L);
+  }
+
+
+
+
+
+
+  @Test
+  public void dependentChangesAreAppliedInOrderTestCase() throws Exception
+  {
+    StringBuilder ldif = new StringBuilder();
+    for(int i = 0; i < 50; ++i)
+    {
+      String dn = "cn=user." + i + ",ou=people," + BASE_DN;
+      ldif.append("dn: ").append(dn).append("\nchangetype: add\nobjectClass: person\ncn: user.")
+        .append(i).append("\nsn: ").append(i).append("\n\n");
+      ldif.append(modify(dn,"first"));
+      ldif.append(modify(dn,"second"));
+      if(i % 2 == 0)
+      {
+        ldif.append("dn: ").append(dn).append("\nchangetype: delete\n\n");
+      }
+    }
+    final List<String> failures = Collections.synchronizedList(new ArrayList<String>());
+    RateLimitedChangeApplier applier = new RateLimitedChangeApplier(ldapConnection,0.0,1,16);
+    applier.setFailureListener(new RateLimitedChangeApplier.FailureListener()
+    {
+      @Override
+      public void changeNotApplied(LDIFChangeRecord changeRecord,LDAPResult ldapResult)
+      {
+        failures.add(ldapResult.getResultCode() + " " + changeRecord.getDN());
+      }
+
+      @Override
+      public void changeNotRead(LDIFException ldifException)
+      {
+        failures.add("not read");
+      }
+    });
+    applier.apply(reader(ldif.toString()));
+
+    assertEquals(Collections.<String>emptyList(),failures);
+    assertEquals(175L,applier.getApplied());
+    assertEquals(25,directoryServer.countEntriesBelow("ou=people," + BASE_DN) - 1);
+    assertEquals("second",directoryServer.getEntry("cn=user.1,ou=people," + BASE_DN)
+      .getAttributeValue("description"));
+  }
+
+
+
+
+
+
+  @Test
+  public void callerDisconnectHandlerIsCalledTestCase() throws Exception
+  {
+    final List<DisconnectType> disconnects =
+      Collections.synchronizedList(new ArrayList<DisconnectType>());
+    LDAPConnectionOptions options = ldapConnection.getConnectionOptions().duplicate();
+    final DisconnectHandler callerHandler = new DisconnectHandler()
+    {
+      @Override
+      public void handleDisconnect(LDAPConnection connection,String host,int port,
+                                   DisconnectType disconnectType,String message,Throwable cause)
+      {
+        disconnects.add(disconnectType);
+      }
+    };
+    options.setDisconnectHandler(callerHandler);
+    ldapConnection.setConnectionOptions(options);
+    RateLimitedChangeApplier applier = new RateLimitedChangeApplier(ldapConnection,0.0,1,1);
+    applier.setFailureListener(new RateLimitedChangeApplier.FailureListener()
+    {
+      @Override
+      public void changeNotApplied(LDIFChangeRecord changeRecord,LDAPResult ldapResult)
+      {
+      }
+
+      @Override
+      public void changeNotRead(LDIFException ldifException)
+      {
+        // called by the thread applying the changes, with the handler of the applier installed
+        DisconnectHandler handler = ldapConnection.getConnectionOptions().getDisconnectHandler();
+        assertTrue(handler != callerHandler);
+        handler.handleDisconnect(ldapConnection,"localhost",directoryServer.getListenPort(),
+          DisconnectType.OTHER,"not really lost",null);
+      }
+    });
+    applier.apply(reader("dn: cn=bad,ou=people," + BASE_DN + "\nchangetype: unknown\n\n"));
+
+    assertEquals(Collections.singletonList(DisconnectType.OTHER),disconnects);
+    assertTrue(ldapConnection.getConnectionOptions().getDisconnectHandler() == callerHandler);
+  }
+
+
+
+
+
+
+  @Test
+  public void failuresAreReportedTestCase() throws Exception
+  {
+    String ldif = modify("cn=missing,ou=people," + BASE_DN,"value") +
+      "dn: cn=bad,ou=people," + BASE_DN + "\nchangetype: unknown\n\n" +
+      modify("ou=people," + BASE_DN,"value");
+    final List<String> failures = Collections.synchronizedList(new ArrayList<String>());
+    RateLimitedChangeApplier applier = new RateLimitedChangeApplier(ldapConnection,0.0,1,4);
+    applier.setFailureListener(new RateLimitedChangeApplier.FailureListener()
+    {
+      @Override
+      public void changeNotApplied(LDIFChangeRecord changeRecord,LDAPResult ldapResult)
+      {
+        failures.add(ldapResult.getResultCode().getName());
+      }
+
+      @Override
+      public void changeNotRead(LDIFException ldifException)
+      {
+        failures.add("not read");
+      }
+    });
+    assertEquals(2L,applier.apply(reader(ldif)));
+
+    assertEquals(1L,applier.getApplied());
+    assertEquals(1L,applier.getFailed());
+    assertEquals(1L,applier.getNotRead());
+    assertTrue(failures.contains(ResultCode.NO_SUCH_OBJECT.getName()));
+    assertTrue(failures.contains("not read"));
+  }
+
+
+
+
+
+
+  private static String modify(String dn,String description)
+  {
+    return "dn: " + dn + "\nchangetype: modify\nreplace: description\ndescription: " +
+      description + "\n\n";
+  }
+
+
+
+
+
+
+  private static LDIFReader reader(String ldif) throws UnsupportedEncodingException
+  {
+    return new LDIFReader(new ByteArrayInputStream(ldif.getBytes("UTF-8")));
+  }
+
+
+
+
+
+
+  @Before
+  public void setUp() throws Exception
+  {
+    directoryServer = new InMemoryDirectoryServer(new InMemoryDirectoryServerConfig(BASE_DN));
+    directoryServer.startListening();
+    directoryServer.add("dn: " + BASE_DN,"objectClass: top","objectClass: domain","dc: example");
+    directoryServer.add("dn: ou=people," + BASE_DN,"objectClass: organizationalUnit",
+      "ou: people");
+    ldapConnection = new LDAPConnection("localhost",directoryServer.getListenPort());
+  }
+
+
+
+
+
+
+  @After
+  public void tearDown()
+  {
+    ldapConnection.close();
+    directoryServer.shutDown(true);
+  }
+}
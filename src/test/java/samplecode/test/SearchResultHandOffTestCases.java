@@ -0,0 +1,105 @@
+package samplecode.test;
+
+import com.unboundid.ldap.listener.InMemoryDirectoryServer;
+import com.unboundid.ldap.listener.InMemoryDirectoryServerConfig;
+import com.unboundid.ldap.sdk.*;
+import com.unboundid.ldif.LDIFException;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.*;
+import samplecode.search.SearchResultHandOff;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public final class SearchResultHandOffTestCases
+{
+
+  private static final String BASE_DN = "dc=example,dc=com";
+
+  private InMemoryDirectoryServer directoryServer;
+
+
+
+
+
+
+  @Test
+  public void everyEntryProcessedTestCase() throws LDAPException, InterruptedException
+  {
+    final AtomicInteger processed = new AtomicInteger();
+    SearchResultListener slowListener = new SearchResultListener()
+    {
+      private static final long serialVersionUID = 1L;
+
+      @Override
+      public void searchEntryReturned(SearchResultEntry searchEntry)
+      {
+        processed.incrementAndGet();
+        try
+        {
+          Thread.sleep(1L);
+        }
+        catch(InterruptedException e)
+        {
+          Thread.currentThread().interrupt();
+        }
+      }
+
+      @Override
+      public void searchReferenceReturned(SearchResultReference searchReference)
+      {
+      }
+    };
+
+    SearchResultHandOff handOff = new SearchResultHandOff(slowListener,8,3);
+    SearchRequest searchRequest =
+      new SearchRequest(handOff,BASE_DN,SearchScope.SUB,"(objectClass=person)");
+    LDAPConnection ldapConnection = directoryServer.getConnection();
+    try
+    {
+      ldapConnection.asyncSearch(searchRequest);
+      SearchResult searchResult = handOff.awaitSearchResult();
+      assertEquals(ResultCode.SUCCESS,searchResult.getResultCode());
+      assertEquals(200,searchResult.getEntryCount());
+    }
+    finally
+    {
+      ldapConnection.close();
+    }
+    assertEquals(200,processed.get());
+    assertEquals(200L,handOff.getResultsHandedOff());
+    assertTrue(handOff.getMaxQueueDepth() <= 8L);
+    assertEquals(0,handOff.getQueueDepth());
+    assertTrue(handOff.getConsumerSaturation() > 0.0);
+  }
+
+
+
+
+
+
+  @Before
+  public void setUp() throws LDAPException, LDIFException
+  {
+    InMemoryDirectoryServerConfig config = new InMemoryDirectoryServerConfig(BASE_DN);
+    directoryServer = new InMemoryDirectoryServer(config);
+    directoryServer.startListening();
+    directoryServer.add("dn: " + BASE_DN,"objectClass: top","objectClass: domain","dc: example");
+    for(int i = 0; i < 200; ++i)
+    {
+      directoryServer.add("dn: cn=user." + i + "," + BASE_DN,"objectClass: top",
+        "objectClass: person","cn: user." + i,"sn: " + i);
+    }
+  }
+
+
+
+
+
+
+  @After
+  public void tearDown()
+  {
+    directoryServer.shutDown(true);
+  }
+}
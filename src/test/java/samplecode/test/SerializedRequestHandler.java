@@ -0,0 +1,164 @@
+package samplecode.test;
+
+import com.unboundid.ldap.listener.InMemoryRequestHandler;
+import com.unboundid.ldap.listener.LDAPListenerClientConnection;
+import com.unboundid.ldap.listener.LDAPListenerRequestHandler;
+import com.unboundid.ldap.protocol.AbandonRequestProtocolOp;
+import com.unboundid.ldap.protocol.AddRequestProtocolOp;
+import com.unboundid.ldap.protocol.BindRequestProtocolOp;
+import com.unboundid.ldap.protocol.CompareRequestProtocolOp;
+import com.unboundid.ldap.protocol.DeleteRequestProtocolOp;
+import com.unboundid.ldap.protocol.ExtendedRequestProtocolOp;
+import com.unboundid.ldap.protocol.LDAPMessage;
+import com.unboundid.ldap.protocol.ModifyDNRequestProtocolOp;
+import com.unboundid.ldap.protocol.ModifyRequestProtocolOp;
+import com.unboundid.ldap.protocol.SearchRequestProtocolOp;
+import com.unboundid.ldap.protocol.UnbindRequestProtocolOp;
+import com.unboundid.ldap.sdk.Control;
+import com.unboundid.ldap.sdk.LDAPException;
+import java.util.List;
+
+/**
+ * Serves the requests of every connection with an in-memory request
+ * handler, one request at a time. The handler of each connection of an
+ * {@code InMemoryDirectoryServer} locks only itself while it updates the
+ * entries shared by all of them, so the adds sent on several connections
+ * at once may be lost.
+ */
+final class SerializedRequestHandler extends LDAPListenerRequestHandler
+{
+
+  private final InMemoryRequestHandler handler;
+
+  private final Object lock;
+
+  SerializedRequestHandler(InMemoryRequestHandler handler)
+  {
+    this(handler,new Object());
+  }
+
+  private SerializedRequestHandler(InMemoryRequestHandler handler,Object lock)
+  {
+    this.handler = handler;
+    this.lock = lock;
+  }
+
+  @Override
+  public LDAPListenerRequestHandler newInstance(LDAPListenerClientConnection connection)
+    throws LDAPException
+  {
+    synchronized(lock)
+    {
+      return new SerializedRequestHandler(handler.newInstance(connection),lock);
+    }
+  }
+
+  @Override
+  public void closeInstance()
+  {
+    synchronized(lock)
+    {
+      handler.closeInstance();
+    }
+  }
+
+  @Override
+  public void processAbandonRequest(int messageID,AbandonRequestProtocolOp request,
+                                    List<Control> controls)
+  {
+    synchronized(lock)
+    {
+      handler.processAbandonRequest(messageID,request,controls);
+    }
+  }
+
+  @Override
+  public LDAPMessage processAddRequest(int messageID,AddRequestProtocolOp request,
+                                       List<Control> controls)
+  {
+    synchronized(lock)
+    {
+      return handler.processAddRequest(messageID,request,controls);
+    }
+  }
+
+  @Override
+  public LDAPMessage processBindRequest(int messageID,BindRequestProtocolOp request,
+                                        List<Control> controls)
+  {
+    synchronized(lock)
+    {
+      return handler.processBindRequest(messageID,request,controls);
+    }
+  }
+
+  @Override
+  public LDAPMessage processCompareRequest(int messageID,CompareRequestProtocolOp request,
+                                           List<Control> controls)
+  {
+    synchronized(lock)
+    {
+      return handler.processCompareRequest(messageID,request,controls);
+    }
+  }
+
+  @Override
+  public LDAPMessage processDeleteRequest(int messageID,DeleteRequestProtocolOp request,
+                                          List<Control> controls)
+  {
+    synchronized(lock)
+    {
+      return handler.processDeleteRequest(messageID,request,controls);
+    }
+  }
+
+  @Override
+  public LDAPMessage processExtendedRequest(int messageID,ExtendedRequestProtocolOp request,
+                                            List<Control> controls)
+  {
+    synchronized(lock)
+    {
+      return handler.processExtendedRequest(messageID,request,controls);
+    }
+  }
+
+  @Override
+  public LDAPMessage processModifyRequest(int messageID,ModifyRequestProtocolOp request,
+                                          List<Control> controls)
+  {
+    synchronized(lock)
+    {
+      return handler.processModifyRequest(messageID,request,controls);
+    }
+  }
+
+  @Override
+  public LDAPMessage processModifyDNRequest(int messageID,ModifyDNRequestProtocolOp request,
+                                            List<Control> controls)
+  {
+    synchronized(lock)
+    {
+      return handler.processModifyDNRequest(messageID,request,controls);
+    }
+  }
+
+  @Override
+  public LDAPMessage processSearchRequest(int messageID,SearchRequestProtocolOp request,
+                                          List<Control> controls)
+  {
+    synchronized(lock)
+    {
+      return handler.processSearchRequest(messageID,request,controls);
+    }
+  }
+
+  @Override
+  public void processUnbindRequest(int messageID,UnbindRequestProtocolOp request,
+                                   List<Control> controls)
+  {
+    synchronized(lock)
+    {
+      handler.processUnbindRequest(messageID,request,controls);
+    }
+  }
+}
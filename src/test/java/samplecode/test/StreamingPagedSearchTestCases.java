@@ -0,0 +1,130 @@
+package samplecode.test;
+
+import com.unboundid.ldap.listener.InMemoryDirectoryServer;
+import com.unboundid.ldap.listener.InMemoryDirectoryServerConfig;
+import com.unboundid.ldap.sdk.*;
+import com.unboundid.ldif.LDIFException;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.*;
+import samplecode.search.AdaptivePageSizer;
+import samplecode.search.StreamingPagedSearch;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public final class StreamingPagedSearchTestCases
+{
+
+  private static final String BASE_DN = "dc=example,dc=com";
+
+  private InMemoryDirectoryServer directoryServer;
+
+  private LDAPConnection ldapConnection;
+
+
+
+
+
+
+  @Test
+  public void everyEntryStreamedTestCase() throws LDAPException
+  {
+    final AtomicInteger streamed = new AtomicInteger();
+    SearchRequest searchRequest =
+      new SearchRequest(BASE_DN,SearchScope.SUB,"(objectClass=person)");
+    StreamingPagedSearch pagedSearch = new StreamingPagedSearch(ldapConnection,searchRequest,30);
+    SearchResult searchResult = pagedSearch.search(new CountingListener(streamed));
+    assertEquals(ResultCode.SUCCESS,searchResult.getResultCode());
+    assertNull(searchResult.getSearchEntries());
+    assertEquals(200,streamed.get());
+    assertEquals(200L,pagedSearch.getEntriesReturned());
+    assertEquals(7,pagedSearch.getPagesReturned());
+    assertEquals(0,searchRequest.getControls().length);
+  }
+
+
+
+
+
+
+  @Test
+  public void adaptivePageSizeTestCase() throws LDAPException
+  {
+    final AtomicInteger streamed = new AtomicInteger();
+    SearchRequest searchRequest =
+      new SearchRequest(BASE_DN,SearchScope.SUB,"(objectClass=person)");
+    // a budget of about five entries per page
+    AdaptivePageSizer pageSizer = new AdaptivePageSizer(50,1,1000,60000L,150L);
+    StreamingPagedSearch pagedSearch =
+      new StreamingPagedSearch(ldapConnection,searchRequest,pageSizer);
+    pagedSearch.search(new CountingListener(streamed));
+    assertEquals(200,streamed.get());
+    assertTrue(pageSizer.getPageSize() < 50);
+    assertTrue(pagedSearch.getPagesReturned() > 4);
+  }
+
+
+
+
+
+
+  private static final class CountingListener implements SearchResultListener
+  {
+
+    private static final long serialVersionUID = 1L;
+
+    private final AtomicInteger count;
+
+    private CountingListener(AtomicInteger count)
+    {
+      this.count = count;
+    }
+
+    @Override
+    public void searchEntryReturned(SearchResultEntry searchEntry)
+    {
+      count.incrementAndGet();
+    }
+
+    @Override
+    public void searchReferenceReturned(SearchResultReference searchReference)
+    {
+    }
+  }
+
+
+
+
+
+
+  @Before
+  public void setUp() throws LDAPException, LDIFException
+  {
+    InMemoryDirectoryServerConfig config = new InMemoryDirectoryServerConfig(BASE_DN);
+    directoryServer = new InMemoryDirectoryServer(config);
+    directoryServer.startListening();
+    directoryServer.add("dn: " + BASE_DN,"objectClass: top","objectClass: domain","dc: example");
+    for(int i = 0; i < 200; ++i)
+    {
+      directoryServer.add("dn: cn=user." + i + "," + BASE_DN,"objectClass: top",
+        "objectClass: person","cn: user." + i,"sn: " + i);
+    }
+    LDAPConnectionOptions connectionOptions = new LDAPConnectionOptions();
+    connectionOptions.setUseSynchronousMode(true);
+    ldapConnection =
+      new LDAPConnection(connectionOptions,"localhost",directoryServer.getListenPort());
+  }
+
+
+
+
+
+
+  @After
+  public void tearDown()
+  {
+    ldapConnection.close();
+    directoryServer.shutDown(true);
+  }
+}
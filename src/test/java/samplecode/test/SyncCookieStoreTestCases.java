@@ -0,0 +1,137 @@
+package samplecode.test;
+
+import com.unboundid.asn1.ASN1OctetString;
+import com.unboundid.ldap.sdk.Attribute;
+import com.unboundid.ldap.sdk.Control;
+import com.unboundid.ldap.sdk.LDAPException;
+import com.unboundid.ldap.sdk.LDAPResult;
+import com.unboundid.ldap.sdk.ResultCode;
+import com.unboundid.ldap.sdk.SearchRequest;
+import com.unboundid.ldap.sdk.SearchResultEntry;
+import com.unboundid.ldap.sdk.SearchScope;
+import com.unboundid.ldap.sdk.controls.ContentSyncDoneControl;
+import com.unboundid.ldap.sdk.controls.ContentSyncInfoIntermediateResponse;
+import com.unboundid.ldap.sdk.controls.ContentSyncState;
+import com.unboundid.ldap.sdk.controls.ContentSyncStateControl;
+import java.io.File;
+import java.io.IOException;
+import java.util.UUID;
+import org.junit.*;
+import samplecode.controls.SyncCookieStore;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public final class SyncCookieStoreTestCases
+{
+
+  private File file;
+
+  private SearchRequest searchRequest;
+
+
+
+
+
+
+  @Test
+  public void cookieSurvivesRestartTestCase() throws LDAPException, IOException
+  {
+    SyncCookieStore cookieStore = new SyncCookieStore(file,searchRequest,0L);
+    assertNull(cookieStore.load());
+    cookieStore.update(newEntry("first"));
+    cookieStore.update(newEntry("second"));
+    assertEquals(2L,cookieStore.getSaves());
+
+    SyncCookieStore restarted = new SyncCookieStore(file,searchRequest,0L);
+    assertEquals("second",restarted.load().stringValue());
+    assertFalse(new File(file.getPath() + ".tmp").exists());
+  }
+
+
+
+
+
+
+  @Test
+  public void writesAreThrottledTestCase() throws LDAPException, IOException
+  {
+    SyncCookieStore cookieStore = new SyncCookieStore(file,searchRequest,60000L);
+    for(int i = 0; i < 100; ++i)
+    {
+      cookieStore.update(newEntry("cookie." + i));
+    }
+    assertEquals(100L,cookieStore.getUpdates());
+    assertEquals(1L,cookieStore.getSaves());
+    assertEquals("cookie.0",new SyncCookieStore(file,searchRequest,0L).load().stringValue());
+
+    // a sync info message and the end of the search write the file at once
+    cookieStore.update(ContentSyncInfoIntermediateResponse.createNewCookieResponse(
+      new ASN1OctetString("info")));
+    assertEquals("info",new SyncCookieStore(file,searchRequest,0L).load().stringValue());
+    LDAPResult ldapResult = new LDAPResult(1,ResultCode.SUCCESS,null,null,null,
+      new Control[]{new ContentSyncDoneControl(new ASN1OctetString("done"),false)});
+    cookieStore.update(ldapResult);
+    assertEquals("done",new SyncCookieStore(file,searchRequest,0L).load().stringValue());
+    assertEquals(3L,cookieStore.getSaves());
+  }
+
+
+
+
+
+
+  @Test
+  public void cookieOfAnotherSearchIsIgnoredTestCase() throws LDAPException, IOException
+  {
+    SyncCookieStore cookieStore = new SyncCookieStore(file,searchRequest,0L);
+    cookieStore.update(newEntry("cookie"));
+    SearchRequest other =
+      new SearchRequest("ou=people,dc=example,dc=com",SearchScope.SUB,"(objectClass=*)");
+    assertNull(new SyncCookieStore(file,other,0L).load());
+
+    cookieStore.delete();
+    assertFalse(file.exists());
+    assertNull(cookieStore.getCookie());
+  }
+
+
+
+
+
+
+  private static SearchResultEntry newEntry(String cookie)
+  {
+    Control control =
+      new ContentSyncStateControl(ContentSyncState.MODIFY,UUID.randomUUID(),
+        new ASN1OctetString(cookie));
+    return new SearchResultEntry("cn=user.0,dc=example,dc=com",
+      new Attribute[]{new Attribute("cn","user.0")},control);
+  }
+
+
+
+
+
+
+  @Before
+  public void setUp() throws LDAPException, IOException
+  {
+    file = File.createTempFile("sync",".cookie");
+    assertTrue(file.delete());
+    searchRequest = new SearchRequest("dc=example,dc=com",SearchScope.SUB,"(objectClass=*)");
+  }
+
+
+
+
+
+
+  @After
+  public void tearDown()
+  {
+    file.delete();
+  }
+}
@@ -0,0 +1,191 @@
+package samplecode.test;
+
+import com.unboundid.ldap.listener.InMemoryDirectoryServer;
+import com.unboundid.ldap.listener.InMemoryDirectoryServerConfig;
+import com.unboundid.ldap.sdk.LDAPConnection;
+import com.unboundid.ldap.sdk.LDAPResult;
+import com.unboundid.ldap.sdk.ResultCode;
+import com.unboundid.ldif.LDIFChangeRecord;
+import com.unboundid.ldif.LDIFException;
+import com.unboundid.ldif.LDIFReader;
+import java.io.ByteArrayInputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import org.junit.*;
+import samplecode.ldif.RateLimitedChangeApplier;
+import samplecode.ldif.TransactionalChangeApplier;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public final class TransactionalChangeApplierTestCases
+{
+
+  private static final String BASE_DN = "dc=example,dc=com";
+
+
+  private InMemoryDirectoryServer directoryServer;
+
+
+  private LDAPConnection ldapConnection;
+
+
+
+
+
+
+  @Test
+  public void changesAreCommittedInBatchesTestCase() throws Exception
+  {
+    start(new InMemoryDirectoryServerConfig(BASE_DN));
+    assertTrue(TransactionalChangeApplier.isTransactionSupported(ldapConnection));
+    TransactionalChangeApplier applier = new TransactionalChangeApplier(ldapConnection,100,4);
+    assertEquals(250L,applier.apply(reader(adds(250,-1))));
+
+    assertTrue(applier.isUsingTransactions());
+    assertEquals(250L,applier.getApplied());
+    assertEquals(3L,applier.getCommitted());
+    assertEquals(0L,applier.getRolledBack());
+    assertEquals(250,directoryServer.countEntriesBelow("ou=people," + BASE_DN) - 1);
+  }
+
+
+
+
+
+
+  @Test
+  public void failedChangeIsAppliedAloneTestCase() throws Exception
+  {
+    start(new InMemoryDirectoryServerConfig(BASE_DN));
+    List<String> failures = new ArrayList<String>();
+    TransactionalChangeApplier applier = new TransactionalChangeApplier(ldapConnection,10,4);
+    applier.setFailureListener(newFailureListener(failures));
+    applier.apply(reader(adds(30,15)));
+
+    // the batch of the invalid change is rolled back, then its other
+    // changes are applied one at a time
+    assertEquals(2L,applier.getCommitted());
+    assertEquals(1L,applier.getRolledBack());
+    assertEquals(29L,applier.getApplied());
+    assertEquals(1L,applier.getFailed());
+    assertEquals(Collections.singletonList(ResultCode.NO_SUCH_OBJECT + " cn=user.15,ou=missing," +
+      BASE_DN),failures);
+    assertEquals(29,directoryServer.countEntriesBelow("ou=people," + BASE_DN) - 1);
+  }
+
+
+
+
+
+
+  @Test
+  public void singleOperationsAreUsedWithoutSupportTestCase() throws Exception
+  {
+    InMemoryDirectoryServerConfig config = new InMemoryDirectoryServerConfig(BASE_DN);
+    config.getExtendedOperationHandlers().clear();
+    start(config);
+    assertFalse(TransactionalChangeApplier.isTransactionSupported(ldapConnection));
+    List<String> failures = new ArrayList<String>();
+    TransactionalChangeApplier applier = new TransactionalChangeApplier(ldapConnection,10,4);
+    applier.setFailureListener(newFailureListener(failures));
+    applier.apply(reader(adds(30,15)));
+
+    assertFalse(applier.isUsingTransactions());
+    assertEquals(0L,applier.getCommitted());
+    assertEquals(29L,applier.getApplied());
+    assertEquals(1,failures.size());
+    assertEquals(29,directoryServer.countEntriesBelow("ou=people," + BASE_DN) - 1);
+  }
+
+
+
+
+
+
+  /**
+   * LDIF that adds {@code count} users, the user numbered
+   * {@code invalid} below a missing parent.
+   */
+  private static String adds(int count,int invalid)
+  {
+    StringBuilder ldif = new StringBuilder();
+    for(int i = 0; i < count; ++i)
+    {
+      ldif.append("dn: cn=user.").append(i).append(i == invalid ? ",ou=missing," : ",ou=people,")
+        .append(BASE_DN).append("\nchangetype: add\nobjectClass: person\ncn: user.").append(i)
+        .append("\nsn: ").append(i).append("\n\n");
+    }
+    return ldif.toString();
+  }
+
+
+
+
+
+
+  private static LDIFReader reader(String ldif) throws Exception
+  {
+    return new LDIFReader(new ByteArrayInputStream(ldif.getBytes("UTF-8")));
+  }
+
+
+
+
+
+
+  private static RateLimitedChangeApplier.FailureListener newFailureListener(
+    final List<String> failures)
+  {
+    return new RateLimitedChangeApplier.FailureListener()
+    {
+      @Override
+      public synchronized void changeNotApplied(LDIFChangeRecord changeRecord,
+                                                LDAPResult ldapResult)
+      {
+        failures.add(ldapResult.getResultCode() + " " + changeRecord.getDN());
+      }
+
+      @Override
+      public void changeNotRead(LDIFException ldifException)
+      {
+        failures.add("not read");
+      }
+    };
+  }
+
+
+
+
+
+
+  private void start(InMemoryDirectoryServerConfig config) throws Exception
+  {
+    directoryServer = new InMemoryDirectoryServer(config);
+    directoryServer.startListening();
+    directoryServer.add("dn: " + BASE_DN,"objectClass: top","objectClass: domain","dc: example");
+    directoryServer.add("dn: ou=people," + BASE_DN,"objectClass: organizationalUnit",
+      "ou: people");
+    ldapConnection = new LDAPConnection("localhost",directoryServer.getListenPort());
+  }
+
+
+
+
+
+
+  @After
+  public void tearDown()
+  {
+    if(ldapConnection != null)
+    {
+      ldapConnection.close();
+    }
+    if(directoryServer != null)
+    {
+      directoryServer.shutDown(true);
+    }
+  }
+}
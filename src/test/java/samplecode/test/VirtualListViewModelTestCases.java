@@ -0,0 +1,138 @@
+package samplecode.test;
+
+import com.unboundid.ldap.listener.InMemoryDirectoryServer;
+import com.unboundid.ldap.listener.InMemoryDirectoryServerConfig;
+import com.unboundid.ldap.sdk.*;
+import com.unboundid.ldap.sdk.controls.SortKey;
+import com.unboundid.ldif.LDIFException;
+import java.util.List;
+import org.junit.*;
+import samplecode.vlv.VirtualListViewModel;
+
+import static org.junit.Assert.assertEquals;
+
+public final class VirtualListViewModelTestCases
+{
+
+  private static final String BASE_DN = "dc=example,dc=com";
+
+  private InMemoryDirectoryServer directoryServer;
+
+  private LDAPConnection ldapConnection;
+
+
+
+
+
+
+  @Test
+  public void rangeSpanningWindowsTestCase() throws LDAPException
+  {
+    VirtualListViewModel model = newModel(10,4);
+    assertEquals(200,model.getContentCount());
+    List<SearchResultEntry> range = model.getRange(15,10);
+    assertEquals(10,range.size());
+    assertEquals("0014",range.get(0).getAttributeValue("sn"));
+    assertEquals("0023",range.get(9).getAttributeValue("sn"));
+    // the first window was retrieved for the content count
+    assertEquals(3L,model.getCacheMisses());
+  }
+
+
+
+
+
+
+  @Test
+  public void cachedWindowIsNotRequestedAgainTestCase() throws LDAPException
+  {
+    VirtualListViewModel model = newModel(10,4);
+    model.getRange(41,10);
+    model.getRange(1,10);
+    model.getRange(45,3);
+    model.getRange(41,10);
+    assertEquals(2L,model.getCacheMisses());
+    assertEquals(2L,model.getCacheHits());
+  }
+
+
+
+
+
+
+  @Test
+  public void leastRecentlyUsedWindowIsEvictedTestCase() throws LDAPException
+  {
+    VirtualListViewModel model = newModel(10,2);
+    model.getRange(1,1);
+    model.getRange(11,1);
+    model.getRange(1,1);
+    model.getRange(21,1);
+    // the window at 11 was evicted, the window at 1 was not
+    model.getRange(1,1);
+    assertEquals(3L,model.getCacheMisses());
+    model.getRange(11,1);
+    assertEquals(4L,model.getCacheMisses());
+  }
+
+
+
+
+
+
+  @Test
+  public void rangePastEndOfListTestCase() throws LDAPException
+  {
+    VirtualListViewModel model = newModel(30,4);
+    List<SearchResultEntry> range = model.getRange(195,50);
+    assertEquals(6,range.size());
+    assertEquals("0199",range.get(5).getAttributeValue("sn"));
+    assertEquals(0,model.getRange(201,10).size());
+  }
+
+
+
+
+
+
+  private VirtualListViewModel newModel(int windowSize, int maxCachedWindows)
+    throws LDAPException
+  {
+    SearchRequest searchRequest =
+      new SearchRequest(BASE_DN,SearchScope.ONE,"(objectClass=person)","sn");
+    return new VirtualListViewModel(ldapConnection,searchRequest,
+      new SortKey[]{new SortKey("sn")},windowSize,maxCachedWindows,true);
+  }
+
+
+
+
+
+
+  @Before
+  public void setUp() throws LDAPException, LDIFException
+  {
+    InMemoryDirectoryServerConfig config = new InMemoryDirectoryServerConfig(BASE_DN);
+    directoryServer = new InMemoryDirectoryServer(config);
+    directoryServer.startListening();
+    directoryServer.add("dn: " + BASE_DN,"objectClass: top","objectClass: domain","dc: example");
+    for(int i = 0; i < 200; ++i)
+    {
+      directoryServer.add("dn: cn=user." + i + "," + BASE_DN,"objectClass: top",
+        "objectClass: person","cn: user." + i,"sn: " + String.format("%04d",i));
+    }
+    ldapConnection = new LDAPConnection("localhost",directoryServer.getListenPort());
+  }
+
+
+
+
+
+
+  @After
+  public void tearDown()
+  {
+    ldapConnection.close();
+    directoryServer.shutDown(true);
+  }
+}